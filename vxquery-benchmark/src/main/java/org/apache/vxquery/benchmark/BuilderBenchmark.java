@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.benchmark;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.builders.nodes.DictionaryBuilder;
+import org.apache.vxquery.datamodel.builders.sequence.SequenceBuilder;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the per-item cost of the builders on the parse and evaluation paths: the {@link DictionaryBuilder}
+ * lookups made for the names of each GHCN data record, and adding GHCN values to a {@link SequenceBuilder}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BuilderBenchmark {
+    private static final int RECORDS = 10000;
+    private static final int ITEMS = 100000;
+    private static final String[] RECORD_NAMES = { "data", "date", "dataType", "station", "value", "attributes",
+            "attribute", "attribute", "attribute", "attribute" };
+
+    private final DictionaryBuilder db = new DictionaryBuilder();
+    private final SequenceBuilder sb = new SequenceBuilder();
+    private final ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+    private final TaggedValuePointable[] items = new TaggedValuePointable[ITEMS];
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(42);
+        for (int i = 0; i < ITEMS; ++i) {
+            ArrayBackedValueStorage item = new ArrayBackedValueStorage();
+            DataOutput out = item.getDataOutput();
+            out.write(ValueTag.XS_DOUBLE_TAG);
+            out.writeDouble((random.nextInt(1000) - 300) / 10.0);
+            items[i] = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+            items[i].set(item);
+        }
+    }
+
+    /**
+     * Looks up the namespace, local name and prefix of every element of the records, like the parser does, and
+     * writes the dictionary.
+     */
+    @Benchmark
+    @OperationsPerInvocation(RECORDS * 10 * 3)
+    public ArrayBackedValueStorage dictionaryLookup() throws IOException {
+        db.reset();
+        for (int i = 0; i < RECORDS; ++i) {
+            for (String name : RECORD_NAMES) {
+                db.lookup("");
+                db.lookup(name);
+                db.lookup("");
+            }
+        }
+        abvs.reset();
+        db.write(abvs);
+        return abvs;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEMS)
+    public ArrayBackedValueStorage sequenceBuild() throws IOException {
+        abvs.reset();
+        sb.reset(abvs);
+        for (TaggedValuePointable item : items) {
+            sb.addItem(item);
+        }
+        sb.finish();
+        return abvs;
+    }
+}
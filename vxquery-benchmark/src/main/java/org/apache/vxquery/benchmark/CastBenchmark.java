@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.benchmark;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hyracks.data.std.primitive.DoublePointable;
+import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.datamodel.builders.atomic.StringValueBuilder;
+import org.apache.vxquery.exceptions.SystemException;
+import org.apache.vxquery.runtime.functions.cast.AbstractCastToOperation;
+import org.apache.vxquery.runtime.functions.cast.CastToDateTimeOperation;
+import org.apache.vxquery.runtime.functions.cast.CastToDecimalOperation;
+import org.apache.vxquery.runtime.functions.cast.CastToDoubleOperation;
+import org.apache.vxquery.runtime.functions.cast.CastToIntegerOperation;
+import org.apache.vxquery.runtime.functions.cast.CastToStringOperation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the per-value cost of the casts applied to GHCN data: the untyped values and dates of the records cast to
+ * the numeric types and xs:dateTime, and xs:double results cast to xs:string for serialization.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CastBenchmark {
+    private static final int VALUES = 100000;
+
+    @Param({ "double", "integer", "decimal", "dateTime", "string" })
+    public String target;
+
+    private final UTF8StringPointable[] strings = new UTF8StringPointable[VALUES];
+    private final DoublePointable[] doubles = new DoublePointable[VALUES];
+    private final ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+    private final DataOutput out = abvs.getDataOutput();
+    private AbstractCastToOperation operation;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(42);
+        StringValueBuilder svb = new StringValueBuilder();
+        for (int i = 0; i < VALUES; ++i) {
+            int value = random.nextInt(1000) - 300;
+            String s;
+            if (target.equals("dateTime")) {
+                s = String.format("%04d-%02d-%02dT00:00:00.000", 1940 + random.nextInt(70), 1 + random.nextInt(12),
+                        1 + random.nextInt(28));
+            } else {
+                s = Integer.toString(value);
+            }
+            ArrayBackedValueStorage string = new ArrayBackedValueStorage();
+            svb.write(s, string.getDataOutput());
+            strings[i] = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+            strings[i].set(string);
+
+            ArrayBackedValueStorage number = new ArrayBackedValueStorage();
+            number.getDataOutput().writeDouble(value / 10.0);
+            doubles[i] = (DoublePointable) DoublePointable.FACTORY.createPointable();
+            doubles[i].set(number);
+        }
+        switch (target) {
+            case "double":
+                operation = new CastToDoubleOperation();
+                break;
+            case "integer":
+                operation = new CastToIntegerOperation();
+                break;
+            case "decimal":
+                operation = new CastToDecimalOperation();
+                break;
+            case "dateTime":
+                operation = new CastToDateTimeOperation();
+                break;
+            default:
+                operation = new CastToStringOperation();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public ArrayBackedValueStorage cast() throws SystemException, IOException {
+        if (operation instanceof CastToStringOperation) {
+            for (DoublePointable value : doubles) {
+                abvs.reset();
+                operation.convertDouble(value, out);
+            }
+        } else {
+            for (UTF8StringPointable value : strings) {
+                abvs.reset();
+                operation.convertUntypedAtomic(value, out);
+            }
+        }
+        return abvs;
+    }
+}
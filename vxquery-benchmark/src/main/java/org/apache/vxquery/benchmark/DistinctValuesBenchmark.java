@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.benchmark;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.datamodel.accessors.SequencePointable;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.accessors.TypedPointables;
+import org.apache.vxquery.datamodel.builders.atomic.StringValueBuilder;
+import org.apache.vxquery.datamodel.builders.sequence.SequenceBuilder;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.runtime.functions.comparison.AbstractValueComparisonOperation;
+import org.apache.vxquery.runtime.functions.comparison.ValueEqComparisonOperation;
+import org.apache.vxquery.runtime.functions.util.DistinctValuesHelper;
+import org.apache.vxquery.runtime.functions.util.FunctionHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures fn:distinct-values over sequences of GHCN station ids (strings) and observation values (mixed
+ * xs:integer/xs:double). {@link Pairwise} runs the former quadratic algorithm on the small sizes only, since it does
+ * not finish in reasonable time above 10^5 items.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DistinctValuesBenchmark {
+    @Param({ "10", "1000", "100000", "10000000" })
+    public int size;
+
+    @Param({ "string", "number" })
+    public String type;
+
+    private final SequencePointable seq = (SequencePointable) SequencePointable.FACTORY.createPointable();
+    private final ArrayBackedValueStorage result = new ArrayBackedValueStorage();
+    private final SequenceBuilder sb = new SequenceBuilder();
+    private final DistinctValuesHelper helper = new DistinctValuesHelper();
+
+    @Setup
+    public void setup() throws IOException {
+        createSequence(seq, size, type);
+    }
+
+    @Benchmark
+    public ArrayBackedValueStorage hash() throws IOException {
+        result.reset();
+        sb.reset(result);
+        helper.distinctValues(seq, sb, null);
+        sb.finish();
+        return result;
+    }
+
+    @State(Scope.Thread)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 2)
+    @Fork(1)
+    public static class Pairwise {
+        @Param({ "10", "1000", "10000" })
+        public int size;
+
+        @Param({ "string", "number" })
+        public String type;
+
+        private final SequencePointable seq = (SequencePointable) SequencePointable.FACTORY.createPointable();
+        private final ArrayBackedValueStorage result = new ArrayBackedValueStorage();
+        private final SequenceBuilder sb = new SequenceBuilder();
+        private final AbstractValueComparisonOperation aOp = new ValueEqComparisonOperation();
+        private final TaggedValuePointable tvp1 = (TaggedValuePointable) TaggedValuePointable.FACTORY
+                .createPointable();
+        private final TaggedValuePointable tvp2 = (TaggedValuePointable) TaggedValuePointable.FACTORY
+                .createPointable();
+        private final TypedPointables tp1 = new TypedPointables();
+        private final TypedPointables tp2 = new TypedPointables();
+
+        @Setup
+        public void setup() throws IOException {
+            createSequence(seq, size, type);
+        }
+
+        @Benchmark
+        public ArrayBackedValueStorage pairwise() throws IOException {
+            result.reset();
+            sb.reset(result);
+            int seqLen = seq.getEntryCount();
+            for (int j = 0; j < seqLen; ++j) {
+                seq.getEntry(j, tvp1);
+                boolean found = false;
+                for (int k = 0; k < j && !found; ++k) {
+                    seq.getEntry(k, tvp2);
+                    found = FunctionHelper.compareTaggedValues(aOp, tvp1, tvp2, null, tp1, tp2);
+                }
+                if (!found) {
+                    sb.addItem(tvp1);
+                }
+            }
+            sb.finish();
+            return result;
+        }
+    }
+
+    /**
+     * Builds a sequence in which about one item in ten is distinct.
+     */
+    static void createSequence(SequencePointable seq, int size, String type) throws IOException {
+        Random random = new Random(42);
+        int distinct = Math.max(1, size / 10);
+        ArrayBackedValueStorage items = new ArrayBackedValueStorage();
+        ArrayBackedValueStorage item = new ArrayBackedValueStorage();
+        DataOutput out = item.getDataOutput();
+        StringValueBuilder svb = new StringValueBuilder();
+        SequenceBuilder builder = new SequenceBuilder();
+        builder.reset(items);
+        for (int i = 0; i < size; ++i) {
+            int value = random.nextInt(distinct);
+            item.reset();
+            if ("string".equals(type)) {
+                out.write(ValueTag.XS_STRING_TAG);
+                svb.write(String.format("GHCND:USW%08d", value), out);
+            } else if (i % 2 == 0) {
+                out.write(ValueTag.XS_INTEGER_TAG);
+                out.writeLong(value);
+            } else {
+                out.write(ValueTag.XS_DOUBLE_TAG);
+                out.writeDouble(value);
+            }
+            builder.addItem(item);
+        }
+        builder.finish();
+        seq.set(items.getByteArray(), items.getStartOffset() + 1, items.getLength() - 1);
+    }
+}
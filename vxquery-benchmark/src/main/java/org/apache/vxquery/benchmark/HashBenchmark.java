@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hyracks.api.dataflow.value.IBinaryHashFunction;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.builders.atomic.StringValueBuilder;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.runtime.factory.hashfunction.VXQueryRawBinaryHashFunctionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the per-key cost of the {@link VXQueryRawBinaryHashFunctionFactory} hash used to partition and group by
+ * GHCN keys: station ids, data types and values.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashBenchmark {
+    private static final int KEYS = 100000;
+
+    @Param({ "station", "dataType", "double" })
+    public String key;
+
+    private final TaggedValuePointable[] keys = new TaggedValuePointable[KEYS];
+    private final IBinaryHashFunction hash = VXQueryRawBinaryHashFunctionFactory.INSTANCE
+            .createBinaryHashFunction();
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(42);
+        StringValueBuilder svb = new StringValueBuilder();
+        for (int i = 0; i < KEYS; ++i) {
+            ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+            switch (key) {
+                case "station":
+                    abvs.getDataOutput().write(ValueTag.XS_STRING_TAG);
+                    svb.write(NoaaDataGenerator.stationId(random.nextInt(1000)), abvs.getDataOutput());
+                    break;
+                case "dataType":
+                    abvs.getDataOutput().write(ValueTag.XS_STRING_TAG);
+                    svb.write(NoaaDataGenerator.DATA_TYPES[random.nextInt(NoaaDataGenerator.DATA_TYPES.length)],
+                            abvs.getDataOutput());
+                    break;
+                default:
+                    abvs.getDataOutput().write(ValueTag.XS_DOUBLE_TAG);
+                    abvs.getDataOutput().writeDouble((random.nextInt(1000) - 300) / 10.0);
+            }
+            keys[i] = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+            keys[i].set(abvs);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(KEYS)
+    public int hash() throws HyracksDataException {
+        int h = 0;
+        for (TaggedValuePointable k : keys) {
+            h ^= hash.hash(k.getByteArray(), k.getStartOffset(), k.getLength());
+        }
+        return h;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.jsonparser.JSONParser;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link JSONParser} on GHCN sensor records, decoding the input into chars and reading the UTF-8
+ * bytes directly. Like {@link XMLParserBenchmark}, the "bytes" counter gives the input throughput.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JSONParserBenchmark {
+    @Param({ "100", "10000" })
+    public int records;
+
+    private byte[] document;
+    private JSONParser parser;
+    private final ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        document = new NoaaDataGenerator(42).sensorJsonBytes(records, 100);
+        parser = new JSONParser();
+    }
+
+    @Benchmark
+    public ArrayBackedValueStorage reader(Throughput throughput) throws Exception {
+        abvs.reset();
+        parser.parse(new InputStreamReader(new ByteArrayInputStream(document), StandardCharsets.UTF_8), abvs);
+        throughput.bytes += document.length;
+        return abvs;
+    }
+
+    @Benchmark
+    public ArrayBackedValueStorage bytes(Throughput throughput) throws Exception {
+        abvs.reset();
+        parser.parse(new ByteArrayInputStream(document), abvs, null, null);
+        throughput.bytes += document.length;
+        return abvs;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates deterministic documents in the layout of the NOAA GHCN-Daily web service XML used by the
+ * noaa-ghcn-daily benchmark queries, and in the JSON layout of the queries_json queries.
+ */
+public class NoaaDataGenerator {
+    public static final String[] DATA_TYPES = { "TMIN", "TMAX", "PRCP", "SNOW", "SNWD", "AWND" };
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+
+    private final Random random;
+
+    public NoaaDataGenerator(long seed) {
+        random = new Random(seed);
+    }
+
+    public static String stationId(int station) {
+        return String.format("GHCND:US%09d", station);
+    }
+
+    /**
+     * A dataCollection document with the given number of data records spread over the given stations.
+     */
+    public String sensorXml(int records, int stations) {
+        StringBuilder sb = new StringBuilder(records * 220);
+        sb.append(XML_DECLARATION);
+        sb.append("<dataCollection pageCount=\"1\" totalCount=\"").append(records).append("\">");
+        for (int i = 0; i < records; ++i) {
+            int year = 1940 + random.nextInt(70);
+            int month = 1 + random.nextInt(12);
+            int day = 1 + random.nextInt(28);
+            sb.append("<data><date>");
+            sb.append(String.format("%04d-%02d-%02dT00:00:00.000", year, month, day));
+            sb.append("</date><dataType>").append(DATA_TYPES[random.nextInt(DATA_TYPES.length)]);
+            sb.append("</dataType><station>").append(stationId(random.nextInt(stations)));
+            sb.append("</station><value>").append(random.nextInt(800) - 200);
+            sb.append("</value><attributes><attribute></attribute><attribute></attribute><attribute>a</attribute>");
+            sb.append("<attribute></attribute></attributes></data>");
+        }
+        sb.append("</dataCollection>");
+        return sb.toString();
+    }
+
+    /**
+     * The data records in the JSON layout read by the queries_json queries: one dataCollection object per record, each
+     * on its own line.
+     */
+    public String sensorJson(int records, int stations) {
+        StringBuilder sb = new StringBuilder(records * 150);
+        for (int i = 0; i < records; ++i) {
+            int year = 1940 + random.nextInt(70);
+            int month = 1 + random.nextInt(12);
+            int day = 1 + random.nextInt(28);
+            sb.append("{\"dataCollection\":{\"data\":{\"date\":\"");
+            sb.append(String.format("%04d-%02d-%02dT00:00:00.000", year, month, day));
+            sb.append("\",\"dataType\":\"").append(DATA_TYPES[random.nextInt(DATA_TYPES.length)]);
+            sb.append("\",\"station\":\"").append(stationId(random.nextInt(stations)));
+            sb.append("\",\"value\":").append(random.nextInt(800) - 200);
+            sb.append(",\"attributes\":{\"attribute\":[\"\",\"\",\"a\",\"\"]}}}}\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A stationCollection document for one station.
+     */
+    public String stationXml(int station) {
+        StringBuilder sb = new StringBuilder(600);
+        sb.append(XML_DECLARATION);
+        sb.append("<stationCollection pageSize=\"100\" pageCount=\"1\" totalCount=\"1\"><station><id>");
+        sb.append(stationId(station)).append("</id><displayName>Station ").append(station);
+        sb.append("</displayName><latitude>").append(String.format("%.3f", random.nextDouble() * 180 - 90));
+        sb.append("</latitude><longitude>").append(String.format("%.3f", random.nextDouble() * 360 - 180));
+        sb.append("</longitude><elevation>").append(String.format("%.1f", random.nextDouble() * 3000));
+        sb.append("</elevation><locationLabels><type>ST</type><id>FIPS:").append(random.nextInt(56));
+        sb.append("</id><displayName>State</displayName></locationLabels><locationLabels><type>CNTRY</type>");
+        sb.append("<id>FIPS:US</id><displayName>UNITED STATES</displayName></locationLabels></station>");
+        sb.append("</stationCollection>");
+        return sb.toString();
+    }
+
+    /**
+     * The station in the JSON layout read by the queries_json queries.
+     */
+    public String stationJson(int station) {
+        StringBuilder sb = new StringBuilder(400);
+        sb.append("{\"stationCollection\":{\"station\":{\"id\":\"").append(stationId(station));
+        sb.append("\",\"displayName\":\"Station ").append(station);
+        sb.append("\",\"latitude\":").append(String.format(Locale.ROOT, "%.3f", random.nextDouble() * 180 - 90));
+        sb.append(",\"longitude\":").append(String.format(Locale.ROOT, "%.3f", random.nextDouble() * 360 - 180));
+        sb.append(",\"elevation\":").append(String.format(Locale.ROOT, "%.1f", random.nextDouble() * 3000));
+        sb.append(",\"locationLabels\":{\"type\":\"CNTRY\",\"id\":\"FIPS:US\",");
+        sb.append("\"displayName\":\"UNITED STATES\"}}}}\n");
+        return sb.toString();
+    }
+
+    public byte[] sensorXmlBytes(int records, int stations) {
+        return sensorXml(records, stations).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public byte[] sensorJsonBytes(int records, int stations) {
+        return sensorJson(records, stations).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.datamodel.accessors.SequencePointable;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.accessors.atomic.CodedQNamePointable;
+import org.apache.vxquery.datamodel.accessors.nodes.DocumentNodePointable;
+import org.apache.vxquery.datamodel.accessors.nodes.ElementNodePointable;
+import org.apache.vxquery.datamodel.accessors.nodes.NodeTreePointable;
+import org.apache.vxquery.datamodel.builders.atomic.StringValueBuilder;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.runtime.functions.step.NodeTestFilter;
+import org.apache.vxquery.runtime.functions.step.NodeTestFilter.INodeFilter;
+import org.apache.vxquery.types.AnyType;
+import org.apache.vxquery.types.ElementType;
+import org.apache.vxquery.types.NameTest;
+import org.apache.vxquery.types.Quantifier;
+import org.apache.vxquery.types.SequenceType;
+import org.apache.vxquery.xmlparser.TreeNodeIdProvider;
+import org.apache.vxquery.xmlparser.XMLParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a "//name" step over a GHCN sensor document: every element is tested against the name test, once by
+ * comparing the element name strings and once with the dictionary codes used by {@link NodeTestFilter}. "value"
+ * occurs in every record, "TMAX" is not an element name, so the dictionary lookup skips the tree.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NodeTestBenchmark {
+    @Param({ "value", "TMAX" })
+    public String name;
+
+    @Param({ "10000" })
+    public int records;
+
+    private final NodeTreePointable ntp = (NodeTreePointable) NodeTreePointable.FACTORY.createPointable();
+    private final TaggedValuePointable tvpRoot = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+    private final TaggedValuePointable tvpItem = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+    private final DocumentNodePointable dnp = (DocumentNodePointable) DocumentNodePointable.FACTORY.createPointable();
+    private final ElementNodePointable enp = (ElementNodePointable) ElementNodePointable.FACTORY.createPointable();
+    private final CodedQNamePointable cqp = (CodedQNamePointable) CodedQNamePointable.FACTORY.createPointable();
+    private final UTF8StringPointable namep = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+    private final UTF8StringPointable temp = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+    private SequencePointable[] seqStack = new SequencePointable[8];
+    private int[] indexStack = new int[8];
+    private INodeFilter filter;
+
+    @Setup
+    public void setup() throws Exception {
+        byte[] document = new NoaaDataGenerator(42).sensorXmlBytes(records, 100);
+        ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+        XMLParser parser = new XMLParser(false, new TreeNodeIdProvider((short) 0), "benchmark");
+        parser.parse(new InputStreamReader(new ByteArrayInputStream(document), StandardCharsets.UTF_8), abvs);
+        TaggedValuePointable tvp = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+        tvp.set(abvs);
+        tvp.getValue(ntp);
+        ntp.getRootNode(tvpRoot);
+
+        ArrayBackedValueStorage nameAbvs = new ArrayBackedValueStorage();
+        new StringValueBuilder().write(name, nameAbvs.getDataOutput());
+        byte[] localName = Arrays.copyOf(nameAbvs.getByteArray(), nameAbvs.getLength());
+        namep.set(localName, 0, localName.length);
+        filter = NodeTestFilter.getNodeTestFilter(SequenceType
+                .create(new ElementType(new NameTest(null, localName), AnyType.INSTANCE, true), Quantifier.QUANT_ONE));
+        for (int i = 0; i < seqStack.length; ++i) {
+            seqStack[i] = (SequencePointable) SequencePointable.FACTORY.createPointable();
+        }
+    }
+
+    @Benchmark
+    public int stringCompare() {
+        int matches = 0;
+        int depth = push(tvpRoot, -1);
+        while (depth >= 0) {
+            if (indexStack[depth] >= seqStack[depth].getEntryCount()) {
+                --depth;
+                continue;
+            }
+            seqStack[depth].getEntry(indexStack[depth]++, tvpItem);
+            if (tvpItem.getTag() == ValueTag.ELEMENT_NODE_TAG) {
+                tvpItem.getValue(enp);
+                enp.getName(cqp);
+                ntp.getString(cqp.getLocalCode(), temp);
+                if (namep.compareTo(temp) == 0) {
+                    ++matches;
+                }
+                depth = push(tvpItem, depth);
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public int dictionaryCode() {
+        if (!filter.setNodeTree(ntp)) {
+            return 0;
+        }
+        int matches = 0;
+        int depth = push(tvpRoot, -1);
+        while (depth >= 0) {
+            if (indexStack[depth] >= seqStack[depth].getEntryCount()) {
+                --depth;
+                continue;
+            }
+            seqStack[depth].getEntry(indexStack[depth]++, tvpItem);
+            if (tvpItem.getTag() == ValueTag.ELEMENT_NODE_TAG) {
+                if (filter.accept(ntp, tvpItem)) {
+                    ++matches;
+                }
+                depth = push(tvpItem, depth);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Pushes the children of a document or element node.
+     *
+     * @return the new depth
+     */
+    private int push(TaggedValuePointable tvp, int depth) {
+        ++depth;
+        if (depth == seqStack.length) {
+            seqStack = Arrays.copyOf(seqStack, depth * 2);
+            indexStack = Arrays.copyOf(indexStack, depth * 2);
+            for (int i = depth; i < seqStack.length; ++i) {
+                seqStack[i] = (SequencePointable) SequencePointable.FACTORY.createPointable();
+            }
+        }
+        indexStack[depth] = 0;
+        if (tvp.getTag() == ValueTag.DOCUMENT_NODE_TAG) {
+            tvp.getValue(dnp);
+            dnp.getContent(ntp, seqStack[depth]);
+        } else {
+            tvp.getValue(enp);
+            if (!enp.childrenChunkExists()) {
+                return depth - 1;
+            }
+            enp.getChildrenSequence(ntp, seqStack[depth]);
+        }
+        return depth;
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.apache.vxquery.app.util.LocalClusterUtil;
+import org.apache.vxquery.rest.request.QueryRequest;
+import org.apache.vxquery.rest.response.APIResponse;
+import org.apache.vxquery.rest.response.ErrorResponse;
+import org.apache.vxquery.rest.response.Metrics;
+import org.apache.vxquery.rest.response.QueryResponse;
+import org.apache.vxquery.rest.service.VXQueryConfig;
+import org.apache.vxquery.rest.service.VXQueryService;
+import org.kohsuke.args4j.CmdLineParser;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Runs the noaa-ghcn-daily queries end to end on generated GHCN data, with a cluster controller and a node controller
+ * started in this JVM like the XTest cluster. The sensor and station collections are written in XML and JSON, and the
+ * collection paths of each query are pointed at the format it reads. Every query is run a number of times to warm up
+ * and then measured. The compile time, execution time, throughput and peak heap of each query are written to a JSON
+ * and a CSV report.
+ */
+public class QueryBenchmark {
+    private static final String DATA_PATH = "/tmp/1.0_partition_ghcnd_all_xml";
+    private static final String QUERY_RESOURCES = "/noaa-ghcn-daily";
+    private static final String[] QUERY_DIRECTORIES = { "queries", "queries_json" };
+    private static final Pattern JSON_QUERY = Pattern.compile("\\(\\s*\"(dataCollection|stationCollection)\"\\s*\\)");
+
+    private final QueryBenchmarkOptions opts;
+    private final List<QueryBenchmarkResult> results = new ArrayList<>();
+    private File xmlData;
+    private File jsonData;
+    private long xmlSensorBytes;
+    private long xmlStationBytes;
+    private long jsonSensorBytes;
+    private long jsonStationBytes;
+
+    public QueryBenchmark(QueryBenchmarkOptions opts) {
+        this.opts = opts;
+    }
+
+    public static void main(String[] args) throws Exception {
+        QueryBenchmarkOptions opts = new QueryBenchmarkOptions();
+        CmdLineParser parser = new CmdLineParser(opts);
+        try {
+            parser.parseArgument(args);
+        } catch (Exception e) {
+            parser.printUsage(System.err);
+            return;
+        }
+        new QueryBenchmark(opts).run();
+    }
+
+    public void run() throws Exception {
+        TreeMap<String, String> queries = loadQueries();
+        File data = opts.data != null ? new File(opts.data)
+                : Files.createTempDirectory("vxquery-benchmark").toFile();
+        generateData(data);
+
+        VXQueryConfig config = new VXQueryConfig();
+        if (opts.availableProcessors > 0) {
+            config.setAvailableProcessors(opts.availableProcessors);
+        }
+        config.setFrameSize(opts.frameSize);
+        // Every run compiles the query, so the compile time is measured.
+        config.setCompiledQueryCacheSize(0);
+        LocalClusterUtil cluster = new LocalClusterUtil();
+        cluster.init(config);
+        try {
+            for (String name : queries.keySet()) {
+                QueryBenchmarkResult result = runQuery(cluster.getVxQueryService(), name, queries.get(name));
+                results.add(result);
+                System.err.println(String.format("%s: compile %.1f ms, execution %.1f ms%s", name,
+                        result.getCompileTimeMs(), result.getExecutionTimeMs(),
+                        result.getError() == null ? "" : ", error: " + result.getError()));
+            }
+        } finally {
+            cluster.deinit();
+        }
+        writeReports();
+    }
+
+    private QueryBenchmarkResult runQuery(VXQueryService service, String name, String query) {
+        boolean json = JSON_QUERY.matcher(query).find();
+        File root = json ? jsonData : xmlData;
+        long inputBytes = 0;
+        if (query.contains(DATA_PATH + "/sensors")) {
+            inputBytes += json ? jsonSensorBytes : xmlSensorBytes;
+        }
+        if (query.contains(DATA_PATH + "/stations")) {
+            inputBytes += json ? jsonStationBytes : xmlStationBytes;
+        }
+        String statement = query.replace(DATA_PATH, root.getAbsolutePath());
+        QueryBenchmarkResult result = new QueryBenchmarkResult(name, json ? "json" : "xml", inputBytes);
+        try {
+            for (int i = 0; i < opts.warmup; ++i) {
+                execute(service, statement);
+            }
+            System.gc();
+            resetPeakHeap();
+            for (int i = 0; i < opts.repeat; ++i) {
+                Metrics metrics = execute(service, statement);
+                result.addRun(metrics.getCompileTime(), metrics.getElapsedTime());
+            }
+            result.setPeakHeapBytes(getPeakHeap());
+        } catch (IllegalStateException e) {
+            result.setError(e.getMessage());
+        }
+        return result;
+    }
+
+    private Metrics execute(VXQueryService service, String statement) {
+        QueryRequest request = new QueryRequest(statement);
+        request.setOptimization(opts.optimizationLevel);
+        request.setFrameSize(opts.frameSize);
+        request.setShowMetrics(true);
+        request.setAsync(false);
+        APIResponse response = service.execute(request);
+        if (response instanceof ErrorResponse) {
+            throw new IllegalStateException(((ErrorResponse) response).getError().getMessage());
+        }
+        return ((QueryResponse) response).getMetrics();
+    }
+
+    /**
+     * Reads the queries of the query directories, by default from the noaa-ghcn-daily resources.
+     *
+     * @return the text of each query by its directory and file name
+     */
+    private TreeMap<String, String> loadQueries() throws IOException, URISyntaxException {
+        TreeMap<String, String> queries = new TreeMap<>();
+        Pattern include = opts.include == null ? null : Pattern.compile(opts.include);
+        if (opts.queries != null) {
+            for (String directory : opts.queries.split(",")) {
+                Path path = Paths.get(directory.trim());
+                loadQueries(path, path.getFileName().toString(), include, queries);
+            }
+            return queries;
+        }
+        URL url = QueryBenchmark.class.getResource(QUERY_RESOURCES);
+        if (url == null) {
+            throw new IOException("Query resources not found: " + QUERY_RESOURCES);
+        }
+        URI uri = url.toURI();
+        if ("jar".equals(uri.getScheme())) {
+            try (FileSystem fs = FileSystems.newFileSystem(uri, Collections.<String, Object> emptyMap())) {
+                for (String directory : QUERY_DIRECTORIES) {
+                    loadQueries(fs.getPath(QUERY_RESOURCES, directory), directory, include, queries);
+                }
+            }
+        } else {
+            for (String directory : QUERY_DIRECTORIES) {
+                loadQueries(Paths.get(uri).resolve(directory), directory, include, queries);
+            }
+        }
+        return queries;
+    }
+
+    private static void loadQueries(Path directory, String prefix, Pattern include, TreeMap<String, String> queries)
+            throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(directory)) {
+            stream.filter(p -> p.getFileName().toString().endsWith(".xq")).forEach(files::add);
+        }
+        for (Path file : files) {
+            String name = prefix + "/" + file.getFileName();
+            if (include == null || include.matcher(name).find()) {
+                queries.put(name, new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    /**
+     * Writes the sensor and station collections in XML and JSON. The same seed gives the same data.
+     */
+    private void generateData(File data) throws IOException {
+        xmlData = new File(data, "xml");
+        jsonData = new File(data, "json");
+        NoaaDataGenerator xmlGenerator = new NoaaDataGenerator(opts.seed);
+        NoaaDataGenerator jsonGenerator = new NoaaDataGenerator(opts.seed);
+        for (int i = 0; i < opts.sensorFiles; ++i) {
+            String name = String.format("sensors_%04d", i);
+            xmlSensorBytes += write(new File(xmlData, "sensors/" + name + ".xml"),
+                    xmlGenerator.sensorXml(opts.records, opts.stations));
+            jsonSensorBytes += write(new File(jsonData, "sensors/" + name + ".json"),
+                    jsonGenerator.sensorJson(opts.records, opts.stations));
+        }
+        for (int i = 0; i < opts.stations; ++i) {
+            String name = String.format("station_%06d", i);
+            xmlStationBytes += write(new File(xmlData, "stations/" + name + ".xml"), xmlGenerator.stationXml(i));
+            jsonStationBytes += write(new File(jsonData, "stations/" + name + ".json"), jsonGenerator.stationJson(i));
+        }
+        if (opts.verbose) {
+            System.err.println(String.format("Generated %d sensor and %d station bytes of XML in %s", xmlSensorBytes,
+                    xmlStationBytes, xmlData));
+            System.err.println(String.format("Generated %d sensor and %d station bytes of JSON in %s", jsonSensorBytes,
+                    jsonStationBytes, jsonData));
+        }
+    }
+
+    private static long write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        Files.write(file.toPath(), bytes);
+        return bytes.length;
+    }
+
+    private void writeReports() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.enable(SerializationFeature.INDENT_OUTPUT);
+        mapper.writeValue(new File(opts.output + ".json"), results);
+        try (PrintWriter out = new PrintWriter(new File(opts.output + ".csv"), "UTF-8")) {
+            out.println(QueryBenchmarkResult.CSV_HEADER);
+            for (QueryBenchmarkResult result : results) {
+                out.println(result.toCsv());
+            }
+        }
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long getPeakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.benchmark;
+
+import org.kohsuke.args4j.Option;
+
+public class QueryBenchmarkOptions {
+    @Option(name = "-queries", required = false, usage = "Comma separated directories of queries to run. (default: the noaa-ghcn-daily queries and queries_json)")
+    String queries;
+
+    @Option(name = "-include", required = false, usage = "Include filter regular expression on the query file names.")
+    String include;
+
+    @Option(name = "-data", required = false, usage = "Directory for the generated data. (default: a temporary directory)")
+    String data;
+
+    @Option(name = "-sensor-files", required = false, usage = "Number of sensor files of each format. (default: 8)")
+    int sensorFiles = 8;
+
+    @Option(name = "-records", required = false, usage = "Number of data records per sensor file. (default: 10,000)")
+    int records = 10000;
+
+    @Option(name = "-stations", required = false, usage = "Number of stations. (default: 100)")
+    int stations = 100;
+
+    @Option(name = "-seed", required = false, usage = "Seed of the generated data. (default: 42)")
+    long seed = 42;
+
+    @Option(name = "-warmup", required = false, usage = "Number of warm-up runs of each query. (default: 2)")
+    int warmup = 2;
+
+    @Option(name = "-repeat", required = false, usage = "Number of measured runs of each query. (default: 5)")
+    int repeat = 5;
+
+    @Option(name = "-O", required = false, usage = "Optimization level. (default: Full Optimization)")
+    int optimizationLevel = Integer.MAX_VALUE;
+
+    @Option(name = "-frame-size", required = false, usage = "Setting frame size. (default: 65,536)")
+    int frameSize = 65536;
+
+    @Option(name = "-available-processors", required = false, usage = "Number of available processors. (default: java's available processors)")
+    int availableProcessors = -1;
+
+    @Option(name = "-output", required = false, usage = "Path of the report without extension, written as .json and .csv. (default: query-benchmark)")
+    String output = "query-benchmark";
+
+    @Option(name = "-v", required = false, usage = "Verbose")
+    boolean verbose;
+}
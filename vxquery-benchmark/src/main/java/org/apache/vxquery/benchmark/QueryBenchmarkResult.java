@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The measurements of one query of a {@link QueryBenchmark} run. Times are in milliseconds.
+ */
+public class QueryBenchmarkResult {
+    static final String CSV_HEADER = "query,format,runs,compileTimeMs,executionTimeMs,minExecutionTimeMs,"
+            + "maxExecutionTimeMs,inputBytes,throughputMBps,peakHeapBytes,error";
+
+    private final String query;
+    private final String format;
+    private final long inputBytes;
+    private final List<Long> compileTimes = new ArrayList<>();
+    private final List<Long> executionTimes = new ArrayList<>();
+    private long peakHeapBytes;
+    private String error;
+
+    public QueryBenchmarkResult(String query, String format, long inputBytes) {
+        this.query = query;
+        this.format = format;
+        this.inputBytes = inputBytes;
+    }
+
+    public void addRun(long compileTime, long executionTime) {
+        compileTimes.add(compileTime);
+        executionTimes.add(executionTime);
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public int getRuns() {
+        return executionTimes.size();
+    }
+
+    public List<Long> getCompileTimes() {
+        return compileTimes;
+    }
+
+    public List<Long> getExecutionTimes() {
+        return executionTimes;
+    }
+
+    public double getCompileTimeMs() {
+        return mean(compileTimes);
+    }
+
+    public double getExecutionTimeMs() {
+        return mean(executionTimes);
+    }
+
+    public long getMinExecutionTimeMs() {
+        long min = executionTimes.isEmpty() ? 0 : Long.MAX_VALUE;
+        for (long time : executionTimes) {
+            min = Math.min(min, time);
+        }
+        return min;
+    }
+
+    public long getMaxExecutionTimeMs() {
+        long max = 0;
+        for (long time : executionTimes) {
+            max = Math.max(max, time);
+        }
+        return max;
+    }
+
+    public long getInputBytes() {
+        return inputBytes;
+    }
+
+    /**
+     * @return the collection bytes read by the query per second of mean execution time, in MB/s
+     */
+    public double getThroughputMBps() {
+        double seconds = getExecutionTimeMs() / 1000;
+        return seconds > 0 ? inputBytes / seconds / (1 << 20) : 0;
+    }
+
+    /**
+     * @return the sum of the peak usage of the heap memory pools during the measured runs
+     */
+    public long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    public void setPeakHeapBytes(long peakHeapBytes) {
+        this.peakHeapBytes = peakHeapBytes;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    String toCsv() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(csvField(query)).append(',').append(format).append(',').append(getRuns()).append(',');
+        sb.append(String.format(Locale.ROOT, "%.1f,%.1f,", getCompileTimeMs(), getExecutionTimeMs()));
+        sb.append(getMinExecutionTimeMs()).append(',').append(getMaxExecutionTimeMs()).append(',');
+        sb.append(inputBytes).append(',').append(String.format(Locale.ROOT, "%.2f,", getThroughputMBps()));
+        sb.append(peakHeapBytes).append(',').append(error == null ? "" : csvField(error));
+        return sb.toString();
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static double mean(List<Long> values) {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        double sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum / values.size();
+    }
+}
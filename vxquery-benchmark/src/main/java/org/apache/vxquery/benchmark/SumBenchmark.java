@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.benchmark;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.builders.atomic.StringValueBuilder;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.runtime.functions.aggregate.SumAccumulator;
+import org.apache.vxquery.runtime.functions.arithmetic.AddOperation;
+import org.apache.vxquery.runtime.functions.util.ArithmeticHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the per-value cost of the fn:sum aggregate step on GHCN observation values, with the
+ * {@link SumAccumulator} used by the aggregates and with one {@link ArithmeticHelper} call per value.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SumBenchmark {
+    private static final int VALUES = 100000;
+
+    @Param({ "integer", "double", "decimal", "untypedAtomic" })
+    public String type;
+
+    private final TaggedValuePointable[] values = new TaggedValuePointable[VALUES];
+    private final SumAccumulator accumulator = new SumAccumulator(null);
+    private final ArithmeticHelper add = new ArithmeticHelper(new AddOperation(), null);
+    private final ArrayBackedValueStorage abvsZero = new ArrayBackedValueStorage();
+    private final TaggedValuePointable tvpSum = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(42);
+        StringValueBuilder svb = new StringValueBuilder();
+        for (int i = 0; i < VALUES; ++i) {
+            // Tenths of a degree or millimeter, like the GHCN-Daily values.
+            int value = random.nextInt(1000) - 300;
+            ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+            DataOutput out = abvs.getDataOutput();
+            switch (type) {
+                case "integer":
+                    out.write(ValueTag.XS_INTEGER_TAG);
+                    out.writeLong(value);
+                    break;
+                case "double":
+                    out.write(ValueTag.XS_DOUBLE_TAG);
+                    out.writeDouble(value / 10.0);
+                    break;
+                case "decimal":
+                    out.write(ValueTag.XS_DECIMAL_TAG);
+                    out.writeByte(1);
+                    out.writeLong(value);
+                    break;
+                default:
+                    out.write(ValueTag.XS_UNTYPED_ATOMIC_TAG);
+                    svb.write(Integer.toString(value), out);
+            }
+            values[i] = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+            values[i].set(abvs);
+        }
+        DataOutput out = abvsZero.getDataOutput();
+        out.write(ValueTag.XS_INTEGER_TAG);
+        out.writeLong(0);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public TaggedValuePointable accumulator() throws IOException {
+        accumulator.reset();
+        for (TaggedValuePointable value : values) {
+            accumulator.add(value);
+        }
+        accumulator.getSum(tvpSum);
+        return tvpSum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public TaggedValuePointable arithmeticHelper() throws IOException {
+        tvpSum.set(abvsZero);
+        for (TaggedValuePointable value : values) {
+            add.compute(value, tvpSum, tvpSum);
+        }
+        return tvpSum;
+    }
+}
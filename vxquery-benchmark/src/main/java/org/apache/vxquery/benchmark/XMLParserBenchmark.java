@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.xmlparser.TreeNodeIdProvider;
+import org.apache.vxquery.xmlparser.XMLParser;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the SAX ingestion path with the byte-level {@link org.apache.vxquery.xmlparser.UTF8XMLTokenizer}. The
+ * "bytes" counter is reported per second, so dividing it by 1048576 gives MB/s of XML input.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XMLParserBenchmark {
+    @Param({ "100", "10000" })
+    public int records;
+
+    private byte[] document;
+    private ByteBuffer buffer;
+    private XMLParser parser;
+    private final ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        document = new NoaaDataGenerator(42).sensorXmlBytes(records, 100);
+        buffer = ByteBuffer.wrap(document);
+        parser = new XMLParser(false, new TreeNodeIdProvider((short) 0), "benchmark");
+    }
+
+    @Benchmark
+    public ArrayBackedValueStorage sax(Throughput throughput) throws Exception {
+        abvs.reset();
+        parser.parse(new InputStreamReader(new ByteArrayInputStream(document), StandardCharsets.UTF_8), abvs);
+        throughput.bytes += document.length;
+        return abvs;
+    }
+
+    @Benchmark
+    public ArrayBackedValueStorage bytes(Throughput throughput) throws Exception {
+        abvs.reset();
+        buffer.clear();
+        parser.parse(buffer, abvs);
+        throughput.bytes += document.length;
+        return abvs;
+    }
+}
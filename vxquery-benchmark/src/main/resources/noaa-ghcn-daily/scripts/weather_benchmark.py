@@ -44,7 +44,9 @@ class WeatherBenchmark:
                        "q04.xq",
                        "q05.xq",
                        "q06.xq",
-                       "q07.xq"
+                       "q07.xq",
+                       "q08.xq",
+                       "q09.xq"
                        ] 
     QUERY_UTILITY_LIST = [
                           "no_result.xq",
@@ -18,9 +18,13 @@ import static org.apache.vxquery.rest.Constants.HttpHeaderValues.CONTENT_TYPE_JS
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -44,6 +48,8 @@ import org.apache.vxquery.rest.response.AsyncQueryResponse;
 import org.apache.vxquery.rest.response.Error;
 import org.apache.vxquery.rest.response.ErrorResponse;
 import org.apache.vxquery.rest.response.Metrics;
+import org.apache.vxquery.rest.response.OperatorMetrics;
+import org.apache.vxquery.rest.response.QueryResponse;
 import org.apache.vxquery.rest.response.SyncQueryResponse;
 import org.apache.vxquery.rest.service.VXQueryConfig;
 import org.kohsuke.args4j.Argument;
@@ -175,7 +181,7 @@ public class VXQuery {
         }
     }
 
-    private void onSuccess(String xqFile, QueryRequest request, SyncQueryResponse response) {
+    private void onSuccess(String xqFile, QueryRequest request, QueryResponse response) {
         if (response == null) {
             System.err.println(String.format("Unable to execute query %s", request.getStatement()));
             return;
@@ -186,9 +192,17 @@ public class VXQuery {
         }
 
         if (request.isShowMetrics()) {
-            String metrics = String.format("Compile Time:\t%d\nElapsed Time:\t%d",
-                    response.getMetrics().getCompileTime(), response.getMetrics().getElapsedTime());
-            printField("Metrics", metrics);
+            StringBuilder metrics = new StringBuilder(String.format("Compile Time:\t%d\nElapsed Time:\t%d",
+                    response.getMetrics().getCompileTime(), response.getMetrics().getElapsedTime()));
+            for (OperatorMetrics operator : response.getMetrics().getOperators()) {
+                metrics.append(String.format(
+                        "\n%s %s:\t%d partitions, %d tuples in, %d tuples out, %d frames, %d bytes, %d ms CPU,"
+                                + " %d bytes spilled",
+                        operator.getOperatorId(), operator.getName(), operator.getPartitions(),
+                        operator.getTuplesIn(), operator.getTuplesOut(), operator.getFrames(), operator.getBytes(),
+                        operator.getCpuTime(), operator.getSpillBytes()));
+            }
+            printField("Metrics", metrics.toString());
         }
 
         if (request.isShowAbstractSyntaxTree()) {
@@ -205,9 +219,16 @@ public class VXQuery {
 
         if (request.isShowRuntimePlan()) {
             printField("Runtime Plan", response.getRuntimePlan());
+            if (response.getAnnotatedRuntimePlan() != null) {
+                printField("Annotated Runtime Plan", response.getAnnotatedRuntimePlan());
+            }
         }
 
-        printField("Results", response.getResults());
+        if (response instanceof SyncQueryResponse) {
+            printField("Results", ((SyncQueryResponse) response).getResults());
+        } else {
+            printField("Results", "Written to " + opts.resultFile);
+        }
 
         if (executionIteration >= opts.timingIgnoreQueries) {
             metricsList.add(response.getMetrics());
@@ -230,8 +251,9 @@ public class VXQuery {
 
     /**
      * Submits a query to be executed by the REST API. Will call {@link #onFailure(String, ErrorResponse)} if any error
-     * occurs when submitting the query. Else will call {@link #onSuccess(String, QueryRequest, SyncQueryResponse)} with
-     * the {@link AsyncQueryResponse}
+     * occurs when submitting the query. Else will call {@link #onSuccess(String, QueryRequest, QueryResponse)} with
+     * the {@link SyncQueryResponse}, or with the {@link AsyncQueryResponse} once the results have been streamed to the
+     * result file.
      *
      * @param xqFile
      *            .xq file with the query to be executed
@@ -259,11 +281,17 @@ public class VXQuery {
                 HttpEntity entity = httpResponse.getEntity();
 
                 String response = RestUtils.readEntity(entity);
-                if (httpResponse.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
+                if (httpResponse.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+                    cli.onFailure(xqFile, RestUtils.mapEntity(response, ErrorResponse.class, CONTENT_TYPE_JSON));
+                } else if (request.isAsync()) {
+                    AsyncQueryResponse asyncResponse =
+                            RestUtils.mapEntity(response, AsyncQueryResponse.class, CONTENT_TYPE_JSON);
+                    if (writeResultFile(xqFile, asyncResponse, httpClient, cli)) {
+                        cli.onSuccess(xqFile, request, asyncResponse);
+                    }
+                } else {
                     cli.onSuccess(xqFile, request,
                             RestUtils.mapEntity(response, SyncQueryResponse.class, CONTENT_TYPE_JSON));
-                } else {
-                    cli.onFailure(xqFile, RestUtils.mapEntity(response, ErrorResponse.class, CONTENT_TYPE_JSON));
                 }
             } catch (IOException e) {
                 System.err.println("Error occurred when reading entity: " + e.getMessage());
@@ -277,6 +305,40 @@ public class VXQuery {
         }
     }
 
+    /**
+     * Streams the results of an asynchronously submitted query into the result file. The results are copied to the
+     * file as they arrive, so the memory used does not depend on the result size. The time spent on it is reported
+     * as the elapsed time of the query.
+     *
+     * @return true if all results were written
+     */
+    private static boolean writeResultFile(String xqFile, AsyncQueryResponse response, CloseableHttpClient httpClient,
+            VXQuery cli) throws IOException, JAXBException {
+        URI uri;
+        try {
+            uri = RestUtils.buildQueryResultStreamURI(response.getResultId(), cli.restIpAddress, cli.restPort);
+        } catch (URISyntaxException e) {
+            System.err.println(String.format("Unable to build URI to read results for query in %s", xqFile));
+            cli.onFailure(xqFile, null);
+            return false;
+        }
+
+        long start = System.currentTimeMillis();
+        try (CloseableHttpResponse httpResponse = httpClient.execute(new HttpGet(uri))) {
+            HttpEntity entity = httpResponse.getEntity();
+            if (httpResponse.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+                cli.onFailure(xqFile,
+                        RestUtils.mapEntity(RestUtils.readEntity(entity), ErrorResponse.class, CONTENT_TYPE_JSON));
+                return false;
+            }
+            try (InputStream in = entity.getContent()) {
+                Files.copy(in, Paths.get(cli.opts.resultFile), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        response.getMetrics().setElapsedTime(System.currentTimeMillis() - start);
+        return true;
+    }
+
     /**
      * Once the query in a given .xq file has been executed (with repeated executions as well), this method calculates
      * mean, standard deviation, minimum and maximum execution times.
@@ -330,7 +392,8 @@ public class VXQuery {
         request.setShowTranslatedExpressionTree(opts.showTET);
         request.setShowOptimizedExpressionTree(opts.showOET);
         request.setShowRuntimePlan(opts.showRP);
-        request.setAsync(false);
+        // Results that go to a file are streamed from the server instead of being embedded in the response.
+        request.setAsync(opts.resultFile != null && !opts.compileOnly);
 
         return request;
     }
@@ -389,7 +452,7 @@ public class VXQuery {
         @Option(name = "-repeatexec", usage = "Number of times to repeat execution.")
         private int repeatExec = 1;
 
-        @Option(name = "-timing", usage = "Produce timing information.")
+        @Option(name = "-timing", usage = "Produce timing information and per-operator statistics.")
         private boolean timing;
 
         @Option(name = "-showquery", usage = "Show query string.")
@@ -404,7 +467,8 @@ public class VXQuery {
         @Option(name = "-showoet", usage = "Show optimized expression tree.")
         private boolean showOET;
 
-        @Option(name = "-showrp", usage = "Show Runtime plan.")
+        @Option(name = "-showrp",
+                usage = "Show Runtime plan, with -timing also the plan annotated with operator statistics.")
         private boolean showRP;
 
         // Optional (Not supported by REST API) parameters. Only used for creating a
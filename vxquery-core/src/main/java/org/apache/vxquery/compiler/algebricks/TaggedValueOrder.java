@@ -0,0 +1,335 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.compiler.algebricks;
+
+import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
+import org.apache.vxquery.datamodel.accessors.SequencePointable;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.accessors.TypedPointables;
+import org.apache.vxquery.datamodel.api.ITimezone;
+import org.apache.vxquery.datamodel.util.DateTime;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.exceptions.SystemException;
+import org.apache.vxquery.runtime.functions.util.FunctionHelper;
+
+/**
+ * Total order over tagged values used for sorting and sort-based grouping. Values are first ordered by a rank (empty
+ * sequence, numbers, strings, booleans, dates, ...) and then by their typed value within the rank: numbers of all
+ * numeric types compare by value with NaN lowest, strings (including xs:untypedAtomic and xs:anyURI) by UTF-16 code
+ * unit like the value comparisons, date and time values on the UTC time line. Values without a timezone are taken as UTC since there is no dynamic
+ * context at this point. Anything else is ordered by tag and then by its bytes.
+ * <p>
+ * {@link #normalize(byte[], int, int)} returns a 32 bit key whose unsigned order is consistent with
+ * {@link #compare(byte[], int, int, byte[], int, int)}: the rank in the top four bits, followed by the leading bits of
+ * the value. Equal keys fall back to the full comparison.
+ */
+public class TaggedValueOrder {
+    private static final int RANK_EMPTY = 0;
+    private static final int RANK_NUMBER = 1;
+    private static final int RANK_STRING = 2;
+    private static final int RANK_BOOLEAN = 3;
+    private static final int RANK_DATE = 4;
+    private static final int RANK_DATETIME = 5;
+    private static final int RANK_TIME = 6;
+    private static final int RANK_DAY_TIME_DURATION = 7;
+    private static final int RANK_YEAR_MONTH_DURATION = 8;
+    private static final int RANK_DURATION = 9;
+    private static final int RANK_OTHER = 15;
+
+    private static final int RANK_SHIFT = 28;
+    private static final int VALUE_BITS_SHIFT = 64 - RANK_SHIFT;
+
+    private final boolean ascending;
+    private final TaggedValuePointable tvp1 = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+    private final TaggedValuePointable tvp2 = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+    private final SequencePointable seqp = (SequencePointable) SequencePointable.FACTORY.createPointable();
+    private final TypedPointables tp1 = new TypedPointables();
+    private final TypedPointables tp2 = new TypedPointables();
+
+    public TaggedValueOrder(boolean ascending) {
+        this.ascending = ascending;
+    }
+
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+        tvp1.set(b1, s1, l1);
+        tvp2.set(b2, s2, l2);
+        int c = compareAscending(b1, s1, l1, b2, s2, l2);
+        return ascending ? c : -c;
+    }
+
+    public int normalize(byte[] bytes, int start, int length) {
+        tvp1.set(bytes, start, length);
+        int rank = getRank(tvp1);
+        int key = (rank << RANK_SHIFT) | getValueKey(rank, tvp1, tp1);
+        return ascending ? key : ~key;
+    }
+
+    private int compareAscending(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+        int rank = getRank(tvp1);
+        int c = Integer.compare(rank, getRank(tvp2));
+        if (c != 0) {
+            return c;
+        }
+        switch (rank) {
+            case RANK_EMPTY:
+                return 0;
+            case RANK_NUMBER:
+                return compareNumbers();
+            case RANK_STRING:
+                tvp1.getValue(tp1.utf8sp);
+                tvp2.getValue(tp2.utf8sp);
+                return compareStrings(tp1.utf8sp, tp2.utf8sp);
+            case RANK_BOOLEAN:
+                tvp1.getValue(tp1.boolp);
+                tvp2.getValue(tp2.boolp);
+                return Boolean.compare(tp1.boolp.getBoolean(), tp2.boolp.getBoolean());
+            case RANK_DATE:
+            case RANK_DATETIME:
+            case RANK_TIME:
+                return Long.compare(getUtcChronon(rank, tvp1, tp1), getUtcChronon(rank, tvp2, tp2));
+            case RANK_DAY_TIME_DURATION:
+                tvp1.getValue(tp1.longp);
+                tvp2.getValue(tp2.longp);
+                return Long.compare(tp1.longp.getLong(), tp2.longp.getLong());
+            case RANK_YEAR_MONTH_DURATION:
+                tvp1.getValue(tp1.intp);
+                tvp2.getValue(tp2.intp);
+                return Integer.compare(tp1.intp.getInteger(), tp2.intp.getInteger());
+            case RANK_DURATION:
+                tvp1.getValue(tp1.durationp);
+                tvp2.getValue(tp2.durationp);
+                c = Integer.compare(tp1.durationp.getYearMonth(), tp2.durationp.getYearMonth());
+                return c != 0 ? c : Long.compare(tp1.durationp.getDayTime(), tp2.durationp.getDayTime());
+            default:
+                return compareBytes(b1, s1, l1, b2, s2, l2);
+        }
+    }
+
+    private int compareNumbers() {
+        int tid1 = getBaseType(tvp1.getTag());
+        int tid2 = getBaseType(tvp2.getTag());
+        if (tid1 == ValueTag.XS_INTEGER_TAG && tid2 == ValueTag.XS_INTEGER_TAG) {
+            return Long.compare(getInteger(tvp1, tp1), getInteger(tvp2, tp2));
+        }
+        if (tid1 == ValueTag.XS_DECIMAL_TAG && tid2 == ValueTag.XS_DECIMAL_TAG) {
+            tvp1.getValue(tp1.decp);
+            tvp2.getValue(tp2.decp);
+            return tp1.decp.compareTo(tp2.decp);
+        }
+        double d1 = getDouble(tid1, tvp1, tp1);
+        double d2 = getDouble(tid2, tvp2, tp2);
+        if (d1 < d2) {
+            return -1;
+        } else if (d1 > d2) {
+            return 1;
+        } else if (d1 == d2) {
+            return 0;
+        }
+        // At least one NaN, which sorts before all other numbers.
+        return Boolean.compare(!Double.isNaN(d1), !Double.isNaN(d2));
+    }
+
+    private static int compareStrings(UTF8StringPointable s1, UTF8StringPointable s2) {
+        // Each UTF-16 char, including each half of a surrogate pair, is encoded on its own, so the byte order is the
+        // UTF-16 code unit order of UTF8StringPointable.compareTo(). It differs from the codepoint order only in
+        // putting supplementary characters before U+E000 to U+FFFF.
+        return compareBytes(s1.getByteArray(), s1.getCharStartOffset(), s1.getUTF8Length(), s2.getByteArray(),
+                s2.getCharStartOffset(), s2.getUTF8Length());
+    }
+
+    private static int compareBytes(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+        for (int i = 0; i < l1 && i < l2; ++i) {
+            if (b1[s1 + i] != b2[s2 + i]) {
+                return (b1[s1 + i] & 0xff) - (b2[s2 + i] & 0xff);
+            }
+        }
+        return l1 - l2;
+    }
+
+    private int getRank(TaggedValuePointable tvp) {
+        if (tvp.getTag() == ValueTag.SEQUENCE_TAG) {
+            tvp.getValue(seqp);
+            return seqp.getEntryCount() == 0 ? RANK_EMPTY : RANK_OTHER;
+        }
+        switch (getBaseType(tvp.getTag())) {
+            case ValueTag.XS_INTEGER_TAG:
+            case ValueTag.XS_DECIMAL_TAG:
+            case ValueTag.XS_FLOAT_TAG:
+            case ValueTag.XS_DOUBLE_TAG:
+                return RANK_NUMBER;
+            case ValueTag.XS_STRING_TAG:
+            case ValueTag.XS_UNTYPED_ATOMIC_TAG:
+            case ValueTag.XS_ANY_URI_TAG:
+                return RANK_STRING;
+            case ValueTag.XS_BOOLEAN_TAG:
+                return RANK_BOOLEAN;
+            case ValueTag.XS_DATE_TAG:
+                return RANK_DATE;
+            case ValueTag.XS_DATETIME_TAG:
+                return RANK_DATETIME;
+            case ValueTag.XS_TIME_TAG:
+                return RANK_TIME;
+            case ValueTag.XS_DAY_TIME_DURATION_TAG:
+                return RANK_DAY_TIME_DURATION;
+            case ValueTag.XS_YEAR_MONTH_DURATION_TAG:
+                return RANK_YEAR_MONTH_DURATION;
+            case ValueTag.XS_DURATION_TAG:
+                return RANK_DURATION;
+            default:
+                return RANK_OTHER;
+        }
+    }
+
+    private static int getBaseType(int tag) {
+        try {
+            return FunctionHelper.getBaseTypeForComparisons(tag);
+        } catch (SystemException e) {
+            return tag;
+        }
+    }
+
+    /**
+     * @return the leading bits of the value, in the lower {@link #RANK_SHIFT} bits
+     */
+    private int getValueKey(int rank, TaggedValuePointable tvp, TypedPointables tp) {
+        switch (rank) {
+            case RANK_NUMBER:
+                double d = getDouble(getBaseType(tvp.getTag()), tvp, tp);
+                if (Double.isNaN(d)) {
+                    return 0;
+                }
+                long bits = Double.doubleToLongBits(d == 0.0 ? 0.0 : d);
+                return (int) ((bits ^ ((bits >> 63) | Long.MIN_VALUE)) >>> VALUE_BITS_SHIFT);
+            case RANK_STRING:
+                tvp.getValue(tp.utf8sp);
+                byte[] bytes = tp.utf8sp.getByteArray();
+                int start = tp.utf8sp.getCharStartOffset();
+                int length = tp.utf8sp.getUTF8Length();
+                int prefix = 0;
+                for (int i = 0; i < 4; ++i) {
+                    prefix = (prefix << 8) | (i < length ? bytes[start + i] & 0xff : 0);
+                }
+                return prefix >>> (32 - RANK_SHIFT);
+            case RANK_BOOLEAN:
+                tvp.getValue(tp.boolp);
+                return tp.boolp.getBoolean() ? 1 : 0;
+            case RANK_DATE:
+            case RANK_DATETIME:
+            case RANK_TIME:
+                return toKey(getUtcChronon(rank, tvp, tp));
+            case RANK_DAY_TIME_DURATION:
+                tvp.getValue(tp.longp);
+                return toKey(tp.longp.getLong());
+            case RANK_YEAR_MONTH_DURATION:
+                tvp.getValue(tp.intp);
+                return toKey(tp.intp.getInteger());
+            case RANK_DURATION:
+                tvp.getValue(tp.durationp);
+                return (tp.durationp.getYearMonth() ^ Integer.MIN_VALUE) >>> (32 - RANK_SHIFT);
+            default:
+                return 0;
+        }
+    }
+
+    private static int toKey(long value) {
+        return (int) ((value ^ Long.MIN_VALUE) >>> VALUE_BITS_SHIFT);
+    }
+
+    private static long getInteger(TaggedValuePointable tvp, TypedPointables tp) {
+        switch (tvp.getTag()) {
+            case ValueTag.XS_INT_TAG:
+            case ValueTag.XS_UNSIGNED_SHORT_TAG:
+                tvp.getValue(tp.intp);
+                return tp.intp.getInteger();
+            case ValueTag.XS_SHORT_TAG:
+            case ValueTag.XS_UNSIGNED_BYTE_TAG:
+                tvp.getValue(tp.shortp);
+                return tp.shortp.getShort();
+            case ValueTag.XS_BYTE_TAG:
+                tvp.getValue(tp.bytep);
+                return tp.bytep.getByte();
+            default:
+                tvp.getValue(tp.longp);
+                return tp.longp.getLong();
+        }
+    }
+
+    private static double getDouble(int tid, TaggedValuePointable tvp, TypedPointables tp) {
+        switch (tid) {
+            case ValueTag.XS_INTEGER_TAG:
+                return getInteger(tvp, tp);
+            case ValueTag.XS_DECIMAL_TAG:
+                tvp.getValue(tp.decp);
+                return tp.decp.doubleValue();
+            case ValueTag.XS_FLOAT_TAG:
+                tvp.getValue(tp.floatp);
+                return tp.floatp.getFloat();
+            default:
+                tvp.getValue(tp.doublep);
+                return tp.doublep.getDouble();
+        }
+    }
+
+    /**
+     * @return milliseconds since 1970-01-01T00:00:00Z, or since midnight UTC for xs:time
+     */
+    private static long getUtcChronon(int rank, TaggedValuePointable tvp, TypedPointables tp) {
+        ITimezone timezonep;
+        long chronon;
+        switch (rank) {
+            case RANK_DATE:
+                tvp.getValue(tp.datep);
+                timezonep = tp.datep;
+                chronon = getDaysBeforeMonth(timezonep.getYearMonth()) * DateTime.CHRONON_OF_DAY
+                        + timezonep.getDayTime() - DateTime.CHRONON_OF_DAY;
+                break;
+            case RANK_DATETIME:
+                tvp.getValue(tp.datetimep);
+                timezonep = tp.datetimep;
+                chronon = getDaysBeforeMonth(timezonep.getYearMonth()) * DateTime.CHRONON_OF_DAY
+                        + timezonep.getDayTime() - DateTime.CHRONON_OF_DAY;
+                break;
+            default:
+                tvp.getValue(tp.timep);
+                timezonep = tp.timep;
+                chronon = timezonep.getDayTime();
+                break;
+        }
+        if (timezonep.getTimezoneHour() != DateTime.TIMEZONE_HOUR_NULL
+                && timezonep.getTimezoneMinute() != DateTime.TIMEZONE_MINUTE_NULL) {
+            chronon -= timezonep.getTimezoneHour() * DateTime.CHRONON_OF_HOUR
+                    + timezonep.getTimezoneMinute() * DateTime.CHRONON_OF_MINUTE;
+        }
+        return chronon;
+    }
+
+    /**
+     * @return the number of days from 1970-01-01 to the first day of the month ({@code year * 12 + month})
+     */
+    private static long getDaysBeforeMonth(long yearMonth) {
+        long year = Math.floorDiv(yearMonth - 1, 12);
+        long month = yearMonth - year * 12;
+        if (month <= 2) {
+            --year;
+        }
+        long era = Math.floorDiv(year, 400);
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
@@ -16,13 +16,15 @@
  */
 package org.apache.vxquery.compiler.algebricks;
 
-import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
-
 import org.apache.hyracks.algebricks.common.exceptions.AlgebricksException;
 import org.apache.hyracks.algebricks.data.IBinaryComparatorFactoryProvider;
 import org.apache.hyracks.api.dataflow.value.IBinaryComparator;
 import org.apache.hyracks.api.dataflow.value.IBinaryComparatorFactory;
 
+/**
+ * Provides comparators that order tagged values by their typed value (see {@link TaggedValueOrder}). The static type
+ * of the sort key is usually unknown at compile time, so the comparators dispatch on the value tag at run time.
+ */
 public class VXQueryComparatorFactoryProvider implements IBinaryComparatorFactoryProvider {
     @Override
     public IBinaryComparatorFactory getBinaryComparatorFactory(Object type, boolean ascending)
@@ -33,7 +35,6 @@ public class VXQueryComparatorFactoryProvider implements IBinaryComparatorFactor
     private static class BinaryComparatorFactory implements IBinaryComparatorFactory {
         private static final long serialVersionUID = 1L;
 
-        @SuppressWarnings("unused")
         private final boolean ascending;
 
         public BinaryComparatorFactory(Object type, boolean ascending) {
@@ -42,19 +43,11 @@ public class VXQueryComparatorFactoryProvider implements IBinaryComparatorFactor
 
         @Override
         public IBinaryComparator createBinaryComparator() {
-            final TaggedValuePointable tvp1 = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
-            final TaggedValuePointable tvp2 = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+            final TaggedValueOrder order = new TaggedValueOrder(ascending);
             return new IBinaryComparator() {
                 @Override
                 public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
-                    tvp1.set(b1, s1, l1);
-                    tvp2.set(b2, s2, l2);
-                    for (int i = 0; i < l1 && i < l2; ++i) {
-                        if (b1[s1 + i] != b2[s2 + i]) {
-                            return b1[s1 + i] - b2[s2 + i];
-                        }
-                    }
-                    return l1 - l2;
+                    return order.compare(b1, s1, l1, b2, s2, l2);
                 }
             };
         }
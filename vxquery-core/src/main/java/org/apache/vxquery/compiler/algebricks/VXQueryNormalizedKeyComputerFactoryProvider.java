@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.compiler.algebricks;
+
+import org.apache.hyracks.algebricks.data.INormalizedKeyComputerFactoryProvider;
+import org.apache.hyracks.api.dataflow.value.INormalizedKeyComputer;
+import org.apache.hyracks.api.dataflow.value.INormalizedKeyComputerFactory;
+
+/**
+ * Provides normalized keys matching {@link VXQueryComparatorFactoryProvider}, so that sorts mostly compare integer
+ * prefixes of the first sort key instead of decoding the tagged values.
+ */
+public class VXQueryNormalizedKeyComputerFactoryProvider implements INormalizedKeyComputerFactoryProvider {
+    public static final INormalizedKeyComputerFactoryProvider INSTANCE = new VXQueryNormalizedKeyComputerFactoryProvider();
+
+    @Override
+    public INormalizedKeyComputerFactory getNormalizedKeyComputerFactory(Object type, boolean ascending) {
+        return new NormalizedKeyComputerFactory(ascending);
+    }
+
+    private static class NormalizedKeyComputerFactory implements INormalizedKeyComputerFactory {
+        private static final long serialVersionUID = 1L;
+
+        private final boolean ascending;
+
+        public NormalizedKeyComputerFactory(boolean ascending) {
+            this.ascending = ascending;
+        }
+
+        @Override
+        public INormalizedKeyComputer createNormalizedKeyComputer() {
+            final TaggedValueOrder order = new TaggedValueOrder(ascending);
+            return new INormalizedKeyComputer() {
+                @Override
+                public int normalize(byte[] bytes, int start, int length) {
+                    return order.normalize(bytes, start, length);
+                }
+            };
+        }
+    }
+}
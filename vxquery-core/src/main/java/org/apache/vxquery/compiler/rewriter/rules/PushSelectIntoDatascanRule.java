@@ -0,0 +1,345 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.compiler.rewriter.rules;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.mutable.Mutable;
+import org.apache.hyracks.algebricks.common.exceptions.AlgebricksException;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalExpression;
+import org.apache.hyracks.algebricks.core.algebra.base.ILogicalOperator;
+import org.apache.hyracks.algebricks.core.algebra.base.IOptimizationContext;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalExpressionTag;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalOperatorTag;
+import org.apache.hyracks.algebricks.core.algebra.base.LogicalVariable;
+import org.apache.hyracks.algebricks.core.algebra.expressions.AbstractFunctionCallExpression;
+import org.apache.hyracks.algebricks.core.algebra.expressions.ConstantExpression;
+import org.apache.hyracks.algebricks.core.algebra.expressions.VariableReferenceExpression;
+import org.apache.hyracks.algebricks.core.algebra.functions.AlgebricksBuiltinFunctions;
+import org.apache.hyracks.algebricks.core.algebra.functions.FunctionIdentifier;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.AbstractLogicalOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.AssignOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.DataSourceScanOperator;
+import org.apache.hyracks.algebricks.core.algebra.operators.logical.SelectOperator;
+import org.apache.hyracks.algebricks.core.rewriter.base.IAlgebraicRewriteRule;
+import org.apache.hyracks.util.string.UTF8StringUtil;
+import org.apache.vxquery.compiler.algebricks.VXQueryConstantValue;
+import org.apache.vxquery.compiler.rewriter.VXQueryOptimizationContext;
+import org.apache.vxquery.compiler.rewriter.rules.util.ExpressionToolbox;
+import org.apache.vxquery.context.StaticContext;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.functions.BuiltinFunctions;
+import org.apache.vxquery.functions.BuiltinOperators;
+import org.apache.vxquery.metadata.VXQueryCollectionDataSource;
+import org.apache.vxquery.metadata.VXQueryMetadataProvider;
+import org.apache.vxquery.types.AnyItemType;
+import org.apache.vxquery.types.AnyNodeType;
+import org.apache.vxquery.types.AttributeType;
+import org.apache.vxquery.types.BuiltinTypeRegistry;
+import org.apache.vxquery.types.ElementType;
+import org.apache.vxquery.types.ItemType;
+import org.apache.vxquery.types.NameTest;
+import org.apache.vxquery.types.Quantifier;
+import org.apache.vxquery.types.SequenceType;
+import org.apache.vxquery.xmlparser.RecordPredicate;
+
+/**
+ * The rule searches for a select operator over a collection data scan that already has child path steps. The value
+ * comparisons of a child element or an attribute of the scanned records with a string constant, alone or in a
+ * conjunction, are added to the data scan so the parser drops the records for which they are false.
+ *
+ * <pre>
+ * Before
+ *
+ *   plan__parent
+ *   SELECT( and( eq( data( child( $v2, "station" ) ), "GHCND:US000000002" ), ... ) )
+ *   ASSIGN( $v2 : $v1 )
+ *   DATASCAN( $source : $v1 )
+ *   plan__child
+ *
+ *   where only assign, select and project operators are between the select and the data scan.
+ *
+ * After
+ *
+ *   plan__parent
+ *   SELECT( and( eq( data( child( $v2, "station" ) ), "GHCND:US000000002" ), ... ) )
+ *   ASSIGN( $v2 : $v1 )
+ *   DATASCAN( $source : $v1 )
+ *   plan__child
+ *
+ *   $source is encoded with the predicates. The select stays in place, the scan only drops records it would reject.
+ * </pre>
+ */
+public class PushSelectIntoDatascanRule implements IAlgebraicRewriteRule {
+    private static final Map<FunctionIdentifier, RecordPredicate.Operator> OPERATORS = new HashMap<>();
+    private static final List<FunctionIdentifier> WRAPPERS = new ArrayList<>();
+
+    static {
+        OPERATORS.put(AlgebricksBuiltinFunctions.EQ, RecordPredicate.Operator.EQ);
+        OPERATORS.put(AlgebricksBuiltinFunctions.NEQ, RecordPredicate.Operator.NE);
+        OPERATORS.put(AlgebricksBuiltinFunctions.LT, RecordPredicate.Operator.LT);
+        OPERATORS.put(AlgebricksBuiltinFunctions.LE, RecordPredicate.Operator.LE);
+        OPERATORS.put(AlgebricksBuiltinFunctions.GT, RecordPredicate.Operator.GT);
+        OPERATORS.put(AlgebricksBuiltinFunctions.GE, RecordPredicate.Operator.GE);
+        OPERATORS.put(BuiltinOperators.VALUE_EQ.getFunctionIdentifier(), RecordPredicate.Operator.EQ);
+        OPERATORS.put(BuiltinOperators.VALUE_NE.getFunctionIdentifier(), RecordPredicate.Operator.NE);
+        OPERATORS.put(BuiltinOperators.VALUE_LT.getFunctionIdentifier(), RecordPredicate.Operator.LT);
+        OPERATORS.put(BuiltinOperators.VALUE_LE.getFunctionIdentifier(), RecordPredicate.Operator.LE);
+        OPERATORS.put(BuiltinOperators.VALUE_GT.getFunctionIdentifier(), RecordPredicate.Operator.GT);
+        OPERATORS.put(BuiltinOperators.VALUE_GE.getFunctionIdentifier(), RecordPredicate.Operator.GE);
+
+        // Functions that keep the nodes of a path step or give their typed values.
+        WRAPPERS.add(BuiltinFunctions.FN_DATA_1.getFunctionIdentifier());
+        WRAPPERS.add(BuiltinOperators.PROMOTE.getFunctionIdentifier());
+        WRAPPERS.add(BuiltinOperators.SORT_DISTINCT_NODES_ASC.getFunctionIdentifier());
+        WRAPPERS.add(BuiltinOperators.SORT_DISTINCT_NODES_ASC_OR_ATOMICS.getFunctionIdentifier());
+        WRAPPERS.add(BuiltinOperators.DISTINCT_NODES_OR_ATOMICS.getFunctionIdentifier());
+    }
+
+    private StaticContext sCtx = null;
+    private final Map<LogicalVariable, Mutable<ILogicalExpression>> assigns = new HashMap<>();
+    private LogicalVariable recordVariable;
+
+    @Override
+    public boolean rewritePre(Mutable<ILogicalOperator> opRef, IOptimizationContext context)
+            throws AlgebricksException {
+        return false;
+    }
+
+    @Override
+    public boolean rewritePost(Mutable<ILogicalOperator> opRef, IOptimizationContext context)
+            throws AlgebricksException {
+        AbstractLogicalOperator op = (AbstractLogicalOperator) opRef.getValue();
+        if (op.getOperatorTag() != LogicalOperatorTag.SELECT || context.checkIfInDontApplySet(this, op)) {
+            return false;
+        }
+        if (sCtx == null) {
+            VXQueryOptimizationContext vxqueryCtx = (VXQueryOptimizationContext) context;
+            sCtx = ((VXQueryMetadataProvider) vxqueryCtx.getMetadataProvider()).getStaticContext();
+        }
+        SelectOperator select = (SelectOperator) op;
+
+        // Find the data scan, remembering the assigned expressions on the way.
+        assigns.clear();
+        AbstractLogicalOperator input = (AbstractLogicalOperator) select.getInputs().get(0).getValue();
+        while (input.getOperatorTag() == LogicalOperatorTag.ASSIGN
+                || input.getOperatorTag() == LogicalOperatorTag.SELECT
+                || input.getOperatorTag() == LogicalOperatorTag.PROJECT) {
+            if (input.getOperatorTag() == LogicalOperatorTag.ASSIGN) {
+                AssignOperator assign = (AssignOperator) input;
+                for (int i = 0; i < assign.getVariables().size(); ++i) {
+                    assigns.put(assign.getVariables().get(i), assign.getExpressions().get(i));
+                }
+            }
+            input = (AbstractLogicalOperator) input.getInputs().get(0).getValue();
+        }
+        if (input.getOperatorTag() != LogicalOperatorTag.DATASOURCESCAN) {
+            return false;
+        }
+        DataSourceScanOperator datascan = (DataSourceScanOperator) input;
+        if (!(datascan.getDataSource() instanceof VXQueryCollectionDataSource)) {
+            return false;
+        }
+        VXQueryCollectionDataSource ds = (VXQueryCollectionDataSource) datascan.getDataSource();
+        if (ds.getChildSeq().isEmpty()) {
+            // The records are whole documents, the parser only filters elements found by child steps.
+            return false;
+        }
+        recordVariable = datascan.getVariables().get(0);
+
+        List<RecordPredicate> predicates = new ArrayList<>();
+        findPredicates(select.getCondition(), predicates);
+        context.addToDontApplySet(this, select);
+        boolean added = false;
+        for (RecordPredicate predicate : predicates) {
+            if (!ds.getPredicateSeq().contains(predicate)) {
+                ds.addPredicateSeq(predicate);
+                added = true;
+            }
+        }
+        return added;
+    }
+
+    private void findPredicates(Mutable<ILogicalExpression> expression, List<RecordPredicate> predicates) {
+        AbstractFunctionCallExpression function = getFunction(expression);
+        while (function != null && isFunction(function, BuiltinFunctions.FN_BOOLEAN_1.getFunctionIdentifier())) {
+            function = getFunction(function.getArguments().get(0));
+        }
+        if (function == null) {
+            return;
+        }
+        if (isFunction(function, AlgebricksBuiltinFunctions.AND)
+                || isFunction(function, BuiltinOperators.AND.getFunctionIdentifier())) {
+            for (Mutable<ILogicalExpression> argument : function.getArguments()) {
+                findPredicates(argument, predicates);
+            }
+            return;
+        }
+        RecordPredicate.Operator operator = OPERATORS.get(function.getFunctionIdentifier());
+        if (operator == null || function.getArguments().size() != 2) {
+            return;
+        }
+        Mutable<ILogicalExpression> left = function.getArguments().get(0);
+        Mutable<ILogicalExpression> right = function.getArguments().get(1);
+        RecordPredicate predicate = createPredicate(left, operator, right);
+        if (predicate == null) {
+            predicate = createPredicate(right, operator.swap(), left);
+        }
+        if (predicate != null) {
+            predicates.add(predicate);
+        }
+    }
+
+    /**
+     * @return the predicate for a path step on the record compared to a string constant, or null
+     */
+    private RecordPredicate createPredicate(Mutable<ILogicalExpression> path, RecordPredicate.Operator operator,
+            Mutable<ILogicalExpression> constant) {
+        String value = getStringConstant(constant);
+        if (value == null) {
+            return null;
+        }
+        Mutable<ILogicalExpression> stepRef = stripWrappers(path);
+        AbstractFunctionCallExpression step = getFunction(stepRef);
+        if (step == null || step.getArguments().size() != 2) {
+            return null;
+        }
+        boolean attribute = isFunction(step, BuiltinOperators.ATTRIBUTE.getFunctionIdentifier());
+        if (!attribute && !isFunction(step, BuiltinOperators.CHILD.getFunctionIdentifier())) {
+            return null;
+        }
+        ILogicalExpression input = resolve(stripWrappers(step.getArguments().get(0))).getValue();
+        if (input.getExpressionTag() != LogicalExpressionTag.VARIABLE
+                || !((VariableReferenceExpression) input).getVariableReference().equals(recordVariable)) {
+            return null;
+        }
+        int typeId = ExpressionToolbox.getTypeExpressionTypeArgument(stepRef);
+        if (typeId <= 0) {
+            return null;
+        }
+        ItemType itemType = sCtx.lookupSequenceType(typeId).getItemType();
+        NameTest nameTest;
+        if (attribute && itemType instanceof AttributeType) {
+            nameTest = ((AttributeType) itemType).getNameTest();
+        } else if (!attribute && itemType instanceof ElementType && ((ElementType) itemType).getContentType()
+                .equals(ElementType.ANYELEMENT.getContentType())) {
+            nameTest = ((ElementType) itemType).getNameTest();
+        } else {
+            return null;
+        }
+        return new RecordPredicate(attribute, getString(nameTest.getUri()), getString(nameTest.getLocalName()),
+                operator, value);
+    }
+
+    /**
+     * Skips the functions around a path step that do not change which values are compared.
+     */
+    private Mutable<ILogicalExpression> stripWrappers(Mutable<ILogicalExpression> expression) {
+        while (true) {
+            expression = resolve(expression);
+            AbstractFunctionCallExpression function = getFunction(expression);
+            if (function == null || function.getArguments().isEmpty()) {
+                return expression;
+            }
+            boolean wrapper = false;
+            for (FunctionIdentifier fid : WRAPPERS) {
+                wrapper |= isFunction(function, fid);
+            }
+            if (!wrapper && !isEmptyAllowingTreat(expression)) {
+                return expression;
+            }
+            expression = function.getArguments().get(0);
+        }
+    }
+
+    /**
+     * A treat that allows an empty sequence and the items of a path step or their typed values can not fail for the
+     * records the scan drops.
+     */
+    private boolean isEmptyAllowingTreat(Mutable<ILogicalExpression> expression) {
+        AbstractFunctionCallExpression function = (AbstractFunctionCallExpression) expression.getValue();
+        if (!isFunction(function, BuiltinOperators.TREAT.getFunctionIdentifier())
+                || function.getArguments().size() != 2) {
+            return false;
+        }
+        int typeId = ExpressionToolbox.getTypeExpressionTypeArgument(expression);
+        if (typeId <= 0) {
+            return false;
+        }
+        SequenceType type = sCtx.lookupSequenceType(typeId);
+        ItemType itemType = type.getItemType();
+        return type.getQuantifier().isSubQuantifier(Quantifier.QUANT_QUESTION)
+                && (itemType instanceof AnyItemType || itemType instanceof AnyNodeType
+                        || itemType instanceof ElementType || itemType instanceof AttributeType
+                        || itemType == BuiltinTypeRegistry.XS_ANY_ATOMIC
+                        || itemType == BuiltinTypeRegistry.XS_UNTYPED_ATOMIC);
+    }
+
+    /**
+     * Follows variables assigned between the select and the data scan to their expressions.
+     */
+    private Mutable<ILogicalExpression> resolve(Mutable<ILogicalExpression> expression) {
+        while (expression.getValue().getExpressionTag() == LogicalExpressionTag.VARIABLE) {
+            LogicalVariable variable = ((VariableReferenceExpression) expression.getValue()).getVariableReference();
+            if (variable.equals(recordVariable) || !assigns.containsKey(variable)) {
+                break;
+            }
+            expression = assigns.get(variable);
+        }
+        return expression;
+    }
+
+    private String getStringConstant(Mutable<ILogicalExpression> expression) {
+        ILogicalExpression le = stripWrappers(expression).getValue();
+        if (le.getExpressionTag() != LogicalExpressionTag.CONSTANT
+                || !(((ConstantExpression) le).getValue() instanceof VXQueryConstantValue)) {
+            return null;
+        }
+        byte[] bytes = ((VXQueryConstantValue) ((ConstantExpression) le).getValue()).getValue();
+        if (bytes.length == 0
+                || (bytes[0] != ValueTag.XS_STRING_TAG && bytes[0] != ValueTag.XS_UNTYPED_ATOMIC_TAG)) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        UTF8StringUtil.toString(sb, bytes, 1);
+        return sb.toString();
+    }
+
+    private AbstractFunctionCallExpression getFunction(Mutable<ILogicalExpression> expression) {
+        ILogicalExpression le = resolve(expression).getValue();
+        if (le.getExpressionTag() != LogicalExpressionTag.FUNCTION_CALL) {
+            return null;
+        }
+        return (AbstractFunctionCallExpression) le;
+    }
+
+    private static boolean isFunction(AbstractFunctionCallExpression function, FunctionIdentifier fid) {
+        return function.getFunctionIdentifier().equals(fid);
+    }
+
+    private static String getString(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        UTF8StringUtil.toString(sb, bytes, 0);
+        return sb.toString();
+    }
+}
@@ -24,10 +24,12 @@ import org.apache.hyracks.data.std.api.IPointableFactory;
 import org.apache.hyracks.data.std.collections.api.IValueReferenceVector;
 import org.apache.hyracks.data.std.primitive.BytePointable;
 import org.apache.hyracks.data.std.primitive.IntegerPointable;
+import org.apache.hyracks.data.std.primitive.LongPointable;
 import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
 import org.apache.hyracks.data.std.primitive.VoidPointable;
 import org.apache.hyracks.util.string.UTF8StringUtil;
 import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.builders.nodes.SharedDictionaryRegistry;
 
 /*
  * NodeTree {
@@ -41,10 +43,11 @@ import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
  *  bit nodeIdExists;
  *  bit dictionaryExists;
  *  bit headerTypeExists;
+ *  bit sharedDictionaryExists;
  * }
  *
  * NodeId {
- *  int32 id;
+ *  int64 id;
  * }
  *
  * Dictionary {
@@ -53,20 +56,30 @@ import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
  *  int32[numberOfItems] sortedItemIndex
  *  bytes[] itemData
  * }
+ *
+ * SharedDictionary (in place of Dictionary if sharedDictionaryExists) {
+ *  int32 size
+ *  int64 dictionaryId
+ *  int32 numberOfItems
+ *  int64 itemsHash
+ * }
  */
 public class NodeTreePointable extends AbstractPointable {
     public static final int HEADER_NODEID_EXISTS_MASK = (1 << 0);
     public static final int HEADER_DICTIONARY_EXISTS_MASK = (1 << 1);
     public static final int HEADER_TYPE_EXISTS_MASK = (1 << 2);
+    public static final int HEADER_SHARED_DICTIONARY_EXISTS_MASK = (1 << 3);
 
     private static final int HEADER_OFFSET = 0;
     private static final int HEADER_SIZE = 1;
-    private static final int NODE_ID_SIZE = 4;
+    private static final int NODE_ID_SIZE = 8;
 
     private static final int DICTIONARY_SIZE_SIZE = 4;
     private static final int DICTIONARY_NENTRIES_SIZE = 4;
     private static final int IDX_PTR_SLOT_SIZE = 4;
     private static final int SORTED_PTR_SLOT_SIZE = 4;
+    private static final int SHARED_DICTIONARY_ID_SIZE = 8;
+    private static final int SHARED_DICTIONARY_NENTRIES_SIZE = 4;
 
     public static final IPointableFactory FACTORY = new IPointableFactory() {
         private static final long serialVersionUID = 1L;
@@ -90,27 +103,31 @@ public class NodeTreePointable extends AbstractPointable {
 
         @Override
         public byte[] getBytes(int index) {
-            return bytes;
+            return getDictionaryBytes();
         }
 
         @Override
         public int getStart(int index) {
-            int dataAreaStart = getDictionaryDataAreaStartOffset();
-            int sortedPtrArrayStart = getDictionarySortedPointerArrayOffset();
-            int sortedSlotValue = IntegerPointable.getInteger(bytes,
-                    sortedPtrArrayStart + index * SORTED_PTR_SLOT_SIZE);
-            return dataAreaStart + sortedSlotValue;
+            return getStringStartOffset(getSortedIndex(index));
         }
 
         @Override
         public int getLength(int index) {
-            int utfLength = UTF8StringUtil.getUTFLength(bytes, getStart(index));
+            int utfLength = UTF8StringUtil.getUTFLength(getDictionaryBytes(), getStart(index));
             return utfLength + UTF8StringUtil.getNumBytesToStoreLength(utfLength);
         }
     };
 
     private final BinarySearchAlgorithm binSearch = new BinarySearchAlgorithm();
 
+    private long sharedDictionaryId;
+
+    private int sharedDictionaryCount;
+
+    private long sharedDictionaryHash;
+
+    private byte[] sharedDictionary;
+
     public boolean nodeIdExists() {
         return (getHeader() & HEADER_NODEID_EXISTS_MASK) != 0;
     }
@@ -123,12 +140,17 @@ public class NodeTreePointable extends AbstractPointable {
         return (getHeader() & HEADER_TYPE_EXISTS_MASK) != 0;
     }
 
-    public int getRootNodeId() {
-        return nodeIdExists() ? IntegerPointable.getInteger(bytes, getNodeIdOffset()) : -1;
+    public boolean sharedDictionaryExists() {
+        return (getHeader() & HEADER_SHARED_DICTIONARY_EXISTS_MASK) != 0;
+    }
+
+    public long getRootNodeId() {
+        return nodeIdExists() ? LongPointable.getLong(bytes, getNodeIdOffset()) : -1;
     }
 
     public int getDictionaryEntryCount() {
-        return dictionaryExists() ? IntegerPointable.getInteger(bytes, getDictionaryEntryCountOffset()) : 0;
+        return dictionaryExists() ? IntegerPointable.getInteger(getDictionaryBytes(), getDictionaryEntryCountOffset())
+                : 0;
     }
 
     public void getString(int idx, UTF8StringPointable string) {
@@ -136,23 +158,37 @@ public class NodeTreePointable extends AbstractPointable {
         if (idx < 0 || idx >= nEntries) {
             throw new IllegalArgumentException(idx + " not within [0, " + nEntries + ")");
         }
-        int dataAreaStart = getDictionaryDataAreaStartOffset();
-        int idxSlotValue = idx == 0 ? 0
-                : IntegerPointable.getInteger(bytes,
-                        getDictionaryIndexPointerArrayOffset() + (idx - 1) * IDX_PTR_SLOT_SIZE);
-        int strLen = UTF8StringUtil.getUTFLength(bytes, dataAreaStart + idxSlotValue);
+        byte[] dictionaryBytes = getDictionaryBytes();
+        int stringStart = getStringStartOffset(idx);
+        int strLen = UTF8StringUtil.getUTFLength(dictionaryBytes, stringStart);
         int strMetaLen = UTF8StringUtil.getNumBytesToStoreLength(strLen);
-        string.set(bytes, dataAreaStart + idxSlotValue, strMetaLen + strLen);
+        string.set(dictionaryBytes, stringStart, strMetaLen + strLen);
     }
 
+    /**
+     * @return the index of the given string in the dictionary, or -1 if the dictionary does not contain it
+     */
     public int lookupString(UTF8StringPointable key) {
         boolean found = binSearch.find(sortedStringVector, key);
         if (!found) {
             return -1;
         }
-        int index = binSearch.getIndex();
-        return IntegerPointable.getInteger(bytes,
-                sortedStringVector.getStart(index) + sortedStringVector.getLength(index));
+        return getSortedIndex(binSearch.getIndex());
+    }
+
+    /**
+     * @return the dictionary index of the string at the given position in sort order
+     */
+    private int getSortedIndex(int position) {
+        return IntegerPointable.getInteger(getDictionaryBytes(), getDictionarySortedPointerArrayOffset() + position
+                * SORTED_PTR_SLOT_SIZE);
+    }
+
+    private int getStringStartOffset(int idx) {
+        int idxSlotValue = idx == 0 ? 0
+                : IntegerPointable.getInteger(getDictionaryBytes(),
+                        getDictionaryIndexPointerArrayOffset() + (idx - 1) * IDX_PTR_SLOT_SIZE);
+        return getDictionaryDataAreaStartOffset() + idxSlotValue;
     }
 
     public void getRootNode(TaggedValuePointable node) {
@@ -187,8 +223,44 @@ public class NodeTreePointable extends AbstractPointable {
         return dictionaryExists() ? IntegerPointable.getInteger(bytes, getDictionaryOffset()) : 0;
     }
 
+    /**
+     * @return the bytes holding the dictionary entries, which are those of the shared dictionary if the tree only
+     *         has a reference to it
+     */
+    private byte[] getDictionaryBytes() {
+        if (!sharedDictionaryExists()) {
+            return bytes;
+        }
+        int idOffset = getDictionaryOffset() + DICTIONARY_SIZE_SIZE;
+        long id = LongPointable.getLong(bytes, idOffset);
+        int nEntriesOffset = idOffset + SHARED_DICTIONARY_ID_SIZE;
+        int nEntries = IntegerPointable.getInteger(bytes, nEntriesOffset);
+        long hash = LongPointable.getLong(bytes, nEntriesOffset + SHARED_DICTIONARY_NENTRIES_SIZE);
+        if (sharedDictionary == null || sharedDictionaryId != id || sharedDictionaryCount != nEntries
+                || sharedDictionaryHash != hash) {
+            // Shared dictionaries only grow, so any later version starting with the same strings can be used.
+            byte[] dictionary = SharedDictionaryRegistry.getDefault().getDictionary(id, nEntries, hash);
+            if (dictionary == null) {
+                throw new IllegalStateException(String.format(
+                        "Shared dictionary %016x with %d strings is not available on this node", id, nEntries));
+            }
+            sharedDictionary = dictionary;
+            sharedDictionaryId = id;
+            sharedDictionaryCount = nEntries;
+            sharedDictionaryHash = hash;
+        }
+        return sharedDictionary;
+    }
+
+    /**
+     * @return the offset of the dictionary entries in {@link #getDictionaryBytes()}
+     */
+    private int getDictionaryStartOffset() {
+        return sharedDictionaryExists() ? 0 : getDictionaryOffset();
+    }
+
     private int getDictionaryEntryCountOffset() {
-        return getDictionaryOffset() + DICTIONARY_SIZE_SIZE;
+        return getDictionaryStartOffset() + DICTIONARY_SIZE_SIZE;
     }
 
     private int getDictionaryIndexPointerArrayOffset() {
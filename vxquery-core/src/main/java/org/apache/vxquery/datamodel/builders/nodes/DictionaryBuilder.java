@@ -19,81 +19,85 @@ package org.apache.vxquery.datamodel.builders.nodes;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.util.Map.Entry;
-import java.util.TreeMap;
+import java.util.Arrays;
 
-import org.apache.hyracks.data.std.algorithms.BinarySearchAlgorithm;
-import org.apache.hyracks.data.std.collections.api.IValueReferenceVector;
 import org.apache.hyracks.data.std.primitive.IntegerPointable;
 import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
 import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
 import org.apache.hyracks.data.std.util.ByteArrayAccessibleOutputStream;
 import org.apache.hyracks.util.string.UTF8StringUtil;
 import org.apache.hyracks.util.string.UTF8StringWriter;
-import org.apache.vxquery.util.GrowableIntArray;
 
+/**
+ * Builds the string dictionary of a node tree. Strings are found with an open-addressing hash table over their UTF-8
+ * bytes, using the same hash as {@link String#hashCode()} so that Java strings are looked up without encoding them.
+ * The sorted index is computed once, when the dictionary is written.
+ * <p>
+ * {@link #reset()} keeps the strings of the previous tree. As long as the next tree looks up the same strings in the
+ * same order, they keep their codes and the written dictionary is reused from {@link #writeFromCache}. The first
+ * lookup that differs drops the strings that were not used again.
+ */
 public class DictionaryBuilder {
-    private final GrowableIntArray stringEndOffsets;
-
-    private final GrowableIntArray sortedSlotIndexes;
+    private static final int INITIAL_CAPACITY = 16;
 
-    private final ByteArrayAccessibleOutputStream dataBuffer;
+    private final DataBuffer dataBuffer;
 
     private final DataOutput dataBufferOut;
 
     private final ArrayBackedValueStorage cache;
 
-    private final TreeMap<String, Integer> hashSlotIndexes;
-
     private boolean cacheReady;
 
     private final UTF8StringWriter UTF8Writer = new UTF8StringWriter();
 
-    private final IValueReferenceVector sortedStringsVector = new IValueReferenceVector() {
-        @Override
-        public int getStart(int index) {
-            int slot = sortedSlotIndexes.getArray()[index];
-            return slot == 0 ? 0 : stringEndOffsets.getArray()[slot - 1];
-        }
+    /**
+     * End offset in the data buffer, hash and hash table slot of each string, by code.
+     */
+    private int[] stringEndOffsets = new int[INITIAL_CAPACITY];
 
-        @Override
-        public int getSize() {
-            return stringEndOffsets.getSize();
-        }
+    private int[] stringHashes = new int[INITIAL_CAPACITY];
 
-        @Override
-        public int getLength(int index) {
-            int utfLength = UTF8StringUtil.getUTFLength(dataBuffer.getByteArray(), getStart(index));
-            return utfLength + UTF8StringUtil.getNumBytesToStoreLength(utfLength);
-        }
+    private int[] stringSlots = new int[INITIAL_CAPACITY];
 
-        @Override
-        public byte[] getBytes(int index) {
-            return dataBuffer.getByteArray();
-        }
-    };
+    private int size;
+
+    /**
+     * Number of strings looked up since the last reset. The codes below it belong to the current tree.
+     */
+    private int used;
+
+    /**
+     * Hash table of code + 1, 0 for empty slots.
+     */
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+
+    private int[] sortedCodes = new int[INITIAL_CAPACITY];
+
+    private int[] sortBuffer = new int[INITIAL_CAPACITY];
 
-    private final BinarySearchAlgorithm binSearch = new BinarySearchAlgorithm();
+    private boolean sorted;
 
     public DictionaryBuilder() {
-        stringEndOffsets = new GrowableIntArray();
-        sortedSlotIndexes = new GrowableIntArray();
-        dataBuffer = new ByteArrayAccessibleOutputStream();
+        dataBuffer = new DataBuffer();
         dataBufferOut = new DataOutputStream(dataBuffer);
         cache = new ArrayBackedValueStorage();
-        hashSlotIndexes = new TreeMap<>();
         cacheReady = false;
+        sorted = true;
     }
 
     public void reset() {
-        stringEndOffsets.clear();
-        sortedSlotIndexes.clear();
-        dataBuffer.reset();
-        hashSlotIndexes.clear();
-        cacheReady = false;
+        used = 0;
+    }
+
+    /**
+     * @return the number of strings in the dictionary
+     */
+    public int getEntryCount() {
+        return size;
     }
 
     public void writeFromCache(ArrayBackedValueStorage abvs) throws IOException {
+        dropUnused();
         if (!cacheReady) {
             cache.reset();
             write(cache);
@@ -104,63 +108,288 @@ public class DictionaryBuilder {
     }
 
     public void write(ArrayBackedValueStorage abvs) throws IOException {
+        dropUnused();
         DataOutput out = abvs.getDataOutput();
         int sizeOffset = abvs.getLength();
         out.writeInt(0);
-        int entryCount = stringEndOffsets.getSize();
-        out.writeInt(entryCount);
-        int[] entryOffsets = stringEndOffsets.getArray();
-        for (int i = 0; i < entryCount; ++i) {
-            out.writeInt(entryOffsets[i]);
-        }
-        if (hashSlotIndexes.isEmpty()) {
-            int[] sortedOffsets = sortedSlotIndexes.getArray();
-            for (int i = 0; i < entryCount; ++i) {
-                out.writeInt(sortedOffsets[i]);
-            }
-        } else {
-            for (Entry<String, Integer> me : hashSlotIndexes.entrySet()) {
-                out.writeInt((Integer) me.getValue());
-            }
+        out.writeInt(size);
+        for (int i = 0; i < size; ++i) {
+            out.writeInt(stringEndOffsets[i]);
+        }
+        sort();
+        for (int i = 0; i < size; ++i) {
+            out.writeInt(sortedCodes[i]);
         }
-        out.write(dataBuffer.getByteArray(), 0, dataBuffer.size());
+        out.write(dataBuffer.getByteArray(), 0, getStringStart(size));
         // TODO can this value be determined before writing. Could this be append only.
         IntegerPointable.setInteger(abvs.getByteArray(), sizeOffset, abvs.getLength() - sizeOffset);
     }
 
     public int lookup(String str) {
-        Integer slotIndex = hashSlotIndexes.get(str);
-        if (slotIndex == null) {
-            try {
-                UTF8Writer.writeUTF8(str, dataBufferOut);
-                slotIndex = stringEndOffsets.getSize();
-                dataBufferOut.writeInt(slotIndex);
-            } catch (IOException e) {
-                throw new IllegalStateException(e);
+        int hash = str.hashCode();
+        int mask = table.length - 1;
+        for (int slot = mix(hash) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int code = table[slot] - 1;
+            if (stringHashes[code] == hash && equals(code, str)) {
+                if (use(code)) {
+                    return code;
+                }
+                break;
             }
-            stringEndOffsets.append(dataBuffer.size());
-            hashSlotIndexes.put(str, slotIndex);
-            cacheReady = false;
         }
-        return slotIndex;
+        dropUnused();
+        try {
+            UTF8Writer.writeUTF8(str, dataBufferOut);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return add(hash);
     }
 
     public int lookup(UTF8StringPointable str) {
-        boolean found = binSearch.find(sortedStringsVector, str);
-        int index = binSearch.getIndex();
-        if (found) {
-            return sortedSlotIndexes.getArray()[index];
+        byte[] bytes = str.getByteArray();
+        int start = str.getStartOffset();
+        int hash = hash(bytes, start);
+        int mask = table.length - 1;
+        for (int slot = mix(hash) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int code = table[slot] - 1;
+            if (stringHashes[code] == hash && equals(code, bytes, start, str.getLength())) {
+                if (use(code)) {
+                    return code;
+                }
+                break;
+            }
+        }
+        dropUnused();
+        dataBuffer.write(bytes, start, str.getLength());
+        return add(hash);
+    }
+
+    /**
+     * Marks a string that was found in the table as used by the current tree.
+     *
+     * @return false if the string is left over from the previous tree and was not expected next, in which case it
+     *         is dropped together with all other strings the current tree has not used
+     */
+    private boolean use(int code) {
+        if (code < used) {
+            return true;
         }
-        dataBuffer.write(str.getByteArray(), str.getStartOffset(), str.getLength());
-        int slotIndex = stringEndOffsets.getSize();
+        if (code == used) {
+            ++used;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Appends the string that was just written to the data buffer.
+     */
+    private int add(int hash) {
+        int code = size;
         try {
-            dataBufferOut.writeInt(slotIndex);
+            dataBufferOut.writeInt(code);
         } catch (IOException e) {
             throw new IllegalStateException(e);
         }
-        stringEndOffsets.append(dataBuffer.size());
-        sortedSlotIndexes.insert(index, slotIndex);
+        if (code == stringEndOffsets.length) {
+            int capacity = code * 2;
+            stringEndOffsets = Arrays.copyOf(stringEndOffsets, capacity);
+            stringHashes = Arrays.copyOf(stringHashes, capacity);
+            stringSlots = Arrays.copyOf(stringSlots, capacity);
+        }
+        stringEndOffsets[code] = dataBuffer.size();
+        stringHashes[code] = hash;
+        size = code + 1;
+        used = size;
+        if (size * 2 > table.length) {
+            table = new int[table.length * 2];
+            for (int i = 0; i < size; ++i) {
+                insert(i);
+            }
+        } else {
+            insert(code);
+        }
+        cacheReady = false;
+        sorted = false;
+        return code;
+    }
+
+    private void insert(int code) {
+        int mask = table.length - 1;
+        int slot = mix(stringHashes[code]) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = code + 1;
+        stringSlots[code] = slot;
+    }
+
+    /**
+     * Removes the strings from the previous tree that the current tree has not used.
+     */
+    private void dropUnused() {
+        if (used == size) {
+            return;
+        }
+        for (int i = 0; i < size; ++i) {
+            table[stringSlots[i]] = 0;
+        }
+        for (int i = 0; i < used; ++i) {
+            insert(i);
+        }
+        // The strings that are kept have the lowest codes, so they already are at the start of the data buffer.
+        dataBuffer.truncate(getStringStart(used));
+        size = used;
         cacheReady = false;
-        return slotIndex;
+        sorted = false;
+    }
+
+    private int getStringStart(int code) {
+        return code == 0 ? 0 : stringEndOffsets[code - 1];
+    }
+
+    private boolean equals(int code, String str) {
+        byte[] data = dataBuffer.getByteArray();
+        int start = getStringStart(code);
+        int utfLength = UTF8StringUtil.getUTFLength(data, start);
+        int pos = start + UTF8StringUtil.getNumBytesToStoreLength(utfLength);
+        int end = pos + utfLength;
+        int length = str.length();
+        int i = 0;
+        while (pos < end) {
+            if (i == length || charAt(data, pos) != str.charAt(i)) {
+                return false;
+            }
+            pos += charSize(data, pos);
+            ++i;
+        }
+        return i == length;
+    }
+
+    private boolean equals(int code, byte[] bytes, int start, int length) {
+        byte[] data = dataBuffer.getByteArray();
+        int dataStart = getStringStart(code);
+        if (stringEndOffsets[code] - 4 - dataStart != length) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (data[dataStart + i] != bytes[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same value as {@link String#hashCode()} of the string with the given UTF-8 representation.
+     */
+    private static int hash(byte[] bytes, int start) {
+        int utfLength = UTF8StringUtil.getUTFLength(bytes, start);
+        int pos = start + UTF8StringUtil.getNumBytesToStoreLength(utfLength);
+        int end = pos + utfLength;
+        int h = 0;
+        while (pos < end) {
+            h = 31 * h + charAt(bytes, pos);
+            pos += charSize(bytes, pos);
+        }
+        return h;
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static char charAt(byte[] bytes, int pos) {
+        int b = bytes[pos] & 0xff;
+        switch (b >> 4) {
+            case 12:
+            case 13:
+                return (char) (((b & 0x1f) << 6) | (bytes[pos + 1] & 0x3f));
+            case 14:
+                return (char) (((b & 0x0f) << 12) | ((bytes[pos + 1] & 0x3f) << 6) | (bytes[pos + 2] & 0x3f));
+            default:
+                return (char) b;
+        }
+    }
+
+    private static int charSize(byte[] bytes, int pos) {
+        switch ((bytes[pos] & 0xff) >> 4) {
+            case 12:
+            case 13:
+                return 2;
+            case 14:
+                return 3;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Compares two strings by their characters, like {@link String#compareTo(String)}.
+     */
+    private int compare(int code1, int code2) {
+        byte[] data = dataBuffer.getByteArray();
+        int start1 = getStringStart(code1);
+        int length1 = UTF8StringUtil.getUTFLength(data, start1);
+        int pos1 = start1 + UTF8StringUtil.getNumBytesToStoreLength(length1);
+        int end1 = pos1 + length1;
+        int start2 = getStringStart(code2);
+        int length2 = UTF8StringUtil.getUTFLength(data, start2);
+        int pos2 = start2 + UTF8StringUtil.getNumBytesToStoreLength(length2);
+        int end2 = pos2 + length2;
+        while (pos1 < end1 && pos2 < end2) {
+            int c = charAt(data, pos1) - charAt(data, pos2);
+            if (c != 0) {
+                return c;
+            }
+            pos1 += charSize(data, pos1);
+            pos2 += charSize(data, pos2);
+        }
+        return (end1 - pos1) - (end2 - pos2);
+    }
+
+    private void sort() {
+        if (sorted) {
+            return;
+        }
+        if (sortedCodes.length < size) {
+            sortedCodes = new int[stringEndOffsets.length];
+            sortBuffer = new int[stringEndOffsets.length];
+        }
+        for (int i = 0; i < size; ++i) {
+            sortedCodes[i] = i;
+        }
+        mergeSort(0, size);
+        sorted = true;
+    }
+
+    private void mergeSort(int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(from, middle);
+        mergeSort(middle, to);
+        if (compare(sortedCodes[middle - 1], sortedCodes[middle]) <= 0) {
+            return;
+        }
+        System.arraycopy(sortedCodes, from, sortBuffer, from, to - from);
+        int i = from;
+        int j = middle;
+        for (int k = from; k < to; ++k) {
+            if (j >= to || (i < middle && compare(sortBuffer[i], sortBuffer[j]) <= 0)) {
+                sortedCodes[k] = sortBuffer[i++];
+            } else {
+                sortedCodes[k] = sortBuffer[j++];
+            }
+        }
+    }
+
+    private static class DataBuffer extends ByteArrayAccessibleOutputStream {
+        void truncate(int length) {
+            count = length;
+        }
     }
 }
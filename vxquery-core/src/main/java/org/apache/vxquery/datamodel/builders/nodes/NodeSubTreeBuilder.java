@@ -36,6 +36,9 @@ public class NodeSubTreeBuilder extends AbstractNodeBuilder {
     public void setChildNode(NodeTreePointable ntp, TaggedValuePointable itemTvp) throws IOException {
         boolean hasDictionary = ntp.dictionaryExists() && hasDictionary(itemTvp.getTag());
         byte header = (byte) (hasDictionary ? NodeTreePointable.HEADER_DICTIONARY_EXISTS_MASK : 0);
+        if (hasDictionary && ntp.sharedDictionaryExists()) {
+            header |= NodeTreePointable.HEADER_SHARED_DICTIONARY_EXISTS_MASK;
+        }
         // TODO add all header flags to this setting.
         boolean hasNodeIds = ntp.nodeIdExists();
         if (hasNodeIds) {
@@ -43,7 +46,7 @@ public class NodeSubTreeBuilder extends AbstractNodeBuilder {
         }
         out.write(header);
         if (hasNodeIds) {
-            out.writeInt(ntp.getRootNodeId());
+            out.writeLong(ntp.getRootNodeId());
         }
         if (hasDictionary) {
             out.write(ntp.getByteArray(), ntp.getDictionaryOffset(), ntp.getDictionarySize());
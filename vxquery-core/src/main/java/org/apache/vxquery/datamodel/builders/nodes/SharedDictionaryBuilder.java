@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.datamodel.builders.nodes;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hyracks.api.context.IHyracksJobletContext;
+import org.apache.hyracks.data.std.primitive.IntegerPointable;
+import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+
+/**
+ * Dictionary shared by all node trees parsed from one collection by one job on this node. Strings keep their code for
+ * the life of the job, so a tree only stores a reference to the dictionary: its id, the number of strings it had when
+ * the tree was written and the hash of these strings. The dictionary itself is published in a
+ * {@link SharedDictionaryRegistry}, where {@link org.apache.vxquery.datamodel.accessors.nodes.NodeTreePointable}
+ * resolves it.
+ * <p>
+ * The registry is local to the JVM. A tree read in another JVM fails instead of picking up another dictionary, so the
+ * compiler only enables the mode, with the {@value #SHARED_DICTIONARY_PROPERTY} system property, for plans that run
+ * on a single node.
+ */
+public class SharedDictionaryBuilder extends DictionaryBuilder {
+    public static final String SHARED_DICTIONARY_PROPERTY = "vxquery.shared_dictionary";
+
+    /**
+     * Size of the reference written in place of the dictionary: size, id, number of strings and hash.
+     */
+    public static final int REFERENCE_SIZE = 24;
+
+    private static final long HASH_SEED = 0xcbf29ce484222325L;
+
+    private final SharedDictionaryRegistry registry;
+    private final long id;
+    private final ArrayBackedValueStorage snapshot = new ArrayBackedValueStorage();
+    private long[] prefixHashes = new long[] { HASH_SEED };
+    private int publishedCount = -1;
+
+    SharedDictionaryBuilder(SharedDictionaryRegistry registry, long id) {
+        this.registry = registry;
+        this.id = id;
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(SHARED_DICTIONARY_PROPERTY);
+    }
+
+    /**
+     * @return the dictionary shared by the trees of the given collection in the job of the given joblet in this JVM
+     */
+    public static SharedDictionaryBuilder getInstance(IHyracksJobletContext jobletCtx, String collection) {
+        return SharedDictionaryRegistry.getDefault().getBuilder(jobletCtx, collection);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * The strings of the previous tree are kept, so their codes never change.
+     */
+    @Override
+    public void reset() {
+    }
+
+    @Override
+    public synchronized int lookup(String str) {
+        return super.lookup(str);
+    }
+
+    @Override
+    public synchronized int lookup(UTF8StringPointable str) {
+        return super.lookup(str);
+    }
+
+    @Override
+    public synchronized int getEntryCount() {
+        return super.getEntryCount();
+    }
+
+    /**
+     * Writes the whole dictionary, for a tree that does not refer to the shared one.
+     */
+    @Override
+    public synchronized void writeFromCache(ArrayBackedValueStorage abvs) throws IOException {
+        super.writeFromCache(abvs);
+    }
+
+    /**
+     * Writes a reference to the dictionary, publishing it first if strings were added since it was last published.
+     * If the registry has no room for the grown dictionary, the whole dictionary is written instead.
+     *
+     * @return true if a reference was written, false if the dictionary was written
+     */
+    public synchronized boolean writeReference(ArrayBackedValueStorage abvs) throws IOException {
+        int count = super.getEntryCount();
+        if (count != publishedCount) {
+            snapshot.reset();
+            write(snapshot);
+            byte[] dictionary = Arrays.copyOfRange(snapshot.getByteArray(), snapshot.getStartOffset(),
+                    snapshot.getStartOffset() + snapshot.getLength());
+            hashStrings(dictionary, count);
+            if (!registry.publish(id, dictionary, Arrays.copyOf(prefixHashes, count + 1))) {
+                super.writeFromCache(abvs);
+                return false;
+            }
+            publishedCount = count;
+        }
+        DataOutput out = abvs.getDataOutput();
+        out.writeInt(REFERENCE_SIZE);
+        out.writeLong(id);
+        out.writeInt(count);
+        out.writeLong(prefixHashes[count]);
+        return true;
+    }
+
+    /**
+     * Extends the hashes of the string prefixes to the given number of strings. A string is hashed with its bytes in
+     * the data area of the dictionary.
+     */
+    private void hashStrings(byte[] dictionary, int count) {
+        int hashed = prefixHashes.length - 1;
+        if (count <= hashed) {
+            return;
+        }
+        prefixHashes = Arrays.copyOf(prefixHashes, count + 1);
+        int dataStart = 8 + count * 8;
+        long h = prefixHashes[hashed];
+        int start = hashed == 0 ? 0 : IntegerPointable.getInteger(dictionary, 8 + (hashed - 1) * 4);
+        for (int i = hashed; i < count; ++i) {
+            int end = IntegerPointable.getInteger(dictionary, 8 + i * 4);
+            for (int j = dataStart + start; j < dataStart + end; ++j) {
+                h ^= dictionary[j] & 0xff;
+                h *= 0x100000001b3L;
+            }
+            prefixHashes[i + 1] = h;
+            start = end;
+        }
+    }
+}
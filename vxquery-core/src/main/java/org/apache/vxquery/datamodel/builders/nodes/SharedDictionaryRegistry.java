@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.datamodel.builders.nodes;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.hyracks.api.context.IHyracksJobletContext;
+
+/**
+ * The shared dictionaries of one JVM, by job and collection and by id. A tree refers to its dictionary by id, number
+ * of strings and the hash of these strings. The id only depends on the job and the collection name, so another JVM may
+ * hold a different dictionary under the same id. The hash tells them apart, and a tree is only resolved against a
+ * dictionary that starts with exactly the strings the tree was written with.
+ * <p>
+ * The dictionaries of a job are dropped when the node cleans up the job. Their total size is limited by the
+ * {@value #SIZE_PROPERTY} system property, beyond which trees carry their own dictionary.
+ */
+public class SharedDictionaryRegistry {
+    public static final String SIZE_PROPERTY = "vxquery.shared_dictionary_size";
+
+    private static final SharedDictionaryRegistry DEFAULT =
+            new SharedDictionaryRegistry(Long.getLong(SIZE_PROPERTY, 64L << 20));
+
+    private final long maxSize;
+    private final Map<Long, Map<String, SharedDictionaryBuilder>> jobs = new ConcurrentHashMap<>();
+    private final Map<Long, Published> dictionaries = new ConcurrentHashMap<>();
+    private long size;
+
+    public SharedDictionaryRegistry(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the registry of this JVM
+     */
+    public static SharedDictionaryRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return the dictionary shared by the trees of the given collection in the job of the given joblet, which is
+     *         released when the joblet is cleaned up
+     */
+    public SharedDictionaryBuilder getBuilder(IHyracksJobletContext jobletCtx, String collection) {
+        long jobId = jobletCtx.getJobId().getId();
+        Map<String, SharedDictionaryBuilder> builders = jobs.computeIfAbsent(jobId, j -> {
+            jobletCtx.registerDeallocatable(() -> release(j));
+            return new ConcurrentHashMap<>();
+        });
+        return builders.computeIfAbsent(collection, c -> new SharedDictionaryBuilder(this, getId(jobId, c)));
+    }
+
+    /**
+     * @return the dictionary shared by the trees of the given collection in the given job
+     */
+    public SharedDictionaryBuilder getBuilder(long jobId, String collection) {
+        return jobs.computeIfAbsent(jobId, j -> new ConcurrentHashMap<>()).computeIfAbsent(collection,
+                c -> new SharedDictionaryBuilder(this, getId(jobId, c)));
+    }
+
+    /**
+     * Drops the dictionaries of the given job.
+     */
+    public synchronized void release(long jobId) {
+        Map<String, SharedDictionaryBuilder> builders = jobs.remove(jobId);
+        if (builders == null) {
+            return;
+        }
+        for (SharedDictionaryBuilder builder : builders.values()) {
+            Published published = dictionaries.remove(builder.getId());
+            if (published != null) {
+                size -= published.dictionary.length;
+            }
+        }
+    }
+
+    /**
+     * @return the total size of the published dictionaries in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the published dictionary with the given id, in the layout written by {@link DictionaryBuilder#write},
+     *         if its first {@code count} strings have the given hash, or null
+     */
+    public byte[] getDictionary(long id, int count, long hash) {
+        Published published = dictionaries.get(id);
+        if (published == null || published.prefixHashes.length <= count || published.prefixHashes[count] != hash) {
+            return null;
+        }
+        return published.dictionary;
+    }
+
+    /**
+     * Replaces the published version of a dictionary.
+     *
+     * @return false, keeping the previous version, if the dictionary does not fit in the registry
+     */
+    synchronized boolean publish(long id, byte[] dictionary, long[] prefixHashes) {
+        Published previous = dictionaries.get(id);
+        long newSize = size - (previous == null ? 0 : previous.dictionary.length) + dictionary.length;
+        if (newSize > maxSize) {
+            return false;
+        }
+        dictionaries.put(id, new Published(dictionary, prefixHashes));
+        size = newSize;
+        return true;
+    }
+
+    /**
+     * @return the 64-bit FNV-1a hash of the job id and the collection name
+     */
+    static long getId(long jobId, String collection) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < 8; ++i) {
+            h ^= (jobId >>> (i * 8)) & 0xff;
+            h *= 0x100000001b3L;
+        }
+        for (int i = 0; i < collection.length(); ++i) {
+            h ^= collection.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static class Published {
+        final byte[] dictionary;
+        /**
+         * Hash of the first i strings at index i.
+         */
+        final long[] prefixHashes;
+
+        Published(byte[] dictionary, long[] prefixHashes) {
+            this.dictionary = dictionary;
+            this.prefixHashes = prefixHashes;
+        }
+    }
+}
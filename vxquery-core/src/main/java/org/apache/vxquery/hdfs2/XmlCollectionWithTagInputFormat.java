@@ -32,6 +32,7 @@ import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 
 import java.io.IOException;
+import java.util.Arrays;
 import org.apache.hadoop.fs.BlockLocation;
 import org.apache.hadoop.fs.FileStatus;
 
@@ -66,6 +67,8 @@ public class XmlCollectionWithTagInputFormat extends TextInputFormat {
         private final long end;
         private final FSDataInputStream fsin;
         private final DataOutputBuffer buffer = new DataOutputBuffer();
+        private int[] recordEnds = new int[16];
+        private int recordCount;
         private LongWritable currentKey;
         private Text currentValue;
         BlockLocation[] blocks;
@@ -92,25 +95,44 @@ public class XmlCollectionWithTagInputFormat extends TextInputFormat {
          * Get next block item
          *
          * @param key
-         * @param value
          * @return
          * @throws IOException
          */
-        private boolean next(LongWritable key, Text value) throws IOException {
+        private boolean next(LongWritable key) throws IOException {
+            buffer.reset();
+            recordCount = 0;
             if (fsin.getPos() < end) {
-                try {
-                    if (readBlock(true)) {
-                        key.set(fsin.getPos());
-                        value.set(buffer.getData(), 0, buffer.getLength());
-                        return true;
-                    }
-                } finally {
-                    buffer.reset();
+                if (readBlock(true)) {
+                    key.set(fsin.getPos());
+                    return true;
                 }
             }
             return false;
         }
 
+        /**
+         * The current value holds the records found by the reader back to back. Together with
+         * {@link #getRecordCount()} and {@link #getRecordEnd(int)} this gives the records without copying or
+         * searching the value again.
+         *
+         * @return the bytes of the current value, valid until the next call to {@link #nextKeyValue()}
+         */
+        public byte[] getValueBytes() {
+            return buffer.getData();
+        }
+
+        public int getRecordCount() {
+            return recordCount;
+        }
+
+        public int getRecordStart(int index) {
+            return index == 0 ? 0 : recordEnds[index - 1];
+        }
+
+        public int getRecordEnd(int index) {
+            return recordEnds[index];
+        }
+
         @Override
         public void close() throws IOException {
             Closeables.close(fsin, true);
@@ -136,6 +158,10 @@ public class XmlCollectionWithTagInputFormat extends TextInputFormat {
                     if (readUntilMatch(startTag, false)) {
                         buffer.write(startTag);
                         readUntilMatch(endTag, true);
+                        if (recordCount == recordEnds.length) {
+                            recordEnds = Arrays.copyOf(recordEnds, recordCount * 2);
+                        }
+                        recordEnds[recordCount++] = buffer.getLength();
                         read = true;
                     }
                 } else {
@@ -200,6 +226,10 @@ public class XmlCollectionWithTagInputFormat extends TextInputFormat {
 
         @Override
         public Text getCurrentValue() throws IOException, InterruptedException {
+            if (currentValue == null) {
+                currentValue = new Text();
+                currentValue.set(buffer.getData(), 0, buffer.getLength());
+            }
             return currentValue;
         }
 
@@ -210,8 +240,8 @@ public class XmlCollectionWithTagInputFormat extends TextInputFormat {
         @Override
         public boolean nextKeyValue() throws IOException, InterruptedException {
             currentKey = new LongWritable();
-            currentValue = new Text();
-            return next(currentKey, currentValue);
+            currentValue = null;
+            return next(currentKey);
         }
     }
 }
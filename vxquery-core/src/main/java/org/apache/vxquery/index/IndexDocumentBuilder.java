@@ -34,6 +34,7 @@ import org.apache.hyracks.data.std.primitive.VoidPointable;
 import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.vxquery.datamodel.accessors.PointablePool;
@@ -106,6 +107,12 @@ public class IndexDocumentBuilder extends XMLSerializer {
     public void printStart() throws IOException {
 
         doc.add(new StringField(Constants.FIELD_PATH, filePath, Field.Store.YES));
+        //The parsed node tree is stored after its layout version, so a hit is replayed without rebuilding it from
+        //the item paths.
+        byte[] tree = new byte[lstart + 1];
+        tree[0] = Constants.NODE_TREE_LAYOUT;
+        System.arraycopy(bstart, sstart, tree, 1, lstart);
+        doc.add(new StoredField(Constants.FIELD_NODE_TREE, tree));
         print(bstart, sstart, lstart, "0", "");
         for (int i = 1; i < results.size(); i++) {
             //TODO: Since each doc is a file,
@@ -323,7 +330,7 @@ public class IndexDocumentBuilder extends XMLSerializer {
         //Add this element to the array (they will be added in reverse order.
         String fullItem = luceneParentPath + path + "." + test.type();
 
-        results.add(new ComplexItem(new StringField("item", fullItem, Field.Store.YES), test.id()));
+        results.add(new ComplexItem(new StringField("item", fullItem, Field.Store.NO), test.id()));
     }
 
     private String[] printDecimal(TaggedValuePointable tvp, String path) throws IOException {
@@ -17,6 +17,7 @@ package org.apache.vxquery.jsonparser;
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -24,9 +25,6 @@ import java.util.Arrays;
 import java.util.List;
 
 import org.apache.commons.lang3.ArrayUtils;
-import org.apache.htrace.fasterxml.jackson.core.JsonFactory;
-import org.apache.htrace.fasterxml.jackson.core.JsonParser;
-import org.apache.htrace.fasterxml.jackson.core.JsonToken;
 import org.apache.hyracks.api.comm.IFrameFieldAppender;
 import org.apache.hyracks.api.comm.IFrameWriter;
 import org.apache.hyracks.api.exceptions.HyracksDataException;
@@ -43,6 +41,10 @@ import org.apache.vxquery.datamodel.values.ValueTag;
 import org.apache.vxquery.datamodel.values.XDMConstants;
 import org.apache.vxquery.xmlparser.IParser;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
 public class JSONParser implements IParser {
     final JsonFactory factory;
     final List<Byte[]> valueSeq;
@@ -140,20 +142,52 @@ public class JSONParser implements IParser {
 
     public int parse(Reader input, ArrayBackedValueStorage result, IFrameWriter writer, IFrameFieldAppender appender)
             throws HyracksDataException {
+        return parse(createParser(input), result, writer, appender);
+    }
+
+    /**
+     * Parses the UTF-8 bytes of the input without decoding them into chars first. The input may hold several JSON
+     * values, such as the lines of a newline-delimited JSON file.
+     */
+    public int parse(InputStream input, ArrayBackedValueStorage result, IFrameWriter writer,
+            IFrameFieldAppender appender) throws HyracksDataException {
+        return parse(createParser(input), result, writer, appender);
+    }
+
+    private int parse(JsonParser parser, ArrayBackedValueStorage result, IFrameWriter writer,
+            IFrameFieldAppender appender) throws HyracksDataException {
         this.writer = writer;
         this.appender = appender;
         if (this.valueSeq != null) {
-            return parseElements(input, result);
+            return parseElements(parser, result);
         } else {
-            return parse(input, result);
+            return parse(parser, result);
+        }
+    }
+
+    private JsonParser createParser(Reader input) throws HyracksDataException {
+        try {
+            return factory.createParser(input);
+        } catch (IOException e) {
+            throw new HyracksDataException(e);
+        }
+    }
+
+    private JsonParser createParser(InputStream input) throws HyracksDataException {
+        try {
+            return factory.createParser(input);
+        } catch (IOException e) {
+            throw new HyracksDataException(e);
         }
     }
 
     public int parse(Reader input, ArrayBackedValueStorage result) throws HyracksDataException {
+        return parse(createParser(input), result);
+    }
+
+    private int parse(JsonParser input, ArrayBackedValueStorage result) throws HyracksDataException {
         int items = 0;
-        try {
-            DataOutput outResult = result.getDataOutput();
-            JsonParser parser = factory.createParser(input);
+        try (JsonParser parser = input) {
             JsonToken token = parser.nextToken();
             checkItem = null;
             levelArray = 0;
@@ -222,7 +256,6 @@ public class JSONParser implements IParser {
                 token = parser.nextToken();
             }
             sb.finish();
-            outResult.write(result.getByteArray());
         } catch (Exception e) {
             throw new HyracksDataException("Accessing or writing in out of bounds space", e);
         }
@@ -230,9 +263,16 @@ public class JSONParser implements IParser {
     }
 
     public int parseElements(Reader input, ArrayBackedValueStorage result) throws HyracksDataException {
+        return parseElements(createParser(input), result);
+    }
+
+    /**
+     * Emits the items selected by the projection as tuples, each one as soon as it is complete. Arrays and objects
+     * off the projected path are skipped by the tokenizer without building them.
+     */
+    private int parseElements(JsonParser input, ArrayBackedValueStorage result) throws HyracksDataException {
         int items = 0;
-        try {
-            JsonParser parser = factory.createParser(input);
+        try (JsonParser parser = input) {
             JsonToken token = parser.nextToken();
             checkItem = null;
 
@@ -248,10 +288,14 @@ public class JSONParser implements IParser {
                 }
                 switch (token) {
                     case START_ARRAY:
-                        startArray();
+                        if (!startArray()) {
+                            skipArray(parser);
+                        }
                         break;
                     case START_OBJECT:
-                        startObject();
+                        if (!startObject()) {
+                            skipObject(parser);
+                        }
                         break;
                     case FIELD_NAME:
                         startFieldName(parser);
@@ -340,6 +384,31 @@ public class JSONParser implements IParser {
         return items;
     }
 
+    /**
+     * Skips the rest of an array that was just started and is off the projected path.
+     */
+    private void skipArray(JsonParser parser) throws IOException {
+        parser.skipChildren();
+        if (!allKeys.isEmpty()) {
+            allKeys.remove(allKeys.size() - 1);
+        }
+        this.arrayCounters.remove(levelArray - 1);
+        itemStack.remove(itemStack.size() - 1);
+        levelArray--;
+    }
+
+    /**
+     * Skips the rest of an object that was just started and is off the projected path.
+     */
+    private void skipObject(JsonParser parser) throws IOException {
+        parser.skipChildren();
+        if (!allKeys.isEmpty()) {
+            allKeys.remove(allKeys.size() - 1);
+        }
+        itemStack.remove(itemStack.size() - 1);
+        levelObject--;
+    }
+
     private boolean pathMatch() {
         outputStream.reset();
         for (Byte[] bb : allKeys) {
@@ -436,7 +505,10 @@ public class JSONParser implements IParser {
         }
     }
 
-    public void startArray() throws HyracksDataException {
+    /**
+     * @return false if the array is off the projected path
+     */
+    public boolean startArray() throws HyracksDataException {
         levelArray++;
         if (levelArray > abStack.size()) {
             abStack.add(new ArrayBuilder());
@@ -446,17 +518,22 @@ public class JSONParser implements IParser {
         }
         startArrayOrObjects(2);
         itemStack.add(itemType.ARRAY);
-        if (this.pathMatch() || this.valueSeq == null) {
-            abvsStack.get(levelArray + levelObject).reset();
-            try {
-                abStack.get(levelArray - 1).reset(abvsStack.get(levelArray + levelObject));
-            } catch (Exception e) {
-                throw new HyracksDataException("Accessing index out of bounds", e);
-            }
+        if (this.valueSeq != null && !this.pathMatch()) {
+            return false;
+        }
+        abvsStack.get(levelArray + levelObject).reset();
+        try {
+            abStack.get(levelArray - 1).reset(abvsStack.get(levelArray + levelObject));
+        } catch (Exception e) {
+            throw new HyracksDataException("Accessing index out of bounds", e);
         }
+        return true;
     }
 
-    public void startObject() throws HyracksDataException {
+    /**
+     * @return false if the object is off the projected path
+     */
+    public boolean startObject() throws HyracksDataException {
         levelObject++;
         if (levelObject > obStack.size()) {
             obStack.add(new ObjectBuilder());
@@ -466,14 +543,16 @@ public class JSONParser implements IParser {
         }
         startArrayOrObjects(1);
         itemStack.add(itemType.OBJECT);
-        if (this.pathMatch() || this.valueSeq == null) {
-            abvsStack.get(levelArray + levelObject).reset();
-            try {
-                obStack.get(levelObject - 1).reset(abvsStack.get(levelArray + levelObject));
-            } catch (Exception e) {
-                throw new HyracksDataException("Accessing index out of bounds", e);
-            }
+        if (this.valueSeq != null && !this.pathMatch()) {
+            return false;
+        }
+        abvsStack.get(levelArray + levelObject).reset();
+        try {
+            obStack.get(levelObject - 1).reset(abvsStack.get(levelArray + levelObject));
+        } catch (Exception e) {
+            throw new HyracksDataException("Accessing index out of bounds", e);
         }
+        return true;
     }
 
     public void startFieldName(JsonParser parser) throws HyracksDataException {
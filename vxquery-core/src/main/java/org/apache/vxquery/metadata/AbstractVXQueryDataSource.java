@@ -22,6 +22,7 @@ import org.apache.hyracks.algebricks.core.algebra.base.LogicalVariable;
 import org.apache.hyracks.algebricks.core.algebra.metadata.IDataSourcePropertiesProvider;
 import org.apache.hyracks.algebricks.core.algebra.properties.FunctionalDependency;
 import org.apache.hyracks.algebricks.core.algebra.properties.INodeDomain;
+import org.apache.vxquery.xmlparser.RecordPredicate;
 
 public abstract class AbstractVXQueryDataSource implements IVXQueryDataSource {
     protected static final String DELIMITER = "\\|";
@@ -34,6 +35,7 @@ public abstract class AbstractVXQueryDataSource implements IVXQueryDataSource {
     protected List<Byte[]> indexValueSeq;
     protected List<Integer> indexAttsSeq;
     protected List<Byte[]> valueSeq;
+    protected List<RecordPredicate> predicateSeq;
     protected int totalDataSources;
     protected String tag;
 
@@ -134,6 +136,14 @@ public abstract class AbstractVXQueryDataSource implements IVXQueryDataSource {
         return valueSeq;
     }
 
+    public void addPredicateSeq(RecordPredicate predicate) {
+        predicateSeq.add(predicate);
+    }
+
+    public List<RecordPredicate> getPredicateSeq() {
+        return predicateSeq;
+    }
+
     public String[] getPartitions() {
         return collectionPartitions;
     }
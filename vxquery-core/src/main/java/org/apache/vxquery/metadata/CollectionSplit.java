@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.metadata;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.vxquery.xmlparser.XMLRecordReader;
+
+/**
+ * Share of a collection directory read by one partition. A directory that is listed n times in the collection is
+ * read by n partitions on each node. Each of them parses every n-th file of the directory, except for
+ * newline-delimited JSON files and, for fn:collection-with-tag, XML files: those are cut into n byte ranges of whole
+ * lines or records and every partition parses one range of each file. A partition may cut its range further, to
+ * parse the pieces in parallel.
+ */
+public class CollectionSplit {
+    private static final int ALIGN_BUFFER_SIZE = 4096;
+
+    private final int index;
+    private final int count;
+    private final String tag;
+    private int fileCounter;
+
+    public CollectionSplit(int index, int count) {
+        this(index, count, null);
+    }
+
+    public CollectionSplit(int index, int count, String tag) {
+        this.index = index;
+        this.count = count;
+        this.tag = tag;
+    }
+
+    /**
+     * @return the split of the directory read by the given partition
+     */
+    public static CollectionSplit create(String[] collectionPartitions, int partition, String tag) {
+        int position = partition % collectionPartitions.length;
+        String directory = collectionPartitions[position];
+        int index = 0;
+        int count = 0;
+        for (int i = 0; i < collectionPartitions.length; ++i) {
+            if (collectionPartitions[i].equals(directory)) {
+                if (i < position) {
+                    ++index;
+                }
+                ++count;
+            }
+        }
+        return new CollectionSplit(index, count, tag);
+    }
+
+    public static boolean isNDJSON(String fileName) {
+        String name = fileName.toLowerCase();
+        return name.endsWith(".ndjson") || name.endsWith(".jsonl");
+    }
+
+    /**
+     * @return the record tag of fn:collection-with-tag, or null
+     */
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * @return true if the file is an XML file whose records are read one by one
+     */
+    public boolean isRecordFile(String fileName) {
+        return tag != null && fileName.toLowerCase().endsWith(".xml");
+    }
+
+    /**
+     * Starts a new pass over the files of the directory.
+     */
+    public void reset() {
+        fileCounter = 0;
+    }
+
+    /**
+     * Must be called for the files of the directory in the same order on every partition.
+     *
+     * @return true if this partition reads the file, or its range of the file
+     */
+    public boolean accept(File file) {
+        if (count == 1 || isNDJSON(file.getName()) || isRecordFile(file.getName())) {
+            return true;
+        }
+        return fileCounter++ % count == index;
+    }
+
+    /**
+     * Opens the file, or the range of lines this partition reads from a newline-delimited JSON file.
+     */
+    public InputStream open(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        if (count == 1 || !isNDJSON(file.getName())) {
+            return in;
+        }
+        try {
+            FileChannel channel = in.getChannel();
+            long[] range = getRange(file, channel, 0, 1);
+            channel.position(range[0]);
+            return new BoundedInputStream(in, range[1] - range[0]);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the byte range of one of the given number of pieces of this partition's range of a newline-delimited
+     * JSON file or record file. The pieces of all partitions together cover the file.
+     *
+     * @return the start and end offset
+     */
+    public long[] getRange(File file, int piece, int pieces) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            return getRange(file, in.getChannel(), piece, pieces);
+        }
+    }
+
+    private long[] getRange(File file, FileChannel channel, int piece, int pieces) throws IOException {
+        long size = channel.size();
+        long first = (long) index * pieces + piece;
+        long total = (long) count * pieces;
+        if (isRecordFile(file.getName())) {
+            XMLRecordReader records = new XMLRecordReader(tag);
+            return new long[] { records.alignToRecord(channel, size * first / total),
+                    records.alignToRecord(channel, size * (first + 1) / total) };
+        }
+        return new long[] { alignToLine(channel, size * first / total, size),
+                alignToLine(channel, size * (first + 1) / total, size) };
+    }
+
+    /**
+     * @return the start of the first line that starts at or after the offset
+     */
+    static long alignToLine(FileChannel channel, long offset, long size) throws IOException {
+        if (offset <= 0 || offset >= size) {
+            return Math.min(Math.max(offset, 0), size);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(ALIGN_BUFFER_SIZE);
+        long position = offset - 1;
+        while (position < size) {
+            buffer.clear();
+            int n = channel.read(buffer, position);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; ++i) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += n;
+        }
+        return size;
+    }
+}
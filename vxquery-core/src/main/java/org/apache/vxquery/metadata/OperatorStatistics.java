@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.metadata;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+
+import org.apache.hyracks.api.comm.IFrameWriter;
+import org.apache.hyracks.api.context.IHyracksTaskContext;
+import org.apache.hyracks.api.dataflow.OperatorDescriptorId;
+import org.apache.hyracks.api.dataflow.value.RecordDescriptor;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+import org.apache.hyracks.api.job.profiling.counters.ICounter;
+import org.apache.hyracks.api.job.profiling.counters.ICounterContext;
+import org.apache.hyracks.dataflow.common.comm.io.FrameTupleAccessor;
+
+/**
+ * Counts the tuples an operator reads and writes, the frames and bytes it writes and the CPU time of its thread in the
+ * counters of the task. The counters are named "operator id.statistic", and the job profile reports them for every
+ * task. The CPU time leaves out the operators downstream, which run in the same thread when a frame is written, and
+ * the worker threads of a parallel collection scan.
+ */
+public class OperatorStatistics {
+    public static final String TUPLES_IN = "tuples-in";
+    public static final String TUPLES_OUT = "tuples-out";
+    public static final String FRAMES = "frames";
+    public static final String BYTES = "bytes";
+    public static final String CPU_TIME = "cpu-time";
+    /** Bytes an operator writes to run files, none of the VXQuery operators spills. */
+    public static final String SPILL_BYTES = "spill-bytes";
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final ICounter tuplesIn;
+    private final ICounter tuplesOut;
+    private final ICounter frames;
+    private final ICounter bytes;
+    private final ICounter cpuTime;
+    private final boolean cpuTimeSupported = THREADS.isCurrentThreadCpuTimeSupported();
+    private long begin;
+    private long downstream;
+
+    public OperatorStatistics(IHyracksTaskContext ctx, OperatorDescriptorId operatorId) {
+        ICounterContext counters = ctx.getCounterContext();
+        tuplesIn = counters.getCounter(getCounterName(operatorId, TUPLES_IN), true);
+        tuplesOut = counters.getCounter(getCounterName(operatorId, TUPLES_OUT), true);
+        frames = counters.getCounter(getCounterName(operatorId, FRAMES), true);
+        bytes = counters.getCounter(getCounterName(operatorId, BYTES), true);
+        cpuTime = counters.getCounter(getCounterName(operatorId, CPU_TIME), true);
+    }
+
+    public static String getCounterName(OperatorDescriptorId operatorId, String statistic) {
+        return operatorId + "." + statistic;
+    }
+
+    /**
+     * Starts measuring the CPU time of a call into the operator.
+     */
+    public void begin() {
+        begin = getCpuTime();
+        downstream = 0;
+    }
+
+    /**
+     * Adds the CPU time since {@link #begin()}, without the time spent in the output writer.
+     */
+    public void end() {
+        if (cpuTimeSupported) {
+            cpuTime.update(getCpuTime() - begin - downstream);
+        }
+    }
+
+    public void addTuplesIn(int count) {
+        tuplesIn.update(count);
+    }
+
+    /**
+     * @return a writer passing the frames to the given writer and counting them as the output of the operator
+     */
+    public IFrameWriter wrap(IFrameWriter writer, RecordDescriptor recordDesc) {
+        return new CountingFrameWriter(writer, recordDesc);
+    }
+
+    private long getCpuTime() {
+        return cpuTimeSupported ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+
+    private class CountingFrameWriter implements IFrameWriter {
+        private final IFrameWriter writer;
+        private final FrameTupleAccessor fta;
+
+        CountingFrameWriter(IFrameWriter writer, RecordDescriptor recordDesc) {
+            this.writer = writer;
+            this.fta = new FrameTupleAccessor(recordDesc);
+        }
+
+        @Override
+        public void open() throws HyracksDataException {
+            long start = getCpuTime();
+            try {
+                writer.open();
+            } finally {
+                downstream += getCpuTime() - start;
+            }
+        }
+
+        @Override
+        public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
+            fta.reset(buffer);
+            tuplesOut.update(fta.getTupleCount());
+            frames.update(1);
+            bytes.update(buffer.capacity());
+            long start = getCpuTime();
+            try {
+                writer.nextFrame(buffer);
+            } finally {
+                downstream += getCpuTime() - start;
+            }
+        }
+
+        @Override
+        public void fail() throws HyracksDataException {
+            writer.fail();
+        }
+
+        @Override
+        public void close() throws HyracksDataException {
+            long start = getCpuTime();
+            try {
+                writer.close();
+            } finally {
+                downstream += getCpuTime() - start;
+            }
+        }
+    }
+}
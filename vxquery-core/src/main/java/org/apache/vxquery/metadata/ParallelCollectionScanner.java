@@ -0,0 +1,393 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.metadata;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.TrueFileFilter;
+import org.apache.hyracks.api.comm.IFrame;
+import org.apache.hyracks.api.comm.IFrameFieldAppender;
+import org.apache.hyracks.api.comm.IFrameWriter;
+import org.apache.hyracks.api.comm.VSizeFrame;
+import org.apache.hyracks.api.context.IHyracksTaskContext;
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.hyracks.dataflow.common.comm.io.FrameFixedFieldTupleAppender;
+import org.apache.vxquery.context.StaticContext;
+import org.apache.vxquery.datamodel.builders.nodes.SharedDictionaryBuilder;
+import org.apache.vxquery.jsonparser.JSONParser;
+import org.apache.vxquery.xmlparser.ITreeNodeIdProvider;
+import org.apache.vxquery.xmlparser.RecordPredicate;
+import org.apache.vxquery.xmlparser.SynchronizedTreeNodeIdProvider;
+import org.apache.vxquery.xmlparser.XMLParser;
+
+/**
+ * Scans the files of a local collection directory with several parser threads. Each worker owns its own
+ * {@link XMLParser}/{@link JSONParser} and frame appender, and passes copies of the frames of a file through a bounded
+ * {@link FrameQueue}; a worker waits when the queue is full until the calling thread has handed the frames to the
+ * operator's writer. In ordered mode every task has its own queue and the tasks are forwarded in directory order; in
+ * unordered mode all tasks share one queue and the frames are forwarded as they come. At most two tasks per worker are
+ * in flight, so at most {@link #FRAMES_PER_TASK} frames per task are buffered. The records of an
+ * fn:collection-with-tag file are parsed in pieces by all workers.
+ */
+public class ParallelCollectionScanner {
+    protected static final Logger LOGGER = Logger.getLogger(ParallelCollectionScanner.class.getName());
+    private static final long PIECE_SIZE = 64L << 20;
+    private static final int FRAMES_PER_TASK = 16;
+
+    private final int parallelism;
+    private final boolean ordered;
+    private final BlockingQueue<Worker> workers;
+    private ExecutorService executor;
+
+    public ParallelCollectionScanner(IHyracksTaskContext ctx, int parallelism, boolean ordered, int fieldOutputCount,
+            ITreeNodeIdProvider nodeIdProvider, String nodeId, List<Integer> childSeq, List<Byte[]> valueSeq,
+            StaticContext staticContext) throws HyracksDataException {
+        this.parallelism = parallelism;
+        this.ordered = ordered;
+        this.workers = new ArrayBlockingQueue<>(parallelism);
+        ITreeNodeIdProvider sharedIdProvider = new SynchronizedTreeNodeIdProvider(nodeIdProvider);
+        for (int i = 0; i < parallelism; ++i) {
+            workers.add(new Worker(ctx, fieldOutputCount, sharedIdProvider, nodeId, childSeq, valueSeq,
+                    staticContext));
+        }
+    }
+
+    public void setSharedDictionary(SharedDictionaryBuilder sharedDictionary) {
+        for (Worker worker : workers) {
+            worker.parser.setSharedDictionary(sharedDictionary);
+        }
+    }
+
+    public void setPredicates(List<RecordPredicate> predicates) {
+        for (Worker worker : workers) {
+            worker.parser.setPredicates(predicates);
+        }
+    }
+
+    public void open() {
+        final String prefix = "vxquery-collection-scan-" + Thread.currentThread().getName() + "-";
+        executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            private int count = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, prefix + count++);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Stops the workers. A worker waiting for room in a queue is interrupted, which ends a scan that failed in the
+     * writer.
+     */
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    public void scan(File directory, CollectionSplit split, IFrameWriter writer, int tupleIndex)
+            throws HyracksDataException {
+        Iterator<File> it = FileUtils.iterateFiles(directory, new VXQueryIOFileFilter(), TrueFileFilter.INSTANCE);
+        split.reset();
+        final int maxInFlight = 2 * parallelism;
+        if (ordered) {
+            // The executor starts the tasks in order, so the first pending task is always running or done and
+            // forwarding its frames makes room for the others.
+            Deque<FrameQueue> pending = new ArrayDeque<>();
+            Deque<Future<Void>> futures = new ArrayDeque<>();
+            while (it.hasNext()) {
+                for (Task task : createTasks(it.next(), split, tupleIndex)) {
+                    if (pending.size() >= maxInFlight) {
+                        pending.removeFirst().forwardTask(writer);
+                        waitFor(futures.removeFirst());
+                    }
+                    FrameQueue frames = new FrameQueue(FRAMES_PER_TASK);
+                    futures.addLast(executor.submit(createCallable(task, frames)));
+                    pending.addLast(frames);
+                }
+            }
+            while (!pending.isEmpty()) {
+                pending.removeFirst().forwardTask(writer);
+                waitFor(futures.removeFirst());
+            }
+        } else {
+            // Every task ends with a marker in the shared queue, and a future completes for every marker.
+            FrameQueue frames = new FrameQueue(FRAMES_PER_TASK * parallelism);
+            CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+            int inFlight = 0;
+            while (it.hasNext()) {
+                for (Task task : createTasks(it.next(), split, tupleIndex)) {
+                    if (inFlight >= maxInFlight) {
+                        frames.forwardTask(writer);
+                        waitFor(take(completion));
+                        --inFlight;
+                    }
+                    completion.submit(createCallable(task, frames));
+                    ++inFlight;
+                }
+            }
+            while (inFlight > 0) {
+                frames.forwardTask(writer);
+                waitFor(take(completion));
+                --inFlight;
+            }
+        }
+    }
+
+    /**
+     * Creates the tasks that parse the file. Record files are cut into pieces of at most {@link #PIECE_SIZE} bytes,
+     * and at least one per worker, so that all workers parse a large file.
+     */
+    private List<Task> createTasks(final File file, final CollectionSplit split, final int tupleIndex) {
+        String fileName = file.getName().toLowerCase();
+        final boolean isXml = fileName.endsWith(".xml");
+        if (!isXml && !fileName.endsWith(".json") && !CollectionSplit.isNDJSON(fileName)) {
+            return Collections.emptyList();
+        }
+        if (!split.accept(file)) {
+            return Collections.emptyList();
+        }
+        if (split.isRecordFile(fileName)) {
+            final int pieces = (int) Math.max(parallelism,
+                    Math.min(Integer.MAX_VALUE, (file.length() + PIECE_SIZE - 1) / PIECE_SIZE));
+            List<Task> tasks = new ArrayList<>(pieces);
+            for (int i = 0; i < pieces; ++i) {
+                final int piece = i;
+                tasks.add(new Task() {
+                    @Override
+                    public void parse(Worker worker, IFrameWriter writer) throws HyracksDataException {
+                        worker.parseRecords(file, split, piece, pieces, writer, tupleIndex);
+                    }
+                });
+            }
+            return tasks;
+        }
+        return Collections.<Task> singletonList(new Task() {
+            @Override
+            public void parse(Worker worker, IFrameWriter writer) throws HyracksDataException {
+                if (isXml) {
+                    worker.parseXml(file, writer, tupleIndex);
+                } else {
+                    worker.parseJson(file, split, writer);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs the task on a free worker and marks its end in the queue, also when it fails.
+     */
+    private Callable<Void> createCallable(final Task task, final FrameQueue frames) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                try {
+                    Worker worker = workers.take();
+                    try {
+                        worker.parse(task, frames);
+                    } finally {
+                        workers.add(worker);
+                    }
+                } finally {
+                    frames.end();
+                }
+                return null;
+            }
+        };
+    }
+
+    private static Future<Void> take(CompletionService<Void> completion) throws HyracksDataException {
+        try {
+            return completion.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HyracksDataException(e);
+        }
+    }
+
+    private static void waitFor(Future<Void> future) throws HyracksDataException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HyracksDataException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof HyracksDataException) {
+                throw (HyracksDataException) e.getCause();
+            }
+            throw new HyracksDataException(e.getCause());
+        }
+    }
+
+    private interface Task {
+        void parse(Worker worker, IFrameWriter writer) throws HyracksDataException;
+    }
+
+    private static class Worker {
+        private final IFrame frame;
+        private final IFrameFieldAppender appender;
+        private final XMLParser parser;
+        private final JSONParser jparser;
+        private final ArrayBackedValueStorage jsonAbvs;
+
+        Worker(IHyracksTaskContext ctx, int fieldOutputCount, ITreeNodeIdProvider nodeIdProvider, String nodeId,
+                List<Integer> childSeq, List<Byte[]> valueSeq, StaticContext staticContext)
+                throws HyracksDataException {
+            frame = new VSizeFrame(ctx);
+            appender = new FrameFixedFieldTupleAppender(fieldOutputCount);
+            parser = new XMLParser(false, nodeIdProvider, nodeId, appender, childSeq, staticContext);
+            jparser = new JSONParser(valueSeq);
+            jsonAbvs = new ArrayBackedValueStorage();
+        }
+
+        void parse(Task task, IFrameWriter writer) throws HyracksDataException {
+            appender.reset(frame, true);
+            task.parse(this, writer);
+            if (appender.getTupleCount() > 0) {
+                appender.flush(writer);
+            }
+        }
+
+        void parseXml(File file, IFrameWriter writer, int tupleIndex) throws HyracksDataException {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Starting to read XML document: " + file.getAbsolutePath());
+            }
+            parser.parseElements(file, writer, tupleIndex);
+        }
+
+        void parseRecords(File file, CollectionSplit split, int piece, int pieces, IFrameWriter writer,
+                int tupleIndex) throws HyracksDataException {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Starting to read XML records " + piece + "/" + pieces + ": " + file.getAbsolutePath());
+            }
+            long[] range;
+            try {
+                range = split.getRange(file, piece, pieces);
+            } catch (IOException e) {
+                throw new HyracksDataException(e);
+            }
+            parser.parseRecords(file, split.getTag(), range[0], range[1], writer, tupleIndex);
+        }
+
+        void parseJson(File file, CollectionSplit split, IFrameWriter writer) throws HyracksDataException {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Starting to read JSON document: " + file.getAbsolutePath());
+            }
+            jsonAbvs.reset();
+            try (InputStream input = split.open(file)) {
+                jparser.parse(input, jsonAbvs, writer, appender);
+            } catch (FileNotFoundException e) {
+                throw new HyracksDataException(e.toString());
+            } catch (IOException e) {
+                throw new HyracksDataException(e);
+            }
+        }
+    }
+
+    /**
+     * Holds copies of the frames written by the workers until the scan thread forwards them. A worker writing to a
+     * full queue waits for the scan thread. The end of every task is marked in the queue.
+     */
+    private static class FrameQueue implements IFrameWriter {
+        private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+        private final BlockingQueue<ByteBuffer> frames;
+
+        FrameQueue(int capacity) {
+            frames = new ArrayBlockingQueue<>(capacity);
+        }
+
+        @Override
+        public void open() throws HyracksDataException {
+        }
+
+        @Override
+        public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
+            ByteBuffer copy = ByteBuffer.allocate(buffer.capacity());
+            copy.put(buffer.array(), 0, buffer.capacity());
+            copy.flip();
+            try {
+                frames.put(copy);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new HyracksDataException(e);
+            }
+        }
+
+        @Override
+        public void flush() throws HyracksDataException {
+        }
+
+        @Override
+        public void fail() throws HyracksDataException {
+        }
+
+        @Override
+        public void close() throws HyracksDataException {
+        }
+
+        void end() {
+            try {
+                frames.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Forwards the frames up to the next end of a task.
+         */
+        void forwardTask(IFrameWriter writer) throws HyracksDataException {
+            try {
+                for (ByteBuffer frame = frames.take(); frame != END; frame = frames.take()) {
+                    writer.nextFrame(frame);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new HyracksDataException(e);
+            }
+        }
+    }
+}
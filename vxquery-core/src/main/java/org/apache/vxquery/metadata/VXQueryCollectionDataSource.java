@@ -46,6 +46,7 @@ public class VXQueryCollectionDataSource extends AbstractVXQueryDataSource {
         this.tag = null;
         this.childSeq = new ArrayList<>();
         this.valueSeq = new ArrayList<>();
+        this.predicateSeq = new ArrayList<>();
     }
 
     public static VXQueryCollectionDataSource create(int id, String collection, Object type) {
@@ -55,7 +56,7 @@ public class VXQueryCollectionDataSource extends AbstractVXQueryDataSource {
     @Override
     public String toString() {
         return "VXQueryCollectionDataSource [collectionName=" + collectionName + ", childSeq=" + childSeq
-                + ", valueSeq=" + valueSeq + "]";
+                + ", valueSeq=" + valueSeq + ", predicateSeq=" + predicateSeq + "]";
     }
 
     public boolean usingIndex() {
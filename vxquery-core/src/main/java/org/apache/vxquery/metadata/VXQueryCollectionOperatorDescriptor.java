@@ -16,16 +16,12 @@
  */
 package org.apache.vxquery.metadata;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -33,9 +29,10 @@ import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.xml.namespace.QName;
+
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.TrueFileFilter;
-import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
@@ -43,12 +40,12 @@ import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.mapreduce.InputFormat;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.Job;
-import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.hyracks.api.client.NodeControllerInfo;
 import org.apache.hyracks.api.comm.IFrame;
 import org.apache.hyracks.api.comm.IFrameFieldAppender;
+import org.apache.hyracks.api.comm.IFrameWriter;
 import org.apache.hyracks.api.comm.VSizeFrame;
 import org.apache.hyracks.api.context.IHyracksTaskContext;
 import org.apache.hyracks.api.dataflow.IOperatorNodePushable;
@@ -64,25 +61,36 @@ import org.apache.hyracks.dataflow.std.base.AbstractUnaryInputUnaryOutputOperato
 import org.apache.hyracks.hdfs.ContextFactory;
 import org.apache.hyracks.hdfs2.dataflow.FileSplitsFactory;
 import org.apache.vxquery.context.DynamicContext;
+import org.apache.vxquery.datamodel.builders.nodes.SharedDictionaryBuilder;
 import org.apache.vxquery.hdfs2.HDFSFunctions;
+import org.apache.vxquery.hdfs2.XmlCollectionWithTagInputFormat;
 import org.apache.vxquery.jsonparser.JSONParser;
 import org.apache.vxquery.xmlparser.ITreeNodeIdProvider;
+import org.apache.vxquery.xmlparser.RecordPredicate;
 import org.apache.vxquery.xmlparser.TreeNodeIdProvider;
 import org.apache.vxquery.xmlparser.XMLParser;
+import org.apache.vxquery.xmlquery.query.XQueryConstants;
 
 public class VXQueryCollectionOperatorDescriptor extends AbstractSingleActivityOperatorDescriptor {
     private static final long serialVersionUID = 1L;
+    public static final QName PARALLELISM_OPTION = new QName(XQueryConstants.OPEXT_NSURI, "collection-parallelism");
+    public static final QName ORDERED_OPTION = new QName(XQueryConstants.OPEXT_NSURI, "collection-ordered");
+    public static final String PARALLELISM_PROPERTY = "vxquery.collection_parallelism";
+    public static final String ORDERED_PROPERTY = "vxquery.collection_ordered";
     private short dataSourceId;
     private short totalDataSources;
     private String[] collectionPartitions;
     private List<Integer> childSeq;
     private List<Byte[]> valueSeq;
+    private List<RecordPredicate> predicateSeq;
     protected static final Logger LOGGER = Logger.getLogger(VXQueryCollectionOperatorDescriptor.class.getName());
     private HDFSFunctions hdfs;
     private String tag;
-    private static final String START_TAG = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
     private final String hdfsConf;
     private final Map<String, NodeControllerInfo> nodeControllerInfos;
+    private int parallelism = -1;
+    private Boolean ordered = null;
+    private boolean sharedDictionary;
 
     public VXQueryCollectionOperatorDescriptor(IOperatorDescriptorRegistry spec, AbstractVXQueryDataSource ds,
             RecordDescriptor rDesc, String hdfsConf, Map<String, NodeControllerInfo> nodeControllerInfos) {
@@ -92,12 +100,30 @@ public class VXQueryCollectionOperatorDescriptor extends AbstractSingleActivityO
         totalDataSources = (short) ds.getTotalDataSources();
         childSeq = ds.getChildSeq();
         valueSeq = ds.getValueSeq();
+        predicateSeq = ds.getPredicateSeq();
         recordDescriptors[0] = rDesc;
         this.tag = ds.getTag();
         this.hdfsConf = hdfsConf;
         this.nodeControllerInfos = nodeControllerInfos;
     }
 
+    /**
+     * Sets the number of files each partition parses at the same time and whether their tuples keep the directory
+     * order. Values that are not set fall back to the node's system properties.
+     */
+    public void setParallelism(int parallelism, Boolean ordered) {
+        this.parallelism = parallelism;
+        this.ordered = ordered;
+    }
+
+    /**
+     * Makes the element trees of the collection refer to the collection's shared name dictionary. The dictionary can
+     * only be resolved on the node that parsed the trees, so it must only be set for plans running on one node.
+     */
+    public void setSharedDictionary(boolean sharedDictionary) {
+        this.sharedDictionary = sharedDictionary;
+    }
+
     @Override
     public IOperatorNodePushable createPushRuntime(IHyracksTaskContext ctx,
             IRecordDescriptorProvider recordDescProvider, int partition, int nPartitions) throws HyracksDataException {
@@ -112,21 +138,65 @@ public class VXQueryCollectionOperatorDescriptor extends AbstractSingleActivityO
         final DynamicContext dCtx = (DynamicContext) ctx.getJobletContext().getGlobalJobData();
         final ArrayBackedValueStorage jsonAbvs = new ArrayBackedValueStorage();
         final String collectionName = collectionPartitions[partition % collectionPartitions.length];
+        final CollectionSplit split = CollectionSplit.create(collectionPartitions, partition, tag);
         final XMLParser parser = new XMLParser(false, nodeIdProvider, nodeId, appender, childSeq,
                 dCtx.getStaticContext());
         final JSONParser jparser = new JSONParser(valueSeq);
+        final int scanParallelism = parallelism > 0 ? parallelism : Integer.getInteger(PARALLELISM_PROPERTY, 1);
+        final boolean scanOrdered = ordered != null ? ordered
+                : Boolean.parseBoolean(System.getProperty(ORDERED_PROPERTY, "true"));
+        final ParallelCollectionScanner parallelScanner = scanParallelism > 1
+                ? new ParallelCollectionScanner(ctx, scanParallelism, scanOrdered, fieldOutputCount, nodeIdProvider,
+                        nodeId, childSeq, valueSeq, dCtx.getStaticContext())
+                : null;
+        parser.setPredicates(predicateSeq);
+        if (parallelScanner != null) {
+            parallelScanner.setPredicates(predicateSeq);
+        }
+        if (sharedDictionary) {
+            SharedDictionaryBuilder dictionary =
+                    SharedDictionaryBuilder.getInstance(ctx.getJobletContext(), collectionName);
+            parser.setSharedDictionary(dictionary);
+            if (parallelScanner != null) {
+                parallelScanner.setSharedDictionary(dictionary);
+            }
+        }
+        final OperatorStatistics statistics = new OperatorStatistics(ctx, getOperatorId());
 
         return new AbstractUnaryInputUnaryOutputOperatorNodePushable() {
+            @Override
+            public void setOutputFrameWriter(int index, IFrameWriter writer, RecordDescriptor recordDesc) {
+                super.setOutputFrameWriter(index, statistics.wrap(writer, recordDesc), recordDesc);
+            }
+
             @Override
             public void open() throws HyracksDataException {
-                appender.reset(frame, true);
-                writer.open();
-                hdfs = new HDFSFunctions(nodeControllerInfos, hdfsConf);
+                statistics.begin();
+                try {
+                    appender.reset(frame, true);
+                    writer.open();
+                    hdfs = new HDFSFunctions(nodeControllerInfos, hdfsConf);
+                    if (parallelScanner != null) {
+                        parallelScanner.open();
+                    }
+                } finally {
+                    statistics.end();
+                }
             }
 
             @Override
             public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
-                fta.reset(buffer);
+                statistics.begin();
+                try {
+                    fta.reset(buffer);
+                    statistics.addTuplesIn(fta.getTupleCount());
+                    scanCollection();
+                } finally {
+                    statistics.end();
+                }
+            }
+
+            public void scanCollection() throws HyracksDataException {
                 String collectionModifiedName = collectionName.replace("${nodeId}", nodeId);
 
                 if (!collectionModifiedName.contains("hdfs:/")) {
@@ -151,7 +221,6 @@ public class VXQueryCollectionOperatorDescriptor extends AbstractSingleActivityO
                         Path xmlDocument;
                         if (tag != null) {
                             hdfs.setJob(directory.toString(), tag);
-                            tag = "<" + tag + ">";
                             Job job = hdfs.getJob();
                             InputFormat inputFormat = hdfs.getinputFormat();
                             try {
@@ -167,41 +236,26 @@ public class VXQueryCollectionOperatorDescriptor extends AbstractSingleActivityO
                                 List<FileSplit> inputSplits = splitsFactory.getSplits();
                                 ContextFactory ctxFactory = new ContextFactory();
                                 int size = inputSplits.size();
-                                InputStream stream;
-                                String value;
-                                RecordReader reader;
+                                XmlCollectionWithTagInputFormat.XmlRecordReader reader;
                                 TaskAttemptContext context;
-                                for (int i = 0; i < size; i++) {
-                                    // read split
-                                    context = ctxFactory.createContext(job.getConfiguration(), i);
-                                    reader = inputFormat.createRecordReader(inputSplits.get(i), context);
-                                    reader.initialize(inputSplits.get(i), context);
-                                    while (reader.nextKeyValue()) {
-                                        value = reader.getCurrentValue().toString();
-                                        // Split value if it contains more than
-                                        // one item with the tag
-                                        if (StringUtils.countMatches(value, tag) > 1) {
-                                            String[] items = value.split(tag);
-                                            for (String item : items) {
-                                                if (item.length() > 0) {
-                                                    item = START_TAG + tag + item;
-                                                    stream = new ByteArrayInputStream(
-                                                            item.getBytes(StandardCharsets.UTF_8));
-                                                    parser.parseHDFSElements(stream, writer, fta, i);
-                                                    stream.close();
-                                                }
+                                for (int tupleIndex = 0; tupleIndex < fta.getTupleCount(); ++tupleIndex) {
+                                    for (int i = 0; i < size; i++) {
+                                        // read split
+                                        context = ctxFactory.createContext(job.getConfiguration(), i);
+                                        reader = (XmlCollectionWithTagInputFormat.XmlRecordReader) inputFormat
+                                                .createRecordReader(inputSplits.get(i), context);
+                                        reader.initialize(inputSplits.get(i), context);
+                                        while (reader.nextKeyValue()) {
+                                            // Parse the records where the reader found them in its buffer.
+                                            byte[] bytes = reader.getValueBytes();
+                                            for (int r = 0; r < reader.getRecordCount(); ++r) {
+                                                int start = reader.getRecordStart(r);
+                                                parser.parseRecord(bytes, start, reader.getRecordEnd(r) - start,
+                                                        writer, tupleIndex);
                                             }
-                                        } else {
-                                            value = START_TAG + value;
-                                            // create an input stream to the
-                                            // file currently reading and send
-                                            // it to parser
-                                            stream = new ByteArrayInputStream(value.getBytes(StandardCharsets.UTF_8));
-                                            parser.parseHDFSElements(stream, writer, fta, i);
-                                            stream.close();
                                         }
+                                        reader.close();
                                     }
-                                    reader.close();
                                 }
 
                             } catch (Exception e) {
@@ -248,28 +302,53 @@ public class VXQueryCollectionOperatorDescriptor extends AbstractSingleActivityO
             }
 
             public void xmlAndJsonCollection(File directory) throws HyracksDataException {
-                Reader input;
+                if (parallelScanner != null) {
+                    // Tuples already in the frame must reach the writer before the workers' frames.
+                    if (appender.getTupleCount() > 0) {
+                        appender.flush(writer);
+                    }
+                    for (int tupleIndex = 0; tupleIndex < fta.getTupleCount(); ++tupleIndex) {
+                        parallelScanner.scan(directory, split, writer, tupleIndex);
+                    }
+                    return;
+                }
                 for (int tupleIndex = 0; tupleIndex < fta.getTupleCount(); ++tupleIndex) {
                     Iterator<File> it = FileUtils.iterateFiles(directory, new VXQueryIOFileFilter(),
                             TrueFileFilter.INSTANCE);
+                    split.reset();
                     while (it.hasNext()) {
                         File file = it.next();
+                        if (!split.accept(file)) {
+                            continue;
+                        }
                         String fileName = file.getName().toLowerCase();
-                        if (fileName.endsWith(".xml")) {
+                        if (split.isRecordFile(fileName)) {
+                            if (LOGGER.isLoggable(Level.FINE)) {
+                                LOGGER.fine("Starting to read XML records: " + file.getAbsolutePath());
+                            }
+                            long[] range;
+                            try {
+                                range = split.getRange(file, 0, 1);
+                            } catch (IOException e) {
+                                throw new HyracksDataException(e);
+                            }
+                            parser.parseRecords(file, tag, range[0], range[1], writer, tupleIndex);
+                        } else if (fileName.endsWith(".xml")) {
                             if (LOGGER.isLoggable(Level.FINE)) {
                                 LOGGER.fine("Starting to read XML document: " + file.getAbsolutePath());
                             }
                             parser.parseElements(file, writer, tupleIndex);
-                        } else if (fileName.endsWith(".json")) {
+                        } else if (fileName.endsWith(".json") || CollectionSplit.isNDJSON(fileName)) {
                             if (LOGGER.isLoggable(Level.FINE)) {
                                 LOGGER.fine("Starting to read JSON document: " + file.getAbsolutePath());
                             }
-                            try {
-                                jsonAbvs.reset();
-                                input = new InputStreamReader(new FileInputStream(file));
+                            jsonAbvs.reset();
+                            try (InputStream input = split.open(file)) {
                                 jparser.parse(input, jsonAbvs, writer, appender);
                             } catch (FileNotFoundException e) {
                                 throw new HyracksDataException(e.toString());
+                            } catch (IOException e) {
+                                throw new HyracksDataException(e);
                             }
                         }
                     }
@@ -278,16 +357,27 @@ public class VXQueryCollectionOperatorDescriptor extends AbstractSingleActivityO
 
             @Override
             public void fail() throws HyracksDataException {
+                if (parallelScanner != null) {
+                    parallelScanner.close();
+                }
                 writer.fail();
             }
 
             @Override
             public void close() throws HyracksDataException {
-                // Check if needed?
-                if (appender.getTupleCount() > 0) {
-                    appender.flush(writer);
+                statistics.begin();
+                try {
+                    if (parallelScanner != null) {
+                        parallelScanner.close();
+                    }
+                    // Check if needed?
+                    if (appender.getTupleCount() > 0) {
+                        appender.flush(writer);
+                    }
+                    writer.close();
+                } finally {
+                    statistics.end();
                 }
-                writer.close();
             }
         };
     }
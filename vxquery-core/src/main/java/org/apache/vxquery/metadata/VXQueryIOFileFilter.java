@@ -30,7 +30,7 @@ public class VXQueryIOFileFilter implements IOFileFilter {
     @Override
     public boolean accept(final File file, final String name) {
         String fileName = name.toLowerCase();
-        if (fileName.endsWith(".xml") || fileName.endsWith(".json")) {
+        if (fileName.endsWith(".xml") || fileName.endsWith(".json") || CollectionSplit.isNDJSON(fileName)) {
             return true;
         }
         return false;
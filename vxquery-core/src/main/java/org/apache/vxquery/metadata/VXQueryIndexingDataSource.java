@@ -54,6 +54,7 @@ public class VXQueryIndexingDataSource extends AbstractVXQueryDataSource {
         this.indexAttsSeq = new ArrayList<>();
         this.indexValueSeq = new ArrayList<>();
         this.valueSeq = new ArrayList<>();
+        this.predicateSeq = new ArrayList<>();
     }
 
     public static VXQueryIndexingDataSource create(int id, String collection, Object type, String function) {
@@ -25,6 +25,7 @@ import java.util.logging.Logger;
 import org.apache.hyracks.algebricks.common.exceptions.AlgebricksException;
 import org.apache.hyracks.api.comm.IFrame;
 import org.apache.hyracks.api.comm.IFrameFieldAppender;
+import org.apache.hyracks.api.comm.IFrameWriter;
 import org.apache.hyracks.api.comm.VSizeFrame;
 import org.apache.hyracks.api.context.IHyracksTaskContext;
 import org.apache.hyracks.api.dataflow.IOperatorNodePushable;
@@ -93,18 +94,38 @@ public class VXQueryIndexingOperatorDescriptor extends AbstractSingleActivityOpe
                 ctx.getIOManager().getIODevices().get(0).getMount());
         indexCentralizerUtil.readIndexDirectory();
         final IPointable result = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+        final OperatorStatistics statistics = new OperatorStatistics(ctx, getOperatorId());
 
         return new AbstractUnaryInputUnaryOutputOperatorNodePushable() {
+            @Override
+            public void setOutputFrameWriter(int index, IFrameWriter writer, RecordDescriptor recordDesc) {
+                super.setOutputFrameWriter(index, statistics.wrap(writer, recordDesc), recordDesc);
+            }
+
             @Override
             public void open() throws HyracksDataException {
-                appender.reset(frame, true);
-                writer.open();
+                statistics.begin();
+                try {
+                    appender.reset(frame, true);
+                    writer.open();
+                } finally {
+                    statistics.end();
+                }
             }
 
             @Override
             public void nextFrame(ByteBuffer buffer) throws HyracksDataException {
-                fta.reset(buffer);
+                statistics.begin();
+                try {
+                    fta.reset(buffer);
+                    statistics.addTuplesIn(fta.getTupleCount());
+                    evaluate();
+                } finally {
+                    statistics.end();
+                }
+            }
 
+            public void evaluate() throws HyracksDataException {
                 final ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
                 final ArrayBackedValueStorage abvsFileNode = new ArrayBackedValueStorage();
 
@@ -149,7 +170,7 @@ public class VXQueryIndexingOperatorDescriptor extends AbstractSingleActivityOpe
                     IndexConstructorUtil indexConstructorUtil = new IndexConstructorUtil();
                     try {
                         indexConstructorUtil.evaluate(collectionModifiedName, indexModifiedName, result, abvs,
-                                nodeIdProvider, abvsFileNode, false, nodeId);
+                                abvsFileNode, false, nodeId);
                         XDMConstants.setTrue(result);
                         FrameUtils.appendFieldToWriter(writer, appender, result.getByteArray(), result.getStartOffset(),
                                 result.getLength());
@@ -166,8 +187,7 @@ public class VXQueryIndexingOperatorDescriptor extends AbstractSingleActivityOpe
             public void updateIndex(IPointable result, ArrayBackedValueStorage abvs,
                     ArrayBackedValueStorage abvsFileNode) throws HyracksDataException {
                 String indexModifiedName = indexCentralizerUtil.getIndexForCollection(collectionModifiedName);
-                IndexUpdater updater = new IndexUpdater(indexModifiedName, result, abvs, nodeIdProvider, abvsFileNode,
-                        nodeId);
+                IndexUpdater updater = new IndexUpdater(indexModifiedName, result, abvs, abvsFileNode, nodeId);
                 try {
                     updater.setup();
                     updater.updateIndex();
@@ -185,8 +205,7 @@ public class VXQueryIndexingOperatorDescriptor extends AbstractSingleActivityOpe
             public void deleteIndex(IPointable result, ArrayBackedValueStorage abvs,
                     ArrayBackedValueStorage abvsFileNode) throws HyracksDataException {
                 String indexModifiedName = indexCentralizerUtil.getIndexForCollection(collectionModifiedName);
-                IndexUpdater updater = new IndexUpdater(indexModifiedName, result, abvs, nodeIdProvider, abvsFileNode,
-                        nodeId);
+                IndexUpdater updater = new IndexUpdater(indexModifiedName, result, abvs, abvsFileNode, nodeId);
                 indexCentralizerUtil.deleteEntryForCollection(collectionModifiedName);
                 try {
                     updater.setup();
@@ -203,7 +222,7 @@ public class VXQueryIndexingOperatorDescriptor extends AbstractSingleActivityOpe
             public void usingIndex(IPointable result) throws HyracksDataException {
                 String indexModifiedName = indexCentralizerUtil.getIndexForCollection(collectionModifiedName);
                 VXQueryIndexReader indexReader = new VXQueryIndexReader(ctx, indexModifiedName, childSeq, indexChildSeq,
-                        indexAttsSeq, indexSeq, appender);
+                        indexAttsSeq, indexSeq, appender, nodeIdProvider);
                 try {
                     indexReader.init();
                     for (int tupleIndex = 0; tupleIndex < fta.getTupleCount(); ++tupleIndex) {
@@ -212,6 +231,8 @@ public class VXQueryIndexingOperatorDescriptor extends AbstractSingleActivityOpe
                     }
                 } catch (AlgebricksException e) {
                     throw new HyracksDataException("Could not read index.", e);
+                } finally {
+                    indexReader.close();
                 }
             }
 
@@ -222,12 +243,17 @@ public class VXQueryIndexingOperatorDescriptor extends AbstractSingleActivityOpe
 
             @Override
             public void close() throws HyracksDataException {
-                // Check if needed?
-                if (appender.getTupleCount() > 0) {
-                    appender.flush(writer);
+                statistics.begin();
+                try {
+                    // Check if needed?
+                    if (appender.getTupleCount() > 0) {
+                        appender.flush(writer);
+                    }
+                    writer.close();
+                    indexCentralizerUtil.writeIndexDirectory();
+                } finally {
+                    statistics.end();
                 }
-                writer.close();
-                indexCentralizerUtil.writeIndexDirectory();
             }
         };
     }
@@ -53,6 +53,7 @@ import org.apache.hyracks.api.dataset.ResultSetId;
 import org.apache.hyracks.api.job.JobSpecification;
 import org.apache.hyracks.dataflow.std.result.ResultWriterOperatorDescriptor;
 import org.apache.vxquery.context.StaticContext;
+import org.apache.vxquery.datamodel.builders.nodes.SharedDictionaryBuilder;
 
 public class VXQueryMetadataProvider implements IMetadataProvider<String, String> {
     private final String[] nodeList;
@@ -108,8 +109,12 @@ public class VXQueryMetadataProvider implements IMetadataProvider<String, String
 
         if (!ds.usingIndex()) {
             rDesc = new RecordDescriptor(new ISerializerDeserializer[opSchema.getSize()]);
-            scanner = new VXQueryCollectionOperatorDescriptor(jobSpec, ds, rDesc, this.hdfsConf,
-                    this.nodeControllerInfos);
+            VXQueryCollectionOperatorDescriptor collectionScanner = new VXQueryCollectionOperatorDescriptor(jobSpec,
+                    ds, rDesc, this.hdfsConf, this.nodeControllerInfos);
+            setCollectionParallelism(collectionScanner);
+            // Trees referring to a shared dictionary cannot be read on another node.
+            collectionScanner.setSharedDictionary(SharedDictionaryBuilder.isEnabled() && nodeList.length == 1);
+            scanner = collectionScanner;
             constraint = getClusterLocations(nodeList, ds.getPartitionCount());
         } else {
             rDesc = new RecordDescriptor(new ISerializerDeserializer[opSchema.getSize()]);
@@ -120,6 +125,33 @@ public class VXQueryMetadataProvider implements IMetadataProvider<String, String
         return new Pair<>(scanner, constraint);
     }
 
+    private void setCollectionParallelism(VXQueryCollectionOperatorDescriptor scanner) throws AlgebricksException {
+        if (staticCtx == null) {
+            return;
+        }
+        String parallelism = staticCtx.getOption(VXQueryCollectionOperatorDescriptor.PARALLELISM_OPTION);
+        String ordered = staticCtx.getOption(VXQueryCollectionOperatorDescriptor.ORDERED_OPTION);
+        int scanParallelism = -1;
+        if (parallelism != null) {
+            try {
+                scanParallelism = Integer.parseInt(parallelism.trim());
+            } catch (NumberFormatException e) {
+                throw new AlgebricksException("Invalid value for option collection-parallelism: " + parallelism);
+            }
+        }
+        Boolean scanOrdered = null;
+        if (ordered != null) {
+            if ("true".equals(ordered.trim())) {
+                scanOrdered = Boolean.TRUE;
+            } else if ("false".equals(ordered.trim())) {
+                scanOrdered = Boolean.FALSE;
+            } else {
+                throw new AlgebricksException("Invalid value for option collection-ordered: " + ordered);
+            }
+        }
+        scanner.setParallelism(scanParallelism, scanOrdered);
+    }
+
     public static AlgebricksAbsolutePartitionConstraint getClusterLocations(String[] nodeList) {
         int availableProcessors = Runtime.getRuntime().availableProcessors();
         if (availableProcessors < 1) {
@@ -15,33 +15,65 @@
 package org.apache.vxquery.result;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 
 import org.apache.hyracks.api.comm.IFrameTupleAccessor;
-import org.apache.hyracks.api.exceptions.HyracksDataException;
-import org.apache.hyracks.dataflow.common.comm.util.ByteBufferInputStream;
 
 public class ResultUtils {
-    public static String getStringFromBuffer(ByteBuffer buffer, IFrameTupleAccessor fta) throws HyracksDataException {
-        String resultRecords = "";
-        ByteBufferInputStream bbis = new ByteBufferInputStream();
-        try {
-            fta.reset(buffer);
-            for (int tIndex = 0; tIndex < fta.getTupleCount(); tIndex++) {
-                int start = fta.getTupleStartOffset(tIndex);
-                int length = fta.getTupleEndOffset(tIndex) - start;
-                bbis.setByteBuffer(buffer, start);
-                byte[] recordBytes = new byte[length];
-                bbis.read(recordBytes, 0, length);
-                resultRecords += new String(recordBytes, 0, length);
-            }
-        } finally {
-            try {
-                bbis.close();
-            } catch (IOException e) {
-                throw new HyracksDataException(e);
+    /**
+     * Size of the chunks used to copy frames that are not backed by an accessible array.
+     */
+    private static final int COPY_CHUNK_SIZE = 8192;
+
+    private ResultUtils() {
+    }
+
+    /**
+     * Writes the tuples of a result frame to {@code out} without decoding them into a string. Tuples that are stored
+     * next to each other are written with a single call, which for result frames usually means one call per frame.
+     */
+    public static void writeBuffer(ByteBuffer buffer, IFrameTupleAccessor fta, OutputStream out) throws IOException {
+        fta.reset(buffer);
+        int tupleCount = fta.getTupleCount();
+        int tIndex = 0;
+        byte[] chunk = null;
+        while (tIndex < tupleCount) {
+            int start = fta.getTupleStartOffset(tIndex);
+            int next = getNextRun(fta, tIndex, tupleCount);
+            int end = fta.getTupleEndOffset(next - 1);
+            tIndex = next;
+            if (buffer.hasArray()) {
+                out.write(buffer.array(), buffer.arrayOffset() + start, end - start);
+            } else {
+                if (chunk == null) {
+                    chunk = new byte[COPY_CHUNK_SIZE];
+                }
+                ByteBuffer run = slice(buffer, start, end);
+                while (run.hasRemaining()) {
+                    int length = Math.min(chunk.length, run.remaining());
+                    run.get(chunk, 0, length);
+                    out.write(chunk, 0, length);
+                }
             }
         }
-        return resultRecords;
+    }
+
+    /**
+     * @return the index of the first tuple after the run of adjacent tuples starting at tuple {@code tIndex}
+     */
+    private static int getNextRun(IFrameTupleAccessor fta, int tIndex, int tupleCount) {
+        int next = tIndex + 1;
+        while (next < tupleCount && fta.getTupleStartOffset(next) == fta.getTupleEndOffset(next - 1)) {
+            ++next;
+        }
+        return next;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int start, int end) {
+        ByteBuffer run = buffer.duplicate();
+        run.limit(end);
+        run.position(start);
+        return run;
     }
 }
@@ -92,9 +92,7 @@ public abstract class AbstractMaxMinAggregateEvaluatorFactory extends
                     if (count != 0) {
                         tvp2.set(abvs.getByteArray(), abvs.getStartOffset(), abvs.getLength());
                     }
-                    if (count == 0
-                            || FunctionHelper.transformThenCompareMinMaxTaggedValues(aOpComparison, tvp1, tvp2, dCtx,
-                                    tp1, tp2)) {
+                    if (count == 0 || replacesCurrent(tvp1)) {
                         try {
                             abvs.reset();
                             dOut.write(tvp1.getByteArray(), tvp1.getStartOffset(), tvp1.getLength());
@@ -106,6 +104,32 @@ public abstract class AbstractMaxMinAggregateEvaluatorFactory extends
                 }
             }
 
+            private boolean replacesCurrent(TaggedValuePointable tvp1) throws HyracksDataException {
+                // Values of the same primitive type are compared without the conversions of the generic path.
+                if (tvp1.getTag() == tvp2.getTag()) {
+                    try {
+                        switch (tvp1.getTag()) {
+                            case ValueTag.XS_INTEGER_TAG:
+                                tvp1.getValue(tp1.longp);
+                                tvp2.getValue(tp2.longp);
+                                return aOpComparison.operateIntegerInteger(tp1.longp, tp2.longp);
+                            case ValueTag.XS_DOUBLE_TAG:
+                                tvp1.getValue(tp1.doublep);
+                                tvp2.getValue(tp2.doublep);
+                                return aOpComparison.operateDoubleDouble(tp1.doublep, tp2.doublep);
+                            case ValueTag.XS_DECIMAL_TAG:
+                                tvp1.getValue(tp1.decp);
+                                tvp2.getValue(tp2.decp);
+                                return aOpComparison.operateDecimalDecimal(tp1.decp, tp2.decp);
+                        }
+                    } catch (IOException e) {
+                        throw new SystemException(ErrorCode.SYSE0001, e);
+                    }
+                }
+                return FunctionHelper.transformThenCompareMinMaxTaggedValues(aOpComparison, tvp1, tvp2, dCtx, tp1,
+                        tp2);
+            }
+
         };
     }
 
@@ -16,22 +16,18 @@
  */
 package org.apache.vxquery.runtime.functions.aggregate;
 
-import java.io.DataOutput;
-
 import org.apache.hyracks.algebricks.runtime.base.IAggregateEvaluator;
 import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluator;
 import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluatorFactory;
 import org.apache.hyracks.api.exceptions.HyracksDataException;
 import org.apache.hyracks.data.std.api.IPointable;
 import org.apache.hyracks.data.std.primitive.LongPointable;
-import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
 import org.apache.vxquery.datamodel.accessors.SequencePointable;
 import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
 import org.apache.vxquery.datamodel.values.ValueTag;
 import org.apache.vxquery.datamodel.values.XDMConstants;
 import org.apache.vxquery.exceptions.ErrorCode;
 import org.apache.vxquery.exceptions.SystemException;
-import org.apache.vxquery.runtime.functions.arithmetic.AddOperation;
 import org.apache.vxquery.runtime.functions.arithmetic.DivideOperation;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentAggregateEvaluator;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentAggregateEvaluatorFactory;
@@ -46,13 +42,8 @@ public class AvgGlobalAggregateEvaluatorFactory extends AbstractTaggedValueArgum
 
     @Override
     protected IAggregateEvaluator createEvaluator(IScalarEvaluator[] args) throws HyracksDataException {
-        final ArrayBackedValueStorage abvsCount = new ArrayBackedValueStorage();
-        final DataOutput dOutCount = abvsCount.getDataOutput();
-        final ArrayBackedValueStorage abvsSum = new ArrayBackedValueStorage();
-        final DataOutput dOutSum = abvsSum.getDataOutput();
-        final AddOperation aOpAdd = new AddOperation();
-        final ArithmeticHelper add1 = new ArithmeticHelper(aOpAdd, dCtx);
-        final ArithmeticHelper add2 = new ArithmeticHelper(aOpAdd, dCtx);
+        final SumAccumulator count = new SumAccumulator(dCtx);
+        final SumAccumulator sum = new SumAccumulator(dCtx);
         final DivideOperation aOpDivide = new DivideOperation();
         final ArithmeticHelper divide = new ArithmeticHelper(aOpDivide, dCtx);
         final LongPointable longp = (LongPointable) LongPointable.FACTORY.createPointable();
@@ -65,18 +56,8 @@ public class AvgGlobalAggregateEvaluatorFactory extends AbstractTaggedValueArgum
 
             @Override
             public void init() throws HyracksDataException {
-                try {
-                    abvsCount.reset();
-                    dOutCount.write(ValueTag.XS_INTEGER_TAG);
-                    dOutCount.writeLong(0);
-                    tvpCount.set(abvsCount);
-                    abvsSum.reset();
-                    dOutSum.write(ValueTag.XS_INTEGER_TAG);
-                    dOutSum.writeLong(0);
-                    tvpSum.set(abvsSum);
-                } catch (Exception e) {
-                    throw new HyracksDataException(e);
-                }
+                count.reset();
+                sum.reset();
             }
 
             @Override
@@ -86,12 +67,14 @@ public class AvgGlobalAggregateEvaluatorFactory extends AbstractTaggedValueArgum
 
             @Override
             public void finish(IPointable result) throws HyracksDataException {
+                count.getSum(tvpCount);
                 tvpCount.getValue(longp);
                 if (longp.getLong() == 0) {
                     XDMConstants.setEmptySequence(result);
                 } else {
                     // Set count as a TaggedValuePointable.
                     try {
+                        sum.getSum(tvpSum);
                         divide.compute(tvpSum, tvpCount, tvpSum);
                         result.set(tvpSum);
                     } catch (Exception e) {
@@ -111,9 +94,9 @@ public class AvgGlobalAggregateEvaluatorFactory extends AbstractTaggedValueArgum
                         return;
                     } else if (seqLen == 2) {
                         seq.getEntry(0, tvpArg);
-                        add1.compute(tvpArg, tvpCount, tvpCount);
+                        count.add(tvpArg);
                         seq.getEntry(1, tvpArg);
-                        add2.compute(tvpArg, tvpSum, tvpSum);
+                        sum.add(tvpArg);
                     } else {
                         throw new SystemException(ErrorCode.SYSE0001);
                     }
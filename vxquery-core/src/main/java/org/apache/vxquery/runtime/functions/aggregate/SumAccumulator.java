@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.aggregate;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hyracks.data.std.api.IPointable;
+import org.apache.hyracks.data.std.primitive.DoublePointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.context.DynamicContext;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.accessors.TypedPointables;
+import org.apache.vxquery.datamodel.accessors.atomic.XSDecimalPointable;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.exceptions.ErrorCode;
+import org.apache.vxquery.exceptions.SystemException;
+import org.apache.vxquery.runtime.functions.arithmetic.AddOperation;
+import org.apache.vxquery.runtime.functions.cast.CastToDoubleOperation;
+import org.apache.vxquery.runtime.functions.util.ArithmeticHelper;
+import org.apache.vxquery.runtime.functions.util.FunctionHelper;
+
+/**
+ * Running sum for the fn:sum and fn:avg aggregates, starting at xs:integer 0. Integer, xs:decimal, xs:double and
+ * xs:untypedAtomic inputs are added into primitive fields for as long as the sum keeps one of those types. Any other
+ * combination moves the sum into a tagged value that is updated with {@link ArithmeticHelper} from then on. Both ways
+ * give the same result as adding every input with {@link AddOperation}.
+ */
+public class SumAccumulator {
+    private static final int INTEGER = 0;
+    private static final int DECIMAL = 1;
+    private static final int DOUBLE = 2;
+    private static final int GENERIC = 3;
+
+    private final ArithmeticHelper add;
+    private final TypedPointables tp = new TypedPointables();
+    private final CastToDoubleOperation castToDouble = new CastToDoubleOperation();
+    private final ArrayBackedValueStorage abvsCast = new ArrayBackedValueStorage();
+    private final DoublePointable doublep = (DoublePointable) DoublePointable.FACTORY.createPointable();
+    private final ArrayBackedValueStorage abvsSum = new ArrayBackedValueStorage();
+    private final DataOutput dOutSum = abvsSum.getDataOutput();
+    private final TaggedValuePointable tvpSum = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+
+    private int state;
+    private long longSum;
+    private byte decimalPlace;
+    private double doubleSum;
+
+    public SumAccumulator(DynamicContext dCtx) {
+        add = new ArithmeticHelper(new AddOperation(), dCtx);
+    }
+
+    public void reset() {
+        state = INTEGER;
+        longSum = 0;
+    }
+
+    public void add(TaggedValuePointable tvp) throws SystemException {
+        int tag = tvp.getTag();
+        switch (state) {
+            case INTEGER:
+                if (FunctionHelper.isDerivedFromInteger(tag)) {
+                    longSum += getLong(tvp);
+                    return;
+                } else if (tag == ValueTag.XS_DOUBLE_TAG || tag == ValueTag.XS_UNTYPED_ATOMIC_TAG) {
+                    doubleSum = getDouble(tvp) + (double) longSum;
+                    state = DOUBLE;
+                    return;
+                } else if (tag == ValueTag.XS_DECIMAL_TAG) {
+                    // The integer is promoted the way XSDecimalPointable.setDecimal() does it.
+                    decimalPlace = 0;
+                    while (longSum != 0 && longSum % 10 == 0) {
+                        longSum /= 10;
+                        --decimalPlace;
+                    }
+                    state = DECIMAL;
+                    tvp.getValue(tp.decp);
+                    addDecimal(tp.decp.getDecimalValue(), tp.decp.getDecimalPlace());
+                    return;
+                }
+                break;
+            case DECIMAL:
+                if (tag == ValueTag.XS_DECIMAL_TAG) {
+                    tvp.getValue(tp.decp);
+                    addDecimal(tp.decp.getDecimalValue(), tp.decp.getDecimalPlace());
+                    return;
+                } else if (FunctionHelper.isDerivedFromInteger(tag)) {
+                    long value = getLong(tvp);
+                    byte place = 0;
+                    while (value != 0 && value % 10 == 0) {
+                        value /= 10;
+                        --place;
+                    }
+                    addDecimal(value, place);
+                    return;
+                }
+                break;
+            case DOUBLE:
+                if (tag == ValueTag.XS_DOUBLE_TAG || tag == ValueTag.XS_UNTYPED_ATOMIC_TAG) {
+                    doubleSum += getDouble(tvp);
+                    return;
+                } else if (FunctionHelper.isDerivedFromInteger(tag)) {
+                    doubleSum += (double) getLong(tvp);
+                    return;
+                }
+                break;
+            case GENERIC:
+                add.compute(tvp, tvpSum, tvpSum);
+                return;
+        }
+        writeSum();
+        state = GENERIC;
+        add.compute(tvp, tvpSum, tvpSum);
+    }
+
+    /**
+     * Sets the result to the current sum. The result stays valid until the next call to add() or reset().
+     */
+    public void getSum(IPointable result) throws SystemException {
+        if (state != GENERIC) {
+            writeSum();
+        }
+        result.set(tvpSum);
+    }
+
+    private long getLong(TaggedValuePointable tvp) {
+        switch (tvp.getTag()) {
+            case ValueTag.XS_INT_TAG:
+            case ValueTag.XS_UNSIGNED_SHORT_TAG:
+                tvp.getValue(tp.intp);
+                return tp.intp.getInteger();
+            case ValueTag.XS_SHORT_TAG:
+            case ValueTag.XS_UNSIGNED_BYTE_TAG:
+                tvp.getValue(tp.shortp);
+                return tp.shortp.getShort();
+            case ValueTag.XS_BYTE_TAG:
+                tvp.getValue(tp.bytep);
+                return tp.bytep.getByte();
+            default:
+                tvp.getValue(tp.longp);
+                return tp.longp.getLong();
+        }
+    }
+
+    private double getDouble(TaggedValuePointable tvp) throws SystemException {
+        if (tvp.getTag() == ValueTag.XS_DOUBLE_TAG) {
+            tvp.getValue(tp.doublep);
+            return tp.doublep.getDouble();
+        }
+        tvp.getValue(tp.utf8sp);
+        abvsCast.reset();
+        try {
+            castToDouble.convertUntypedAtomic(tp.utf8sp, abvsCast.getDataOutput());
+        } catch (IOException e) {
+            throw new SystemException(ErrorCode.SYSE0001, e);
+        }
+        doublep.set(abvsCast.getByteArray(), abvsCast.getStartOffset() + 1,
+                DoublePointable.TYPE_TRAITS.getFixedLength());
+        return doublep.getDouble();
+    }
+
+    /**
+     * Same steps as {@link AddOperation#operateDecimalDecimal}, including its precision check.
+     */
+    private void addDecimal(long value, byte place) throws SystemException {
+        long value1 = longSum;
+        byte place1 = decimalPlace;
+        byte count1 = getDigitCount(value1);
+        byte count2 = getDigitCount(value);
+        while (place1 > place) {
+            ++place;
+            value *= 10;
+            ++count2;
+        }
+        while (place1 < place) {
+            ++place1;
+            value1 *= 10;
+            ++count1;
+        }
+        if (count1 > XSDecimalPointable.PRECISION || count2 > XSDecimalPointable.PRECISION) {
+            throw new SystemException(ErrorCode.XPDY0002);
+        }
+        longSum = value1 + value;
+        decimalPlace = place1;
+    }
+
+    private static byte getDigitCount(long value) {
+        if (value < 0) {
+            value *= -1;
+        }
+        long check = 10;
+        for (byte i = 1; i < XSDecimalPointable.PRECISION; i++) {
+            if (value < check) {
+                return i;
+            }
+            check *= 10;
+        }
+        return XSDecimalPointable.PRECISION;
+    }
+
+    private void writeSum() throws SystemException {
+        abvsSum.reset();
+        try {
+            switch (state) {
+                case INTEGER:
+                    dOutSum.write(ValueTag.XS_INTEGER_TAG);
+                    dOutSum.writeLong(longSum);
+                    break;
+                case DECIMAL:
+                    dOutSum.write(ValueTag.XS_DECIMAL_TAG);
+                    dOutSum.writeByte(decimalPlace);
+                    dOutSum.writeLong(longSum);
+                    break;
+                case DOUBLE:
+                    dOutSum.write(ValueTag.XS_DOUBLE_TAG);
+                    dOutSum.writeDouble(doubleSum);
+                    break;
+            }
+        } catch (IOException e) {
+            throw new SystemException(ErrorCode.SYSE0001, e);
+        }
+        tvpSum.set(abvsSum);
+    }
+}
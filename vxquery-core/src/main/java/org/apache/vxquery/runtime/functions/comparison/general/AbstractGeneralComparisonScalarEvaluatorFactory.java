@@ -17,13 +17,14 @@
 package org.apache.vxquery.runtime.functions.comparison.general;
 
 import java.io.DataOutput;
+import java.io.IOException;
 
 import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluator;
 import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluatorFactory;
 import org.apache.hyracks.api.context.IHyracksTaskContext;
 import org.apache.hyracks.api.exceptions.HyracksDataException;
 import org.apache.hyracks.data.std.api.IPointable;
-import org.apache.hyracks.data.std.primitive.DoublePointable;
+import org.apache.hyracks.data.std.primitive.LongPointable;
 import org.apache.hyracks.data.std.primitive.VoidPointable;
 import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
 import org.apache.vxquery.context.DynamicContext;
@@ -31,6 +32,7 @@ import org.apache.vxquery.datamodel.accessors.SequencePointable;
 import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
 import org.apache.vxquery.datamodel.accessors.TypedPointables;
 import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.datamodel.values.XDMConstants;
 import org.apache.vxquery.exceptions.ErrorCode;
 import org.apache.vxquery.exceptions.SystemException;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluator;
@@ -71,6 +73,7 @@ import org.apache.vxquery.runtime.functions.cast.CastToUnsignedShortOperation;
 import org.apache.vxquery.runtime.functions.cast.CastToUntypedAtomicOperation;
 import org.apache.vxquery.runtime.functions.cast.CastToYMDurationOperation;
 import org.apache.vxquery.runtime.functions.comparison.AbstractValueComparisonOperation;
+import org.apache.vxquery.runtime.functions.comparison.ValueEqComparisonOperation;
 import org.apache.vxquery.runtime.functions.util.AtomizeHelper;
 import org.apache.vxquery.runtime.functions.util.FunctionHelper;
 
@@ -78,6 +81,11 @@ public abstract class AbstractGeneralComparisonScalarEvaluatorFactory extends
         AbstractTaggedValueArgumentScalarEvaluatorFactory {
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Operand sequences with fewer items are always compared with nested loops.
+     */
+    private static final int MIN_INDEX_ITEMS = 8;
+
     public AbstractGeneralComparisonScalarEvaluatorFactory(IScalarEvaluatorFactory[] args) {
         super(args);
     }
@@ -107,6 +115,11 @@ public abstract class AbstractGeneralComparisonScalarEvaluatorFactory extends
                 .createPointable();
         final TaggedValuePointable tvpCompare1 = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
         final TaggedValuePointable tvpCompare2 = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+        final TaggedValuePointable tvpProbe = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+        final TaggedValuePointable tvpIndexItem = (TaggedValuePointable) TaggedValuePointable.FACTORY
+                .createPointable();
+        final GeneralComparisonIndex index = new GeneralComparisonIndex();
+        final boolean isEq = aOp instanceof ValueEqComparisonOperation;
 
         return new AbstractTaggedValueArgumentScalarEvaluator(args) {
             AbstractCastToOperation aCastToOp = new CastToStringOperation();
@@ -117,7 +130,14 @@ public abstract class AbstractGeneralComparisonScalarEvaluatorFactory extends
                 TaggedValuePointable tvpArg1 = args[0];
                 TaggedValuePointable tvpArg2 = args[1];
                 try {
-                    if (tvpArg1.getTag() == ValueTag.SEQUENCE_TAG) {
+                    // Only one operand is indexed so that an invariant operand keeps its index.
+                    TaggedValuePointable tvpIndexed = isLargeSequence(tvpArg2) ? tvpArg2
+                            : isLargeSequence(tvpArg1) ? tvpArg1 : null;
+                    if (tvpIndexed == tvpArg2 && isIndexed(tvpArg2, tvpArg1)) {
+                        booleanResult = probeIndex(tvpArg1, tvpArg2, false);
+                    } else if (tvpIndexed == tvpArg1 && isIndexed(tvpArg1, tvpArg2)) {
+                        booleanResult = probeIndex(tvpArg2, tvpArg1, true);
+                    } else if (tvpArg1.getTag() == ValueTag.SEQUENCE_TAG) {
                         tvpArg1.getValue(seqp1);
                         int seqLen = seqp1.getEntryCount();
                         for (int j = 0; j < seqLen; ++j) {
@@ -132,10 +152,11 @@ public abstract class AbstractGeneralComparisonScalarEvaluatorFactory extends
                         booleanResult = evaluateTaggedValueArgument2(aOp, tvpArg1, tvpArg2, dCtx);
                     }
 
-                    byte[] byteResult = new byte[2];
-                    byteResult[0] = ValueTag.XS_BOOLEAN_TAG;
-                    byteResult[1] = (byte) (booleanResult ? 1 : 0);
-                    result.set(byteResult, 0, 2);
+                    if (booleanResult) {
+                        XDMConstants.setTrue(result);
+                    } else {
+                        XDMConstants.setFalse(result);
+                    }
                 } catch (SystemException se) {
                     throw se;
                 } catch (Exception e) {
@@ -143,6 +164,107 @@ public abstract class AbstractGeneralComparisonScalarEvaluatorFactory extends
                 }
             }
 
+            private boolean isLargeSequence(TaggedValuePointable tvp) {
+                if (tvp.getTag() != ValueTag.SEQUENCE_TAG) {
+                    return false;
+                }
+                tvp.getValue(seqp2);
+                return seqp2.getEntryCount() >= MIN_INDEX_ITEMS;
+            }
+
+            /**
+             * Decides whether to compare against an index over the given operand. The index is used when the operand
+             * is a large sequence that either was already seen by the previous evaluation (a constant or loop
+             * invariant operand) or is compared against several items.
+             */
+            private boolean isIndexed(TaggedValuePointable tvpOperand, TaggedValuePointable tvpOther)
+                    throws SystemException, IOException {
+                if (!index.isOperand(tvpOperand)) {
+                    boolean severalItems = false;
+                    if (tvpOther.getTag() == ValueTag.SEQUENCE_TAG) {
+                        tvpOther.getValue(seqp1);
+                        severalItems = seqp1.getEntryCount() >= 2;
+                    }
+                    if (!severalItems && !index.isRepeatedCandidate(tvpOperand)) {
+                        return false;
+                    }
+                    index.setOperand(tvpOperand);
+                }
+                if (!index.isBuilt()) {
+                    index.build(ppool, dCtx);
+                }
+                return index.getItemClass() != GeneralComparisonIndex.NONE;
+            }
+
+            /**
+             * Compares every item of the probe operand against the index, in order.
+             *
+             * @param indexedFirst
+             *            true if the indexed operand is the first argument of the comparison
+             */
+            private boolean probeIndex(TaggedValuePointable tvpProbeArg, TaggedValuePointable tvpIndexed,
+                    boolean indexedFirst) throws SystemException, IOException {
+                if (tvpProbeArg.getTag() != ValueTag.SEQUENCE_TAG) {
+                    return probeIndexItem(tvpProbeArg, tvpIndexed, indexedFirst);
+                }
+                tvpProbeArg.getValue(seqp1);
+                int seqLen = seqp1.getEntryCount();
+                for (int j = 0; j < seqLen; ++j) {
+                    seqp1.getEntry(j, tvpProbe);
+                    if (probeIndexItem(tvpProbe, tvpIndexed, indexedFirst)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            private boolean probeIndexItem(TaggedValuePointable tvpItem, TaggedValuePointable tvpIndexed,
+                    boolean indexedFirst) throws SystemException, IOException {
+                TaggedValuePointable tvpValue = index.atomize(tvpItem, ppool);
+                if (!index.accepts(tvpValue.getTag())) {
+                    // Fall back to comparing the item with each item of the indexed operand.
+                    if (!indexedFirst) {
+                        return evaluateTaggedValueArgument2(aOp, tvpValue, tvpIndexed, dCtx);
+                    }
+                    tvpIndexed.getValue(seqp2);
+                    int seqLen = seqp2.getEntryCount();
+                    for (int j = 0; j < seqLen; ++j) {
+                        seqp2.getEntry(j, tvpSeq2);
+                        if (transformThenCompareTaggedValues(aOp, tvpSeq2, tvpValue, dCtx)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+                if (isEq) {
+                    for (int slot = index.firstSlot(tvpValue); slot >= 0; slot = index.nextSlot(slot)) {
+                        index.getSlotItem(slot, tvpIndexItem);
+                        if (compareWithIndexItem(tvpValue, indexedFirst)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+                return compareWithIndexItem(tvpValue, index.getMin(), indexedFirst)
+                        || compareWithIndexItem(tvpValue, index.getMax(), indexedFirst)
+                        || compareWithIndexItem(tvpValue, index.getNaN(), indexedFirst);
+            }
+
+            private boolean compareWithIndexItem(TaggedValuePointable tvpValue, int item, boolean indexedFirst)
+                    throws SystemException {
+                if (item < 0) {
+                    return false;
+                }
+                index.getItem(item, tvpIndexItem);
+                return compareWithIndexItem(tvpValue, indexedFirst);
+            }
+
+            private boolean compareWithIndexItem(TaggedValuePointable tvpValue, boolean indexedFirst)
+                    throws SystemException {
+                return indexedFirst ? transformThenCompareTaggedValues(aOp, tvpIndexItem, tvpValue, dCtx)
+                        : transformThenCompareTaggedValues(aOp, tvpValue, tvpIndexItem, dCtx);
+            }
+
             /**
              * Check the second argument for a sequence and loop if required.
              *
@@ -243,22 +365,23 @@ public abstract class AbstractGeneralComparisonScalarEvaluatorFactory extends
                         tvpCompare2.set(abvsInner2.getByteArray(), abvsInner2.getStartOffset(), abvsInner2.getLength());
                         tagTransformed2 = true;
                     }
-                    // Copy over the values not changed and upgrade numeric values to double.
+                    // Copy over the values not changed and upgrade derived integer values to integer. Numbers keep
+                    // their type, so that the value comparison promotes them as it does for eq.
                     if (!tagTransformed1) {
                         tvpCompare1.set(tvpTransform1);
-                        if (FunctionHelper.isDerivedFromDouble(tvpCompare1.getTag())) {
-                            FunctionHelper.getDoublePointable(tvpTransform1, dOutInner1, tp1);
+                        if (FunctionHelper.isDerivedFromInteger(tvpCompare1.getTag())) {
+                            FunctionHelper.getIntegerPointable(tvpTransform1, dOutInner1, tp1);
                             tvpCompare1.set(abvsInner1.getByteArray(), abvsInner1.getStartOffset(),
-                                    DoublePointable.TYPE_TRAITS.getFixedLength() + 1);
+                                    LongPointable.TYPE_TRAITS.getFixedLength() + 1);
                             tagTransformed1 = true;
                         }
                     }
                     if (!tagTransformed2) {
                         tvpCompare2.set(tvpTransform2);
-                        if (FunctionHelper.isDerivedFromDouble(tvpCompare2.getTag())) {
-                            FunctionHelper.getDoublePointable(tvpTransform2, dOutInner2, tp2);
+                        if (FunctionHelper.isDerivedFromInteger(tvpCompare2.getTag())) {
+                            FunctionHelper.getIntegerPointable(tvpTransform2, dOutInner2, tp2);
                             tvpCompare2.set(abvsInner2.getByteArray(), abvsInner2.getStartOffset(),
-                                    DoublePointable.TYPE_TRAITS.getFixedLength() + 1);
+                                    LongPointable.TYPE_TRAITS.getFixedLength() + 1);
                             tagTransformed2 = true;
                         }
                     }
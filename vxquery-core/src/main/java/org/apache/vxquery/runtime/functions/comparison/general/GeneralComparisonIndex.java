@@ -0,0 +1,386 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.comparison.general;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hyracks.data.std.primitive.DoublePointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.context.DynamicContext;
+import org.apache.vxquery.datamodel.accessors.PointablePool;
+import org.apache.vxquery.datamodel.accessors.SequencePointable;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.accessors.TypedPointables;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.exceptions.SystemException;
+import org.apache.vxquery.runtime.functions.cast.CastToDoubleOperation;
+import org.apache.vxquery.runtime.functions.comparison.AbstractValueComparisonOperation;
+import org.apache.vxquery.runtime.functions.comparison.ValueLtComparisonOperation;
+import org.apache.vxquery.runtime.functions.util.AtomizeHelper;
+import org.apache.vxquery.runtime.functions.util.FunctionHelper;
+
+/**
+ * Index over the items of one general comparison operand, built when all atomized items are strings and
+ * untypedAtomic values, or all numbers of one primitive type. Strings are stored as xs:string, numbers keep their
+ * type, with the derived integer types stored as xs:integer. For "=" the items are hashed, numbers on their xs:double
+ * value, so items that are only equal as doubles share a bucket. For the other operators an item of the other operand
+ * compares true against some indexed item exactly when it does against the smallest, the largest or a NaN item, so
+ * only those are kept. The caller confirms every candidate with the regular comparison, which keeps the results
+ * unchanged.
+ */
+class GeneralComparisonIndex {
+    static final int NONE = 0;
+    static final int STRING = 1;
+    static final int NUMBER = 2;
+
+    private final ArrayBackedValueStorage operand = new ArrayBackedValueStorage();
+    private final ArrayBackedValueStorage items = new ArrayBackedValueStorage();
+    private final DataOutput itemsOut = items.getDataOutput();
+    private final SequencePointable seqp = (SequencePointable) SequencePointable.FACTORY.createPointable();
+    private final ArrayBackedValueStorage abvsKey = new ArrayBackedValueStorage();
+    private final DoublePointable doublep = (DoublePointable) DoublePointable.FACTORY.createPointable();
+    private final TaggedValuePointable tvpItem = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+    private final TaggedValuePointable tvpOther = (TaggedValuePointable) TaggedValuePointable.FACTORY
+            .createPointable();
+    private final TaggedValuePointable tvpAtomized = (TaggedValuePointable) TaggedValuePointable.FACTORY
+            .createPointable();
+    private final TaggedValuePointable tvpDouble = (TaggedValuePointable) TaggedValuePointable.FACTORY
+            .createPointable();
+    private final TypedPointables tp1 = new TypedPointables();
+    private final TypedPointables tp2 = new TypedPointables();
+    private final AtomizeHelper ah = new AtomizeHelper();
+    private final AbstractValueComparisonOperation ltOp = new ValueLtComparisonOperation();
+    private final CastToDoubleOperation castToDouble = new CastToDoubleOperation();
+
+    private boolean built;
+    private int itemClass;
+    private int numberType;
+    private int candidateLength = -1;
+    private int candidateHash;
+    private int[] offsets = new int[16];
+    private int[] lengths = new int[16];
+    private int count;
+    private int[] table;
+    private int[] hashes;
+    private int min;
+    private int max;
+    private int nan;
+    private int keyHash;
+
+    /**
+     * @return true if the operand has the same bytes as the one the index was last set to
+     */
+    boolean isOperand(TaggedValuePointable tvp) {
+        if (tvp.getLength() != operand.getLength()) {
+            return false;
+        }
+        byte[] bytes = tvp.getByteArray();
+        byte[] operandBytes = operand.getByteArray();
+        int start = tvp.getStartOffset();
+        int operandStart = operand.getStartOffset();
+        for (int i = tvp.getLength() - 1; i >= 0; --i) {
+            if (bytes[start + i] != operandBytes[operandStart + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Keeps only the length and a hash of an operand that is not worth indexing yet, so that a large operand compared
+     * against a single item is not copied for every tuple.
+     *
+     * @return true if the previous operand passed here had the same length and hash
+     */
+    boolean isRepeatedCandidate(TaggedValuePointable tvp) {
+        byte[] bytes = tvp.getByteArray();
+        int h = 1;
+        for (int i = tvp.getStartOffset(), end = i + tvp.getLength(); i < end; ++i) {
+            h = 31 * h + bytes[i];
+        }
+        boolean repeated = tvp.getLength() == candidateLength && h == candidateHash;
+        candidateLength = tvp.getLength();
+        candidateHash = h;
+        return repeated;
+    }
+
+    void setOperand(TaggedValuePointable tvp) throws IOException {
+        operand.reset();
+        operand.getDataOutput().write(tvp.getByteArray(), tvp.getStartOffset(), tvp.getLength());
+        built = false;
+        itemClass = NONE;
+    }
+
+    boolean isBuilt() {
+        return built;
+    }
+
+    int getItemClass() {
+        return itemClass;
+    }
+
+    /**
+     * Builds the index over the operand last passed to {@link #setOperand}. If the items do not all fall into one
+     * class, the item class stays {@link #NONE}.
+     */
+    void build(PointablePool ppool, DynamicContext dCtx) throws SystemException, IOException {
+        built = true;
+        itemClass = NONE;
+        tvpOther.set(operand.getByteArray(), operand.getStartOffset(), operand.getLength());
+        tvpOther.getValue(seqp);
+        int seqLen = seqp.getEntryCount();
+        if (offsets.length < seqLen) {
+            offsets = new int[seqLen];
+            lengths = new int[seqLen];
+        }
+        items.reset();
+        count = 0;
+        int buildClass = NONE;
+        int buildNumberType = NONE;
+        for (int i = 0; i < seqLen; ++i) {
+            seqp.getEntry(i, tvpItem);
+            TaggedValuePointable tvp = atomize(tvpItem, ppool);
+            int tag = tvp.getTag();
+            int c = getClass(tag);
+            if (c == NONE || (buildClass != NONE && c != buildClass)) {
+                return;
+            }
+            buildClass = c;
+            offsets[count] = items.getLength();
+            if (c == STRING) {
+                itemsOut.write(ValueTag.XS_STRING_TAG);
+                itemsOut.write(tvp.getByteArray(), tvp.getStartOffset() + 1, tvp.getLength() - 1);
+            } else {
+                int t = FunctionHelper.getBaseTypeForComparisons(tag);
+                if (buildNumberType != NONE && t != buildNumberType) {
+                    return;
+                }
+                buildNumberType = t;
+                if (t == ValueTag.XS_INTEGER_TAG) {
+                    FunctionHelper.getIntegerPointable(tvp, itemsOut, tp1);
+                } else {
+                    itemsOut.write(tvp.getByteArray(), tvp.getStartOffset(), tvp.getLength());
+                }
+            }
+            lengths[count] = items.getLength() - offsets[count];
+            ++count;
+        }
+        itemClass = buildClass;
+        numberType = buildNumberType;
+
+        int capacity = Integer.highestOneBit(Math.max(count, 1) * 2) * 2;
+        if (table == null || table.length < capacity) {
+            table = new int[capacity];
+            hashes = new int[capacity];
+        } else {
+            Arrays.fill(table, 0);
+        }
+        int mask = table.length - 1;
+        min = -1;
+        max = -1;
+        nan = -1;
+        for (int i = 0; i < count; ++i) {
+            getItem(i, tvpItem);
+            int h;
+            if (itemClass == NUMBER) {
+                double d = getDouble(tvpItem);
+                if (Double.isNaN(d)) {
+                    // NaN is never equal to anything and is left out of the ordering.
+                    if (nan < 0) {
+                        nan = i;
+                    }
+                    continue;
+                }
+                h = hash(d);
+            } else {
+                h = hash(tvpItem);
+            }
+            int slot = h & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i + 1;
+            hashes[slot] = h;
+            if (min < 0) {
+                min = i;
+                max = i;
+            } else {
+                getItem(min, tvpOther);
+                if (FunctionHelper.compareTaggedValues(ltOp, tvpItem, tvpOther, dCtx, tp1, tp2)) {
+                    min = i;
+                }
+                getItem(max, tvpOther);
+                if (FunctionHelper.compareTaggedValues(ltOp, tvpOther, tvpItem, dCtx, tp1, tp2)) {
+                    max = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if an atomized value of the given tag can be looked up in the index. A number must have the type of
+     * the indexed numbers, or be compared as xs:double, which it is when it is a double or an untypedAtomic value. Only
+     * then are all items it is equal to in the bucket of its double value: a decimal or integer compared with a float
+     * is equal to it as a float, and a decimal compared with a double is converted without dropping trailing zeros.
+     */
+    boolean accepts(int tag) throws SystemException {
+        if (itemClass == STRING) {
+            return tag == ValueTag.XS_UNTYPED_ATOMIC_TAG || tag == ValueTag.XS_STRING_TAG;
+        }
+        int t;
+        if (tag == ValueTag.XS_UNTYPED_ATOMIC_TAG) {
+            t = ValueTag.XS_DOUBLE_TAG;
+        } else if (FunctionHelper.isDerivedFromDouble(tag)) {
+            t = FunctionHelper.getBaseTypeForComparisons(tag);
+        } else {
+            return false;
+        }
+        return t == numberType || (t == ValueTag.XS_DOUBLE_TAG && numberType != ValueTag.XS_DECIMAL_TAG);
+    }
+
+    /**
+     * Returns the first slot holding an item with the same hash as the given atomized value, or -1. The value must be
+     * {@link #accepts accepted} by the index.
+     */
+    int firstSlot(TaggedValuePointable tvp) throws SystemException, IOException {
+        if (itemClass == NUMBER) {
+            double d;
+            if (tvp.getTag() == ValueTag.XS_UNTYPED_ATOMIC_TAG) {
+                abvsKey.reset();
+                tvp.getValue(tp2.utf8sp);
+                castToDouble.convertUntypedAtomic(tp2.utf8sp, abvsKey.getDataOutput());
+                tvpOther.set(abvsKey.getByteArray(), abvsKey.getStartOffset(), abvsKey.getLength());
+                d = getDouble(tvpOther);
+            } else {
+                d = getDouble(tvp);
+            }
+            if (Double.isNaN(d)) {
+                return -1;
+            }
+            keyHash = hash(d);
+        } else {
+            keyHash = hash(tvp);
+        }
+        return findSlot(keyHash & (table.length - 1));
+    }
+
+    int nextSlot(int slot) {
+        return findSlot((slot + 1) & (table.length - 1));
+    }
+
+    private int findSlot(int slot) {
+        int mask = table.length - 1;
+        while (table[slot] != 0) {
+            if (hashes[slot] == keyHash) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    void getSlotItem(int slot, TaggedValuePointable tvp) {
+        getItem(table[slot] - 1, tvp);
+    }
+
+    /**
+     * @return the smallest item, the largest item and a NaN item, -1 where there is none
+     */
+    int getMin() {
+        return min;
+    }
+
+    int getMax() {
+        return max;
+    }
+
+    int getNaN() {
+        return nan;
+    }
+
+    void getItem(int i, TaggedValuePointable tvp) {
+        tvp.set(items.getByteArray(), items.getStartOffset() + offsets[i], lengths[i]);
+    }
+
+    TaggedValuePointable atomize(TaggedValuePointable tvp, PointablePool ppool) throws SystemException, IOException {
+        if (tvp.getTag() != ValueTag.NODE_TREE_TAG) {
+            return tvp;
+        }
+        ah.atomize(tvp, ppool, tvpAtomized);
+        return tvpAtomized;
+    }
+
+    private static int getClass(int tag) {
+        if (tag == ValueTag.XS_STRING_TAG || tag == ValueTag.XS_UNTYPED_ATOMIC_TAG) {
+            return STRING;
+        }
+        if (FunctionHelper.isDerivedFromDouble(tag)) {
+            return NUMBER;
+        }
+        return NONE;
+    }
+
+    /**
+     * @return the xs:double value of a number, with decimals equal in value converted alike whatever their number of
+     *         decimal places
+     */
+    private double getDouble(TaggedValuePointable tvp) throws SystemException, IOException {
+        if (tvp.getTag() == ValueTag.XS_DECIMAL_TAG) {
+            tvp.getValue(tp2.decp);
+            long value = tp2.decp.getDecimalValue();
+            int place = tp2.decp.getDecimalPlace();
+            while (place > 0 && value % 10 == 0) {
+                value /= 10;
+                --place;
+            }
+            return value / Math.pow(10, place);
+        }
+        abvsKey.reset();
+        FunctionHelper.getDoublePointable(tvp, abvsKey.getDataOutput(), tp2);
+        tvpDouble.set(abvsKey.getByteArray(), abvsKey.getStartOffset(), abvsKey.getLength());
+        tvpDouble.getValue(doublep);
+        return doublep.getDouble();
+    }
+
+    /**
+     * Hashes a double. Values that compare equal have the same hash: -0.0 and 0.0 are hashed alike.
+     */
+    private static int hash(double d) {
+        long bits = Double.doubleToLongBits(d == 0.0 ? 0.0 : d);
+        return mix((int) (bits ^ (bits >>> 32)));
+    }
+
+    /**
+     * Hashes the value of a string.
+     */
+    private static int hash(TaggedValuePointable tvp) {
+        int h = 1;
+        byte[] bytes = tvp.getByteArray();
+        int end = tvp.getStartOffset() + tvp.getLength();
+        for (int i = tvp.getStartOffset() + 1; i < end; ++i) {
+            h = 31 * h + bytes[i];
+        }
+        return mix(h);
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
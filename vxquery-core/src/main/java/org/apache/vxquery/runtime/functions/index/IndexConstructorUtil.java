@@ -35,27 +35,25 @@ import org.apache.vxquery.datamodel.builders.sequence.SequenceBuilder;
 import org.apache.vxquery.exceptions.ErrorCode;
 import org.apache.vxquery.exceptions.SystemException;
 import org.apache.vxquery.index.IndexDocumentBuilder;
+import org.apache.vxquery.runtime.functions.index.update.Constants;
 import org.apache.vxquery.runtime.functions.index.update.MetaFileUtil;
 import org.apache.vxquery.runtime.functions.index.update.XmlMetadata;
 import org.apache.vxquery.runtime.functions.util.FunctionHelper;
 import org.apache.vxquery.xmlparser.IParser;
-import org.apache.vxquery.xmlparser.ITreeNodeIdProvider;
 import org.apache.vxquery.xmlparser.XMLParser;
 
 public class IndexConstructorUtil {
     private final TaggedValuePointable nodep = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
     private final SequenceBuilder sb = new SequenceBuilder();
-    private boolean isMetaFilePresent = false;
     private MetaFileUtil metaFileUtil;
     private ConcurrentHashMap<String, XmlMetadata> metadataMap = new ConcurrentHashMap<>();
 
     public void evaluate(String collectioFolder, String indexFolder, IPointable result, ArrayBackedValueStorage abvs,
-            ITreeNodeIdProvider nodeIdProvider, ArrayBackedValueStorage abvsFileNode, boolean isElementPath,
-            String nodeId) throws IOException {
+            ArrayBackedValueStorage abvsFileNode, boolean isElementPath, String nodeId) throws IOException {
 
         metaFileUtil = new MetaFileUtil(indexFolder);
-        isMetaFilePresent = metaFileUtil.isMetaFilePresent();
         metaFileUtil.setCollection(collectioFolder);
+        metaFileUtil.setIndexFormat(Constants.INDEX_FORMAT);
 
         File collectionDirectory = new File(collectioFolder);
         if (!collectionDirectory.exists()) {
@@ -77,13 +75,12 @@ public class IndexConstructorUtil {
             IndexWriter writer = new IndexWriter(dir, iwc);
 
             //Add files to index
-            indexXmlFiles(collectionDirectory, writer, isElementPath, abvsFileNode, nodeIdProvider, sb, nodeId);
+            indexXmlFiles(collectionDirectory, writer, isElementPath, abvsFileNode, sb, nodeId);
 
-            if (!isMetaFilePresent) {
-                // Write metadata map to a file.
-                metaFileUtil.updateMetadataMap(metadataMap, indexFolder);
-                metaFileUtil.writeMetadataToFile();
-            }
+            // Write metadata map to a file. The index is recreated, so an existing file is replaced as well to
+            // record the current index format.
+            metaFileUtil.updateMetadataMap(metadataMap, indexFolder);
+            metaFileUtil.writeMetadataToFile();
 
             //This makes write slower but search faster.
             writer.forceMerge(1);
@@ -102,8 +99,7 @@ public class IndexConstructorUtil {
      * it indexes that document node.
      */
     public void indexXmlFiles(File collectionDirectory, IndexWriter writer, boolean isElementPath,
-            ArrayBackedValueStorage abvsFileNode, ITreeNodeIdProvider nodeIdProvider, SequenceBuilder sb, String nodeId)
-            throws IOException {
+            ArrayBackedValueStorage abvsFileNode, SequenceBuilder sb, String nodeId) throws IOException {
         SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy, HH:mm:ss");
 
         for (File file : collectionDirectory.listFiles()) {
@@ -111,21 +107,21 @@ public class IndexConstructorUtil {
             if (readableXmlFile(file.getPath())) {
                 abvsFileNode.reset();
 
-                IndexDocumentBuilder ibuilder = getIndexBuilder(file, writer, abvsFileNode, nodeIdProvider, nodeId);
+                IndexDocumentBuilder ibuilder = getIndexBuilder(file, writer, abvsFileNode, nodeId);
 
                 ibuilder.printStart();
-                if (!isMetaFilePresent) {
-                    XmlMetadata xmlMetadata = new XmlMetadata();
-                    xmlMetadata.setPath(file.getCanonicalPath());
-                    xmlMetadata.setFileName(file.getName());
-                    xmlMetadata.setLastModified(sdf.format(file.lastModified()));
-                    xmlMetadata.setMd5(metaFileUtil.generateMD5(file));
-                    metadataMap.put(file.getCanonicalPath(), xmlMetadata);
-                }
+                XmlMetadata xmlMetadata = new XmlMetadata();
+                xmlMetadata.setPath(file.getCanonicalPath());
+                xmlMetadata.setFileName(file.getName());
+                xmlMetadata.setLastModified(sdf.format(file.lastModified()));
+                xmlMetadata.setLength(file.length());
+                xmlMetadata.setModified(file.lastModified());
+                xmlMetadata.setMd5(metaFileUtil.generateMD5(file));
+                metadataMap.put(file.getCanonicalPath(), xmlMetadata);
 
             } else if (file.isDirectory()) {
                 // Consider all XML file in sub directories.
-                indexXmlFiles(file, writer, isElementPath, abvsFileNode, nodeIdProvider, sb, nodeId);
+                indexXmlFiles(file, writer, isElementPath, abvsFileNode, sb, nodeId);
             }
         }
     }
@@ -135,10 +131,10 @@ public class IndexConstructorUtil {
     }
 
     public IndexDocumentBuilder getIndexBuilder(File file, IndexWriter writer, ArrayBackedValueStorage abvsFileNode,
-            ITreeNodeIdProvider nodeIdProvider, String nodeId) throws IOException {
+            String nodeId) throws IOException {
 
-        //Get the document node
-        IParser parser = new XMLParser(false, nodeIdProvider, nodeId);
+        //Get the document node without node ids, which are assigned again when a hit is replayed
+        IParser parser = new XMLParser(false, null, nodeId);
         FunctionHelper.readInDocFromString(file.getPath(), abvsFileNode, parser);
 
         nodep.set(abvsFileNode.getByteArray(), abvsFileNode.getStartOffset(), abvsFileNode.getLength());
@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.index;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+
+/**
+ * Append-only file of checksummed records, used for the index metadata.
+ * Records are appended in batches and a batch only becomes visible to readers once {@link #commit()} has written its
+ * commit marker and forced the file to disk. A batch that was cut short by a crash is ignored on the next read and
+ * overwritten by the next append. {@link #rewrite(List)} replaces the whole log with a compacted snapshot through a
+ * temporary file and an atomic rename.
+ * <p>
+ * Layout: a magic number, followed by records of the form [length][bytes][CRC32 of the bytes]. A record of length
+ * zero is the commit marker.
+ */
+public class RecordLog {
+    private static final int MAGIC = 0x56584c47;
+    private static final int HEADER_SIZE = 4;
+    private static final int RECORD_OVERHEAD = 8;
+
+    public interface IRecordReader {
+        /**
+         * @return false to stop reading further records.
+         */
+        boolean read(DataInputStream in) throws IOException;
+    }
+
+    private final File file;
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private boolean scanned;
+    private long committedLength = HEADER_SIZE;
+    private int recordCount;
+
+    public RecordLog(File file) {
+        this.file = file;
+    }
+
+    public boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Number of records in the file, as seen by the last read or write. Used to decide when to compact.
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Reads the committed records in order.
+     *
+     * @return false if the reader stopped early.
+     */
+    public boolean read(IRecordReader reader) throws IOException {
+        scanned = true;
+        committedLength = HEADER_SIZE;
+        recordCount = 0;
+        if (!file.exists()) {
+            return true;
+        }
+        long fileLength = file.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a record log: " + file);
+            }
+            List<byte[]> batch = new ArrayList<>();
+            long position = HEADER_SIZE;
+            while (true) {
+                byte[] record = readRecord(in, fileLength - position - RECORD_OVERHEAD);
+                if (record == null) {
+                    // End of file, or the tail of an interrupted batch.
+                    return true;
+                }
+                position += RECORD_OVERHEAD + record.length;
+                if (record.length > 0) {
+                    batch.add(record);
+                    continue;
+                }
+                for (byte[] r : batch) {
+                    if (!reader.read(new DataInputStream(new ByteArrayInputStream(r)))) {
+                        // The end of the committed data is not known.
+                        scanned = false;
+                        return false;
+                    }
+                }
+                recordCount += batch.size();
+                committedLength = position;
+                batch.clear();
+            }
+        } catch (EOFException e) {
+            // Header not written completely.
+            return true;
+        }
+    }
+
+    private byte[] readRecord(DataInputStream in, long maxLength) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 0 || length > maxLength) {
+            return null;
+        }
+        byte[] record = new byte[length];
+        try {
+            in.readFully(record);
+            int checksum = in.readInt();
+            crc.reset();
+            crc.update(record, 0, length);
+            if ((int) crc.getValue() != checksum) {
+                return null;
+            }
+        } catch (EOFException e) {
+            return null;
+        }
+        return record;
+    }
+
+    /**
+     * Appends a record to the current batch.
+     */
+    public void append(ArrayBackedValueStorage record) throws IOException {
+        open();
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_OVERHEAD + record.getLength());
+        putRecord(buffer, record.getByteArray(), record.getStartOffset(), record.getLength());
+        buffer.flip();
+        writeFully(channel, buffer);
+        ++recordCount;
+    }
+
+    /**
+     * Ends the current batch and forces it to disk.
+     */
+    public void commit() throws IOException {
+        open();
+        writeCommitMarker(channel);
+        channel.force(false);
+        committedLength = channel.position();
+    }
+
+    /**
+     * Replaces the log by the given records. The first record is committed on its own, so that a header record can
+     * be read without reading the rest of the log.
+     */
+    public void rewrite(List<ArrayBackedValueStorage> records) throws IOException {
+        close();
+        File tmp = new File(file.getPath() + ".tmp");
+        int count = 0;
+        try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.flip();
+            writeFully(out, header);
+            for (ArrayBackedValueStorage record : records) {
+                ByteBuffer buffer = ByteBuffer.allocate(RECORD_OVERHEAD + record.getLength());
+                putRecord(buffer, record.getByteArray(), record.getStartOffset(), record.getLength());
+                buffer.flip();
+                writeFully(out, buffer);
+                if (count++ == 0) {
+                    writeCommitMarker(out);
+                }
+            }
+            writeCommitMarker(out);
+            out.force(false);
+            committedLength = out.position();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        recordCount = count;
+        scanned = true;
+    }
+
+    private void open() throws IOException {
+        if (channel != null) {
+            return;
+        }
+        if (!scanned) {
+            read(new IRecordReader() {
+                @Override
+                public boolean read(DataInputStream in) {
+                    return true;
+                }
+            });
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.flip();
+            channel.position(0);
+            writeFully(channel, header);
+            committedLength = HEADER_SIZE;
+        }
+        // Drop anything after the last commit, it belongs to an interrupted batch.
+        channel.truncate(committedLength);
+        channel.position(committedLength);
+    }
+
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    public boolean delete() throws IOException {
+        close();
+        return Files.deleteIfExists(file.toPath());
+    }
+
+    private void writeCommitMarker(FileChannel out) throws IOException {
+        ByteBuffer marker = ByteBuffer.allocate(RECORD_OVERHEAD);
+        putRecord(marker, null, 0, 0);
+        marker.flip();
+        writeFully(out, marker);
+    }
+
+    private void putRecord(ByteBuffer buffer, byte[] bytes, int start, int length) {
+        buffer.putInt(length);
+        crc.reset();
+        if (length > 0) {
+            buffer.put(bytes, start, length);
+            crc.update(bytes, start, length);
+        }
+        buffer.putInt((int) crc.getValue());
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
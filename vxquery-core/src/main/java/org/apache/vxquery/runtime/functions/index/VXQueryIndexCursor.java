@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.index;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+
+/**
+ * Walks the documents matching a query segment by segment, without scoring and without collecting the hits first.
+ * Only the iterator of the current segment is held in memory, so there is no limit on the number of results.
+ */
+public class VXQueryIndexCursor {
+    private final Weight weight;
+    private final List<LeafReaderContext> leaves;
+    private int leafIndex;
+    private DocIdSetIterator iterator;
+    private Bits liveDocs;
+    private int docBase;
+    private long matched;
+
+    public VXQueryIndexCursor(IndexSearcher searcher, Query query) throws IOException {
+        weight = searcher.createNormalizedWeight(query, false);
+        leaves = searcher.getIndexReader().leaves();
+        leafIndex = 0;
+        matched = 0;
+    }
+
+    /**
+     * @return the index wide id of the next matching document or {@link DocIdSetIterator#NO_MORE_DOCS}.
+     */
+    public int next() throws IOException {
+        while (true) {
+            if (iterator != null) {
+                int doc = iterator.nextDoc();
+                while (doc != DocIdSetIterator.NO_MORE_DOCS && liveDocs != null && !liveDocs.get(doc)) {
+                    doc = iterator.nextDoc();
+                }
+                if (doc != DocIdSetIterator.NO_MORE_DOCS) {
+                    ++matched;
+                    return docBase + doc;
+                }
+                iterator = null;
+            }
+            if (leafIndex >= leaves.size()) {
+                return DocIdSetIterator.NO_MORE_DOCS;
+            }
+            LeafReaderContext leaf = leaves.get(leafIndex++);
+            Scorer scorer = weight.scorer(leaf);
+            if (scorer != null) {
+                iterator = scorer.iterator();
+                liveDocs = leaf.reader().getLiveDocs();
+                docBase = leaf.docBase;
+            }
+        }
+    }
+
+    public long getMatchedCount() {
+        return matched;
+    }
+}
@@ -20,7 +20,11 @@ import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.hyracks.algebricks.common.exceptions.AlgebricksException;
@@ -29,24 +33,40 @@ import org.apache.hyracks.api.comm.IFrameWriter;
 import org.apache.hyracks.api.context.IHyracksTaskContext;
 import org.apache.hyracks.data.std.api.IPointable;
 import org.apache.hyracks.data.std.primitive.LongPointable;
+import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
 import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.hyracks.data.std.util.GrowableArray;
+import org.apache.hyracks.data.std.util.UTF8StringBuilder;
+import org.apache.hyracks.util.string.UTF8StringUtil;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
 import org.apache.vxquery.context.DynamicContext;
+import org.apache.vxquery.datamodel.accessors.PointablePool;
+import org.apache.vxquery.datamodel.accessors.PointablePoolFactory;
+import org.apache.vxquery.datamodel.accessors.SequencePointable;
 import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.accessors.atomic.CodedQNamePointable;
+import org.apache.vxquery.datamodel.accessors.nodes.AttributeNodePointable;
+import org.apache.vxquery.datamodel.accessors.nodes.DocumentNodePointable;
+import org.apache.vxquery.datamodel.accessors.nodes.ElementNodePointable;
+import org.apache.vxquery.datamodel.accessors.nodes.NodeTreePointable;
+import org.apache.vxquery.datamodel.accessors.nodes.PINodePointable;
+import org.apache.vxquery.datamodel.accessors.nodes.TextOrCommentNodePointable;
 import org.apache.vxquery.datamodel.values.ValueTag;
 import org.apache.vxquery.exceptions.ErrorCode;
 import org.apache.vxquery.exceptions.SystemException;
 import org.apache.vxquery.index.IndexAttributes;
+import org.apache.vxquery.runtime.functions.index.update.Constants;
+import org.apache.vxquery.runtime.functions.index.update.MetaFileUtil;
 import org.apache.vxquery.runtime.functions.util.FunctionHelper;
 import org.apache.vxquery.types.AttributeType;
 import org.apache.vxquery.types.ElementType;
@@ -55,16 +75,16 @@ import org.apache.vxquery.types.NodeType;
 import org.apache.vxquery.types.SequenceType;
 import org.apache.vxquery.xmlparser.ITreeNodeIdProvider;
 import org.apache.vxquery.xmlparser.SAXContentHandler;
-import org.apache.vxquery.xmlparser.TreeNodeIdProvider;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 
 public class VXQueryIndexReader {
+    protected static final Logger LOGGER = Logger.getLogger(VXQueryIndexReader.class.getName());
+    private static final Set<String> NODE_TREE_FIELDS = Collections.singleton(Constants.FIELD_NODE_TREE);
 
     private ArrayBackedValueStorage nodeAbvs = new ArrayBackedValueStorage();
 
-    private int indexPlace;
-    private int indexLength;
+    private long materialized;
     private String elementPath;
     private String returnPath;
     private String indexName;
@@ -72,7 +92,7 @@ public class VXQueryIndexReader {
     private IndexReader reader;
     private IndexSearcher searcher;
     private QueryParser parser;
-    private ScoreDoc[] hits;
+    private VXQueryIndexCursor cursor;
     private SAXContentHandler handler;
     private Query query;
     private Document doc;
@@ -80,14 +100,30 @@ public class VXQueryIndexReader {
     private IHyracksTaskContext ctx;
     private String[] childLocalName = null;
     private IFrameFieldAppender appender;
+    private ITreeNodeIdProvider nodeIdProvider;
     private boolean firstElement;
     private List<Byte[]> indexSeq;
     private List<Integer> indexAttsSeq;
 
+    private final PointablePool pp = PointablePoolFactory.INSTANCE.createPointablePool();
+    private final TaggedValuePointable treeTvp = (TaggedValuePointable) TaggedValuePointable.FACTORY
+            .createPointable();
+    private final NodeTreePointable ntp = (NodeTreePointable) NodeTreePointable.FACTORY.createPointable();
+    private final CodedQNamePointable cqp = (CodedQNamePointable) CodedQNamePointable.FACTORY.createPointable();
+    private final UTF8StringPointable indexValue = (UTF8StringPointable) UTF8StringPointable.FACTORY
+            .createPointable();
+    private final StringBuilder stringBuilder = new StringBuilder();
+    private int indexFormat;
+    private String[] pathLocalNames;
+    private String[] indexChildLocalNames;
+    private String indexAttLocalName;
+    private String[] dictionaryStrings = new String[0];
+
     public VXQueryIndexReader(IHyracksTaskContext context, String indexPath, List<Integer> childSeq,
             List<Integer> indexChildSeq, List<Integer> indexAttsSeq, List<Byte[]> indexSeq,
-            IFrameFieldAppender appender) {
+            IFrameFieldAppender appender, ITreeNodeIdProvider nodeIdProvider) {
         this.ctx = context;
+        this.nodeIdProvider = nodeIdProvider;
         this.indexSeq = indexSeq;
         this.indexAttsSeq = indexAttsSeq;
         this.indexName = indexPath;
@@ -123,16 +159,21 @@ public class VXQueryIndexReader {
             ++index;
         }
         returnPath = stb.toString();
+        pathLocalNames = Arrays.copyOf(childLocalName, index);
         stb.append("/");
         if (!indexSeq.isEmpty()) {
-            addChildren(indexChildSeq, dCtx, index, stb);
-            addAtts(dCtx, index, stb);
+            int attsIndex = addChildren(indexChildSeq, dCtx, index, stb);
+            addAtts(dCtx, attsIndex, stb);
             addValue(stb);
             elementPath = stb.toString();
+            indexChildLocalNames = Arrays.copyOfRange(childLocalName, index, attsIndex);
+            if (!indexAttsSeq.isEmpty()) {
+                indexAttLocalName = childLocalName[attsIndex + indexAttsSeq.size() - 1];
+            }
         }
     }
 
-    public void addChildren(List<Integer> indexChildSeq, DynamicContext dCtx, int index, StringBuilder stb) {
+    public int addChildren(List<Integer> indexChildSeq, DynamicContext dCtx, int index, StringBuilder stb) {
         for (Integer integer : indexChildSeq) {
             SequenceType sType = dCtx.getStaticContext().lookupSequenceType(integer);
             NodeType nodeType = (NodeType) sType.getItemType();
@@ -144,6 +185,7 @@ public class VXQueryIndexReader {
             stb.append("/");
             ++index;
         }
+        return index;
     }
 
     public void addAtts(DynamicContext dCtx, int index, StringBuilder stb) {
@@ -183,41 +225,93 @@ public class VXQueryIndexReader {
     public boolean step(IPointable result, IFrameWriter writer, int tupleIndex) throws AlgebricksException {
         /*each step will create a tuple for a single xml file
         * This is done using the parse function
-        * checkoverflow is used throughout. This is because memory might not be
-        * able to hold all of the results at once, so we return 1 million at
-        * a time and check when we need to get more
+        * The matching documents are read from the cursor one at a time,
+        * so memory does not depend on the number of hits.
         */
-        if (indexPlace < indexLength) {
+        try {
+            int docId = cursor.next();
+            if (docId == DocIdSetIterator.NO_MORE_DOCS) {
+                return false;
+            }
             nodeAbvs.reset();
-            try {
+            handler.setupElementWriter(writer, tupleIndex);
+            BytesRef tree = null;
+            if (indexFormat == Constants.INDEX_FORMAT_STORED_TREE) {
+                doc = searcher.doc(docId, NODE_TREE_FIELDS);
+                tree = doc.getBinaryValue(Constants.FIELD_NODE_TREE);
+            }
+            if (tree != null) {
+                replay(tree);
+            } else {
                 //TODO: now we get back the entire document
-                doc = searcher.doc(hits[indexPlace].doc);
+                doc = searcher.doc(docId);
                 fields = doc.getFields();
-                handler.setupElementWriter(writer, tupleIndex);
                 this.firstElement = true;
                 parse(nodeAbvs);
-            } catch (IOException e) {
-                throw new AlgebricksException(e);
             }
-            indexPlace += 1;
-            result.set(nodeAbvs.getByteArray(), nodeAbvs.getStartOffset(), nodeAbvs.getLength());
-            return true;
+        } catch (IOException e) {
+            throw new AlgebricksException(e);
         }
-        return false;
+        ++materialized;
+        result.set(nodeAbvs.getByteArray(), nodeAbvs.getStartOffset(), nodeAbvs.getLength());
+        return true;
     }
 
-    public void init() throws SystemException {
+    /**
+     * Closes the index and reports how many documents matched the query and how many were turned into tuples.
+     */
+    public void close() throws SystemException {
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Index scan of " + indexName + " matched " + getMatchedCount() + " documents and materialized "
+                    + materialized + ".");
+        }
+        try {
+            if (reader != null) {
+                reader.close();
+                reader = null;
+            }
+        } catch (IOException e) {
+            throw new SystemException(ErrorCode.SYSE0001, e);
+        }
+    }
+
+    public long getMatchedCount() {
+        return cursor == null ? 0 : cursor.getMatchedCount();
+    }
+
+    public long getMaterializedCount() {
+        return materialized;
+    }
 
-        int partition = ctx.getTaskAttemptId().getTaskId().getPartition();
-        ITreeNodeIdProvider nodeIdProvider = new TreeNodeIdProvider((short) partition);
+    public void init() throws SystemException {
         handler = new SAXContentHandler(false, nodeIdProvider, appender, childSequenceTypes);
 
         nodeAbvs.reset();
-        indexPlace = 0;
+        materialized = 0;
+
+        // Indexes without a recorded format keep their nodes as path strings and are still read that way.
+        MetaFileUtil metaFileUtil = new MetaFileUtil(indexName);
+        indexFormat = Constants.INDEX_FORMAT;
+        if (metaFileUtil.isMetaFilePresent()) {
+            metaFileUtil.readMetadataFile();
+            indexFormat = metaFileUtil.getIndexFormat();
+        }
+        if (indexFormat != Constants.INDEX_FORMAT_PATH_STRINGS && indexFormat != Constants.INDEX_FORMAT) {
+            throw new SystemException(ErrorCode.SYSE0001, new IOException("Index " + indexName + " is in format "
+                    + indexFormat + " and has to be updated to format " + Constants.INDEX_FORMAT));
+        }
+        if (!indexSeq.isEmpty()) {
+            try {
+                GrowableArray valueGA = new GrowableArray();
+                String value = childLocalName[childLocalName.length - 1];
+                FunctionHelper.stringToGrowableArray(value, valueGA, new UTF8StringBuilder(), value.length());
+                indexValue.set(valueGA.getByteArray(), 0, valueGA.getLength());
+            } catch (IOException e) {
+                throw new SystemException(ErrorCode.SYSE0001, e);
+            }
+        }
 
         try {
-            indexPlace = 0;
-
             //Create the index reader.
             reader = DirectoryReader.open(FSDirectory.open(Paths.get(indexName)));
         } catch (IOException e) {
@@ -256,19 +350,303 @@ public class VXQueryIndexReader {
             elementPath = elementPath.substring(0, lastslash) + ":" + elementPath.substring(lastslash + 1);
             elementPath = elementPath.replaceAll("/", ".") + type;
         }
-        TopDocs results = null;
         try {
             query = parser.parse(queryString);
-
-            //TODO: Right now it only returns 1000000 results
-            results = searcher.search(query, 1000000);
+            cursor = new VXQueryIndexCursor(searcher, query);
         } catch (Exception e) {
             throw new SystemException(null, e);
         }
+    }
+
+    /**
+     * Replays the stored node tree of a document into the content handler. Only the elements on the path to the
+     * returned elements are visited, and with a value filter an element is only replayed if it holds the value.
+     */
+    private void replay(BytesRef tree) throws IOException {
+        if (tree.length == 0 || tree.bytes[tree.offset] != Constants.NODE_TREE_LAYOUT) {
+            throw new IOException("Index " + indexName + " stores node trees in layout "
+                    + (tree.length == 0 ? "none" : tree.bytes[tree.offset]) + " instead of "
+                    + Constants.NODE_TREE_LAYOUT);
+        }
+        treeTvp.set(tree.bytes, tree.offset + 1, tree.length - 1);
+        treeTvp.getValue(ntp);
+        int dictionarySize = ntp.getDictionaryEntryCount();
+        if (dictionaryStrings.length < dictionarySize) {
+            dictionaryStrings = new String[dictionarySize];
+        } else {
+            Arrays.fill(dictionaryStrings, 0, dictionarySize, null);
+        }
+        TaggedValuePointable rootTvp = pp.takeOne(TaggedValuePointable.class);
+        DocumentNodePointable dnp = pp.takeOne(DocumentNodePointable.class);
+        SequencePointable content = pp.takeOne(SequencePointable.class);
+        try {
+            ntp.getRootNode(rootTvp);
+            if (rootTvp.getTag() != ValueTag.DOCUMENT_NODE_TAG || pathLocalNames.length == 0) {
+                return;
+            }
+            rootTvp.getValue(dnp);
+            dnp.getContent(ntp, content);
+            handler.startDocument();
+            replayPathStep(content, 0);
+        } catch (SAXException e) {
+            throw new IOException(e);
+        } finally {
+            pp.giveBack(content);
+            pp.giveBack(dnp);
+            pp.giveBack(rootTvp);
+        }
+    }
+
+    private void replayPathStep(SequencePointable content, int depth) throws SAXException {
+        TaggedValuePointable tvp = pp.takeOne(TaggedValuePointable.class);
+        ElementNodePointable enp = pp.takeOne(ElementNodePointable.class);
+        SequencePointable children = pp.takeOne(SequencePointable.class);
+        try {
+            for (int i = 0; i < content.getEntryCount(); ++i) {
+                content.getEntry(i, tvp);
+                if (tvp.getTag() != ValueTag.ELEMENT_NODE_TAG) {
+                    continue;
+                }
+                tvp.getValue(enp);
+                enp.getName(cqp);
+                if (!pathLocalNames[depth].equals(getDictionaryString(cqp.getLocalCode()))) {
+                    continue;
+                }
+                if (depth == pathLocalNames.length - 1) {
+                    if (indexSeq.isEmpty() || hasIndexValue(enp, 0)) {
+                        replayElement(enp);
+                    }
+                    continue;
+                }
+                String uri = getDictionaryString(cqp.getNamespaceCode());
+                String localName = getDictionaryString(cqp.getLocalCode());
+                String prefix = getDictionaryString(cqp.getPrefixCode());
+                if (handler.startElement(uri, localName, prefix)) {
+                    handler.endAttributes();
+                }
+                if (enp.childrenChunkExists()) {
+                    enp.getChildrenSequence(ntp, children);
+                    replayPathStep(children, depth + 1);
+                }
+                handler.endElement(uri, localName, localName);
+            }
+        } finally {
+            pp.giveBack(children);
+            pp.giveBack(enp);
+            pp.giveBack(tvp);
+        }
+    }
+
+    private void replayElement(ElementNodePointable enp) throws SAXException {
+        TaggedValuePointable tvp = pp.takeOne(TaggedValuePointable.class);
+        TaggedValuePointable valueTvp = pp.takeOne(TaggedValuePointable.class);
+        SequencePointable seq = pp.takeOne(SequencePointable.class);
+        UTF8StringPointable utf8sp = pp.takeOne(UTF8StringPointable.class);
+        try {
+            enp.getName(cqp);
+            String uri = getDictionaryString(cqp.getNamespaceCode());
+            String localName = getDictionaryString(cqp.getLocalCode());
+            String prefix = getDictionaryString(cqp.getPrefixCode());
+            if (handler.startElement(uri, localName, prefix)) {
+                if (enp.attributesChunkExists()) {
+                    AttributeNodePointable anp = pp.takeOne(AttributeNodePointable.class);
+                    try {
+                        enp.getAttributeSequence(ntp, seq);
+                        for (int i = 0; i < seq.getEntryCount(); ++i) {
+                            seq.getEntry(i, tvp);
+                            tvp.getValue(anp);
+                            anp.getName(cqp);
+                            anp.getValue(ntp, valueTvp);
+                            valueTvp.getValue(utf8sp);
+                            handler.attribute(getDictionaryString(cqp.getNamespaceCode()),
+                                    getDictionaryString(cqp.getLocalCode()),
+                                    getDictionaryString(cqp.getPrefixCode()), utf8sp.getByteArray(),
+                                    utf8sp.getCharStartOffset(), utf8sp.getUTF8Length());
+                        }
+                    } finally {
+                        pp.giveBack(anp);
+                    }
+                }
+                handler.endAttributes();
+                if (enp.childrenChunkExists()) {
+                    enp.getChildrenSequence(ntp, seq);
+                    replayChildren(seq, tvp, utf8sp);
+                }
+            }
+            handler.endElement(uri, localName, localName);
+        } finally {
+            pp.giveBack(utf8sp);
+            pp.giveBack(seq);
+            pp.giveBack(valueTvp);
+            pp.giveBack(tvp);
+        }
+    }
+
+    private void replayChildren(SequencePointable children, TaggedValuePointable tvp, UTF8StringPointable utf8sp)
+            throws SAXException {
+        for (int i = 0; i < children.getEntryCount(); ++i) {
+            children.getEntry(i, tvp);
+            switch ((int) tvp.getTag()) {
+                case ValueTag.ELEMENT_NODE_TAG:
+                    ElementNodePointable enp = pp.takeOne(ElementNodePointable.class);
+                    try {
+                        tvp.getValue(enp);
+                        replayElement(enp);
+                    } finally {
+                        pp.giveBack(enp);
+                    }
+                    break;
+                case ValueTag.TEXT_NODE_TAG:
+                case ValueTag.COMMENT_NODE_TAG:
+                    TextOrCommentNodePointable tcnp = pp.takeOne(TextOrCommentNodePointable.class);
+                    try {
+                        tvp.getValue(tcnp);
+                        tcnp.getValue(ntp, utf8sp);
+                        if (tvp.getTag() == ValueTag.TEXT_NODE_TAG) {
+                            handler.characters(utf8sp.getByteArray(), utf8sp.getCharStartOffset(),
+                                    utf8sp.getUTF8Length());
+                        } else {
+                            handler.comment(utf8sp.getByteArray(), utf8sp.getCharStartOffset(),
+                                    utf8sp.getUTF8Length());
+                        }
+                    } finally {
+                        pp.giveBack(tcnp);
+                    }
+                    break;
+                case ValueTag.PI_NODE_TAG:
+                    PINodePointable pnp = pp.takeOne(PINodePointable.class);
+                    try {
+                        tvp.getValue(pnp);
+                        pnp.getTarget(ntp, utf8sp);
+                        String target = getString(utf8sp);
+                        pnp.getContent(ntp, utf8sp);
+                        handler.processingInstruction(target, getString(utf8sp));
+                    } finally {
+                        pp.giveBack(pnp);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Checks if an element has a descendant on the index child path whose text, or attribute value, equals the
+     * searched value.
+     */
+    private boolean hasIndexValue(ElementNodePointable enp, int step) {
+        TaggedValuePointable tvp = pp.takeOne(TaggedValuePointable.class);
+        SequencePointable seq = pp.takeOne(SequencePointable.class);
+        UTF8StringPointable utf8sp = pp.takeOne(UTF8StringPointable.class);
+        try {
+            if (step == indexChildLocalNames.length && indexAttLocalName != null) {
+                if (!enp.attributesChunkExists()) {
+                    return false;
+                }
+                AttributeNodePointable anp = pp.takeOne(AttributeNodePointable.class);
+                try {
+                    enp.getAttributeSequence(ntp, seq);
+                    for (int i = 0; i < seq.getEntryCount(); ++i) {
+                        seq.getEntry(i, tvp);
+                        tvp.getValue(anp);
+                        anp.getName(cqp);
+                        if (indexAttLocalName.equals(getDictionaryString(cqp.getLocalCode()))) {
+                            anp.getValue(ntp, tvp);
+                            tvp.getValue(utf8sp);
+                            if (isIndexValue(utf8sp)) {
+                                return true;
+                            }
+                        }
+                    }
+                } finally {
+                    pp.giveBack(anp);
+                }
+                return false;
+            }
+            if (!enp.childrenChunkExists()) {
+                return false;
+            }
+            enp.getChildrenSequence(ntp, seq);
+            for (int i = 0; i < seq.getEntryCount(); ++i) {
+                seq.getEntry(i, tvp);
+                if (step == indexChildLocalNames.length) {
+                    if (tvp.getTag() == ValueTag.TEXT_NODE_TAG) {
+                        TextOrCommentNodePointable tcnp = pp.takeOne(TextOrCommentNodePointable.class);
+                        try {
+                            tvp.getValue(tcnp);
+                            tcnp.getValue(ntp, utf8sp);
+                        } finally {
+                            pp.giveBack(tcnp);
+                        }
+                        if (isIndexValue(utf8sp)) {
+                            return true;
+                        }
+                    }
+                } else if (tvp.getTag() == ValueTag.ELEMENT_NODE_TAG) {
+                    ElementNodePointable child = pp.takeOne(ElementNodePointable.class);
+                    try {
+                        tvp.getValue(child);
+                        child.getName(cqp);
+                        if (indexChildLocalNames[step].equals(getDictionaryString(cqp.getLocalCode()))
+                                && hasIndexValue(child, step + 1)) {
+                            return true;
+                        }
+                    } finally {
+                        pp.giveBack(child);
+                    }
+                }
+            }
+            return false;
+        } finally {
+            pp.giveBack(utf8sp);
+            pp.giveBack(seq);
+            pp.giveBack(tvp);
+        }
+    }
+
+    private boolean isIndexValue(UTF8StringPointable value) {
+        int length = value.getUTF8Length();
+        if (length != indexValue.getUTF8Length()) {
+            return false;
+        }
+        byte[] bytes = value.getByteArray();
+        int start = value.getCharStartOffset();
+        byte[] indexBytes = indexValue.getByteArray();
+        int indexStart = indexValue.getCharStartOffset();
+        for (int i = 0; i < length; ++i) {
+            if (bytes[start + i] != indexBytes[indexStart + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Strings of the node tree dictionary are decoded once per document.
+     */
+    private String getDictionaryString(int code) {
+        if (code < 0) {
+            return "";
+        }
+        String value = dictionaryStrings[code];
+        if (value == null) {
+            UTF8StringPointable utf8sp = pp.takeOne(UTF8StringPointable.class);
+            try {
+                ntp.getString(code, utf8sp);
+                value = getString(utf8sp);
+            } finally {
+                pp.giveBack(utf8sp);
+            }
+            dictionaryStrings[code] = value;
+        }
+        return value;
+    }
 
-        hits = results.scoreDocs;
-        indexPlace = 0;
-        indexLength = hits.length;
+    private String getString(UTF8StringPointable utf8sp) {
+        stringBuilder.setLength(0);
+        UTF8StringUtil.toString(stringBuilder, utf8sp.getByteArray(), utf8sp.getStartOffset());
+        return stringBuilder.toString();
     }
 
     public void parse(ArrayBackedValueStorage abvsFileNode) throws IOException {
@@ -16,20 +16,24 @@
  */
 package org.apache.vxquery.runtime.functions.index.centralizer;
 
+import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
 
 import org.apache.commons.io.FileUtils;
@@ -37,22 +41,30 @@ import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
 import org.apache.vxquery.datamodel.builders.atomic.StringValueBuilder;
 import org.apache.vxquery.datamodel.builders.sequence.SequenceBuilder;
 import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.runtime.functions.index.RecordLog;
 
 /**
  * Class for maintaining the centralized index information file.
  * Index centralization procedure.
  * User can specify the collection directory in VXQuery.java, ncConfig.ioDevices = &lt; index_directory &gt; .
  * Then all the indexes will be created in that particular directory in sub-folders corresponding to collections.
- * There will be a single xml file, located in the directory specified in local.xml, which contains all information
+ * There will be a single file, located in the directory specified in local.xml, which contains all information
  * about the existing indexes.
  * This class can be used to read, add, delete, modify the entries and write the file back to the disk.
+ * The file is a binary {@link RecordLog}; writing it appends the entries that changed. Directory files written as
+ * XML by earlier versions are still read and replaced on the next write.
  */
 public class IndexCentralizerUtil {
 
     private static final String FILE_NAME = "VXQuery-Index-Directory.xml";
+    private static final String LOG_FILE_NAME = "VXQuery-Index-Directory.log";
+    private static final byte PUT_RECORD = 1;
+    private static final byte REMOVE_RECORD = 2;
+    private static final int COMPACTION_MIN_RECORDS = 64;
     private final List<String> collections = new ArrayList<>();
     private static final Logger LOGGER = Logger.getLogger("IndexCentralizerUtil");
     private File xmlFile;
+    private final RecordLog directoryLog;
     private String indexPath;
     public static ConcurrentHashMap<String, IndexLocator> indexCollectionMap = new ConcurrentHashMap<>();
     private static final StringValueBuilder svb = new StringValueBuilder();
@@ -69,6 +81,30 @@ public class IndexCentralizerUtil {
             }
         }
         xmlFile = new File(index.getPath() + "/" + FILE_NAME);
+        directoryLog = new RecordLog(new File(index.getPath() + "/" + LOG_FILE_NAME));
+    }
+
+    /**
+     * Get a stamp of the index directory file in the given index directory. The stamp changes whenever an index is
+     * built, updated or deleted, by any client of the node, so it tells whether a list of indexes read earlier is
+     * still current.
+     *
+     * @param index
+     *            : Index directory of a node
+     * @return The modification time, size and identity of the directory file, or an empty string if there is none.
+     */
+    public static String getDirectoryStamp(File index) {
+        for (String name : new String[] { LOG_FILE_NAME, FILE_NAME }) {
+            try {
+                BasicFileAttributes attributes =
+                        Files.readAttributes(new File(index, name).toPath(), BasicFileAttributes.class);
+                return attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS) + ":" + attributes.size() + ":"
+                        + attributes.fileKey();
+            } catch (IOException e) {
+                // The directory file has not been written in this format.
+            }
+        }
+        return "";
     }
 
     /**
@@ -138,38 +174,116 @@ public class IndexCentralizerUtil {
      * Read the collection, index directory file and populate the HashMap.
      */
     public void readIndexDirectory() {
-        if (xmlFile.exists()) {
+        synchronized (IndexCentralizerUtil.class) {
             try {
-                JAXBContext jaxbContext = JAXBContext.newInstance(IndexDirectory.class);
-                Unmarshaller jaxbUnmarshaller = jaxbContext.createUnmarshaller();
-                IndexDirectory indexDirectory = (IndexDirectory) jaxbUnmarshaller.unmarshal(xmlFile);
-
-                for (IndexLocator il : indexDirectory.getDirectory()) {
-                    indexCollectionMap.put(il.getCollection(), il);
-                    this.collections.add(il.getCollection());
+                if (directoryLog.exists()) {
+                    Map<String, IndexLocator> entries = readDirectoryLog();
+                    indexCollectionMap.putAll(entries);
+                    this.collections.addAll(entries.keySet());
+                } else if (xmlFile.exists()) {
+                    readXmlIndexDirectory();
                 }
-            } catch (JAXBException e) {
-                LOGGER.log(Level.SEVERE, "Could not read the XML file due to " + e);
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Could not read the index directory file due to " + e);
             }
         }
-
     }
 
     /**
-     * Write back the contents of the HashMap to the file.
+     * Read a directory file written as XML by earlier versions.
      */
-    public void writeIndexDirectory() {
-        IndexDirectory id = new IndexDirectory();
-        List<IndexLocator> indexLocators = new ArrayList<>(indexCollectionMap.values());
-        id.setDirectory(indexLocators);
+    private void readXmlIndexDirectory() {
         try {
-            FileOutputStream fileOutputStream = new FileOutputStream(this.xmlFile);
-            JAXBContext context = JAXBContext.newInstance(IndexDirectory.class);
-            Marshaller jaxbMarshaller = context.createMarshaller();
-            jaxbMarshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
-            jaxbMarshaller.marshal(id, fileOutputStream);
-        } catch (JAXBException | FileNotFoundException e) {
+            JAXBContext jaxbContext = JAXBContext.newInstance(IndexDirectory.class);
+            Unmarshaller jaxbUnmarshaller = jaxbContext.createUnmarshaller();
+            IndexDirectory indexDirectory = (IndexDirectory) jaxbUnmarshaller.unmarshal(xmlFile);
+
+            for (IndexLocator il : indexDirectory.getDirectory()) {
+                indexCollectionMap.put(il.getCollection(), il);
+                this.collections.add(il.getCollection());
+            }
+        } catch (JAXBException e) {
             LOGGER.log(Level.SEVERE, "Could not read the XML file due to " + e);
         }
     }
+
+    private Map<String, IndexLocator> readDirectoryLog() throws IOException {
+        final Map<String, IndexLocator> entries = new LinkedHashMap<>();
+        directoryLog.read(new RecordLog.IRecordReader() {
+            @Override
+            public boolean read(DataInputStream in) throws IOException {
+                byte type = in.readByte();
+                if (type == PUT_RECORD) {
+                    IndexLocator il = new IndexLocator();
+                    il.setCollection(in.readUTF());
+                    il.setIndex(in.readUTF());
+                    entries.put(il.getCollection(), il);
+                } else if (type == REMOVE_RECORD) {
+                    entries.remove(in.readUTF());
+                } else {
+                    throw new IOException("Unknown index directory record " + type);
+                }
+                return true;
+            }
+        });
+        return entries;
+    }
+
+    /**
+     * Write back the changed contents of the HashMap to the file.
+     */
+    public void writeIndexDirectory() {
+        synchronized (IndexCentralizerUtil.class) {
+            try {
+                // Other operators of this node may have written the file since it was read.
+                Map<String, IndexLocator> stored = readDirectoryLog();
+                int records = directoryLog.getRecordCount();
+                if (!directoryLog.exists()
+                        || (records > COMPACTION_MIN_RECORDS && records > 2 * indexCollectionMap.size())) {
+                    List<ArrayBackedValueStorage> snapshot = new ArrayList<>();
+                    for (IndexLocator il : indexCollectionMap.values()) {
+                        ArrayBackedValueStorage record = new ArrayBackedValueStorage();
+                        writePut(il, record.getDataOutput());
+                        snapshot.add(record);
+                    }
+                    directoryLog.rewrite(snapshot);
+                } else {
+                    boolean changed = false;
+                    for (IndexLocator il : indexCollectionMap.values()) {
+                        IndexLocator old = stored.get(il.getCollection());
+                        if (old == null || !Objects.equals(old.getIndex(), il.getIndex())) {
+                            abvs.reset();
+                            writePut(il, output);
+                            directoryLog.append(abvs);
+                            changed = true;
+                        }
+                    }
+                    for (String collection : stored.keySet()) {
+                        if (!indexCollectionMap.containsKey(collection)) {
+                            abvs.reset();
+                            output.writeByte(REMOVE_RECORD);
+                            output.writeUTF(collection);
+                            directoryLog.append(abvs);
+                            changed = true;
+                        }
+                    }
+                    if (changed) {
+                        directoryLog.commit();
+                    }
+                }
+                directoryLog.close();
+                if (xmlFile.exists()) {
+                    Files.delete(xmlFile.toPath());
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Could not write the index directory file due to " + e);
+            }
+        }
+    }
+
+    private static void writePut(IndexLocator il, DataOutput out) throws IOException {
+        out.writeByte(PUT_RECORD);
+        out.writeUTF(il.getCollection());
+        out.writeUTF(il.getIndex());
+    }
 }
@@ -21,7 +21,27 @@ package org.apache.vxquery.runtime.functions.index.update;
  */
 public class Constants {
     public static final String FIELD_PATH = "path";
+    public static final String FIELD_NODE_TREE = "tree";
     public static final String META_FILE_NAME = "vxquery_index.xml";
+    public static final String META_LOG_FILE_NAME = "vxquery_index.log";
+
+    /**
+     * Index that keeps every node as a stored dotted path string. Indexes without a format in their metadata
+     * file use this layout.
+     */
+    public static final int INDEX_FORMAT_PATH_STRINGS = 1;
+    /**
+     * Index that keeps the parsed document in {@link #FIELD_NODE_TREE}: the {@link #NODE_TREE_LAYOUT} byte followed
+     * by a node tree without node ids.
+     */
+    public static final int INDEX_FORMAT_STORED_TREE = 2;
+    public static final int INDEX_FORMAT = INDEX_FORMAT_STORED_TREE;
+
+    /**
+     * Version of the node tree layout in {@link #FIELD_NODE_TREE}. Changing the layout of node trees requires a new
+     * version and index format.
+     */
+    public static final byte NODE_TREE_LAYOUT = 1;
 
     private Constants() {
     }
@@ -23,7 +23,16 @@ import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.hyracks.data.std.api.IPointable;
 import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
@@ -31,7 +40,9 @@ import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MergePolicy;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TieredMergePolicy;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.vxquery.datamodel.builders.sequence.SequenceBuilder;
@@ -40,18 +51,22 @@ import org.apache.vxquery.exceptions.SystemException;
 import org.apache.vxquery.index.IndexDocumentBuilder;
 import org.apache.vxquery.runtime.functions.index.CaseSensitiveAnalyzer;
 import org.apache.vxquery.runtime.functions.index.IndexConstructorUtil;
-import org.apache.vxquery.xmlparser.ITreeNodeIdProvider;
 
 /**
  * Update the index if the source files are changed.
+ * A file whose size and modification time match its metadata is taken as unchanged. The other files are hashed
+ * and, if their content changed, indexed again by a pool of workers sharing the {@link IndexWriter}.
  */
 public class IndexUpdater {
+    public static final String PARALLELISM_PROPERTY = "vxquery.index_update_parallelism";
+    public static final String MAX_SEGMENTS_PROPERTY = "vxquery.index_max_segments";
+    public static final String MAX_MERGED_SEGMENT_MB_PROPERTY = "vxquery.index_max_merged_segment_mb";
+
     private MetaFileUtil metaFileUtil;
     private ConcurrentHashMap<String, XmlMetadata> metadataMap;
     private IPointable result;
     private final SequenceBuilder sb = new SequenceBuilder();
     private ArrayBackedValueStorage abvs;
-    private ITreeNodeIdProvider nodeIdProvider;
     private ArrayBackedValueStorage abvsFileNode;
     private String nodeId;
     private IndexWriter indexWriter;
@@ -59,18 +74,23 @@ public class IndexUpdater {
     private String collectionFolder;
     private String indexFolder;
     private final Logger LOGGER = Logger.getLogger("Index Updater");
-    private SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
     private IndexConstructorUtil indexConstructorUtil = new IndexConstructorUtil();
+    private final int parallelism;
+    private BlockingQueue<Worker> workers;
+    private ExecutorService executor;
+    private CompletionService<Void> completion;
+    private int inFlight;
 
-    public IndexUpdater(String indexFolder, IPointable result, ArrayBackedValueStorage abvs, ITreeNodeIdProvider nodeIdProvider,
+    public IndexUpdater(String indexFolder, IPointable result, ArrayBackedValueStorage abvs,
             ArrayBackedValueStorage abvsFileNode, String nodeId) {
         this.indexFolder = indexFolder;
         this.result = result;
         this.abvs = abvs;
-        this.nodeIdProvider = nodeIdProvider;
         this.abvsFileNode = abvsFileNode;
         this.nodeId = nodeId;
         this.pathsFromFileList = new HashSet<>();
+        this.parallelism = Math.max(1,
+                Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors()));
     }
 
     /**
@@ -94,7 +114,19 @@ public class IndexUpdater {
 
         Directory fsdir = FSDirectory.open(Paths.get(indexFolder));
         indexWriter = new IndexWriter(fsdir, new IndexWriterConfig(new CaseSensitiveAnalyzer())
-                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND).setMergePolicy(createMergePolicy()));
+
+        // Documents of an older index format can not be mixed with new ones.
+        // Drop them, so every file of the collection is indexed again as a newly added file.
+        if (metaFileUtil.getIndexFormat() != Constants.INDEX_FORMAT) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.log(Level.DEBUG, "Rebuilding index " + indexFolder + " of format " + metaFileUtil.getIndexFormat()
+                        + " in format " + Constants.INDEX_FORMAT);
+            }
+            indexWriter.deleteAll();
+            metadataMap.clear();
+            metaFileUtil.setIndexFormat(Constants.INDEX_FORMAT);
+        }
     }
 
     /**
@@ -110,7 +142,15 @@ public class IndexUpdater {
         }
 
         //Execute update index process
-        updateIndex(collectionDirectory);
+        startWorkers();
+        try {
+            updateIndex(collectionDirectory);
+            while (inFlight > 0) {
+                waitForFile();
+            }
+        } finally {
+            stopWorkers();
+        }
 
         //Detect deleted files and execute the delete index process.
         deleteIndexOfDeletedFiles(metadataMap.keySet(), pathsFromFileList);
@@ -124,7 +164,12 @@ public class IndexUpdater {
      *             : If exiting the index folder generates {@link IOException}
      */
     public void exit() throws IOException {
-        indexWriter.forceMerge(1);
+        // Segments are merged by the merge policy while documents are added.
+        // A forced merge rewrites the whole index, so it is only done if asked for.
+        int maxSegments = Integer.getInteger(MAX_SEGMENTS_PROPERTY, 0);
+        if (maxSegments > 0) {
+            indexWriter.forceMerge(maxSegments);
+        }
 
         indexWriter.close();
 
@@ -157,81 +202,142 @@ public class IndexUpdater {
 
         assert list != null;
         for (File file : list) {
-            pathsFromFileList.add(file.getCanonicalPath());
-            if (indexConstructorUtil.readableXmlFile(file.getCanonicalPath())) {
-                XmlMetadata data = metadataMap.get(file.getCanonicalPath());
-                String md5 = metaFileUtil.generateMD5(file);
-
-                abvsFileNode.reset();
-
-                IndexDocumentBuilder indexDocumentBuilder;
-                if (data != null) {
-
-                    // This case checks whether the file has been changed.
-                    // If the file has changed, delete the existing document, create a new index document and add it
-                    // to the current index.
-                    // At the same time, update the metadata for the file.
-                    if (!md5.equals(data.getMd5())) {
-
-                        //Update index corresponding to the xml file.
-                        indexWriter.deleteDocuments(new Term(Constants.FIELD_PATH, file.getCanonicalPath()));
-                        indexDocumentBuilder = indexConstructorUtil.getIndexBuilder(file, indexWriter, abvsFileNode,
-                                nodeIdProvider, nodeId);
-                        indexDocumentBuilder.printStart();
-
-                        if (LOGGER.isDebugEnabled()) {
-                            LOGGER.log(Level.DEBUG, "New Index is created for updated file " + file.getCanonicalPath());
-                        }
-
-                        //Update the metadata map.
-                        XmlMetadata metadata = updateEntry(file, data);
-                        metadataMap.replace(file.getCanonicalPath(), metadata);
-
-                    }
-                } else {
-
-                    // In this case, the xml file has not added to the index. (It is a newly added file)
-                    // Therefore generate a new index for this file and add it to the existing index.
-                    indexDocumentBuilder = indexConstructorUtil.getIndexBuilder(file, indexWriter, abvsFileNode, nodeIdProvider,
-                            nodeId);
-                    indexDocumentBuilder.printStart();
-
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.log(Level.DEBUG, "New Index is created for newly added file " + file.getCanonicalPath());
-                    }
-
-                    XmlMetadata metadata = updateEntry(file, null);
-                    metadataMap.put(file.getCanonicalPath(), metadata);
+            String path = file.getCanonicalPath();
+            pathsFromFileList.add(path);
+            if (indexConstructorUtil.readableXmlFile(path)) {
+                XmlMetadata data = metadataMap.get(path);
+
+                // A file with the recorded size and modification time has not been changed.
+                if (data != null && data.getLength() == file.length() && data.getModified() == file.lastModified()) {
+                    continue;
+                }
+                if (inFlight >= 4 * parallelism) {
+                    waitForFile();
                 }
+                completion.submit(new FileTask(file, path, data));
+                ++inFlight;
             } else if (file.isDirectory()) {
                 updateIndex(file);
             }
         }
     }
 
+    /**
+     * Index a new or possibly changed file.
+     * If the file has changed, delete the existing document, create a new index document and add it to the
+     * current index. At the same time, update the metadata for the file.
+     */
+    private void indexFile(File file, String path, XmlMetadata data, Worker worker) throws IOException {
+        String md5 = metaFileUtil.generateMD5(file);
+        if (data != null && md5 != null && md5.equals(data.getMd5())) {
+            // Only the file attributes changed.
+            metadataMap.put(path, updateEntry(file, md5, data, worker.sdf));
+            return;
+        }
+
+        worker.abvsFileNode.reset();
+        if (data != null) {
+            //Update index corresponding to the xml file.
+            indexWriter.deleteDocuments(new Term(Constants.FIELD_PATH, path));
+        }
+        IndexDocumentBuilder indexDocumentBuilder = worker.indexConstructorUtil.getIndexBuilder(file, indexWriter,
+                worker.abvsFileNode, nodeId);
+        indexDocumentBuilder.printStart();
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.log(Level.DEBUG, "New Index is created for " + (data == null ? "newly added" : "updated")
+                    + " file " + path);
+        }
+
+        //Update the metadata map.
+        metadataMap.put(path, updateEntry(file, md5, data, worker.sdf));
+    }
+
     /**
      * Update the current XmlMetadata object related to the currently reading XML file.
      *
      * @param file
      *            : XML file
-     * @param metadata
+     * @param md5
+     *            : Checksum of the file
+     * @param metadataArg
      *            : Existing metadata object
+     * @param sdf
+     *            : Date format of the calling worker
      * @return : XML metadata object with updated fields.
      * @throws IOException
      *             : If getting the file info generates {@link IOException}
      */
-    private XmlMetadata updateEntry(File file, XmlMetadata metadataArg) throws IOException {
+    private XmlMetadata updateEntry(File file, String md5, XmlMetadata metadataArg, SimpleDateFormat sdf)
+            throws IOException {
         XmlMetadata metadata = metadataArg;
         if (metadata == null) {
             metadata = new XmlMetadata();
         }
         metadata.setFileName(file.getName());
         metadata.setPath(file.getCanonicalPath());
-        metadata.setMd5(metaFileUtil.generateMD5(file));
+        metadata.setMd5(md5);
         metadata.setLastModified(sdf.format(file.lastModified()));
+        metadata.setLength(file.length());
+        metadata.setModified(file.lastModified());
         return metadata;
     }
 
+    private void startWorkers() {
+        workers = new ArrayBlockingQueue<>(parallelism);
+        workers.add(new Worker(abvsFileNode));
+        for (int i = 1; i < parallelism; ++i) {
+            workers.add(new Worker(new ArrayBackedValueStorage()));
+        }
+        final String prefix = "vxquery-index-update-" + Thread.currentThread().getName() + "-";
+        executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            private int count = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, prefix + count++);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        completion = new ExecutorCompletionService<>(executor);
+        inFlight = 0;
+    }
+
+    private void stopWorkers() {
+        executor.shutdownNow();
+        executor = null;
+        completion = null;
+    }
+
+    private void waitForFile() throws IOException {
+        try {
+            --inFlight;
+            completion.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Merge policy for the index writer. Merged segments can be bounded in size with
+     * {@value #MAX_MERGED_SEGMENT_MB_PROPERTY}.
+     */
+    static MergePolicy createMergePolicy() {
+        TieredMergePolicy mergePolicy = new TieredMergePolicy();
+        String maxMergedSegmentMB = System.getProperty(MAX_MERGED_SEGMENT_MB_PROPERTY);
+        if (maxMergedSegmentMB != null) {
+            mergePolicy.setMaxMergedSegmentMB(Double.parseDouble(maxMergedSegmentMB));
+        }
+        return mergePolicy;
+    }
+
     /**
      * Delete the index of deleted files.
      *
@@ -245,21 +351,17 @@ public class IndexUpdater {
     private void deleteIndexOfDeletedFiles(Set<String> pathsFromMap, Set<String> pathsFromFileList) throws IOException {
         Set<String> sfm = new HashSet<>(pathsFromMap);
 
-        // If any file has been deleted from the collection, the number of files stored in metadata is higher  than
-        // the actual number of files.
         // With set difference, the paths of deleted files are taken from the stored metadata.
         // Delete the corresponding indexes of each file from the index and as well as remove the entry from the
         // metadata file.
 
-        if (sfm.size() > pathsFromFileList.size()) {
-            sfm.removeAll(pathsFromFileList);
+        sfm.removeAll(pathsFromFileList);
 
-            for (String s : sfm) {
-                metadataMap.remove(s);
-                indexWriter.deleteDocuments(new Term(Constants.FIELD_PATH, s));
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.log(Level.DEBUG, "Index of the deleted file " + s + " was deleted from the index!");
-                }
+        for (String s : sfm) {
+            metadataMap.remove(s);
+            indexWriter.deleteDocuments(new Term(Constants.FIELD_PATH, s));
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.log(Level.DEBUG, "Index of the deleted file " + s + " was deleted from the index!");
             }
         }
     }
@@ -301,4 +403,39 @@ public class IndexUpdater {
 
     }
 
+    private class FileTask implements Callable<Void> {
+        private final File file;
+        private final String path;
+        private final XmlMetadata data;
+
+        FileTask(File file, String path, XmlMetadata data) {
+            this.file = file;
+            this.path = path;
+            this.data = data;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            Worker worker = workers.take();
+            try {
+                indexFile(file, path, data, worker);
+            } finally {
+                workers.add(worker);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Parser state owned by one worker thread at a time.
+     */
+    private static class Worker {
+        private final IndexConstructorUtil indexConstructorUtil = new IndexConstructorUtil();
+        private final SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
+        private final ArrayBackedValueStorage abvsFileNode;
+
+        Worker(ArrayBackedValueStorage abvsFileNode) {
+            this.abvsFileNode = abvsFileNode;
+        }
+    }
 }
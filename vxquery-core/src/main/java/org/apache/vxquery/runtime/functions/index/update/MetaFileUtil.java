@@ -16,41 +16,69 @@
 */
 package org.apache.vxquery.runtime.functions.index.update;
 
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.bind.DatatypeConverter;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
 
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
+import org.apache.vxquery.runtime.functions.index.RecordLog;
 
 /**
  * Utility class for writing, reading metadata file and generating checksum.
+ * The metadata is kept in a binary {@link RecordLog}. The first record holds the collection, index location and
+ * index format, and every following record adds, replaces or removes the entry of one file. Writing the metadata
+ * only appends the entries that changed since it was last read or written. The file entries are read on first use.
+ * Metadata files written as XML by earlier versions are still read and replaced by a log on the next write.
  */
 public class MetaFileUtil {
 
+    private static final int DIGEST_BUFFER_SIZE = 64 * 1024;
+    private static final byte INFO_RECORD = 0;
+    private static final byte PUT_RECORD = 1;
+    private static final byte REMOVE_RECORD = 2;
+    private static final int COMPACTION_MIN_RECORDS = 1024;
+
     private File metaFile;
+    private final RecordLog metaLog;
     private static final Logger LOGGER = Logger.getLogger("MetadataFileUtil");
     private String index;
     private String collection;
+    private int indexFormat = Constants.INDEX_FORMAT;
     private ConcurrentHashMap<String, XmlMetadata> indexMap = new ConcurrentHashMap<>();
 
+    // State of the metadata on disk, used to find the entries that changed.
+    private boolean entriesPending = false;
+    private boolean mapReplaced = false;
+    private String storedIndex;
+    private String storedCollection;
+    private int storedIndexFormat;
+    private final Map<String, XmlMetadata> storedMap = new HashMap<>();
+    private final ArrayBackedValueStorage recordAbvs = new ArrayBackedValueStorage();
+
     public MetaFileUtil(String indexFolder) {
         this.metaFile = new File(indexFolder + "/" + Constants.META_FILE_NAME);
+        this.metaLog = new RecordLog(new File(indexFolder + "/" + Constants.META_LOG_FILE_NAME));
     }
 
     /**
@@ -59,7 +87,7 @@ public class MetaFileUtil {
      * @return true if the metadata file is present
      */
     public boolean isMetaFilePresent() {
-        return metaFile.exists();
+        return metaLog.exists() || metaFile.exists();
     }
 
     /**
@@ -75,7 +103,7 @@ public class MetaFileUtil {
     public void updateMetadataMap(ConcurrentHashMap<String, XmlMetadata> metadataMap, String index) {
         this.indexMap = metadataMap;
         this.index = index;
-
+        this.mapReplaced = true;
     }
 
     /**
@@ -84,13 +112,89 @@ public class MetaFileUtil {
      * @return : Map containing the set of XmlMetadata objects.\
      */
     public ConcurrentHashMap<String, XmlMetadata> getMetadata() {
+        loadEntries();
         return this.indexMap;
     }
 
     /**
-     * Read the metadata file and create an in-memory map containing collection paths and xml files.
+     * Get the metadata of a single file.
+     *
+     * @param path
+     *            : Canonical path of the file.
+     * @return XmlMetadata of the file, or null if the file is not in the index.
+     */
+    public XmlMetadata getMetadata(String path) {
+        return getMetadata().get(path);
+    }
+
+    /**
+     * Read the collection, index location and index format of the metadata file.
+     * The entries of the files are read when they are first used.
      */
     public void readMetadataFile() {
+        try {
+            if (metaLog.exists()) {
+                metaLog.read(new RecordLog.IRecordReader() {
+                    @Override
+                    public boolean read(DataInputStream in) throws IOException {
+                        if (in.readByte() == INFO_RECORD) {
+                            readInfo(in);
+                        }
+                        return false;
+                    }
+                });
+                entriesPending = true;
+            } else if (metaFile.exists()) {
+                readXmlMetadataFile();
+            }
+        } catch (IOException e) {
+            if (LOGGER.isTraceEnabled()) {
+                LOGGER.log(Level.ERROR, "Could not read the metadata file due to " + e);
+            }
+        }
+    }
+
+    private void loadEntries() {
+        if (!entriesPending) {
+            return;
+        }
+        entriesPending = false;
+        try {
+            metaLog.read(new RecordLog.IRecordReader() {
+                @Override
+                public boolean read(DataInputStream in) throws IOException {
+                    byte type = in.readByte();
+                    if (type == INFO_RECORD) {
+                        readInfo(in);
+                    } else if (type == PUT_RECORD) {
+                        XmlMetadata metadata = readEntry(in);
+                        storedMap.put(metadata.getPath(), metadata);
+                        if (!mapReplaced) {
+                            indexMap.put(metadata.getPath(), copy(metadata));
+                        }
+                    } else if (type == REMOVE_RECORD) {
+                        String path = readString(in);
+                        storedMap.remove(path);
+                        if (!mapReplaced) {
+                            indexMap.remove(path);
+                        }
+                    } else {
+                        throw new IOException("Unknown metadata record " + type);
+                    }
+                    return true;
+                }
+            });
+        } catch (IOException e) {
+            if (LOGGER.isTraceEnabled()) {
+                LOGGER.log(Level.ERROR, "Could not read the metadata file due to " + e);
+            }
+        }
+    }
+
+    /**
+     * Read a metadata file written as XML by earlier versions.
+     */
+    private void readXmlMetadataFile() {
         try {
             JAXBContext jaxbContext = JAXBContext.newInstance(VXQueryIndex.class);
             Unmarshaller jaxbUnmarshaller = jaxbContext.createUnmarshaller();
@@ -98,9 +202,13 @@ public class MetaFileUtil {
 
             this.collection = indexes.getCollection();
             this.index = indexes.getIndexLocation();
+            this.indexFormat = indexes.getIndexFormat() == null ? Constants.INDEX_FORMAT_PATH_STRINGS
+                    : indexes.getIndexFormat();
 
-            for (XmlMetadata metadata : indexes.getMetadataList()) {
-                this.indexMap.put(index, metadata);
+            if (indexes.getMetadataList() != null) {
+                for (XmlMetadata metadata : indexes.getMetadataList()) {
+                    this.indexMap.put(metadata.getPath(), metadata);
+                }
             }
         } catch (JAXBException e) {
             if (LOGGER.isTraceEnabled()) {
@@ -110,35 +218,163 @@ public class MetaFileUtil {
     }
 
     /**
-     * Write the content of the ConcurrentHashMap to the xml metadata file.
+     * Write the changes of the metadata to the metadata file.
+     * The changed and removed entries are appended to the file and committed together, so a crash while writing
+     * leaves the metadata as it was before. The file is compacted once most of its records are outdated.
      */
     public void writeMetadataToFile() {
-        XmlMetadataCollection xmlMetadataCollection = new XmlMetadataCollection();
-        List<XmlMetadata> metadataList = new ArrayList<>();
-
-        for (Map.Entry<String, XmlMetadata> entry : this.indexMap.entrySet()) {
-            metadataList.add(entry.getValue());
-        }
-
-        xmlMetadataCollection.setMetadataList(metadataList);
-        xmlMetadataCollection.setCollection(collection);
-        xmlMetadataCollection.setIndexLocation(this.index);
+        loadEntries();
         try {
-            FileOutputStream fileOutputStream = new FileOutputStream(this.metaFile);
-            JAXBContext jaxbContext = JAXBContext.newInstance(VXQueryIndex.class);
-            Marshaller jaxbMarshaller = jaxbContext.createMarshaller();
-            jaxbMarshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
-            jaxbMarshaller.marshal(xmlMetadataCollection, fileOutputStream);
+            boolean infoChanged = !metaLog.exists() || !Objects.equals(index, storedIndex)
+                    || !Objects.equals(collection, storedCollection) || indexFormat != storedIndexFormat;
+            int records = metaLog.getRecordCount();
+            if (infoChanged || (records > COMPACTION_MIN_RECORDS && records > 2 * (indexMap.size() + 1))) {
+                compact();
+            } else {
+                appendChanges();
+            }
+            if (metaFile.exists()) {
+                Files.delete(metaFile.toPath());
+            }
 
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.log(Level.DEBUG, "Writing metadata file completed successfully!");
             }
-        } catch (JAXBException | FileNotFoundException e) {
+        } catch (IOException e) {
             if (LOGGER.isTraceEnabled()) {
-                LOGGER.log(Level.ERROR, "Could not read the XML file due to " + e);
+                LOGGER.log(Level.ERROR, "Could not write the metadata file due to " + e);
+            }
+        } finally {
+            try {
+                metaLog.close();
+            } catch (IOException e) {
+                if (LOGGER.isTraceEnabled()) {
+                    LOGGER.log(Level.ERROR, "Could not close the metadata file due to " + e);
+                }
             }
         }
+    }
+
+    private void compact() throws IOException {
+        List<ArrayBackedValueStorage> records = new ArrayList<>(indexMap.size() + 1);
+        ArrayBackedValueStorage info = new ArrayBackedValueStorage();
+        writeInfo(info.getDataOutput());
+        records.add(info);
+        for (XmlMetadata metadata : indexMap.values()) {
+            ArrayBackedValueStorage entry = new ArrayBackedValueStorage();
+            writeEntry(metadata, entry.getDataOutput());
+            records.add(entry);
+        }
+        metaLog.rewrite(records);
 
+        storedIndex = index;
+        storedCollection = collection;
+        storedIndexFormat = indexFormat;
+        storedMap.clear();
+        for (Map.Entry<String, XmlMetadata> entry : indexMap.entrySet()) {
+            storedMap.put(entry.getKey(), copy(entry.getValue()));
+        }
+    }
+
+    private void appendChanges() throws IOException {
+        boolean changed = false;
+        for (Map.Entry<String, XmlMetadata> entry : indexMap.entrySet()) {
+            XmlMetadata stored = storedMap.get(entry.getKey());
+            if (stored == null || !isSame(stored, entry.getValue())) {
+                recordAbvs.reset();
+                writeEntry(entry.getValue(), recordAbvs.getDataOutput());
+                metaLog.append(recordAbvs);
+                changed = true;
+            }
+        }
+        for (String path : storedMap.keySet()) {
+            if (!indexMap.containsKey(path)) {
+                recordAbvs.reset();
+                DataOutput out = recordAbvs.getDataOutput();
+                out.writeByte(REMOVE_RECORD);
+                writeString(path, out);
+                metaLog.append(recordAbvs);
+                changed = true;
+            }
+        }
+        if (!changed) {
+            return;
+        }
+        metaLog.commit();
+
+        for (Iterator<String> it = storedMap.keySet().iterator(); it.hasNext();) {
+            if (!indexMap.containsKey(it.next())) {
+                it.remove();
+            }
+        }
+        for (Map.Entry<String, XmlMetadata> entry : indexMap.entrySet()) {
+            storedMap.put(entry.getKey(), copy(entry.getValue()));
+        }
+    }
+
+    private void readInfo(DataInput in) throws IOException {
+        storedCollection = readString(in);
+        storedIndex = readString(in);
+        storedIndexFormat = in.readInt();
+        collection = storedCollection;
+        index = storedIndex;
+        indexFormat = storedIndexFormat;
+    }
+
+    private void writeInfo(DataOutput out) throws IOException {
+        out.writeByte(INFO_RECORD);
+        writeString(collection, out);
+        writeString(index, out);
+        out.writeInt(indexFormat);
+    }
+
+    private static XmlMetadata readEntry(DataInput in) throws IOException {
+        XmlMetadata metadata = new XmlMetadata();
+        metadata.setPath(readString(in));
+        metadata.setFileName(readString(in));
+        metadata.setMd5(readString(in));
+        metadata.setLastModified(readString(in));
+        metadata.setLength(in.readLong());
+        metadata.setModified(in.readLong());
+        return metadata;
+    }
+
+    private static void writeEntry(XmlMetadata metadata, DataOutput out) throws IOException {
+        out.writeByte(PUT_RECORD);
+        writeString(metadata.getPath(), out);
+        writeString(metadata.getFileName(), out);
+        writeString(metadata.getMd5(), out);
+        writeString(metadata.getLastModified(), out);
+        out.writeLong(metadata.getLength());
+        out.writeLong(metadata.getModified());
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeString(String value, DataOutput out) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static boolean isSame(XmlMetadata a, XmlMetadata b) {
+        return Objects.equals(a.getPath(), b.getPath()) && Objects.equals(a.getFileName(), b.getFileName())
+                && Objects.equals(a.getMd5(), b.getMd5()) && Objects.equals(a.getLastModified(), b.getLastModified())
+                && a.getLength() == b.getLength() && a.getModified() == b.getModified();
+    }
+
+    private static XmlMetadata copy(XmlMetadata metadata) {
+        XmlMetadata copy = new XmlMetadata();
+        copy.setPath(metadata.getPath());
+        copy.setFileName(metadata.getFileName());
+        copy.setMd5(metadata.getMd5());
+        copy.setLastModified(metadata.getLastModified());
+        copy.setLength(metadata.getLength());
+        copy.setModified(metadata.getModified());
+        return copy;
     }
 
     /**
@@ -151,9 +387,13 @@ public class MetaFileUtil {
      *             : The file is not available
      */
     public String generateMD5(File file) throws IOException {
-        try {
+        try (InputStream in = new FileInputStream(file)) {
             MessageDigest md = MessageDigest.getInstance("MD5");
-            md.update(Files.readAllBytes(file.toPath()));
+            byte[] buffer = new byte[DIGEST_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                md.update(buffer, 0, read);
+            }
             byte[] md5 = md.digest();
             return DatatypeConverter.printHexBinary(md5);
         } catch (NoSuchAlgorithmException e) {
@@ -171,11 +411,12 @@ public class MetaFileUtil {
      */
     public boolean deleteMetaDataFile() {
         try {
-            Files.delete(Paths.get(metaFile.getCanonicalPath()));
+            boolean deleted = metaLog.delete();
+            deleted |= Files.deleteIfExists(metaFile.toPath());
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.log(Level.DEBUG, "Metadata file deleted!");
             }
-            return true;
+            return deleted;
         } catch (IOException e) {
             if (LOGGER.isTraceEnabled()) {
                 LOGGER.log(Level.ERROR, "Metadata file could not be deleted!");
@@ -202,4 +443,24 @@ public class MetaFileUtil {
     public void setCollection(String collection) {
         this.collection = collection;
     }
+
+    /**
+     * Get the layout of the index documents. Metadata files written before the format was recorded describe
+     * {@link Constants#INDEX_FORMAT_PATH_STRINGS} indexes.
+     *
+     * @return one of the INDEX_FORMAT constants in {@link Constants}.
+     */
+    public int getIndexFormat() {
+        return this.indexFormat;
+    }
+
+    /**
+     * Set the layout of the index documents.
+     *
+     * @param indexFormat
+     *            : one of the INDEX_FORMAT constants in {@link Constants}.
+     */
+    public void setIndexFormat(int indexFormat) {
+        this.indexFormat = indexFormat;
+    }
 }
@@ -29,6 +29,7 @@ import javax.xml.bind.annotation.XmlRootElement;
  * - MD5 Checksum String
  * - File name
  * - Last modified date
+ * - File size and modification time, used to skip unchanged files without computing the checksum
  */
 @XmlRootElement(name = "file")
 @XmlAccessorType(XmlAccessType.FIELD)
@@ -39,6 +40,8 @@ public class XmlMetadata implements Serializable {
     private String md5;
     private String fileName;
     private String lastModified;
+    private long length;
+    private long modified;
 
     public String getPath() {
         return path;
@@ -71,4 +74,20 @@ public class XmlMetadata implements Serializable {
     public void setLastModified(String lastModified) {
         this.lastModified = lastModified;
     }
+
+    public long getLength() {
+        return length;
+    }
+
+    public void setLength(long length) {
+        this.length = length;
+    }
+
+    public long getModified() {
+        return modified;
+    }
+
+    public void setModified(long modified) {
+        this.modified = modified;
+    }
 }
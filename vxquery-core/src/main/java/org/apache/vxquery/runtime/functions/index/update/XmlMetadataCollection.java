@@ -37,6 +37,9 @@ public class XmlMetadataCollection {
     @XmlAttribute(name = "collection")
     private String collection;
 
+    @XmlAttribute(name = "format")
+    private Integer indexFormat;
+
     @XmlElement(name = "file", type = XmlMetadata.class)
     private List<XmlMetadata> metadataList;
 
@@ -56,6 +59,14 @@ public class XmlMetadataCollection {
         this.indexLocation = indexLocation;
     }
 
+    public Integer getIndexFormat() {
+        return indexFormat;
+    }
+
+    public void setIndexFormat(Integer indexFormat) {
+        this.indexFormat = indexFormat;
+    }
+
     public String getCollection() {
         return collection;
     }
@@ -34,7 +34,7 @@ import org.apache.vxquery.exceptions.SystemException;
 import org.apache.vxquery.jsonparser.JSONParser;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluator;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluatorFactory;
-import org.apache.vxquery.runtime.functions.util.FunctionHelper;
+import org.apache.vxquery.runtime.functions.util.DocumentCache;
 import org.apache.vxquery.xmlparser.IParser;
 
 public class JnDocScalarEvaluatorFactory extends AbstractTaggedValueArgumentScalarEvaluatorFactory {
@@ -54,6 +54,8 @@ public class JnDocScalarEvaluatorFactory extends AbstractTaggedValueArgumentScal
         final DataInputStream di = new DataInputStream(bbis);
 
         return new AbstractTaggedValueArgumentScalarEvaluator(args) {
+            private IParser parser;
+
 
             @Override
             protected void evaluate(TaggedValuePointable[] args, IPointable result) throws SystemException {
@@ -63,9 +65,12 @@ public class JnDocScalarEvaluatorFactory extends AbstractTaggedValueArgumentScal
                 }
                 tvp.getValue(stringp);
                 try {
-                    IParser parser = new JSONParser();
-                    FunctionHelper.readInDocFromPointable(stringp, abvs, parser);
+                    if (parser == null) {
+                        parser = new JSONParser();
+                    }
+                    DocumentCache.getInstance().getDocument(stringp.toString(), parser, null, abvs);
                 } catch (IOException e) {
+                    parser = null;
                     throw new SystemException(ErrorCode.FODC0002, e);
                 }
                 result.set(abvs);
@@ -59,6 +59,9 @@ public abstract class AbstractNodeConstructorScalarEvaluator extends AbstractTag
             mainOut.write(ValueTag.NODE_TREE_TAG);
             byte header = (byte) (createsDictionary() ? NodeTreePointable.HEADER_DICTIONARY_EXISTS_MASK : 0);
             mainOut.write(header);
+            if (createsDictionary()) {
+                db.reset();
+            }
             constructNode(db, args, contentAbvs);
             if (createsDictionary()) {
                 db.write(abvs);
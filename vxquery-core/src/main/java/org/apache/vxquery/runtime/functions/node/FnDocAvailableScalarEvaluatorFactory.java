@@ -34,7 +34,7 @@ import org.apache.vxquery.exceptions.ErrorCode;
 import org.apache.vxquery.exceptions.SystemException;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluator;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluatorFactory;
-import org.apache.vxquery.runtime.functions.util.FunctionHelper;
+import org.apache.vxquery.runtime.functions.util.DocumentCache;
 import org.apache.vxquery.xmlparser.IParser;
 import org.apache.vxquery.xmlparser.ITreeNodeIdProvider;
 import org.apache.vxquery.xmlparser.TreeNodeIdProvider;
@@ -60,6 +60,8 @@ public class FnDocAvailableScalarEvaluatorFactory extends AbstractTaggedValueArg
         final String nodeId = ctx.getJobletContext().getApplicationContext().getNodeId();
 
         return new AbstractTaggedValueArgumentScalarEvaluator(args) {
+            private IParser parser;
+
             @Override
             protected void evaluate(TaggedValuePointable[] args, IPointable result) throws SystemException {
                 TaggedValuePointable tvp = args[0];
@@ -77,10 +79,13 @@ public class FnDocAvailableScalarEvaluatorFactory extends AbstractTaggedValueArg
                 }
                 tvp.getValue(stringp);
                 try {
-                    IParser parser = new XMLParser(false, nodeIdProvider, nodeId);
-                    FunctionHelper.readInDocFromPointable(stringp, abvs, parser);
+                    if (parser == null) {
+                        parser = new XMLParser(false, nodeIdProvider, nodeId);
+                    }
+                    DocumentCache.getInstance().getDocument(stringp.toString(), parser, nodeIdProvider, abvs);
                     XDMConstants.setTrue(result);
                 } catch (Exception e) {
+                    parser = null;
                     XDMConstants.setFalse(result);
                 }
             }
@@ -34,7 +34,7 @@ import org.apache.vxquery.exceptions.ErrorCode;
 import org.apache.vxquery.exceptions.SystemException;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluator;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluatorFactory;
-import org.apache.vxquery.runtime.functions.util.FunctionHelper;
+import org.apache.vxquery.runtime.functions.util.DocumentCache;
 import org.apache.vxquery.xmlparser.IParser;
 import org.apache.vxquery.xmlparser.ITreeNodeIdProvider;
 import org.apache.vxquery.xmlparser.TreeNodeIdProvider;
@@ -60,6 +60,8 @@ public class FnDocScalarEvaluatorFactory extends AbstractTaggedValueArgumentScal
         final String nodeId = ctx.getJobletContext().getApplicationContext().getNodeId();
 
         return new AbstractTaggedValueArgumentScalarEvaluator(args) {
+            private IParser parser;
+
             @Override
             protected void evaluate(TaggedValuePointable[] args, IPointable result) throws SystemException {
                 TaggedValuePointable tvp = args[0];
@@ -77,10 +79,12 @@ public class FnDocScalarEvaluatorFactory extends AbstractTaggedValueArgumentScal
                 }
                 tvp.getValue(stringp);
                 try {
-                    // Only one document should be parsed so its ok to have a unique parser.
-                    IParser parser = new XMLParser(false, nodeIdProvider, nodeId);
-                    FunctionHelper.readInDocFromPointable(stringp, abvs, parser);
+                    if (parser == null) {
+                        parser = new XMLParser(false, nodeIdProvider, nodeId);
+                    }
+                    DocumentCache.getInstance().getDocument(stringp.toString(), parser, nodeIdProvider, abvs);
                 } catch (Exception e) {
+                    parser = null;
                     throw new SystemException(ErrorCode.SYSE0001, e);
                 }
                 result.set(abvs);
@@ -37,6 +37,7 @@ import org.apache.vxquery.runtime.functions.util.FunctionHelper;
 
 public class IdFromNodeScalarEvaluatorFactory extends AbstractTaggedValueArgumentScalarEvaluatorFactory {
     private static final long serialVersionUID = 1L;
+    private static final int NODE_ID_LENGTH = 12;
 
     public IdFromNodeScalarEvaluatorFactory(IScalarEvaluatorFactory[] args) {
         super(args);
@@ -63,8 +64,10 @@ public class IdFromNodeScalarEvaluatorFactory extends AbstractTaggedValueArgumen
                         tvp1.getValue(ntp);
 
                         abvs.reset();
-                        dOut.write(ValueTag.XS_LONG_TAG);
-                        dOut.writeInt(ntp.getRootNodeId());
+                        // The tree id followed by the local id, whose bytes compare in document order.
+                        dOut.write(ValueTag.XS_HEX_BINARY_TAG);
+                        dOut.writeShort(NODE_ID_LENGTH);
+                        dOut.writeLong(ntp.getRootNodeId());
                         dOut.writeInt(localNodeId);
                         result.set(abvs);
                     }
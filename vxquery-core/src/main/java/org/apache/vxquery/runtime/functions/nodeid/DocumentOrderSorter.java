@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.nodeid;
+
+import java.util.Arrays;
+
+/**
+ * Puts nodes in document order by their key, the tree id followed by the local node id, and drops nodes with the same
+ * key. The keys are sorted with a least significant digit radix sort over their 12 bytes, so a sequence takes linear
+ * time. Digits that are the same in all keys, like the partition bits of the tree ids or the high bytes of the local
+ * ids, are skipped.
+ */
+class DocumentOrderSorter {
+    private static final int KEY_DIGITS = 12;
+    private static final int LOCAL_ID_DIGITS = 4;
+    private static final int RADIX = 256;
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    private final int[] counts = new int[RADIX];
+    private long[] treeIds = new long[16];
+    private int[] localIds = new int[16];
+    private int[] order = new int[16];
+    private int[] buffer = new int[16];
+    private int size;
+    private boolean ordered;
+
+    void reset() {
+        size = 0;
+        ordered = true;
+    }
+
+    void add(long treeId, int localId) {
+        if (size == treeIds.length) {
+            int capacity = size * 2;
+            treeIds = Arrays.copyOf(treeIds, capacity);
+            localIds = Arrays.copyOf(localIds, capacity);
+            order = new int[capacity];
+            buffer = new int[capacity];
+        }
+        treeIds[size] = treeId;
+        localIds[size] = localId;
+        if (ordered && size > 0) {
+            ordered = compare(size - 1, size) < 0;
+        }
+        ++size;
+    }
+
+    /**
+     * @return true if each key was larger than the one before, so the nodes are already in document order and
+     *         distinct
+     */
+    boolean isOrdered() {
+        return ordered;
+    }
+
+    /**
+     * Sorts the keys added since the last reset.
+     *
+     * @return the number of distinct keys, whose positions in the input are given by {@link #getIndex(int)}
+     */
+    int sort() {
+        for (int i = 0; i < size; ++i) {
+            order[i] = i;
+        }
+        if (size < INSERTION_SORT_THRESHOLD) {
+            insertionSort();
+        } else {
+            radixSort();
+        }
+        int distinct = 0;
+        for (int i = 0; i < size; ++i) {
+            if (distinct == 0 || compare(order[distinct - 1], order[i]) != 0) {
+                order[distinct++] = order[i];
+            }
+        }
+        return distinct;
+    }
+
+    int getIndex(int i) {
+        return order[i];
+    }
+
+    private void insertionSort() {
+        for (int i = 1; i < size; ++i) {
+            int key = order[i];
+            int j = i - 1;
+            while (j >= 0 && compare(order[j], key) > 0) {
+                order[j + 1] = order[j];
+                --j;
+            }
+            order[j + 1] = key;
+        }
+    }
+
+    private void radixSort() {
+        for (int d = 0; d < KEY_DIGITS; ++d) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < size; ++i) {
+                ++counts[digit(i, d)];
+            }
+            if (counts[digit(0, d)] == size) {
+                continue;
+            }
+            int sum = 0;
+            for (int b = 0; b < RADIX; ++b) {
+                int count = counts[b];
+                counts[b] = sum;
+                sum += count;
+            }
+            for (int i = 0; i < size; ++i) {
+                int key = order[i];
+                buffer[counts[digit(key, d)]++] = key;
+            }
+            int[] temp = order;
+            order = buffer;
+            buffer = temp;
+        }
+    }
+
+    /**
+     * @return the unsigned byte d of the key, counted from the least significant byte of the local id
+     */
+    private int digit(int key, int d) {
+        if (d < LOCAL_ID_DIGITS) {
+            return (localIds[key] >>> (d * 8)) & 0xff;
+        }
+        return (int) (treeIds[key] >>> ((d - LOCAL_ID_DIGITS) * 8)) & 0xff;
+    }
+
+    private int compare(int key1, int key2) {
+        int c = Long.compareUnsigned(treeIds[key1], treeIds[key2]);
+        return c != 0 ? c : Integer.compareUnsigned(localIds[key1], localIds[key2]);
+    }
+}
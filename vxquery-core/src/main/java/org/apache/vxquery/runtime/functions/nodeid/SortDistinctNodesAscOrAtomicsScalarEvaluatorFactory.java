@@ -16,16 +16,30 @@
  */
 package org.apache.vxquery.runtime.functions.nodeid;
 
+import java.io.IOException;
+
 import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluator;
 import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluatorFactory;
 import org.apache.hyracks.api.context.IHyracksTaskContext;
 import org.apache.hyracks.api.exceptions.HyracksDataException;
 import org.apache.hyracks.data.std.api.IPointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.datamodel.accessors.SequencePointable;
 import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.accessors.TypedPointables;
+import org.apache.vxquery.datamodel.builders.sequence.SequenceBuilder;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.exceptions.ErrorCode;
 import org.apache.vxquery.exceptions.SystemException;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluator;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluatorFactory;
+import org.apache.vxquery.runtime.functions.util.FunctionHelper;
 
+/**
+ * Puts a sequence of nodes in document order and removes duplicate nodes. A node is identified by the id of its tree
+ * and its local node id, which numbers the nodes of the tree in preorder. Sequences of atomic values and nodes of
+ * constructed trees, which carry no node ids, are returned as they are.
+ */
 public class SortDistinctNodesAscOrAtomicsScalarEvaluatorFactory extends
         AbstractTaggedValueArgumentScalarEvaluatorFactory {
     private static final long serialVersionUID = 1L;
@@ -37,10 +51,54 @@ public class SortDistinctNodesAscOrAtomicsScalarEvaluatorFactory extends
     @Override
     protected IScalarEvaluator createEvaluator(IHyracksTaskContext ctx, IScalarEvaluator[] args)
             throws HyracksDataException {
+        final ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+        final SequenceBuilder sb = new SequenceBuilder();
+        final SequencePointable seqp = (SequencePointable) SequencePointable.FACTORY.createPointable();
+        final TaggedValuePointable tvpItem = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+        final TaggedValuePointable tvpRoot = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+        final TypedPointables tp = new TypedPointables();
+        final DocumentOrderSorter sorter = new DocumentOrderSorter();
         return new AbstractTaggedValueArgumentScalarEvaluator(args) {
             @Override
             protected void evaluate(TaggedValuePointable[] args, IPointable result) throws SystemException {
-                result.set(args[0]);
+                TaggedValuePointable tvp = args[0];
+                if (tvp.getTag() != ValueTag.SEQUENCE_TAG) {
+                    result.set(tvp);
+                    return;
+                }
+                tvp.getValue(seqp);
+                int seqLen = seqp.getEntryCount();
+                sorter.reset();
+                for (int i = 0; i < seqLen; ++i) {
+                    seqp.getEntry(i, tvpItem);
+                    if (tvpItem.getTag() != ValueTag.NODE_TREE_TAG) {
+                        result.set(tvp);
+                        return;
+                    }
+                    tvpItem.getValue(tp.ntp);
+                    if (!tp.ntp.nodeIdExists()) {
+                        result.set(tvp);
+                        return;
+                    }
+                    sorter.add(tp.ntp.getRootNodeId(), FunctionHelper.getLocalNodeId(tvpItem, tvpRoot, tp));
+                }
+                if (sorter.isOrdered()) {
+                    result.set(tvp);
+                    return;
+                }
+                try {
+                    int distinct = sorter.sort();
+                    abvs.reset();
+                    sb.reset(abvs);
+                    for (int i = 0; i < distinct; ++i) {
+                        seqp.getEntry(sorter.getIndex(i), tvpItem);
+                        sb.addItem(tvpItem);
+                    }
+                    sb.finish();
+                    result.set(abvs);
+                } catch (IOException e) {
+                    throw new SystemException(ErrorCode.SYSE0001, e);
+                }
             }
         };
     }
@@ -23,22 +23,17 @@ import org.apache.hyracks.algebricks.runtime.base.IScalarEvaluatorFactory;
 import org.apache.hyracks.api.context.IHyracksTaskContext;
 import org.apache.hyracks.api.exceptions.HyracksDataException;
 import org.apache.hyracks.data.std.api.IPointable;
-import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
-import org.apache.hyracks.data.std.primitive.VoidPointable;
 import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
 import org.apache.vxquery.context.DynamicContext;
 import org.apache.vxquery.datamodel.accessors.SequencePointable;
 import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
-import org.apache.vxquery.datamodel.accessors.TypedPointables;
 import org.apache.vxquery.datamodel.builders.sequence.SequenceBuilder;
 import org.apache.vxquery.datamodel.values.ValueTag;
 import org.apache.vxquery.exceptions.ErrorCode;
 import org.apache.vxquery.exceptions.SystemException;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluator;
 import org.apache.vxquery.runtime.functions.base.AbstractTaggedValueArgumentScalarEvaluatorFactory;
-import org.apache.vxquery.runtime.functions.comparison.AbstractValueComparisonOperation;
-import org.apache.vxquery.runtime.functions.comparison.ValueEqComparisonOperation;
-import org.apache.vxquery.runtime.functions.util.FunctionHelper;
+import org.apache.vxquery.runtime.functions.util.DistinctValuesHelper;
 
 public class FnDistinctValuesScalarEvaluatorFactory extends AbstractTaggedValueArgumentScalarEvaluatorFactory {
     private static final long serialVersionUID = 1L;
@@ -54,13 +49,7 @@ public class FnDistinctValuesScalarEvaluatorFactory extends AbstractTaggedValueA
         final SequenceBuilder sb = new SequenceBuilder();
         final SequencePointable seq = new SequencePointable();
         final DynamicContext dCtx = (DynamicContext) ctx.getJobletContext().getGlobalJobData();
-        final AbstractValueComparisonOperation aOp = new ValueEqComparisonOperation();
-        final TaggedValuePointable tvpDistinct = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
-        final TaggedValuePointable tvpCheck = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
-        final VoidPointable p = (VoidPointable) VoidPointable.FACTORY.createPointable();
-        final UTF8StringPointable stringp = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
-        final TypedPointables tp1 = new TypedPointables();
-        final TypedPointables tp2 = new TypedPointables();
+        final DistinctValuesHelper distinct = new DistinctValuesHelper();
 
         return new AbstractTaggedValueArgumentScalarEvaluator(args) {
             @Override
@@ -71,41 +60,12 @@ public class FnDistinctValuesScalarEvaluatorFactory extends AbstractTaggedValueA
                     TaggedValuePointable tvp1 = args[0];
                     // Second  parameter is optional.
                     if (args.length > 1) {
-                        TaggedValuePointable tvp2 = args[1];
-                        if (tvp2.getTag() != ValueTag.XS_STRING_TAG) {
-                            throw new SystemException(ErrorCode.FORG0006);
-                        }
-                        tvp2.getValue(stringp);
+                        distinct.checkCollation(args[1]);
                     }
-                    // TODO use the third value as collation
 
                     if (tvp1.getTag() == ValueTag.SEQUENCE_TAG) {
                         tvp1.getValue(seq);
-                        int seqLen = seq.getEntryCount();
-
-                        // Add remaining distinct item.
-                        boolean found = false;
-                        for (int j = 0; j < seqLen; ++j) {
-                            seq.getEntry(j, p);
-                            tvpDistinct.set(p.getByteArray(), p.getStartOffset(), p.getLength());
-
-                            // Check if item is distinct.
-                            if (j + 1 < seqLen) {
-                                for (int k = j + 1; k < seqLen; ++k) {
-                                    seq.getEntry(k, p);
-                                    tvpCheck.set(p.getByteArray(), p.getStartOffset(), p.getLength());
-                                    if (FunctionHelper.compareTaggedValues(aOp, tvpDistinct, tvpCheck, dCtx, tp1, tp2)) {
-                                        found = true;
-                                        break;
-                                    }
-                                }
-                            }
-
-                            // Add distinct item.
-                            if (!found) {
-                                sb.addItem(tvpDistinct);
-                            }
-                        }
+                        distinct.distinctValues(seq, sb, dCtx);
                     } else {
                         sb.addItem(tvp1);
                     }
@@ -17,6 +17,7 @@
 package org.apache.vxquery.runtime.functions.step;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.apache.vxquery.datamodel.accessors.SequencePointable;
 import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
@@ -35,6 +36,10 @@ public abstract class AbstractDescendantPathStepScalarEvaluator extends Abstract
 
     private final ElementNodePointable enp;
 
+    private SequencePointable[] seqStack = new SequencePointable[8];
+
+    private int[] indexStack = new int[8];
+
     public AbstractDescendantPathStepScalarEvaluator(IScalarEvaluator[] args, IHyracksTaskContext ctx) {
         super(args, ctx);
         dnp = (DocumentNodePointable) DocumentNodePointable.FACTORY.createPointable();
@@ -45,7 +50,8 @@ public abstract class AbstractDescendantPathStepScalarEvaluator extends Abstract
     protected abstract void evaluate(TaggedValuePointable[] args, IPointable result) throws SystemException;
 
     /**
-     * Search through all tree children and children's children.
+     * Search through all tree children and children's children. The subtree is walked with an explicit stack that is
+     * reused between calls.
      *
      * @param nodePointable
      *            Node pointable
@@ -54,38 +60,25 @@ public abstract class AbstractDescendantPathStepScalarEvaluator extends Abstract
      */
     protected void searchSubtree(TaggedValuePointable nodePointable) throws SystemException {
         try {
-            SequencePointable seqp = (SequencePointable) SequencePointable.FACTORY.createPointable();
-            boolean search = false;
-
-            // Find all child element to search.
-            switch (nodePointable.getTag()) {
-                case ValueTag.DOCUMENT_NODE_TAG:
-                    nodePointable.getValue(dnp);
-                    dnp.getContent(ntp, seqp);
-                    search = true;
-                    break;
-
-                case ValueTag.ELEMENT_NODE_TAG:
-                    nodePointable.getValue(enp);
-                    if (enp.childrenChunkExists()) {
-                        enp.getChildrenSequence(ntp, seqp);
-                        search = true;
-                    }
-                    break;
+            if (!pushChildren(nodePointable, 0)) {
+                return;
             }
-
-            if (search) {
-                int seqSize = seqp.getEntryCount();
-                for (int i = 0; i < seqSize; ++i) {
-                    seqp.getEntry(i, itemTvp);
-                    // Only search element nodes.
-                    if (itemTvp.getTag() == ValueTag.ELEMENT_NODE_TAG) {
-                        appendNodeToResult();
-                        // Now check this elements children.
-                        TaggedValuePointable tvpTemp = (TaggedValuePointable) TaggedValuePointable.FACTORY
-                                .createPointable();
-                        tvpTemp.set(itemTvp);
-                        searchSubtree(tvpTemp);
+            int depth = 0;
+            while (depth >= 0) {
+                SequencePointable seqp = seqStack[depth];
+                int index = indexStack[depth];
+                if (index >= seqp.getEntryCount()) {
+                    --depth;
+                    continue;
+                }
+                indexStack[depth] = index + 1;
+                seqp.getEntry(index, itemTvp);
+                // Only search element nodes.
+                if (itemTvp.getTag() == ValueTag.ELEMENT_NODE_TAG) {
+                    appendNodeToResult();
+                    // Now check this elements children.
+                    if (pushChildren(itemTvp, depth + 1)) {
+                        ++depth;
                     }
                 }
             }
@@ -94,4 +87,36 @@ public abstract class AbstractDescendantPathStepScalarEvaluator extends Abstract
         }
     }
 
+    /**
+     * Sets the stack entry at the given depth to the children of a document or element node.
+     *
+     * @return false if the node has no children to search
+     */
+    private boolean pushChildren(TaggedValuePointable nodePointable, int depth) {
+        if (depth == seqStack.length) {
+            seqStack = Arrays.copyOf(seqStack, depth * 2);
+            indexStack = Arrays.copyOf(indexStack, depth * 2);
+        }
+        if (seqStack[depth] == null) {
+            seqStack[depth] = (SequencePointable) SequencePointable.FACTORY.createPointable();
+        }
+        indexStack[depth] = 0;
+        switch (nodePointable.getTag()) {
+            case ValueTag.DOCUMENT_NODE_TAG:
+                nodePointable.getValue(dnp);
+                dnp.getContent(ntp, seqStack[depth]);
+                return true;
+
+            case ValueTag.ELEMENT_NODE_TAG:
+                nodePointable.getValue(enp);
+                if (enp.childrenChunkExists()) {
+                    enp.getChildrenSequence(ntp, seqStack[depth]);
+                    return true;
+                }
+                return false;
+
+            default:
+                return false;
+        }
+    }
 }
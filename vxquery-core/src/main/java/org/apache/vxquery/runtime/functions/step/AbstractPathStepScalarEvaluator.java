@@ -64,6 +64,15 @@ public abstract class AbstractPathStepScalarEvaluator extends AbstractTaggedValu
     @Override
     protected abstract void evaluate(TaggedValuePointable[] args, IPointable result) throws SystemException;
 
+    /**
+     * Prepares the node test for the nodes of {@link #ntp}.
+     *
+     * @return false if no node of the tree can match the node test
+     */
+    protected boolean setNodeTree() {
+        return filter.setNodeTree(ntp);
+    }
+
     protected boolean matches() {
         return filter.accept(ntp, itemTvp);
     }
@@ -101,6 +101,9 @@ public abstract class AbstractSinglePathStepScalarEvaluator extends AbstractPath
     }
 
     protected void processNodeTree() throws SystemException, IOException {
+        if (!setNodeTree()) {
+            return;
+        }
         getSequence(ntp, seqp);
         int seqSize = seqp.getEntryCount();
         for (int i = 0; i < seqSize; ++i) {
@@ -36,6 +36,7 @@ import org.apache.hyracks.data.std.api.IPointable;
 public class ChildPathStepOperatorDescriptor extends AbstractForwardAxisPathStep {
     private List<INodeFilter> filter = new ArrayList<INodeFilter>();
     private int[] indexSequence;
+    private boolean treeMatches;
     private final TaggedValuePointable tvpItem = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
     private final TaggedValuePointable tvpStep = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
 
@@ -53,9 +54,14 @@ public class ChildPathStepOperatorDescriptor extends AbstractForwardAxisPathStep
             throw new SystemException(ErrorCode.SYSE0001);
         }
         tvp.getValue(ntp);
+        treeMatches = true;
+        for (INodeFilter f : filter) {
+            treeMatches &= f.setNodeTree(ntp);
+        }
     }
 
     protected void setFilterCode(List<Integer> typeCodes) {
+        filter.clear();
         for (int typeCode : typeCodes) {
             SequenceType sType = dCtx.getStaticContext().lookupSequenceType(typeCode);
             INodeFilter f = NodeTestFilter.getNodeTestFilter(sType);
@@ -74,6 +80,9 @@ public class ChildPathStepOperatorDescriptor extends AbstractForwardAxisPathStep
      *             Could not save result.
      */
     public boolean step(IPointable result) throws AlgebricksException {
+        if (!treeMatches) {
+            return false;
+        }
         ntp.getRootNode(tvpStep);
         if (stepNodeTree(tvpStep, 0, result)) {
             return true;
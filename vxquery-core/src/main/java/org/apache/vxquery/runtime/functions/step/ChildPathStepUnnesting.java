@@ -74,7 +74,7 @@ public class ChildPathStepUnnesting extends AbstractForwardAxisPathStep {
     }
 
     public boolean step(IPointable result) throws HyracksDataException {
-        if (seqArgsLength > 0) {
+        if (seqArgsLength >= 0) {
             while (indexSeqArgs < seqArgsLength) {
                 seqNtp.getEntry(indexSeqArgs, tvpNtp);
                 if (tvpNtp.getTag() != ValueTag.NODE_TREE_TAG) {
@@ -83,7 +83,7 @@ public class ChildPathStepUnnesting extends AbstractForwardAxisPathStep {
                 }
                 tvpNtp.getValue(ntp);
                 ntp.getRootNode(tvpStep);
-                if (stepNodeTree(tvpStep, 0, result)) {
+                if (startNodeTree() && stepNodeTree(tvpStep, 0, result)) {
                     return true;
                 }
                 indexSeqArgs++;
@@ -91,13 +91,22 @@ public class ChildPathStepUnnesting extends AbstractForwardAxisPathStep {
         } else {
             // Single node tree input.
             ntp.getRootNode(tvpStep);
-            if (stepNodeTree(tvpStep, 0, result)) {
+            if (startNodeTree() && stepNodeTree(tvpStep, 0, result)) {
                 return true;
             }
         }
         return false;
     }
 
+    /**
+     * Prepares the node test when the first child of a tree is about to be visited.
+     *
+     * @return false if no child of the tree can match the node test
+     */
+    private boolean startNodeTree() {
+        return indexSequence > 0 || filter.setNodeTree(ntp);
+    }
+
     /**
      * Find the next node to return.
      *
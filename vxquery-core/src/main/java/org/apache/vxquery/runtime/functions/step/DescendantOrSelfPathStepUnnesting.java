@@ -17,8 +17,7 @@
 package org.apache.vxquery.runtime.functions.step;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 import org.apache.hyracks.api.context.IHyracksTaskContext;
 import org.apache.hyracks.api.exceptions.HyracksDataException;
@@ -35,11 +34,16 @@ import org.apache.vxquery.types.SequenceType;
 
 public class DescendantOrSelfPathStepUnnesting extends AbstractForwardAxisPathStep {
     private boolean testSelf;
-    private boolean returnSelf;
     private int indexSeqArgs;
     private int seqArgsLength;
-    private List<Integer> indexSequence = new ArrayList<Integer>();
-    private List<Integer> returnSequence = new ArrayList<Integer>();
+
+    /**
+     * Children sequences and the index of the next child on the path from the root to the current node. The stack
+     * is empty (depth -1) between node trees.
+     */
+    private SequencePointable[] seqStack = new SequencePointable[8];
+    private int[] indexStack = new int[8];
+    private int depth;
 
     private final IntegerPointable ip = (IntegerPointable) IntegerPointable.FACTORY.createPointable();
     private final SequencePointable seqNtp = (SequencePointable) SequencePointable.FACTORY.createPointable();
@@ -56,10 +60,8 @@ public class DescendantOrSelfPathStepUnnesting extends AbstractForwardAxisPathSt
     }
 
     protected void init(TaggedValuePointable[] args) throws SystemException {
-        returnSelf = true;
         indexSeqArgs = 0;
-        indexSequence.add(0);
-        returnSequence.add(0);
+        depth = -1;
 
         if (args.length > 1) {
             isfilter = true;
@@ -86,108 +88,95 @@ public class DescendantOrSelfPathStepUnnesting extends AbstractForwardAxisPathSt
     }
 
     public boolean step(IPointable result) throws HyracksDataException {
-        if (seqArgsLength > 0) {
+        if (seqArgsLength >= 0) {
             while (indexSeqArgs < seqArgsLength) {
-                seqNtp.getEntry(indexSeqArgs, tvpNtp);
-                if (tvpNtp.getTag() != ValueTag.NODE_TREE_TAG) {
-                    String description = ErrorCode.SYSE0001 + ": " + ErrorCode.SYSE0001.getDescription();
-                    throw new HyracksDataException(description);
+                if (depth < 0) {
+                    seqNtp.getEntry(indexSeqArgs, tvpNtp);
+                    if (tvpNtp.getTag() != ValueTag.NODE_TREE_TAG) {
+                        String description = ErrorCode.SYSE0001 + ": " + ErrorCode.SYSE0001.getDescription();
+                        throw new HyracksDataException(description);
+                    }
+                    tvpNtp.getValue(ntp);
                 }
-                tvpNtp.getValue(ntp);
-                ntp.getRootNode(tvpStep);
-                if (processNodeTree(tvpStep, result)) {
+                if (processNodeTree(result)) {
                     return true;
                 }
                 // Next node tree in sequence.
                 indexSeqArgs++;
-                returnSelf = true;
             }
         } else {
             // Single node tree input.
-            ntp.getRootNode(tvpStep);
-            if (processNodeTree(tvpStep, result)) {
+            if (processNodeTree(result)) {
                 return true;
             }
         }
         return false;
     }
 
-    private boolean processNodeTree(TaggedValuePointable rootTVP, IPointable result) throws HyracksDataException {
-        if (testSelf && returnSelf) {
-            returnSelf = false;
-            tvpItem.set(rootTVP);
-            try {
-                if (!isfilter || (isfilter && filter.accept(ntp, tvpItem))) {
-                    setNodeToResult(tvpItem, result);
-                    return true;
-                }
-            } catch (IOException e) {
-                String description = ErrorCode.SYSE0001 + ": " + ErrorCode.SYSE0001.getDescription();
-                throw new HyracksDataException(description);
-            }
-        }
-        // Solve for descendants.
-        return stepNodeTree(rootTVP, 0, result);
-    }
-
     /**
-     * Search through all tree children and children's children.
+     * Returns the next matching node of the current node tree in document order. The nodes are visited with an
+     * explicit stack, so the state carries over from one call to the next. A tree that does not contain the names
+     * of the node test is skipped without visiting its nodes.
      *
-     * @param tvpInput
-     *            pointable
-     * @param level
-     *            level
      * @param result
      *            result
      * @return found result
      * @throws HyracksDataException
      *             Could not save result.
      */
-    protected boolean stepNodeTree(TaggedValuePointable tvpInput, int level, IPointable result)
-            throws HyracksDataException {
-        // Set up next level tracking.
-        if (level + 1 > indexSequence.size()) {
-            indexSequence.add(0);
-            returnSequence.add(0);
-        }
-
-        SequencePointable seqItem = pp.takeOne(SequencePointable.class);
+    private boolean processNodeTree(IPointable result) throws HyracksDataException {
         try {
-            getSequence(tvpInput, seqItem);
-            int seqLength = seqItem.getEntryCount();
-            while (indexSequence.get(level) < seqLength) {
-                // Get the next item
-                seqItem.getEntry(indexSequence.get(level), tvpItem);
-                // Check current node
-                if (indexSequence.get(level) == returnSequence.get(level)) {
-                    returnSequence.set(level, returnSequence.get(level) + 1);
-                    if (!isfilter || (isfilter && filter.accept(ntp, tvpItem))) {
-                        setNodeToResult(tvpItem, result);
-                        return true;
-                    }
+            if (depth < 0) {
+                // Start of a new tree.
+                if (isfilter && !filter.setNodeTree(ntp)) {
+                    return false;
                 }
-                // Check children nodes
-                if (level + 1 <= indexSequence.size()) {
-                    if (stepNodeTree(tvpItem, level + 1, result)) {
-                        return true;
-                    }
+                ntp.getRootNode(tvpStep);
+                push(tvpStep);
+                if (testSelf && accept(tvpStep)) {
+                    setNodeToResult(tvpStep, result);
+                    return true;
                 }
-                indexSequence.set(level, indexSequence.get(level) + 1);
             }
-            // Reset for next node tree.
-            if (level == 0) {
-                indexSequence.set(level, 0);
-                returnSequence.set(level, 0);
-            } else {
-                indexSequence.remove(level);
-                returnSequence.remove(level);
+            while (depth >= 0) {
+                SequencePointable seqp = seqStack[depth];
+                int index = indexStack[depth];
+                if (index >= seqp.getEntryCount()) {
+                    --depth;
+                    continue;
+                }
+                seqp.getEntry(index, tvpItem);
+                indexStack[depth] = index + 1;
+                // The children are visited before the following siblings.
+                if (tvpItem.getTag() == ValueTag.ELEMENT_NODE_TAG) {
+                    push(tvpItem);
+                }
+                if (accept(tvpItem)) {
+                    setNodeToResult(tvpItem, result);
+                    return true;
+                }
             }
             return false;
         } catch (IOException e) {
             String description = ErrorCode.SYSE0001 + ": " + ErrorCode.SYSE0001.getDescription();
             throw new HyracksDataException(description);
-        } finally {
-            pp.giveBack(seqItem);
         }
     }
+
+    private boolean accept(TaggedValuePointable tvp) {
+        return !isfilter || filter.accept(ntp, tvp);
+    }
+
+    private void push(TaggedValuePointable tvp) {
+        ++depth;
+        if (depth == seqStack.length) {
+            seqStack = Arrays.copyOf(seqStack, depth * 2);
+            indexStack = Arrays.copyOf(indexStack, depth * 2);
+        }
+        if (seqStack[depth] == null) {
+            seqStack[depth] = (SequencePointable) SequencePointable.FACTORY.createPointable();
+        }
+        getSequence(tvp, seqStack[depth]);
+        indexStack[depth] = 0;
+    }
 }
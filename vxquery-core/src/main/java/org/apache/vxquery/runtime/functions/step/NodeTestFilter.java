@@ -36,25 +36,9 @@ public class NodeTestFilter {
         final NodeType nodeType = (NodeType) sType.getItemType();
         switch (nodeType.getNodeKind()) {
             case ATTRIBUTE: {
-                AttributeType aType = (AttributeType) nodeType;
-                NameTest nameTest = aType.getNameTest();
-                byte[] uri = nameTest.getUri();
-                byte[] localName = nameTest.getLocalName();
-                final UTF8StringPointable urip = (UTF8StringPointable) (uri == null ? null
-                        : UTF8StringPointable.FACTORY.createPointable());
-                final UTF8StringPointable localp = (UTF8StringPointable) (localName == null ? null
-                        : UTF8StringPointable.FACTORY.createPointable());
-                if (uri != null) {
-                    urip.set(uri, 0, uri.length);
-                }
-                if (localName != null) {
-                    localp.set(localName, 0, localName.length);
-                }
-                final UTF8StringPointable temp = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
                 final AttributeNodePointable anp = (AttributeNodePointable) AttributeNodePointable.FACTORY
                         .createPointable();
-                final CodedQNamePointable cqp = (CodedQNamePointable) CodedQNamePointable.FACTORY.createPointable();
-                filter = new INodeFilter() {
+                filter = new NameTestFilter(((AttributeType) nodeType).getNameTest()) {
                     @Override
                     public boolean accept(NodeTreePointable ntp, TaggedValuePointable tvp) {
                         if (tvp.getTag() != ValueTag.ATTRIBUTE_NODE_TAG) {
@@ -62,19 +46,7 @@ public class NodeTestFilter {
                         }
                         tvp.getValue(anp);
                         anp.getName(cqp);
-                        if (urip != null) {
-                            ntp.getString(cqp.getNamespaceCode(), temp);
-                            if (urip.compareTo(temp) != 0) {
-                                return false;
-                            }
-                        }
-                        if (localp != null) {
-                            ntp.getString(cqp.getLocalCode(), temp);
-                            if (localp.compareTo(temp) != 0) {
-                                return false;
-                            }
-                        }
-                        return true;
+                        return matchesName();
                     }
                 };
                 break;
@@ -99,24 +71,8 @@ public class NodeTestFilter {
                 break;
 
             case ELEMENT: {
-                ElementType eType = (ElementType) nodeType;
-                NameTest nameTest = eType.getNameTest();
-                byte[] uri = nameTest.getUri();
-                byte[] localName = nameTest.getLocalName();
-                final UTF8StringPointable urip = (UTF8StringPointable) (uri == null ? null
-                        : UTF8StringPointable.FACTORY.createPointable());
-                final UTF8StringPointable localp = (UTF8StringPointable) (localName == null ? null
-                        : UTF8StringPointable.FACTORY.createPointable());
-                if (uri != null) {
-                    urip.set(uri, 0, uri.length);
-                }
-                if (localName != null) {
-                    localp.set(localName, 0, localName.length);
-                }
-                final UTF8StringPointable temp = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
                 final ElementNodePointable enp = (ElementNodePointable) ElementNodePointable.FACTORY.createPointable();
-                final CodedQNamePointable cqp = (CodedQNamePointable) CodedQNamePointable.FACTORY.createPointable();
-                filter = new INodeFilter() {
+                filter = new NameTestFilter(((ElementType) nodeType).getNameTest()) {
                     @Override
                     public boolean accept(NodeTreePointable ntp, TaggedValuePointable tvp) {
                         if (tvp.getTag() != ValueTag.ELEMENT_NODE_TAG) {
@@ -124,19 +80,7 @@ public class NodeTestFilter {
                         }
                         tvp.getValue(enp);
                         enp.getName(cqp);
-                        if (urip != null) {
-                            ntp.getString(cqp.getNamespaceCode(), temp);
-                            if (urip.compareTo(temp) != 0) {
-                                return false;
-                            }
-                        }
-                        if (localp != null) {
-                            ntp.getString(cqp.getLocalCode(), temp);
-                            if (localp.compareTo(temp) != 0) {
-                                return false;
-                            }
-                        }
-                        return true;
+                        return matchesName();
                     }
                 };
                 break;
@@ -174,6 +118,64 @@ public class NodeTestFilter {
     }
 
     public interface INodeFilter {
+        /**
+         * Prepares the filter for the nodes of the given tree. Must be called before {@link #accept} is called with
+         * nodes of a new tree.
+         *
+         * @return false if no node of the tree can pass the filter
+         */
+        public default boolean setNodeTree(NodeTreePointable ntp) {
+            return true;
+        }
+
         public boolean accept(NodeTreePointable ntp, TaggedValuePointable tvp);
     }
+
+    /**
+     * Filter for a name test. The names are looked up in the dictionary of each node tree once, so that nodes are
+     * tested by comparing dictionary codes.
+     */
+    private abstract static class NameTestFilter implements INodeFilter {
+        protected final CodedQNamePointable cqp = (CodedQNamePointable) CodedQNamePointable.FACTORY.createPointable();
+        private final UTF8StringPointable urip;
+        private final UTF8StringPointable localp;
+        private int uriCode = -1;
+        private int localCode = -1;
+
+        NameTestFilter(NameTest nameTest) {
+            urip = createPointable(nameTest.getUri());
+            localp = createPointable(nameTest.getLocalName());
+        }
+
+        private static UTF8StringPointable createPointable(byte[] name) {
+            if (name == null) {
+                return null;
+            }
+            UTF8StringPointable p = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+            p.set(name, 0, name.length);
+            return p;
+        }
+
+        @Override
+        public boolean setNodeTree(NodeTreePointable ntp) {
+            if (urip != null) {
+                uriCode = ntp.lookupString(urip);
+                if (uriCode < 0) {
+                    return false;
+                }
+            }
+            if (localp != null) {
+                localCode = ntp.lookupString(localp);
+                if (localCode < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        protected boolean matchesName() {
+            return (urip == null || cqp.getNamespaceCode() == uriCode)
+                    && (localp == null || cqp.getLocalCode() == localCode);
+        }
+    }
 }
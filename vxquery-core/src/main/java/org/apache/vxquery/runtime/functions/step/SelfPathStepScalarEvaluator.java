@@ -71,7 +71,7 @@ public class SelfPathStepScalarEvaluator extends AbstractPathStepScalarEvaluator
                     throw new SystemException(ErrorCode.SYSE0001);
             }
             itemTvp.set(rootTVP);
-            if (matches()) {
+            if (setNodeTree() && matches()) {
                 appendNodeToResult();
             }
 
@@ -46,6 +46,10 @@ public class ArithmeticHelper {
     private final ArrayBackedValueStorage abvsArgument2;
     private final DataOutput dOutArgument2;
     private final CastToDoubleOperation castToDouble;
+    private final LongPointable longp1;
+    private final LongPointable longp2;
+    private final DoublePointable doublep1;
+    private final DoublePointable doublep2;
 
     public ArithmeticHelper(AbstractArithmeticOperation aOp, DynamicContext dCtx) {
         this.aOp = aOp;
@@ -59,16 +63,35 @@ public class ArithmeticHelper {
         abvsArgument2 = new ArrayBackedValueStorage();
         dOutArgument2 = abvsArgument2.getDataOutput();
         castToDouble = new CastToDoubleOperation();
+        longp1 = (LongPointable) LongPointable.FACTORY.createPointable();
+        longp2 = (LongPointable) LongPointable.FACTORY.createPointable();
+        doublep1 = (DoublePointable) DoublePointable.FACTORY.createPointable();
+        doublep2 = (DoublePointable) DoublePointable.FACTORY.createPointable();
     }
 
     public void compute(TaggedValuePointable tvp1, TaggedValuePointable tvp2, IPointable result)
             throws SystemException {
         abvs.reset();
         try {
+            // Values that already have the same primitive type skip the conversions below.
+            if (tvp1.getTag() == tvp2.getTag()) {
+                switch (tvp1.getTag()) {
+                    case ValueTag.XS_INTEGER_TAG:
+                        tvp1.getValue(longp1);
+                        tvp2.getValue(longp2);
+                        aOp.operateIntegerInteger(longp1, longp2, dOut);
+                        result.set(abvs.getByteArray(), 0, abvs.getLength());
+                        return;
+                    case ValueTag.XS_DOUBLE_TAG:
+                        tvp1.getValue(doublep1);
+                        tvp2.getValue(doublep2);
+                        aOp.operateDoubleDouble(doublep1, doublep2, dOut);
+                        result.set(abvs.getByteArray(), 0, abvs.getLength());
+                        return;
+                }
+            }
             int tid1 = getBaseTypeForArithmetics(tvp1.getTag());
             int tid2 = getBaseTypeForArithmetics(tvp2.getTag());
-            LongPointable longp1 = (LongPointable) LongPointable.FACTORY.createPointable();
-            DoublePointable doublep1 = (DoublePointable) DoublePointable.FACTORY.createPointable();
             switch (tvp1.getTag()) {
                 case ValueTag.XS_INTEGER_TAG:
                 case ValueTag.XS_NON_POSITIVE_INTEGER_TAG:
@@ -100,8 +123,6 @@ public class ArithmeticHelper {
                             DoublePointable.TYPE_TRAITS.getFixedLength());
                     break;
             }
-            LongPointable longp2 = (LongPointable) LongPointable.FACTORY.createPointable();
-            DoublePointable doublep2 = (DoublePointable) DoublePointable.FACTORY.createPointable();
             switch (tvp2.getTag()) {
                 case ValueTag.XS_INTEGER_TAG:
                 case ValueTag.XS_NON_POSITIVE_INTEGER_TAG:
@@ -0,0 +1,354 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hyracks.data.std.primitive.LongPointable;
+import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.hyracks.util.string.UTF8StringUtil;
+import org.apache.vxquery.collations.CodepointCollation;
+import org.apache.vxquery.context.DynamicContext;
+import org.apache.vxquery.datamodel.accessors.SequencePointable;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.accessors.TypedPointables;
+import org.apache.vxquery.datamodel.accessors.atomic.XSDateTimePointable;
+import org.apache.vxquery.datamodel.api.ITimezone;
+import org.apache.vxquery.datamodel.builders.sequence.SequenceBuilder;
+import org.apache.vxquery.datamodel.util.DateTime;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.exceptions.ErrorCode;
+import org.apache.vxquery.exceptions.SystemException;
+import org.apache.vxquery.runtime.functions.comparison.AbstractValueComparisonOperation;
+import org.apache.vxquery.runtime.functions.comparison.ValueEqComparisonOperation;
+
+/**
+ * Removes duplicate atomic values from a sequence in linear time. Items are hashed on their canonical typed value so
+ * that values equal under the {@code eq} operator (e.g. {@code 1}, {@code 1.0} and {@code 1.0e0}) land in the same
+ * bucket; only items of the same comparison class are then compared with {@link FunctionHelper#compareTaggedValues}.
+ * Items that cannot be compared are distinct, and {@code NaN} is equal to itself, as required by fn:distinct-values.
+ * The table only stores positions in the input sequence, so no item is copied until it is added to the result.
+ */
+public class DistinctValuesHelper {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int NAN_HASH = 0x7fc00000;
+
+    private final AbstractValueComparisonOperation aOp = new ValueEqComparisonOperation();
+    private final TaggedValuePointable tvp1 = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+    private final TaggedValuePointable tvp2 = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+    private final UTF8StringPointable stringp1 = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+    private final UTF8StringPointable stringp2 = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+    private final XSDateTimePointable ctxDatetimep = (XSDateTimePointable) XSDateTimePointable.FACTORY
+            .createPointable();
+    private final ArrayBackedValueStorage abvsInner = new ArrayBackedValueStorage();
+    private final StringBuilder collation = new StringBuilder();
+    private final TypedPointables tp1 = new TypedPointables();
+    private final TypedPointables tp2 = new TypedPointables();
+
+    private int[] classes = new int[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int[] table = new int[INITIAL_CAPACITY];
+    private int mask;
+    private int size;
+    private DynamicContext dCtx;
+
+    /**
+     * Checks the collation argument of fn:distinct-values. Only the codepoint collation is supported, under which equal
+     * strings have equal bytes.
+     */
+    public void checkCollation(TaggedValuePointable tvp) throws SystemException {
+        if (tvp.getTag() != ValueTag.XS_STRING_TAG) {
+            throw new SystemException(ErrorCode.FORG0006);
+        }
+        tvp.getValue(stringp1);
+        collation.setLength(0);
+        UTF8StringUtil.toString(collation, stringp1.getByteArray(), stringp1.getStartOffset());
+        if (!CodepointCollation.URI.equals(collation.toString())) {
+            throw new SystemException(ErrorCode.FOCH0002);
+        }
+    }
+
+    /**
+     * Adds the first occurrence of every distinct value of {@code seq} to {@code sb}, keeping the input order.
+     *
+     * @param dCtx
+     *            supplies the implicit timezone for date and time values; may be null when the sequence has none
+     */
+    public void distinctValues(SequencePointable seq, SequenceBuilder sb, DynamicContext dCtx)
+            throws SystemException, IOException {
+        int seqLen = seq.getEntryCount();
+        if (classes.length < seqLen) {
+            classes = new int[seqLen];
+            hashes = new int[seqLen];
+        }
+
+        // Integers and decimals are compared with a float as floats, so all numbers have to hash on a float then.
+        boolean floatPresent = false;
+        for (int j = 0; j < seqLen; ++j) {
+            seq.getEntry(j, tvp1);
+            int tid = FunctionHelper.getBaseTypeForComparisons(tvp1.getTag());
+            classes[j] = getComparisonClass(tid);
+            floatPresent |= tid == ValueTag.XS_FLOAT_TAG;
+        }
+
+        this.dCtx = dCtx;
+        reset(seqLen);
+        for (int j = 0; j < seqLen; ++j) {
+            seq.getEntry(j, tvp1);
+            int hash = hash(tvp1, classes[j], floatPresent);
+            hashes[j] = hash;
+            if (!contains(seq, j, hash)) {
+                insert(j, hash);
+                sb.addItem(tvp1);
+            }
+        }
+        this.dCtx = null;
+    }
+
+    private void reset(int seqLen) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < 2 * seqLen && capacity < INITIAL_CAPACITY * 1024) {
+            capacity <<= 1;
+        }
+        if (table.length != capacity) {
+            table = new int[capacity];
+        } else {
+            Arrays.fill(table, 0);
+        }
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    /**
+     * Looks for an item equal to {@code tvp1} (entry {@code j}) among the distinct items seen so far.
+     */
+    private boolean contains(SequencePointable seq, int j, int hash) throws SystemException, IOException {
+        for (int slot = mix(hash) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int k = table[slot] - 1;
+            if (hashes[k] != hash || classes[k] != classes[j]) {
+                continue;
+            }
+            seq.getEntry(k, tvp2);
+            if (isEqual(classes[j])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void insert(int j, int hash) {
+        if (2 * (size + 1) > table.length) {
+            int[] old = table;
+            table = new int[old.length << 1];
+            mask = table.length - 1;
+            for (int entry : old) {
+                if (entry != 0) {
+                    put(entry, hashes[entry - 1]);
+                }
+            }
+        }
+        put(j + 1, hash);
+        ++size;
+    }
+
+    private void put(int entry, int hash) {
+        int slot = mix(hash) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry;
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private boolean isEqual(int comparisonClass) throws SystemException, IOException {
+        switch (comparisonClass) {
+            case ValueTag.XS_STRING_TAG:
+                tvp1.getValue(stringp1);
+                tvp2.getValue(stringp2);
+                return FunctionHelper.arraysEqual(stringp1, stringp2);
+            case ValueTag.XS_DOUBLE_TAG:
+                if (isNaN(tvp1, tp1) && isNaN(tvp2, tp2)) {
+                    return true;
+                }
+                break;
+        }
+        return FunctionHelper.compareTaggedValues(aOp, tvp1, tvp2, dCtx, tp1, tp2);
+    }
+
+    /**
+     * Groups the types whose values can be equal to each other.
+     */
+    private static int getComparisonClass(int tid) {
+        switch (tid) {
+            case ValueTag.XS_DECIMAL_TAG:
+            case ValueTag.XS_INTEGER_TAG:
+            case ValueTag.XS_FLOAT_TAG:
+            case ValueTag.XS_DOUBLE_TAG:
+                return ValueTag.XS_DOUBLE_TAG;
+            case ValueTag.XS_STRING_TAG:
+            case ValueTag.XS_UNTYPED_ATOMIC_TAG:
+            case ValueTag.XS_ANY_URI_TAG:
+                return ValueTag.XS_STRING_TAG;
+            case ValueTag.XS_DURATION_TAG:
+            case ValueTag.XS_DAY_TIME_DURATION_TAG:
+            case ValueTag.XS_YEAR_MONTH_DURATION_TAG:
+                return ValueTag.XS_DURATION_TAG;
+            default:
+                return tid;
+        }
+    }
+
+    private int hash(TaggedValuePointable tvp, int comparisonClass, boolean floatPresent)
+            throws SystemException, IOException {
+        switch (comparisonClass) {
+            case ValueTag.XS_DOUBLE_TAG:
+                return hashNumber(tvp, floatPresent);
+            case ValueTag.XS_STRING_TAG:
+                tvp.getValue(stringp1);
+                return hashBytes(stringp1.getByteArray(), stringp1.getStartOffset(), stringp1.getLength());
+            case ValueTag.XS_BOOLEAN_TAG:
+                tvp.getValue(tp1.boolp);
+                return tp1.boolp.getBoolean() ? 1 : 0;
+            case ValueTag.XS_DURATION_TAG:
+                return hashDuration(tvp);
+            case ValueTag.XS_QNAME_TAG:
+                tvp.getValue(tp1.qnamep);
+                tp1.qnamep.getUri(stringp1);
+                tp1.qnamep.getLocalName(stringp2);
+                return 31 * hashBytes(stringp1.getByteArray(), stringp1.getStartOffset(), stringp1.getLength())
+                        + hashBytes(stringp2.getByteArray(), stringp2.getStartOffset(), stringp2.getLength());
+            case ValueTag.XS_HEX_BINARY_TAG:
+            case ValueTag.XS_BASE64_BINARY_TAG:
+                tvp.getValue(tp1.binaryp);
+                return hashBytes(tp1.binaryp.getByteArray(), tp1.binaryp.getStartOffset(),
+                        tp1.binaryp.getLength());
+            case ValueTag.XS_DATE_TAG:
+            case ValueTag.XS_G_DAY_TAG:
+            case ValueTag.XS_G_MONTH_DAY_TAG:
+            case ValueTag.XS_G_MONTH_TAG:
+            case ValueTag.XS_G_YEAR_MONTH_TAG:
+            case ValueTag.XS_G_YEAR_TAG:
+                tvp.getValue(tp1.datep);
+                return hashUtcDateTime(tp1.datep, false);
+            case ValueTag.XS_DATETIME_TAG:
+                tvp.getValue(tp1.datetimep);
+                return hashUtcDateTime(tp1.datetimep, true);
+            case ValueTag.XS_TIME_TAG:
+                tvp.getValue(tp1.timep);
+                return hashUtcDateTime(tp1.timep, true);
+            default:
+                // Rare types share one bucket per type and are compared pairwise.
+                return comparisonClass;
+        }
+    }
+
+    private int hashNumber(TaggedValuePointable tvp, boolean floatPresent) throws SystemException, IOException {
+        double value;
+        switch (FunctionHelper.getBaseTypeForComparisons(tvp.getTag())) {
+            case ValueTag.XS_DECIMAL_TAG:
+                tvp.getValue(tp1.decp);
+                value = tp1.decp.doubleValue();
+                break;
+            case ValueTag.XS_INTEGER_TAG:
+                abvsInner.reset();
+                FunctionHelper.getIntegerPointable(tvp, abvsInner.getDataOutput(), tp1);
+                value = LongPointable.getLong(abvsInner.getByteArray(), abvsInner.getStartOffset() + 1);
+                break;
+            case ValueTag.XS_FLOAT_TAG:
+                tvp.getValue(tp1.floatp);
+                value = tp1.floatp.getFloat();
+                break;
+            default:
+                tvp.getValue(tp1.doublep);
+                value = tp1.doublep.getDouble();
+                break;
+        }
+        if (Double.isNaN(value)) {
+            return NAN_HASH;
+        }
+        if (floatPresent) {
+            float f = (float) value;
+            return f == 0.0f ? 0 : Float.floatToIntBits(f);
+        }
+        if (value == 0.0) {
+            return 0;
+        }
+        long bits = Double.doubleToLongBits(value);
+        return (int) (bits ^ (bits >>> 32));
+    }
+
+    private int hashDuration(TaggedValuePointable tvp) {
+        int yearMonth;
+        long dayTime;
+        switch (tvp.getTag()) {
+            case ValueTag.XS_DAY_TIME_DURATION_TAG:
+                tvp.getValue(tp1.longp);
+                yearMonth = 0;
+                dayTime = tp1.longp.getLong();
+                break;
+            case ValueTag.XS_YEAR_MONTH_DURATION_TAG:
+                tvp.getValue(tp1.intp);
+                yearMonth = tp1.intp.getInteger();
+                dayTime = 0;
+                break;
+            default:
+                tvp.getValue(tp1.durationp);
+                yearMonth = tp1.durationp.getYearMonth();
+                dayTime = tp1.durationp.getDayTime();
+                break;
+        }
+        return 31 * yearMonth + (int) (dayTime ^ (dayTime >>> 32));
+    }
+
+    private int hashUtcDateTime(ITimezone timezonep, boolean withTime) throws IOException {
+        dCtx.getCurrentDateTime(ctxDatetimep);
+        abvsInner.reset();
+        DateTime.getUtcTimezoneDateTime(timezonep, ctxDatetimep, abvsInner.getDataOutput());
+        byte[] bytes = abvsInner.getByteArray();
+        int start = abvsInner.getStartOffset() + 1;
+        long yearMonth = XSDateTimePointable.getYearMonth(bytes, start);
+        long time = withTime ? XSDateTimePointable.getDayTime(bytes, start) : XSDateTimePointable.getDay(bytes, start);
+        return (int) (31 * yearMonth + (time ^ (time >>> 32)));
+    }
+
+    private static int hashBytes(byte[] bytes, int start, int length) {
+        int hash = 1;
+        for (int i = start, end = start + length; i < end; ++i) {
+            hash = 31 * hash + bytes[i];
+        }
+        return hash;
+    }
+
+    private static boolean isNaN(TaggedValuePointable tvp, TypedPointables tp) {
+        switch (tvp.getTag()) {
+            case ValueTag.XS_FLOAT_TAG:
+                tvp.getValue(tp.floatp);
+                return Float.isNaN(tp.floatp.getFloat());
+            case ValueTag.XS_DOUBLE_TAG:
+                tvp.getValue(tp.doublep);
+                return Double.isNaN(tp.doublep.getDouble());
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hyracks.data.std.primitive.LongPointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.datamodel.accessors.nodes.NodeTreePointable;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.hdfs2.HDFSFunctions;
+import org.apache.vxquery.xmlparser.IParser;
+import org.apache.vxquery.xmlparser.ITreeNodeIdProvider;
+import org.apache.vxquery.xmlparser.XMLParser;
+
+/**
+ * Node-wide cache of documents read by fn:doc and jn:doc, kept in their parsed binary form. Entries are keyed by the
+ * document URI and the parser that produced them, and are only returned while the file still has the modification
+ * time and length it had when it was parsed. A node tree returned from the cache gets a new tree id from the node id
+ * provider of the caller, so a cached tree is shared by all evaluators and partitions without two trees of one
+ * provider having the same id. The cache holds at most {@value #CACHE_SIZE_PROPERTY} megabytes and evicts the least
+ * recently used documents first; documents larger than the whole budget are not cached.
+ */
+public class DocumentCache {
+    private static final Logger LOGGER = Logger.getLogger(DocumentCache.class.getName());
+
+    // The tag and the header of a node tree come before its id.
+    private static final int TREE_ID_OFFSET = 2;
+
+    public static final String CACHE_SIZE_PROPERTY = "vxquery.doc_cache_size_mb";
+
+    private static final DocumentCache INSTANCE = new DocumentCache(
+            Long.getLong(CACHE_SIZE_PROPERTY, Math.min(256, Runtime.getRuntime().maxMemory() >> 23)) << 20);
+
+    private final long capacity;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Key, LoadLock> loadLocks = new HashMap<>();
+    private long size;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public DocumentCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    public static DocumentCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Writes the parsed document for the given URI into abvs. On a miss the document is parsed into abvs and a copy is
+     * kept in the cache. Concurrent misses on the same document parse it only once.
+     *
+     * @param nodeIdProvider
+     *            the provider the parser takes the tree id from, or null if the parser gives no ids
+     */
+    public void getDocument(String fName, IParser parser, ITreeNodeIdProvider nodeIdProvider,
+            ArrayBackedValueStorage abvs) throws IOException {
+        Key key = new Key(fName, parser.getClass().getName());
+        FileSystem fs = null;
+        if (isHDFS(fName)) {
+            fs = new HDFSFunctions(null, null).getFileSystem();
+            if (fs == null) {
+                throw new IOException();
+            }
+        }
+        LoadLock lock = acquireLoadLock(key);
+        try {
+            synchronized (lock) {
+                long[] stamp = stat(fName, fs);
+                byte[] document = lookup(key, stamp);
+                abvs.reset();
+                if (document != null) {
+                    hits.incrementAndGet();
+                    abvs.getDataOutput().write(document);
+                    setTreeId(abvs, nodeIdProvider);
+                    return;
+                }
+                misses.incrementAndGet();
+                parse(fName, fs, parser, abvs);
+                document = Arrays.copyOfRange(abvs.getByteArray(), abvs.getStartOffset(),
+                        abvs.getStartOffset() + abvs.getLength());
+                store(key, new Entry(stamp[0], stamp[1], document));
+            }
+        } finally {
+            releaseLoadLock(key, lock);
+        }
+    }
+
+    /**
+     * Gives a node tree taken from the cache the next id of the provider, as if it had just been parsed.
+     */
+    private static void setTreeId(ArrayBackedValueStorage abvs, ITreeNodeIdProvider nodeIdProvider) {
+        byte[] bytes = abvs.getByteArray();
+        int start = abvs.getStartOffset();
+        if (nodeIdProvider != null && abvs.getLength() >= TREE_ID_OFFSET + 8
+                && bytes[start] == ValueTag.NODE_TREE_TAG
+                && (bytes[start + 1] & NodeTreePointable.HEADER_NODEID_EXISTS_MASK) != 0) {
+            LongPointable.setLong(bytes, start + TREE_ID_OFFSET, nodeIdProvider.getId());
+        }
+    }
+
+    /**
+     * @return the lock for loading the document, which stays in place until the last thread waiting for it leaves
+     */
+    private LoadLock acquireLoadLock(Key key) {
+        synchronized (loadLocks) {
+            LoadLock lock = loadLocks.get(key);
+            if (lock == null) {
+                lock = new LoadLock();
+                loadLocks.put(key, lock);
+            }
+            ++lock.users;
+            return lock;
+        }
+    }
+
+    private void releaseLoadLock(Key key, LoadLock lock) {
+        synchronized (loadLocks) {
+            if (--lock.users == 0) {
+                loadLocks.remove(key);
+            }
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    private synchronized byte[] lookup(Key key, long[] stamp) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.modificationTime != stamp[0] || entry.length != stamp[1]) {
+            entries.remove(key);
+            size -= entry.document.length;
+            return null;
+        }
+        return entry.document;
+    }
+
+    private synchronized void store(Key key, Entry entry) {
+        if (entry.document.length > capacity) {
+            return;
+        }
+        Entry old = entries.put(key, entry);
+        if (old != null) {
+            size -= old.document.length;
+        }
+        size += entry.document.length;
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (size > capacity && it.hasNext()) {
+            Map.Entry<Key, Entry> eldest = it.next();
+            if (eldest.getValue() == entry) {
+                continue;
+            }
+            size -= eldest.getValue().document.length;
+            it.remove();
+            evictions.incrementAndGet();
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Evicted document " + eldest.getKey().fName + " (hits: " + hits.get() + ", misses: "
+                        + misses.get() + ", evictions: " + evictions.get() + ")");
+            }
+        }
+    }
+
+    private static boolean isHDFS(String fName) {
+        return fName.contains("hdfs:/");
+    }
+
+    private static Path getHDFSPath(String fName) {
+        return new Path(fName.replaceAll("hdfs:/", ""));
+    }
+
+    /**
+     * @return the modification time and length of the document
+     */
+    private static long[] stat(String fName, FileSystem fs) throws IOException {
+        if (fs == null) {
+            File file = new File(fName);
+            if (!file.exists()) {
+                throw new FileNotFoundException(file.getAbsolutePath());
+            }
+            return new long[] { file.lastModified(), file.length() };
+        }
+        Path path = getHDFSPath(fName);
+        if (!fs.exists(path)) {
+            throw new FileNotFoundException(path.getName());
+        }
+        FileStatus status = fs.getFileStatus(path);
+        return new long[] { status.getModificationTime(), status.getLen() };
+    }
+
+    /**
+     * Parses a document. XML is read from its bytes, by the byte parser where it is enabled, and other documents are
+     * read as UTF-8.
+     */
+    private static void parse(String fName, FileSystem fs, IParser parser, ArrayBackedValueStorage abvs)
+            throws IOException {
+        if (fs == null && parser instanceof XMLParser) {
+            ((XMLParser) parser).parse(new File(fName), abvs);
+            return;
+        }
+        // The file system instance is shared by Hadoop, so only the stream is closed here.
+        try (InputStream in = fs == null ? new FileInputStream(fName)
+                : fs.open(getHDFSPath(fName)).getWrappedStream()) {
+            if (parser instanceof XMLParser) {
+                ((XMLParser) parser).parse(in, abvs);
+            } else {
+                parser.parse(new InputStreamReader(in, StandardCharsets.UTF_8), abvs);
+            }
+        }
+    }
+
+    private static class Entry {
+        final long modificationTime;
+        final long length;
+        final byte[] document;
+
+        Entry(long modificationTime, long length, byte[] document) {
+            this.modificationTime = modificationTime;
+            this.length = length;
+            this.document = document;
+        }
+    }
+
+    private static class LoadLock {
+        int users;
+    }
+
+    private static class Key {
+        final String fName;
+        final String parser;
+
+        Key(String fName, String parser) {
+            this.fName = fName;
+            this.parser = parser;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return fName.equals(other.fName) && parser.equals(other.parser);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * fName.hashCode() + parser.hashCode();
+        }
+    }
+}
@@ -56,6 +56,7 @@ import org.apache.vxquery.runtime.functions.strings.UTF8StringCharacterIterator;
 import org.apache.vxquery.types.BuiltinTypeConstants;
 import org.apache.vxquery.types.BuiltinTypeRegistry;
 import org.apache.vxquery.xmlparser.IParser;
+import org.apache.vxquery.xmlparser.XMLParser;
 
 public class FunctionHelper {
 
@@ -1081,6 +1082,21 @@ public class FunctionHelper {
      */
     public static int getLocalNodeId(TaggedValuePointable tvp1, TypedPointables tp) {
         final TaggedValuePointable tvp = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+        return getLocalNodeId(tvp1, tvp, tp);
+    }
+
+    /**
+     * Get the local node id from a tagged value pointable when available.
+     *
+     * @param tvp1
+     *            pointable
+     * @param tvp
+     *            pointable set to the root node of the node tree
+     * @param tp
+     *            Typed pointable
+     * @return local node id
+     */
+    public static int getLocalNodeId(TaggedValuePointable tvp1, TaggedValuePointable tvp, TypedPointables tp) {
         int localNodeId = -1;
         if (tvp1.getTag() == ValueTag.NODE_TREE_TAG) {
             tvp1.getValue(tp.ntp);
@@ -1232,7 +1248,9 @@ public class FunctionHelper {
         Reader input;
         if (!fName.contains("hdfs:/")) {
             File file = new File(fName);
-            if (file.exists()) {
+            if (file.exists() && parser instanceof XMLParser) {
+                ((XMLParser) parser).parse(file, abvs);
+            } else if (file.exists()) {
                 input = new InputStreamReader(new FileInputStream(file));
                 parser.parse(input, abvs);
             } else {
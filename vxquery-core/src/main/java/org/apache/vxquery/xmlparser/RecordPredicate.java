@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.xmlparser;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A value comparison of a child element or an attribute of the scanned records against a string constant, like
+ * <code>$r/dataType eq "PRCP"</code>. The untyped value of the node is compared as a string, in the code unit order
+ * used by the string comparisons. The scan drops a record only where the comparison is certain to be false: the node
+ * is missing, so the comparison is empty, or there is exactly one such node and its value does not match. A record
+ * with several such nodes is kept, so the query still raises the type error.
+ */
+public final class RecordPredicate implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public enum Operator {
+        EQ("eq"),
+        NE("ne"),
+        LT("lt"),
+        LE("le"),
+        GT("gt"),
+        GE("ge");
+
+        private final String name;
+
+        Operator(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return the operator giving the same result with the operands swapped
+         */
+        public Operator swap() {
+            switch (this) {
+                case LT:
+                    return GT;
+                case LE:
+                    return GE;
+                case GT:
+                    return LT;
+                case GE:
+                    return LE;
+                default:
+                    return this;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private final boolean attribute;
+    private final String uri;
+    private final String localName;
+    private final Operator operator;
+    private final String value;
+    private final byte[] valueBytes;
+
+    /**
+     * @param uri
+     *            the namespace of the node, or null for any namespace
+     * @param localName
+     *            the local name of the node, or null for any name
+     */
+    public RecordPredicate(boolean attribute, String uri, String localName, Operator operator, String value) {
+        this.attribute = attribute;
+        this.uri = uri;
+        this.localName = localName;
+        this.operator = operator;
+        this.value = value;
+        valueBytes = encode(value);
+    }
+
+    public boolean isAttribute() {
+        return attribute;
+    }
+
+    public boolean matches(String uri, String localName) {
+        if (this.uri != null && uri != null && !this.uri.equals(uri)) {
+            return false;
+        }
+        return this.localName == null || this.localName.equals(localName);
+    }
+
+    /**
+     * @param bytes
+     *            the node value, encoded like {@link #encode(String)}
+     * @return the result of the comparison for a node with the value
+     */
+    public boolean accept(byte[] bytes, int start, int length) {
+        int c = compare(bytes, start, length);
+        switch (operator) {
+            case EQ:
+                return c == 0;
+            case NE:
+                return c != 0;
+            case LT:
+                return c < 0;
+            case LE:
+                return c <= 0;
+            case GT:
+                return c > 0;
+            default:
+                return c >= 0;
+        }
+    }
+
+    private int compare(byte[] bytes, int start, int length) {
+        int n = Math.min(length, valueBytes.length);
+        for (int i = 0; i < n; ++i) {
+            int c = (bytes[start + i] & 0xff) - (valueBytes[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return length - valueBytes.length;
+    }
+
+    /**
+     * Encodes a string as UTF-8 with each UTF-16 code unit encoded on its own, the way the parsers pass the text of
+     * supplementary characters. Comparing these bytes gives the order of the code units.
+     */
+    public static byte[] encode(String s) {
+        byte[] bytes = new byte[s.length() * 3];
+        int length = 0;
+        for (int i = 0; i < s.length(); ++i) {
+            length = encode(s.charAt(i), bytes, length);
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+
+    /**
+     * Writes the encoding of one code unit to the array, which must have room for three bytes.
+     *
+     * @return the offset after the written bytes
+     */
+    public static int encode(char c, byte[] bytes, int offset) {
+        if (c >= 0x0001 && c <= 0x007F) {
+            bytes[offset++] = (byte) c;
+        } else if (c <= 0x07FF) {
+            bytes[offset++] = (byte) (0xC0 | ((c >> 6) & 0x1F));
+            bytes[offset++] = (byte) (0x80 | (c & 0x3F));
+        } else {
+            bytes[offset++] = (byte) (0xE0 | ((c >> 12) & 0x0F));
+            bytes[offset++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            bytes[offset++] = (byte) (0x80 | (c & 0x3F));
+        }
+        return offset;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof RecordPredicate)) {
+            return false;
+        }
+        RecordPredicate other = (RecordPredicate) obj;
+        return attribute == other.attribute && operator == other.operator && value.equals(other.value)
+                && (uri == null ? other.uri == null : uri.equals(other.uri))
+                && (localName == null ? other.localName == null : localName.equals(other.localName));
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(new Object[] { attribute, uri, localName, operator, value });
+    }
+
+    @Override
+    public String toString() {
+        return (attribute ? "@" : "") + (localName == null ? "*" : localName) + " " + operator + " \"" + value
+                + "\"";
+    }
+}
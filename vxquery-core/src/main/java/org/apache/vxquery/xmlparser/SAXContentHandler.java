@@ -17,6 +17,7 @@ package org.apache.vxquery.xmlparser;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.hyracks.api.comm.IFrameFieldAppender;
@@ -36,6 +37,7 @@ import org.apache.vxquery.datamodel.builders.nodes.DictionaryBuilder;
 import org.apache.vxquery.datamodel.builders.nodes.DocumentNodeBuilder;
 import org.apache.vxquery.datamodel.builders.nodes.ElementNodeBuilder;
 import org.apache.vxquery.datamodel.builders.nodes.PINodeBuilder;
+import org.apache.vxquery.datamodel.builders.nodes.SharedDictionaryBuilder;
 import org.apache.vxquery.datamodel.builders.nodes.TextNodeBuilder;
 import org.apache.vxquery.datamodel.values.ValueTag;
 import org.apache.vxquery.runtime.functions.util.FunctionHelper;
@@ -57,7 +59,7 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
     // XML node builders
     protected final AttributeNodeBuilder anb;
     protected final CommentNodeBuilder cnb;
-    protected final DictionaryBuilder db;
+    protected DictionaryBuilder db;
     protected final DocumentNodeBuilder docb;
     protected final PINodeBuilder pinb;
     protected final TextNodeBuilder tnb;
@@ -79,6 +81,15 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
     private boolean[] subElement = null;
     private final TaggedValuePointable tvp;
 
+    // Record predicate variables
+    private List<RecordPredicate> predicates = null;
+    private int[] predicateCounts;
+    private boolean[] predicateResults;
+    private boolean[] predicateActive;
+    private boolean predicateText;
+    private byte[] predicateBytes;
+    private int predicateLength;
+
     // Basic tracking and setting variables
     protected final boolean attachTypes;
     protected final boolean createNodeIds;
@@ -133,6 +144,13 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
         setChildPathSteps(childSequenceTypes);
     }
 
+    /**
+     * Makes the trees written by this handler refer to the given shared dictionary instead of carrying their own.
+     */
+    public void setSharedDictionary(SharedDictionaryBuilder sharedDictionary) {
+        db = sharedDictionary;
+    }
+
     private void setChildPathSteps(List<SequenceType> childSeq) {
         if (!childSeq.isEmpty()) {
             subElement = new boolean[childSeq.size()];
@@ -151,6 +169,22 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
         }
     }
 
+    /**
+     * Sets the predicates on the children and attributes of the records selected by the child path steps. Records
+     * for which a predicate is false are not written.
+     */
+    public void setPredicates(List<RecordPredicate> predicates) {
+        if (subElement == null || predicates == null || predicates.isEmpty()) {
+            this.predicates = null;
+            return;
+        }
+        this.predicates = predicates;
+        predicateCounts = new int[predicates.size()];
+        predicateResults = new boolean[predicates.size()];
+        predicateActive = new boolean[predicates.size()];
+        predicateBytes = new byte[STRING_EXPECTED_LENGTH];
+    }
+
     public void setupElementWriter(IFrameWriter writer, int tupleIndex) {
         this.writer = writer;
         this.tupleIndex = tupleIndex;
@@ -167,6 +201,33 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
             e.printStackTrace();
             throw new SAXException(e);
         }
+        if (predicateText) {
+            ensurePredicateCapacity(3 * length);
+            for (int i = 0; i < length; ++i) {
+                predicateLength = RecordPredicate.encode(ch[start + i], predicateBytes, predicateLength);
+            }
+        }
+        pendingText = true;
+    }
+
+    /**
+     * Appends text that is already encoded as UTF-8 (with supplementary characters as surrogate pairs).
+     */
+    public void characters(byte[] utf8, int start, int length) throws SAXException {
+        if (skipping) {
+            return;
+        }
+        try {
+            textGA.getDataOutput().write(utf8, start, length);
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new SAXException(e);
+        }
+        if (predicateText) {
+            ensurePredicateCapacity(length);
+            System.arraycopy(utf8, start, predicateBytes, predicateLength, length);
+            predicateLength += length;
+        }
         pendingText = true;
     }
 
@@ -211,8 +272,15 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
             endChildInParent(enb, nonSkipped);
             freeENB(enb);
             if (!isIndexHandler) {
+                if (predicates != null) {
+                    endPredicateChild();
+                }
                 if (nonSkipped) {
-                    writeElement();
+                    if (predicates == null || acceptRecord()) {
+                        writeElement();
+                    } else {
+                        skipping = true;
+                    }
                 }
                 endElementChildPathStep();
             }
@@ -283,6 +351,7 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
             resultABVS.reset();
             docb.reset(resultABVS);
             if (createNodeIds) {
+                nodeIdCounter = 0;
                 docb.setLocalNodeId(nodeIdCounter++);
             }
             docb.startChildrenChunk();
@@ -323,6 +392,43 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
 
     @Override
     public void startElement(String uri, String localName, String name, Attributes atts) throws SAXException {
+        int idx = name.indexOf(':');
+        String prefix = idx < 0 ? "" : name.substring(0, idx);
+        if (!startElement(uri, localName, prefix)) {
+            return;
+        }
+        try {
+            final int nAttrs = atts.getLength();
+            for (int i = 0; i < nAttrs; ++i) {
+                String aName = atts.getQName(i);
+                int aIdx = aName.indexOf(':');
+                if (predicates != null && depth == subElement.length) {
+                    String value = atts.getValue(i);
+                    predicateLength = 0;
+                    ensurePredicateCapacity(3 * value.length());
+                    for (int j = 0; j < value.length(); ++j) {
+                        predicateLength = RecordPredicate.encode(value.charAt(j), predicateBytes, predicateLength);
+                    }
+                    predicateAttribute(atts.getURI(i), atts.getLocalName(i), predicateBytes, 0, predicateLength);
+                }
+                stringToGrowableArray(atts.getValue(i));
+                attribute(atts.getURI(i), atts.getLocalName(i), aIdx < 0 ? "" : aName.substring(0, aIdx),
+                        textGAInternal);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new SAXException(e);
+        }
+        endAttributes();
+    }
+
+    /**
+     * Opens a new element node. The attributes of the element follow through
+     * {@link #attribute(String, String, String, GrowableArray)} and are closed with {@link #endAttributes()}.
+     *
+     * @return false when the element is skipped and no attributes must be reported.
+     */
+    public boolean startElement(String uri, String localName, String prefix) throws SAXException {
         ++depth;
         boolean start = false;
         if (!isIndexHandler) {
@@ -330,12 +436,17 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
         }
 
         if (skipping) {
-            return;
+            return false;
+        }
+        if (predicates != null) {
+            if (start) {
+                Arrays.fill(predicateCounts, 0);
+            } else if (depth == subElement.length + 1) {
+                startPredicateChild(uri, localName);
+            }
         }
         try {
             flushText();
-            int idx = name.indexOf(':');
-            String prefix = idx < 0 ? "" : name.substring(0, idx);
             ElementNodeBuilder enb = createENB();
             startChildInParent(enb, start);
             int uriCode = db.lookup(uri);
@@ -349,39 +460,77 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
                 enb.setType(typeUriCode, typeLocalNameCode, typePrefixCode);
             }
             if (createNodeIds) {
+                if (start) {
+                    // Each record is a tree of its own.
+                    nodeIdCounter = 0;
+                }
                 enb.setLocalNodeId(nodeIdCounter++);
             }
             enb.startAttributeChunk();
-            final int nAttrs = atts.getLength();
-            for (int i = 0; i < nAttrs; ++i) {
-                String aName = atts.getQName(i);
-                int aIdx = aName.indexOf(':');
-                int aPrefixCode = db.lookup(aIdx < 0 ? "" : aName.substring(0, aIdx));
-                int aLocalNameCode = db.lookup(atts.getLocalName(i));
-                int aUriCode = db.lookup(atts.getURI(i));
-                String aValue = atts.getValue(i);
-                tempABVS.reset();
-                DataOutput tempOut = tempABVS.getDataOutput();
-                tempOut.write(ValueTag.XS_UNTYPED_ATOMIC_TAG);
-                stringToGrowableArray(aValue);
-                tempOut.write(textGAInternal.getByteArray(), 0, textGAInternal.getLength());
-                enb.startAttribute(anb);
-                anb.setName(aUriCode, aLocalNameCode, aPrefixCode);
-                if (attachTypes) {
-                    int typeUriCode = db.lookup(XQueryConstants.XS_NSURI);
-                    int typeLocalNameCode = db.lookup(BuiltinTypeQNames.UNTYPED_ATOMIC_STR);
-                    int typePrefixCode = db.lookup(XQueryConstants.XS_PREFIX);
-                    anb.setType(typeUriCode, typeLocalNameCode, typePrefixCode);
-                }
-                if (createNodeIds) {
-                    anb.setLocalNodeId(nodeIdCounter++);
-                }
-                anb.setValue(tempABVS);
-                enb.endAttribute(anb);
+            enbStack.add(enb);
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new SAXException(e);
+        }
+        return true;
+    }
+
+    /**
+     * Adds an attribute to the element opened last. The value holds a UTF-8 string with its length header.
+     */
+    public void attribute(String uri, String localName, String prefix, GrowableArray value) throws SAXException {
+        try {
+            ElementNodeBuilder enb = peekENBStackTop();
+            int aPrefixCode = db.lookup(prefix);
+            int aLocalNameCode = db.lookup(localName);
+            int aUriCode = db.lookup(uri);
+            tempABVS.reset();
+            DataOutput tempOut = tempABVS.getDataOutput();
+            tempOut.write(ValueTag.XS_UNTYPED_ATOMIC_TAG);
+            tempOut.write(value.getByteArray(), 0, value.getLength());
+            enb.startAttribute(anb);
+            anb.setName(aUriCode, aLocalNameCode, aPrefixCode);
+            if (attachTypes) {
+                int typeUriCode = db.lookup(XQueryConstants.XS_NSURI);
+                int typeLocalNameCode = db.lookup(BuiltinTypeQNames.UNTYPED_ATOMIC_STR);
+                int typePrefixCode = db.lookup(XQueryConstants.XS_PREFIX);
+                anb.setType(typeUriCode, typeLocalNameCode, typePrefixCode);
+            }
+            if (createNodeIds) {
+                anb.setLocalNodeId(nodeIdCounter++);
             }
+            anb.setValue(tempABVS);
+            enb.endAttribute(anb);
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new SAXException(e);
+        }
+    }
+
+    /**
+     * Adds an attribute to the element opened last from raw UTF-8 bytes.
+     */
+    public void attribute(String uri, String localName, String prefix, byte[] utf8, int start, int length)
+            throws SAXException {
+        if (predicates != null && depth == subElement.length) {
+            predicateAttribute(uri, localName, utf8, start, length);
+        }
+        try {
+            textGAInternal.reset();
+            utf8bInternal.reset(textGAInternal, length);
+            textGAInternal.getDataOutput().write(utf8, start, length);
+            utf8bInternal.finish();
+        } catch (IOException e) {
+            throw new SAXException(e);
+        }
+        attribute(uri, localName, prefix, textGAInternal);
+    }
+
+    public void endAttributes() throws SAXException {
+        try {
+            ElementNodeBuilder enb = peekENBStackTop();
             enb.endAttributeChunk();
             enb.startChildrenChunk();
-            enbStack.add(enb);
         } catch (IOException e) {
             e.printStackTrace();
             throw new SAXException(e);
@@ -415,6 +564,31 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
         }
     }
 
+    /**
+     * Adds a comment whose text is already encoded as UTF-8.
+     */
+    public void comment(byte[] utf8, int start, int length) throws SAXException {
+        if (skipping) {
+            return;
+        }
+        try {
+            flushText();
+            startChildInParent(cnb);
+            if (createNodeIds) {
+                cnb.setLocalNodeId(nodeIdCounter++);
+            }
+            textGA.getDataOutput().write(utf8, start, length);
+            utf8b.finish();
+            cnb.setValue(textGA);
+            endChildInParent(cnb);
+            textGA.reset();
+            utf8b.reset(textGA, STRING_EXPECTED_LENGTH);
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new SAXException(e);
+        }
+    }
+
     private void appendCharArray(char[] ch, int start, int length) throws IOException {
         for (int i = 0; i < length; ++i) {
             utf8b.appendChar(ch[i + start]);
@@ -465,38 +639,61 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
         DataOutput out = tempABVS.getDataOutput();
         out.write(ValueTag.NODE_TREE_TAG);
         byte header = NodeTreePointable.HEADER_DICTIONARY_EXISTS_MASK;
+        if (db instanceof SharedDictionaryBuilder) {
+            header |= NodeTreePointable.HEADER_SHARED_DICTIONARY_EXISTS_MASK;
+        }
         if (attachTypes) {
             header |= NodeTreePointable.HEADER_TYPE_EXISTS_MASK;
         }
         if (createNodeIds) {
             header |= NodeTreePointable.HEADER_NODEID_EXISTS_MASK;
         }
+        int headerOffset = tempABVS.getLength();
         out.write(header);
         if (createNodeIds) {
-            out.writeInt(nodeIdProvider.getId());
+            out.writeLong(nodeIdProvider.getId());
         }
-        db.writeFromCache(tempABVS);
+        writeDictionary(tempABVS, headerOffset);
         out.write(resultABVS.getByteArray(), resultABVS.getStartOffset(), resultABVS.getLength());
         tvp.set(tempABVS.getByteArray(), tempABVS.getStartOffset(), tempABVS.getLength());
         addNodeToTuple(tvp, tupleIndex);
         skipping = true;
     }
 
+    /**
+     * Writes the dictionary or the reference to the shared dictionary. A tree that could not be given a reference
+     * carries its dictionary, and the header written at the given offset says so.
+     */
+    private void writeDictionary(ArrayBackedValueStorage abvs, int headerOffset) throws IOException {
+        if (db instanceof SharedDictionaryBuilder) {
+            if (!((SharedDictionaryBuilder) db).writeReference(abvs)) {
+                abvs.getByteArray()[abvs.getStartOffset() + headerOffset] &=
+                        ~NodeTreePointable.HEADER_SHARED_DICTIONARY_EXISTS_MASK;
+            }
+        } else {
+            db.writeFromCache(abvs);
+        }
+    }
+
     public void writeDocument(ArrayBackedValueStorage abvs) throws IOException {
         DataOutput out = abvs.getDataOutput();
         out.write(ValueTag.NODE_TREE_TAG);
         byte header = NodeTreePointable.HEADER_DICTIONARY_EXISTS_MASK;
+        if (db instanceof SharedDictionaryBuilder) {
+            header |= NodeTreePointable.HEADER_SHARED_DICTIONARY_EXISTS_MASK;
+        }
         if (attachTypes) {
             header |= NodeTreePointable.HEADER_TYPE_EXISTS_MASK;
         }
         if (createNodeIds) {
             header |= NodeTreePointable.HEADER_NODEID_EXISTS_MASK;
         }
+        int headerOffset = abvs.getLength();
         out.write(header);
         if (createNodeIds) {
-            out.writeInt(nodeIdProvider.getId());
+            out.writeLong(nodeIdProvider.getId());
         }
-        db.writeFromCache(abvs);
+        writeDictionary(abvs, headerOffset);
         out.write(resultABVS.getByteArray(), resultABVS.getStartOffset(), resultABVS.getLength());
     }
 
@@ -578,6 +775,56 @@ public class SAXContentHandler implements ContentHandler, LexicalHandler {
         return sb.toString();
     }
 
+    private void startPredicateChild(String uri, String localName) {
+        for (int i = 0; i < predicateActive.length; ++i) {
+            RecordPredicate predicate = predicates.get(i);
+            predicateActive[i] = !predicate.isAttribute() && predicate.matches(uri, localName);
+            predicateText |= predicateActive[i];
+        }
+        predicateLength = 0;
+    }
+
+    private void endPredicateChild() {
+        if (!predicateText || depth != subElement.length + 1) {
+            return;
+        }
+        for (int i = 0; i < predicateActive.length; ++i) {
+            if (predicateActive[i] && ++predicateCounts[i] == 1) {
+                predicateResults[i] = predicates.get(i).accept(predicateBytes, 0, predicateLength);
+            }
+            predicateActive[i] = false;
+        }
+        predicateText = false;
+    }
+
+    private void predicateAttribute(String uri, String localName, byte[] utf8, int start, int length) {
+        for (int i = 0; i < predicateCounts.length; ++i) {
+            RecordPredicate predicate = predicates.get(i);
+            if (predicate.isAttribute() && predicate.matches(uri, localName) && ++predicateCounts[i] == 1) {
+                predicateResults[i] = predicate.accept(utf8, start, length);
+            }
+        }
+    }
+
+    /**
+     * A record is dropped when a predicate node is missing or when its only node does not match.
+     */
+    private boolean acceptRecord() {
+        for (int i = 0; i < predicateCounts.length; ++i) {
+            if (predicateCounts[i] == 0 || (predicateCounts[i] == 1 && !predicateResults[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void ensurePredicateCapacity(int length) {
+        if (predicateLength + length > predicateBytes.length) {
+            predicateBytes = Arrays.copyOf(predicateBytes,
+                    Math.max(predicateBytes.length * 2, predicateLength + length));
+        }
+    }
+
     /**
      * Determines if the correct path step is active.
      */
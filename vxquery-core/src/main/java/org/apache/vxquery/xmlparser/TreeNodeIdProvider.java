@@ -16,12 +16,17 @@
  */
 package org.apache.vxquery.xmlparser;
 
+/**
+ * Gives every tree parsed in a partition its own id. The partition is in the top 16 bits, followed by the bits needed
+ * for the data source scan id and a counter of the trees, so the ids of one data source scan increase in parse order.
+ */
 public class TreeNodeIdProvider implements ITreeNodeIdProvider {
+    private static final int PARTITION_SHIFT = 48;
 
     private final short partitionDataSource;
     private final short dataSouceScanId;
     private final byte dataSourceBits;
-    private short currentId;
+    private long currentId;
 
     public TreeNodeIdProvider(short partitionDataSource, short dataSouceScanId, short totalDataSources) {
         this.partitionDataSource = partitionDataSource;
@@ -37,10 +42,10 @@ public class TreeNodeIdProvider implements ITreeNodeIdProvider {
         currentId = 0;
     }
 
-    public int getId() {
-        int p = partitionDataSource;
-        int dssi = dataSouceScanId;
-        return (p << 16) | (dssi << (16 - dataSourceBits)) | currentId++;
+    public long getId() {
+        long p = partitionDataSource & 0xffffL;
+        long dssi = dataSouceScanId & 0xffffL;
+        return (p << PARTITION_SHIFT) | (dssi << (PARTITION_SHIFT - dataSourceBits)) | currentId++;
     }
 
     private byte getBitsNeeded(int number) {
@@ -0,0 +1,803 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.xmlparser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.hyracks.util.string.UTF8StringUtil;
+import org.apache.vxquery.xmlquery.query.XQueryConstants;
+import org.xml.sax.SAXException;
+
+/**
+ * A non-validating XML tokenizer that reads UTF-8 bytes straight from a {@link ByteBuffer} and reports them to a
+ * {@link SAXContentHandler} without decoding text into Java chars. Names are decoded once per distinct byte sequence
+ * and then reused. Documents that need more than this tokenizer offers (other encodings or a DOCTYPE) are detected
+ * up front by {@link #isSupported(ByteBuffer)} and must go through the SAX parser instead.
+ */
+public class UTF8XMLTokenizer {
+    private static final byte[] XML_DECL = "<?xml".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] COMMENT_START = "<!--".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CDATA_START = "<![CDATA[".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DOCTYPE_START = "<!DOCTYPE".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ENCODING = "encoding".getBytes(StandardCharsets.US_ASCII);
+    private static final String XMLNS = "xmlns";
+
+    private final SAXContentHandler handler;
+    private final NameTable names = new NameTable();
+
+    private ByteBuffer buffer;
+    private ByteBuffer reader;
+    private int pos;
+    private int end;
+
+    // Decoded text or attribute value in modified UTF-8.
+    private byte[] text = new byte[4096];
+    private int textLength;
+    private final StringBuilder stringBuilder = new StringBuilder();
+
+    // Open elements: qualified name position in the buffer and namespace bindings in scope.
+    private int depth;
+    private int[] elementNameStart = new int[32];
+    private int[] elementNameLength = new int[32];
+    private String[] elementUri = new String[32];
+    private String[] elementLocalName = new String[32];
+    private int[] elementNsCount = new int[32];
+
+    private String[] nsPrefix = new String[16];
+    private String[] nsUri = new String[16];
+    private int nsCount;
+
+    // Attributes of the current start tag.
+    private int attributeCount;
+    private int[] attributeNameStart = new int[16];
+    private int[] attributeNameLength = new int[16];
+    private int[] attributeValueStart = new int[16];
+    private int[] attributeValueEnd = new int[16];
+
+    public UTF8XMLTokenizer(SAXContentHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Checks the prolog of the document for features the tokenizer does not handle.
+     */
+    public static boolean isSupported(ByteBuffer buffer) {
+        int p = buffer.position();
+        int limit = buffer.limit();
+        if (limit - p >= 2) {
+            int b0 = buffer.get(p) & 0xff;
+            int b1 = buffer.get(p + 1) & 0xff;
+            if ((b0 == 0xfe && b1 == 0xff) || (b0 == 0xff && b1 == 0xfe) || b0 == 0 || b1 == 0) {
+                return false;
+            }
+        }
+        p = skipBOM(buffer, p, limit);
+        if (startsWith(buffer, p, limit, XML_DECL)) {
+            int declEnd = indexOf(buffer, p, limit, (byte) '?', (byte) '>');
+            if (declEnd < 0) {
+                return false;
+            }
+            int enc = indexOf(buffer, p, declEnd, ENCODING);
+            if (enc >= 0) {
+                int q = enc + ENCODING.length;
+                while (q < declEnd && buffer.get(q) != '"' && buffer.get(q) != '\'') {
+                    ++q;
+                }
+                if (q >= declEnd) {
+                    return false;
+                }
+                byte quote = buffer.get(q);
+                int valueStart = ++q;
+                while (q < declEnd && buffer.get(q) != quote) {
+                    ++q;
+                }
+                String encoding = new String(bytes(buffer, valueStart, q - valueStart), StandardCharsets.US_ASCII);
+                if (!encoding.equalsIgnoreCase("UTF-8") && !encoding.equalsIgnoreCase("UTF8")
+                        && !encoding.equalsIgnoreCase("US-ASCII") && !encoding.equalsIgnoreCase("ASCII")) {
+                    return false;
+                }
+            }
+            p = declEnd + 2;
+        }
+        while (p < limit) {
+            byte b = buffer.get(p);
+            if (b != '<') {
+                ++p;
+            } else if (startsWith(buffer, p, limit, DOCTYPE_START)) {
+                return false;
+            } else if (startsWith(buffer, p, limit, COMMENT_START)) {
+                int commentEnd = indexOf(buffer, p + COMMENT_START.length, limit, (byte) '-', (byte) '-');
+                if (commentEnd < 0) {
+                    return false;
+                }
+                p = commentEnd + 2;
+            } else if (p + 1 < limit && buffer.get(p + 1) == '?') {
+                int piEnd = indexOf(buffer, p + 2, limit, (byte) '?', (byte) '>');
+                if (piEnd < 0) {
+                    return false;
+                }
+                p = piEnd + 2;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void parse(ByteBuffer input) throws SAXException {
+        buffer = input;
+        reader = input.duplicate();
+        pos = skipBOM(input, input.position(), input.limit());
+        end = input.limit();
+        depth = 0;
+        nsCount = 0;
+        textLength = 0;
+        try {
+            handler.startDocument();
+            if (startsWith(buffer, pos, end, XML_DECL) && isWhitespace(byteAt(pos + XML_DECL.length))) {
+                pos = indexOf(buffer, pos, end, (byte) '?', (byte) '>') + 2;
+            }
+            while (pos < end) {
+                if (buffer.get(pos) == '<') {
+                    markup();
+                } else {
+                    text();
+                }
+            }
+            if (depth > 0) {
+                throw error("Unexpected end of document inside element " + elementLocalName[depth - 1]);
+            }
+            handler.endDocument();
+        } finally {
+            buffer = null;
+            reader = null;
+        }
+    }
+
+    private void markup() throws SAXException {
+        byte next = byteAt(pos + 1);
+        if (next == '/') {
+            flushCharacters();
+            endTag();
+        } else if (next == '?') {
+            flushCharacters();
+            processingInstruction();
+        } else if (next == '!') {
+            if (startsWith(buffer, pos, end, COMMENT_START)) {
+                flushCharacters();
+                comment();
+            } else if (startsWith(buffer, pos, end, CDATA_START)) {
+                if (depth == 0) {
+                    throw error("CDATA section outside of the root element");
+                }
+                cdata();
+            } else {
+                throw error("Unsupported markup declaration");
+            }
+        } else {
+            flushCharacters();
+            startTag();
+        }
+    }
+
+    private void startTag() throws SAXException {
+        ++pos;
+        int nameStart = pos;
+        int nameLength = scanName();
+        attributeCount = 0;
+        boolean empty = false;
+        while (true) {
+            skipWhitespace();
+            byte b = byteAt(pos);
+            if (b == '>') {
+                ++pos;
+                break;
+            } else if (b == '/') {
+                if (byteAt(pos + 1) != '>') {
+                    throw error("Expected '>' after '/'");
+                }
+                pos += 2;
+                empty = true;
+                break;
+            }
+            int aNameStart = pos;
+            int aNameLength = scanName();
+            skipWhitespace();
+            if (byteAt(pos) != '=') {
+                throw error("Expected '=' after attribute name");
+            }
+            ++pos;
+            skipWhitespace();
+            byte quote = byteAt(pos);
+            if (quote != '"' && quote != '\'') {
+                throw error("Expected a quoted attribute value");
+            }
+            int valueStart = ++pos;
+            while (pos < end && buffer.get(pos) != quote) {
+                if (buffer.get(pos) == '<') {
+                    throw error("'<' in attribute value");
+                }
+                ++pos;
+            }
+            if (pos >= end) {
+                throw error("Unterminated attribute value");
+            }
+            addAttribute(aNameStart, aNameLength, valueStart, pos);
+            ++pos;
+        }
+
+        // Bind the namespaces declared on this element first.
+        pushElement(nameStart, nameLength);
+        boolean hasAttributes = false;
+        for (int i = 0; i < attributeCount; ++i) {
+            int slot = names.lookup(buffer, attributeNameStart[i], attributeNameLength[i]);
+            String aName = names.qName(slot);
+            if (aName.equals(XMLNS)) {
+                bindNamespace("", attributeValueString(i));
+            } else if (names.prefix(slot).equals(XMLNS)) {
+                bindNamespace(names.localName(slot), attributeValueString(i));
+            } else {
+                hasAttributes = true;
+            }
+        }
+
+        int slot = names.lookup(buffer, nameStart, nameLength);
+        String prefix = names.prefix(slot);
+        String localName = names.localName(slot);
+        String uri = resolve(prefix, true);
+        elementUri[depth - 1] = uri;
+        elementLocalName[depth - 1] = localName;
+        if (handler.startElement(uri, localName, prefix)) {
+            for (int i = 0; hasAttributes && i < attributeCount; ++i) {
+                slot = names.lookup(buffer, attributeNameStart[i], attributeNameLength[i]);
+                String aPrefix = names.prefix(slot);
+                if (aPrefix.equals(XMLNS) || names.qName(slot).equals(XMLNS)) {
+                    continue;
+                }
+                String aLocalName = names.localName(slot);
+                String aUri = aPrefix.isEmpty() ? "" : resolve(aPrefix, false);
+                attributeValue(i);
+                handler.attribute(aUri, aLocalName, aPrefix, text, 0, textLength);
+                textLength = 0;
+            }
+            handler.endAttributes();
+        }
+        if (empty) {
+            popElement();
+        }
+    }
+
+    private void endTag() throws SAXException {
+        pos += 2;
+        int nameStart = pos;
+        int nameLength = scanName();
+        skipWhitespace();
+        if (byteAt(pos) != '>') {
+            throw error("Expected '>' at end of end tag");
+        }
+        ++pos;
+        if (depth == 0) {
+            throw error("End tag without start tag");
+        }
+        int openStart = elementNameStart[depth - 1];
+        int openLength = elementNameLength[depth - 1];
+        if (openLength != nameLength || !regionMatches(openStart, nameStart, nameLength)) {
+            throw error("End tag does not match start tag " + names.get(buffer, openStart, openLength));
+        }
+        popElement();
+    }
+
+    private void pushElement(int nameStart, int nameLength) {
+        if (depth == elementNameStart.length) {
+            int size = depth * 2;
+            elementNameStart = Arrays.copyOf(elementNameStart, size);
+            elementNameLength = Arrays.copyOf(elementNameLength, size);
+            elementUri = Arrays.copyOf(elementUri, size);
+            elementLocalName = Arrays.copyOf(elementLocalName, size);
+            elementNsCount = Arrays.copyOf(elementNsCount, size);
+        }
+        elementNameStart[depth] = nameStart;
+        elementNameLength[depth] = nameLength;
+        elementNsCount[depth] = nsCount;
+        ++depth;
+    }
+
+    private void popElement() throws SAXException {
+        --depth;
+        handler.endElement(elementUri[depth], elementLocalName[depth], null);
+        nsCount = elementNsCount[depth];
+    }
+
+    private void bindNamespace(String prefix, String uri) {
+        if (nsCount == nsPrefix.length) {
+            nsPrefix = Arrays.copyOf(nsPrefix, nsCount * 2);
+            nsUri = Arrays.copyOf(nsUri, nsCount * 2);
+        }
+        nsPrefix[nsCount] = prefix;
+        nsUri[nsCount] = uri;
+        ++nsCount;
+    }
+
+    private String resolve(String prefix, boolean element) throws SAXException {
+        for (int i = nsCount - 1; i >= 0; --i) {
+            if (nsPrefix[i].equals(prefix)) {
+                return nsUri[i];
+            }
+        }
+        if (prefix.isEmpty()) {
+            return "";
+        }
+        if (prefix.equals(XQueryConstants.XML_PREFIX)) {
+            return XQueryConstants.XML_NSURI;
+        }
+        throw error("Undeclared namespace prefix " + prefix + (element ? " on element" : " on attribute"));
+    }
+
+    private void addAttribute(int nameStart, int nameLength, int valueStart, int valueEnd) {
+        if (attributeCount == attributeNameStart.length) {
+            int size = attributeCount * 2;
+            attributeNameStart = Arrays.copyOf(attributeNameStart, size);
+            attributeNameLength = Arrays.copyOf(attributeNameLength, size);
+            attributeValueStart = Arrays.copyOf(attributeValueStart, size);
+            attributeValueEnd = Arrays.copyOf(attributeValueEnd, size);
+        }
+        attributeNameStart[attributeCount] = nameStart;
+        attributeNameLength[attributeCount] = nameLength;
+        attributeValueStart[attributeCount] = valueStart;
+        attributeValueEnd[attributeCount] = valueEnd;
+        ++attributeCount;
+    }
+
+    /**
+     * Decodes an attribute value into a string. The text buffer holds modified UTF-8, where a supplementary character
+     * is a surrogate pair, so it is decoded a char at a time like the VXQuery string values.
+     */
+    private String attributeValueString(int i) throws SAXException {
+        attributeValue(i);
+        stringBuilder.setLength(0);
+        for (int p = 0; p < textLength; p += UTF8StringUtil.charSize(text, p)) {
+            stringBuilder.append(UTF8StringUtil.charAt(text, p));
+        }
+        textLength = 0;
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Decodes an attribute value into the text buffer, normalizing white space as XML requires for CDATA
+     * attributes.
+     */
+    private void attributeValue(int i) throws SAXException {
+        textLength = 0;
+        int p = attributeValueStart[i];
+        int valueEnd = attributeValueEnd[i];
+        while (p < valueEnd) {
+            int b = buffer.get(p) & 0xff;
+            if (b == '&') {
+                p = reference(p, valueEnd);
+            } else if (b == '\r') {
+                appendByte((byte) ' ');
+                p += (p + 1 < valueEnd && buffer.get(p + 1) == '\n') ? 2 : 1;
+            } else if (b == '\n' || b == '\t') {
+                appendByte((byte) ' ');
+                ++p;
+            } else if (b >= 0xf0) {
+                p = supplementary(p, valueEnd);
+            } else {
+                int runStart = p;
+                while (p < valueEnd) {
+                    b = buffer.get(p) & 0xff;
+                    if (b == '&' || b == '\r' || b == '\n' || b == '\t' || b >= 0xf0) {
+                        break;
+                    }
+                    ++p;
+                }
+                appendBytes(runStart, p - runStart);
+            }
+        }
+    }
+
+    private void text() throws SAXException {
+        if (depth == 0) {
+            // Only white space is allowed outside the root element and it is not reported.
+            while (pos < end && buffer.get(pos) != '<') {
+                if (!isWhitespace(buffer.get(pos))) {
+                    throw error("Content is not allowed outside the root element");
+                }
+                ++pos;
+            }
+            return;
+        }
+        while (pos < end) {
+            int b = buffer.get(pos) & 0xff;
+            if (b == '<') {
+                return;
+            } else if (b == '&') {
+                pos = reference(pos, end);
+            } else if (b == '\r') {
+                appendByte((byte) '\n');
+                pos += (byteAt(pos + 1) == '\n') ? 2 : 1;
+            } else if (b >= 0xf0) {
+                pos = supplementary(pos, end);
+            } else {
+                int runStart = pos;
+                while (pos < end) {
+                    b = buffer.get(pos) & 0xff;
+                    if (b == '<' || b == '&' || b == '\r' || b >= 0xf0) {
+                        break;
+                    }
+                    ++pos;
+                }
+                appendBytes(runStart, pos - runStart);
+            }
+        }
+    }
+
+    private void cdata() throws SAXException {
+        pos += CDATA_START.length;
+        while (pos < end) {
+            int b = buffer.get(pos) & 0xff;
+            if (b == ']' && byteAt(pos + 1) == ']' && byteAt(pos + 2) == '>') {
+                pos += 3;
+                return;
+            } else if (b == '\r') {
+                appendByte((byte) '\n');
+                pos += (byteAt(pos + 1) == '\n') ? 2 : 1;
+            } else if (b >= 0xf0) {
+                pos = supplementary(pos, end);
+            } else {
+                appendByte((byte) b);
+                ++pos;
+            }
+        }
+        throw error("Unterminated CDATA section");
+    }
+
+    private void flushCharacters() throws SAXException {
+        if (textLength > 0) {
+            handler.characters(text, 0, textLength);
+            textLength = 0;
+        }
+    }
+
+    private void comment() throws SAXException {
+        int start = pos + COMMENT_START.length;
+        int commentEnd = indexOf(buffer, start, end, (byte) '-', (byte) '-');
+        if (commentEnd < 0 || byteAt(commentEnd + 2) != '>') {
+            throw error("Unterminated comment or '--' inside comment");
+        }
+        textLength = 0;
+        for (int p = start; p < commentEnd;) {
+            int b = buffer.get(p) & 0xff;
+            if (b == '\r') {
+                appendByte((byte) '\n');
+                p += (p + 1 < commentEnd && buffer.get(p + 1) == '\n') ? 2 : 1;
+            } else if (b >= 0xf0) {
+                p = supplementary(p, commentEnd);
+            } else {
+                appendByte((byte) b);
+                ++p;
+            }
+        }
+        handler.comment(text, 0, textLength);
+        textLength = 0;
+        pos = commentEnd + 3;
+    }
+
+    private void processingInstruction() throws SAXException {
+        pos += 2;
+        int targetStart = pos;
+        int targetLength = scanName();
+        int piEnd = indexOf(buffer, pos, end, (byte) '?', (byte) '>');
+        if (piEnd < 0) {
+            throw error("Unterminated processing instruction");
+        }
+        skipWhitespace();
+        String target = names.get(buffer, targetStart, targetLength);
+        String data = pos < piEnd ? new String(bytes(buffer, pos, piEnd - pos), StandardCharsets.UTF_8) : "";
+        pos = piEnd + 2;
+        handler.processingInstruction(target, data);
+    }
+
+    /**
+     * Decodes the entity or character reference at p into the text buffer and returns the position after it.
+     */
+    private int reference(int p, int limit) throws SAXException {
+        int semicolon = p + 1;
+        while (semicolon < limit && buffer.get(semicolon) != ';') {
+            ++semicolon;
+        }
+        if (semicolon >= limit) {
+            throw error("Unterminated entity reference");
+        }
+        int length = semicolon - p - 1;
+        if (length > 1 && buffer.get(p + 1) == '#') {
+            int codePoint = 0;
+            boolean hex = buffer.get(p + 2) == 'x';
+            for (int i = p + (hex ? 3 : 2); i < semicolon; ++i) {
+                int digit = Character.digit(buffer.get(i), hex ? 16 : 10);
+                if (digit < 0 || codePoint > Character.MAX_CODE_POINT) {
+                    throw error("Invalid character reference");
+                }
+                codePoint = codePoint * (hex ? 16 : 10) + digit;
+            }
+            if (codePoint == 0 || codePoint > Character.MAX_CODE_POINT) {
+                throw error("Invalid character reference");
+            }
+            appendCodePoint(codePoint);
+        } else if (length == 2 && buffer.get(p + 1) == 'l' && buffer.get(p + 2) == 't') {
+            appendByte((byte) '<');
+        } else if (length == 2 && buffer.get(p + 1) == 'g' && buffer.get(p + 2) == 't') {
+            appendByte((byte) '>');
+        } else if (length == 3 && buffer.get(p + 1) == 'a' && buffer.get(p + 2) == 'm' && buffer.get(p + 3) == 'p') {
+            appendByte((byte) '&');
+        } else if (length == 4 && buffer.get(p + 1) == 'a' && buffer.get(p + 2) == 'p' && buffer.get(p + 3) == 'o'
+                && buffer.get(p + 4) == 's') {
+            appendByte((byte) '\'');
+        } else if (length == 4 && buffer.get(p + 1) == 'q' && buffer.get(p + 2) == 'u' && buffer.get(p + 3) == 'o'
+                && buffer.get(p + 4) == 't') {
+            appendByte((byte) '"');
+        } else {
+            throw error("Undeclared entity " + names.get(buffer, p + 1, length));
+        }
+        return semicolon + 1;
+    }
+
+    /**
+     * Re-encodes a 4 byte UTF-8 sequence as two 3 byte surrogates, the form used by the VXQuery string values.
+     */
+    private int supplementary(int p, int limit) throws SAXException {
+        if (p + 4 > limit) {
+            throw error("Truncated UTF-8 sequence");
+        }
+        int codePoint = ((buffer.get(p) & 0x07) << 18) | ((buffer.get(p + 1) & 0x3f) << 12)
+                | ((buffer.get(p + 2) & 0x3f) << 6) | (buffer.get(p + 3) & 0x3f);
+        appendCodePoint(codePoint);
+        return p + 4;
+    }
+
+    private void appendCodePoint(int codePoint) {
+        if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            appendChar(Character.highSurrogate(codePoint));
+            appendChar(Character.lowSurrogate(codePoint));
+        } else {
+            appendChar((char) codePoint);
+        }
+    }
+
+    private void appendChar(char c) {
+        if (c >= 0x0001 && c <= 0x007f) {
+            appendByte((byte) c);
+        } else if (c > 0x07ff) {
+            ensureText(3);
+            text[textLength++] = (byte) (0xe0 | ((c >> 12) & 0x0f));
+            text[textLength++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            text[textLength++] = (byte) (0x80 | (c & 0x3f));
+        } else {
+            ensureText(2);
+            text[textLength++] = (byte) (0xc0 | ((c >> 6) & 0x1f));
+            text[textLength++] = (byte) (0x80 | (c & 0x3f));
+        }
+    }
+
+    private void appendByte(byte b) {
+        ensureText(1);
+        text[textLength++] = b;
+    }
+
+    private void appendBytes(int start, int length) {
+        ensureText(length);
+        reader.limit(start + length);
+        reader.position(start);
+        reader.get(text, textLength, length);
+        textLength += length;
+    }
+
+    private void ensureText(int length) {
+        if (textLength + length > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
+        }
+    }
+
+    private int scanName() throws SAXException {
+        int start = pos;
+        while (pos < end) {
+            byte b = buffer.get(pos);
+            if (isWhitespace(b) || b == '>' || b == '/' || b == '=' || b == '?') {
+                break;
+            }
+            ++pos;
+        }
+        if (pos == start) {
+            throw error("Expected a name");
+        }
+        return pos - start;
+    }
+
+    private void skipWhitespace() {
+        while (pos < end && isWhitespace(buffer.get(pos))) {
+            ++pos;
+        }
+    }
+
+    private byte byteAt(int p) {
+        return p < end ? buffer.get(p) : 0;
+    }
+
+    private boolean regionMatches(int a, int b, int length) {
+        for (int i = 0; i < length; ++i) {
+            if (buffer.get(a + i) != buffer.get(b + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private SAXException error(String message) {
+        return new SAXException(message + " (byte offset " + pos + ")");
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private static int skipBOM(ByteBuffer buffer, int p, int limit) {
+        if (limit - p >= 3 && (buffer.get(p) & 0xff) == 0xef && (buffer.get(p + 1) & 0xff) == 0xbb
+                && (buffer.get(p + 2) & 0xff) == 0xbf) {
+            return p + 3;
+        }
+        return p;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int p, int limit, byte[] prefix) {
+        if (limit - p < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; ++i) {
+            if (buffer.get(p + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(ByteBuffer buffer, int p, int limit, byte first, byte second) {
+        for (int i = p; i + 1 < limit; ++i) {
+            if (buffer.get(i) == first && buffer.get(i + 1) == second) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(ByteBuffer buffer, int p, int limit, byte[] pattern) {
+        for (int i = p; i + pattern.length <= limit; ++i) {
+            if (startsWith(buffer, i, limit, pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer, int start, int length) {
+        byte[] result = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            result[i] = buffer.get(start + i);
+        }
+        return result;
+    }
+
+    /**
+     * Maps name bytes to their decoded strings so that each distinct element or attribute name is only decoded
+     * once. A slot returned by {@link #lookup(ByteBuffer, int, int)} stays valid until the next lookup.
+     */
+    private static final class NameTable {
+        private byte[][] keys = new byte[64][];
+        private String[] qNames = new String[64];
+        private String[] prefixes = new String[64];
+        private String[] localNames = new String[64];
+        private int size;
+
+        int lookup(ByteBuffer buffer, int start, int length) {
+            int hash = hash(buffer, start, length);
+            int slot = find(hash, buffer, start, length);
+            if (keys[slot] == null) {
+                byte[] key = bytes(buffer, start, length);
+                String qName = new String(key, StandardCharsets.UTF_8);
+                int idx = qName.indexOf(':');
+                keys[slot] = key;
+                qNames[slot] = qName;
+                prefixes[slot] = idx < 0 ? "" : qName.substring(0, idx);
+                localNames[slot] = idx < 0 ? qName : qName.substring(idx + 1);
+                if (++size * 2 > keys.length) {
+                    rehash();
+                    slot = find(hash, buffer, start, length);
+                }
+            }
+            return slot;
+        }
+
+        String get(ByteBuffer buffer, int start, int length) {
+            return qNames[lookup(buffer, start, length)];
+        }
+
+        String qName(int slot) {
+            return qNames[slot];
+        }
+
+        String prefix(int slot) {
+            return prefixes[slot];
+        }
+
+        String localName(int slot) {
+            return localNames[slot];
+        }
+
+        private int find(int hash, ByteBuffer buffer, int start, int length) {
+            int mask = keys.length - 1;
+            int slot = hash & mask;
+            while (keys[slot] != null && !matches(keys[slot], buffer, start, length)) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void rehash() {
+            byte[][] oldKeys = keys;
+            String[] oldQNames = qNames;
+            String[] oldPrefixes = prefixes;
+            String[] oldLocalNames = localNames;
+            int capacity = oldKeys.length * 2;
+            keys = new byte[capacity][];
+            qNames = new String[capacity];
+            prefixes = new String[capacity];
+            localNames = new String[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; ++i) {
+                if (oldKeys[i] != null) {
+                    int slot = hash(ByteBuffer.wrap(oldKeys[i]), 0, oldKeys[i].length) & mask;
+                    while (keys[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    qNames[slot] = oldQNames[i];
+                    prefixes[slot] = oldPrefixes[i];
+                    localNames[slot] = oldLocalNames[i];
+                }
+            }
+        }
+
+        private static int hash(ByteBuffer buffer, int start, int length) {
+            int hash = 1;
+            for (int i = 0; i < length; ++i) {
+                hash = 31 * hash + buffer.get(start + i);
+            }
+            return hash ^ (hash >>> 16);
+        }
+
+        private static boolean matches(byte[] key, ByteBuffer buffer, int start, int length) {
+            if (key.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; ++i) {
+                if (key[i] != buffer.get(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
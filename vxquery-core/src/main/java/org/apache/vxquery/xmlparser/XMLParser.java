@@ -15,6 +15,7 @@
 package org.apache.vxquery.xmlparser;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -22,6 +23,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -31,6 +34,7 @@ import org.apache.hyracks.api.exceptions.HyracksDataException;
 import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
 import org.apache.hyracks.dataflow.common.comm.io.FrameTupleAccessor;
 import org.apache.vxquery.context.StaticContext;
+import org.apache.vxquery.datamodel.builders.nodes.SharedDictionaryBuilder;
 import org.apache.vxquery.exceptions.VXQueryFileNotFoundException;
 import org.apache.vxquery.exceptions.VXQueryParseException;
 import org.apache.vxquery.types.SequenceType;
@@ -40,11 +44,19 @@ import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.XMLReaderFactory;
 
 public class XMLParser implements IParser {
+    // Files up to this size are read into a reusable heap buffer, larger ones are memory mapped.
+    private static final int MAP_THRESHOLD = 1 << 20;
+
     final XMLReader parser;
     final SAXContentHandler handler;
     final InputSource in;
     final String nodeId;
     final int bufferSize;
+    final boolean byteParser;
+    private UTF8XMLTokenizer tokenizer;
+    private XMLRecordReader recordReader;
+    private String recordTag;
+    private ByteBuffer readBuffer;
 
     public XMLParser(boolean attachTypes, ITreeNodeIdProvider idProvider, String nodeId) throws HyracksDataException {
         this(attachTypes, idProvider, nodeId, null, null, null);
@@ -53,6 +65,7 @@ public class XMLParser implements IParser {
     public XMLParser(boolean attachTypes, ITreeNodeIdProvider idProvider, String nodeId, IFrameFieldAppender appender,
             List<Integer> childSeq, StaticContext staticContext) throws HyracksDataException {
         bufferSize = Integer.parseInt(System.getProperty("vxquery.buffer_size", "-1"));
+        byteParser = Boolean.parseBoolean(System.getProperty("vxquery.byte_parser", "false"));
         this.nodeId = nodeId;
         try {
             parser = XMLReaderFactory.createXMLReader();
@@ -73,6 +86,20 @@ public class XMLParser implements IParser {
         }
     }
 
+    /**
+     * Makes the element trees of the collection refer to the collection's shared name dictionary.
+     */
+    public void setSharedDictionary(SharedDictionaryBuilder sharedDictionary) {
+        handler.setSharedDictionary(sharedDictionary);
+    }
+
+    /**
+     * Drops the records for which one of the predicates is false.
+     */
+    public void setPredicates(List<RecordPredicate> predicates) {
+        handler.setPredicates(predicates);
+    }
+
     public int parse(Reader input, ArrayBackedValueStorage abvs) throws HyracksDataException {
         try {
             in.setCharacterStream(input);
@@ -86,7 +113,69 @@ public class XMLParser implements IParser {
         return 0;
     }
 
+    /**
+     * Parses a whole UTF-8 document held in a buffer into a single node tree.
+     */
+    public int parse(ByteBuffer input, ArrayBackedValueStorage abvs) throws HyracksDataException {
+        try {
+            if (tokenizer == null) {
+                tokenizer = new UTF8XMLTokenizer(handler);
+            }
+            tokenizer.parse(input);
+            handler.writeDocument(abvs);
+        } catch (Exception e) {
+            HyracksDataException hde = new HyracksDataException(e, nodeId);
+            throw hde;
+        }
+        return 0;
+    }
+
+    /**
+     * Parses a whole local document into a single node tree. With the byte parser enabled, a document the
+     * {@link UTF8XMLTokenizer} supports is parsed from its UTF-8 bytes.
+     */
+    public int parse(File file, ArrayBackedValueStorage abvs) throws HyracksDataException {
+        try (FileInputStream input = new FileInputStream(file)) {
+            if (byteParser) {
+                ByteBuffer buffer = read(input.getChannel());
+                if (buffer != null && UTF8XMLTokenizer.isSupported(buffer)) {
+                    return parse(buffer, abvs);
+                }
+                input.getChannel().position(0);
+            }
+            return parse(input, abvs);
+        } catch (FileNotFoundException e) {
+            throw new VXQueryFileNotFoundException(e, file, nodeId);
+        } catch (HyracksDataException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new HyracksDataException(e, nodeId);
+        }
+    }
+
+    /**
+     * Parses a whole document from its bytes, in the encoding the document declares, into a single node tree. The
+     * stream is left open.
+     */
+    public int parse(InputStream input, ArrayBackedValueStorage abvs) throws HyracksDataException {
+        try {
+            in.setCharacterStream(null);
+            in.setByteStream(input);
+            parser.parse(in);
+            handler.writeDocument(abvs);
+        } catch (Exception e) {
+            HyracksDataException hde = new HyracksDataException(e, nodeId);
+            throw hde;
+        } finally {
+            in.setByteStream(null);
+        }
+        return 0;
+    }
+
     public void parseElements(File file, IFrameWriter writer, int tupleIndex) throws HyracksDataException {
+        if (byteParser && parseElementsFromBytes(file, writer, tupleIndex)) {
+            return;
+        }
         try {
             Reader input;
             if (bufferSize > 0) {
@@ -110,6 +199,153 @@ public class XMLParser implements IParser {
         }
     }
 
+    /**
+     * Parses the file with the {@link UTF8XMLTokenizer}, which works on the UTF-8 bytes of the file without decoding
+     * them into chars.
+     *
+     * @return false if the document needs the SAX parser.
+     */
+    public boolean parseElementsFromBytes(File file, IFrameWriter writer, int tupleIndex)
+            throws HyracksDataException {
+        try (FileInputStream input = new FileInputStream(file); FileChannel channel = input.getChannel()) {
+            ByteBuffer buffer = read(channel);
+            if (buffer == null || !UTF8XMLTokenizer.isSupported(buffer)) {
+                return false;
+            }
+            if (tokenizer == null) {
+                tokenizer = new UTF8XMLTokenizer(handler);
+            }
+            handler.setupElementWriter(writer, tupleIndex);
+            tokenizer.parse(buffer);
+            return true;
+        } catch (FileNotFoundException e) {
+            HyracksDataException hde = new VXQueryFileNotFoundException(e, file, nodeId);
+            throw hde;
+        } catch (SAXException e) {
+            HyracksDataException hde = new VXQueryParseException(e, file, nodeId);
+            throw hde;
+        } catch (IOException e) {
+            HyracksDataException hde = new HyracksDataException(e, nodeId);
+            throw hde;
+        }
+    }
+
+    /**
+     * Reads a file into the reusable buffer, or maps it if it is large.
+     *
+     * @return null if the file is too large for a buffer.
+     */
+    private ByteBuffer read(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            return null;
+        }
+        if (size > MAP_THRESHOLD) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        if (readBuffer == null || readBuffer.capacity() < size) {
+            readBuffer = ByteBuffer.allocate(Math.max((int) size, 64 * 1024));
+        }
+        readBuffer.clear();
+        while (readBuffer.position() < size) {
+            if (channel.read(readBuffer) < 0) {
+                break;
+            }
+        }
+        readBuffer.flip();
+        return readBuffer;
+    }
+
+    /**
+     * Parses the fn:collection-with-tag records that start in [begin, end) of a local file. Each record is parsed as a
+     * document of its own, like the records read from HDFS.
+     */
+    public void parseRecords(File file, String tag, long begin, long end, IFrameWriter writer, int tupleIndex)
+            throws HyracksDataException {
+        if (recordReader == null || !tag.equals(recordTag)) {
+            recordReader = new XMLRecordReader(tag);
+            recordTag = tag;
+        }
+        try (FileInputStream input = new FileInputStream(file); FileChannel channel = input.getChannel()) {
+            ByteBuffer prolog = ByteBuffer.allocate(4096);
+            channel.read(prolog, 0);
+            prolog.flip();
+            boolean useTokenizer = byteParser && UTF8XMLTokenizer.isSupported(prolog);
+            if (useTokenizer && tokenizer == null) {
+                tokenizer = new UTF8XMLTokenizer(handler);
+            }
+            byte[] declaration = useTokenizer ? null : getDeclaration(prolog);
+            recordReader.open(channel, begin, end);
+            ByteBuffer record;
+            while ((record = recordReader.next()) != null) {
+                handler.setupElementWriter(writer, tupleIndex);
+                if (useTokenizer) {
+                    tokenizer.parse(record);
+                } else {
+                    // The record is parsed with the XML declaration of the file, which gives its encoding.
+                    byte[] bytes = new byte[declaration.length + record.remaining()];
+                    System.arraycopy(declaration, 0, bytes, 0, declaration.length);
+                    record.get(bytes, declaration.length, record.remaining());
+                    in.setCharacterStream(null);
+                    in.setByteStream(new ByteArrayInputStream(bytes));
+                    parser.parse(in);
+                }
+            }
+        } catch (FileNotFoundException e) {
+            HyracksDataException hde = new VXQueryFileNotFoundException(e, file, nodeId);
+            throw hde;
+        } catch (SAXException e) {
+            HyracksDataException hde = new VXQueryParseException(e, file, nodeId);
+            throw hde;
+        } catch (IOException e) {
+            HyracksDataException hde = new HyracksDataException(e, nodeId);
+            throw hde;
+        }
+    }
+
+    /**
+     * Parses one UTF-8 encoded fn:collection-with-tag record held in a byte array, as read from HDFS, as a document of
+     * its own.
+     */
+    public void parseRecord(byte[] bytes, int start, int length, IFrameWriter writer, int tupleIndex)
+            throws HyracksDataException {
+        try {
+            handler.setupElementWriter(writer, tupleIndex);
+            if (byteParser) {
+                if (tokenizer == null) {
+                    tokenizer = new UTF8XMLTokenizer(handler);
+                }
+                tokenizer.parse(ByteBuffer.wrap(bytes, start, length));
+            } else {
+                in.setCharacterStream(null);
+                in.setByteStream(new ByteArrayInputStream(bytes, start, length));
+                parser.parse(in);
+            }
+        } catch (SAXException | IOException e) {
+            HyracksDataException hde = new HyracksDataException(e, nodeId);
+            throw hde;
+        }
+    }
+
+    /**
+     * @return the XML declaration at the start of the buffer, or no bytes if there is none
+     */
+    private static byte[] getDeclaration(ByteBuffer prolog) {
+        int limit = prolog.limit();
+        if (limit < 5 || prolog.get(0) != '<' || prolog.get(1) != '?' || prolog.get(2) != 'x'
+                || prolog.get(3) != 'm' || prolog.get(4) != 'l') {
+            return new byte[0];
+        }
+        for (int i = 5; i < limit - 1; ++i) {
+            if (prolog.get(i) == '?' && prolog.get(i + 1) == '>') {
+                byte[] declaration = new byte[i + 2];
+                prolog.get(declaration, 0, declaration.length);
+                return declaration;
+            }
+        }
+        return new byte[0];
+    }
+
     public void parseHDFSElements(InputStream inputStream, IFrameWriter writer, FrameTupleAccessor fta, int tupleIndex)
             throws HyracksDataException {
         try {
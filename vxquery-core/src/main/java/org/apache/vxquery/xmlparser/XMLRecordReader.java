@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.xmlparser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Finds the records of a local file for fn:collection-with-tag: every element with the tag name is a record, from its
+ * start tag to the matching end tag. The file is memory mapped in windows, so files of any size can be read, and a
+ * byte range of the file holds the records that start in it. Like the HDFS record reader, elements with the tag name
+ * must not be nested.
+ */
+public class XMLRecordReader {
+    private static final int WINDOW_SIZE = 64 << 20;
+
+    private final byte[] startPattern;
+    private final byte[] endPattern;
+    private FileChannel channel;
+    private long size;
+    private long end;
+    private long pos;
+    private ByteBuffer window;
+    private long windowStart;
+    private int windowSize;
+
+    public XMLRecordReader(String tag) {
+        startPattern = ("<" + tag).getBytes(StandardCharsets.UTF_8);
+        endPattern = ("</" + tag).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Starts reading the records that start in [begin, end) of the file.
+     */
+    public void open(FileChannel channel, long begin, long end) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.end = Math.min(end, size);
+        pos = begin;
+        window = null;
+        windowSize = WINDOW_SIZE;
+    }
+
+    /**
+     * @return the start of the first record that starts at or after the offset, or the file size if there is none
+     */
+    public long alignToRecord(FileChannel channel, long offset) throws IOException {
+        open(channel, offset, channel.size());
+        return offset <= 0 ? 0 : findStart(offset);
+    }
+
+    /**
+     * @return the bytes of the next record, valid until the next call, or null at the end of the range
+     */
+    public ByteBuffer next() throws IOException {
+        if (pos >= end) {
+            return null;
+        }
+        long recordStart = findStart(pos);
+        if (recordStart >= end) {
+            pos = end;
+            return null;
+        }
+        while (true) {
+            int start = (int) (recordStart - windowStart);
+            int recordEnd = findEnd(window, start, window.limit());
+            if (recordEnd >= 0) {
+                pos = windowStart + recordEnd;
+                ByteBuffer record = window.duplicate();
+                record.limit(recordEnd);
+                record.position(start);
+                return record;
+            }
+            if (windowStart + window.limit() >= size) {
+                throw new IOException("Unterminated record at byte " + recordStart);
+            }
+            if (start == 0) {
+                if (windowSize == Integer.MAX_VALUE) {
+                    throw new IOException("Record at byte " + recordStart + " is too large");
+                }
+                windowSize = (int) Math.min(2L * windowSize, Integer.MAX_VALUE);
+            }
+            map(recordStart);
+        }
+    }
+
+    private long findStart(long from) throws IOException {
+        while (from < size) {
+            if (window == null || from < windowStart || from >= windowStart + window.limit()) {
+                map(from);
+            }
+            int start = findStart(window, (int) (from - windowStart), window.limit());
+            if (start >= 0) {
+                return windowStart + start;
+            }
+            long windowEnd = windowStart + window.limit();
+            if (windowEnd >= size) {
+                break;
+            }
+            // A start tag may continue in the next window.
+            from = Math.max(from + 1, windowEnd - startPattern.length);
+            map(from);
+        }
+        return size;
+    }
+
+    private void map(long position) throws IOException {
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, size - position));
+    }
+
+    private int findStart(ByteBuffer buffer, int from, int limit) {
+        int last = limit - startPattern.length - 1;
+        for (int i = from; i <= last; ++i) {
+            if (buffer.get(i) == '<' && matches(buffer, i, startPattern)
+                    && isNameEnd(buffer.get(i + startPattern.length))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the offset after the end of the record starting at the given offset, or -1 if it ends after the limit
+     */
+    private int findEnd(ByteBuffer buffer, int start, int limit) {
+        int i = start + startPattern.length;
+        byte quote = 0;
+        while (i < limit) {
+            byte b = buffer.get(i);
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                break;
+            }
+            ++i;
+        }
+        if (i >= limit) {
+            return -1;
+        }
+        if (buffer.get(i - 1) == '/') {
+            return i + 1;
+        }
+        int last = limit - endPattern.length;
+        for (++i; i < last; ++i) {
+            if (buffer.get(i) == '<' && matches(buffer, i, endPattern)) {
+                int j = i + endPattern.length;
+                while (j < limit && isWhitespace(buffer.get(j))) {
+                    ++j;
+                }
+                if (j >= limit) {
+                    return -1;
+                }
+                if (buffer.get(j) == '>') {
+                    return j + 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(ByteBuffer buffer, int offset, byte[] pattern) {
+        for (int i = 1; i < pattern.length; ++i) {
+            if (buffer.get(offset + i) != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNameEnd(byte b) {
+        return b == '>' || b == '/' || isWhitespace(b);
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+}
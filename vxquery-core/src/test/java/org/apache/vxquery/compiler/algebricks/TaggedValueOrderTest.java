@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.compiler.algebricks;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.datamodel.builders.atomic.StringValueBuilder;
+import org.apache.vxquery.datamodel.util.DateTime;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The sorter compares the normalized keys as unsigned integers and calls compare() only for equal keys, so a key
+ * ordering two values must order them the same way compare() does, for both directions and all ranks. The values of
+ * the last rank have the sign bit of their ascending key set.
+ */
+public class TaggedValueOrderTest {
+    private final ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+    private final StringValueBuilder svb = new StringValueBuilder();
+
+    @Test
+    public void testAscendingKeys() throws IOException {
+        assertKeysConsistent(new TaggedValueOrder(true));
+    }
+
+    @Test
+    public void testDescendingKeys() throws IOException {
+        assertKeysConsistent(new TaggedValueOrder(false));
+    }
+
+    @Test
+    public void testOtherRank() throws IOException {
+        TaggedValueOrder ascending = new TaggedValueOrder(true);
+        TaggedValueOrder descending = new TaggedValueOrder(false);
+        byte[] other = hexBinary(0x00);
+        byte[] duration = dayTimeDuration(Long.MAX_VALUE);
+
+        Assert.assertTrue(normalize(ascending, other) < 0);
+        Assert.assertTrue(Integer.compareUnsigned(normalize(ascending, duration), normalize(ascending, other)) < 0);
+        Assert.assertTrue(compare(ascending, duration, other) < 0);
+
+        Assert.assertTrue(normalize(descending, other) >= 0);
+        Assert.assertTrue(Integer.compareUnsigned(normalize(descending, other), normalize(descending, duration)) < 0);
+        Assert.assertTrue(compare(descending, other, duration) < 0);
+    }
+
+    @Test
+    public void testNumbers() throws IOException {
+        TaggedValueOrder order = new TaggedValueOrder(true);
+        Assert.assertEquals(0, compare(order, integer(1), decimal(10, 1)));
+        Assert.assertEquals(0, compare(order, decimal(15, 1), dbl(1.5)));
+        Assert.assertEquals(0, compare(order, dbl(-0.0), integer(0)));
+        Assert.assertTrue(compare(order, dbl(Double.NaN), dbl(Double.NEGATIVE_INFINITY)) < 0);
+        Assert.assertTrue(compare(order, integer(2), decimal(25, 1)) < 0);
+        Assert.assertTrue(compare(order, flt(2.75f), integer(3)) < 0);
+    }
+
+    @Test
+    public void testSupplementaryCharacters() throws IOException {
+        TaggedValueOrder order = new TaggedValueOrder(true);
+        byte[] grinning = string(ValueTag.XS_STRING_TAG, "\ud83d\ude00");
+        byte[] beaming = string(ValueTag.XS_STRING_TAG, "\ud83d\ude01");
+        byte[] last = string(ValueTag.XS_STRING_TAG, "\uffff");
+
+        // A surrogate pair sorts by its high surrogate, before U+FFFF, as in the value comparisons.
+        Assert.assertTrue(compare(order, grinning, last) < 0);
+        Assert.assertTrue(Integer.compareUnsigned(normalize(order, grinning), normalize(order, last)) < 0);
+
+        // Both keys only hold the high surrogate, so compare() orders them by the low surrogate.
+        Assert.assertEquals(normalize(order, grinning), normalize(order, beaming));
+        Assert.assertTrue(compare(order, grinning, beaming) < 0);
+        Assert.assertTrue(compare(order, beaming, grinning) > 0);
+        Assert.assertEquals(0, compare(order, beaming, string(ValueTag.XS_UNTYPED_ATOMIC_TAG, "\ud83d\ude01")));
+    }
+
+    private void assertKeysConsistent(TaggedValueOrder order) throws IOException {
+        List<byte[]> values = createValues();
+        for (byte[] v1 : values) {
+            for (byte[] v2 : values) {
+                int c = Integer.signum(compare(order, v1, v2));
+                Assert.assertEquals("Not antisymmetric", -c, Integer.signum(compare(order, v2, v1)));
+                int k = Integer.signum(Integer.compareUnsigned(normalize(order, v1), normalize(order, v2)));
+                if (k != 0) {
+                    Assert.assertEquals("Keys contradict compare() for " + Arrays.toString(v1) + " and "
+                            + Arrays.toString(v2), c, k);
+                }
+            }
+        }
+    }
+
+    private List<byte[]> createValues() throws IOException {
+        List<byte[]> values = new ArrayList<byte[]>();
+        values.add(emptySequence());
+        values.add(dbl(Double.NaN));
+        values.add(flt(Float.NaN));
+        values.add(dbl(Double.NEGATIVE_INFINITY));
+        values.add(dbl(-1e300));
+        values.add(integer(Long.MIN_VALUE));
+        values.add(decimal(-25, 1));
+        values.add(integer(-2));
+        values.add(dbl(-0.0));
+        values.add(dbl(0.0));
+        values.add(integer(0));
+        values.add(decimal(0, 0));
+        values.add(integer(1));
+        values.add(decimal(10, 1));
+        values.add(flt(1.5f));
+        values.add(decimal(15, 1));
+        values.add(dbl(1.5000000001));
+        values.add(integer(2));
+        values.add(integer(Long.MAX_VALUE - 1));
+        values.add(integer(Long.MAX_VALUE));
+        values.add(dbl(Double.POSITIVE_INFINITY));
+        values.add(string(ValueTag.XS_STRING_TAG, ""));
+        values.add(string(ValueTag.XS_STRING_TAG, "a"));
+        values.add(string(ValueTag.XS_UNTYPED_ATOMIC_TAG, "a"));
+        values.add(string(ValueTag.XS_STRING_TAG, "abc"));
+        values.add(string(ValueTag.XS_UNTYPED_ATOMIC_TAG, "abcd"));
+        values.add(string(ValueTag.XS_STRING_TAG, "abce"));
+        values.add(string(ValueTag.XS_STRING_TAG, "abcde"));
+        values.add(string(ValueTag.XS_STRING_TAG, "é"));
+        values.add(string(ValueTag.XS_STRING_TAG, "中"));
+        values.add(string(ValueTag.XS_STRING_TAG, "😀"));
+        values.add(string(ValueTag.XS_STRING_TAG, "\uffff"));
+        values.add(bool(false));
+        values.add(bool(true));
+        values.add(date(1969, 12, 31, DateTime.TIMEZONE_HOUR_NULL, DateTime.TIMEZONE_MINUTE_NULL));
+        values.add(date(2001, 1, 1, 14, 0));
+        values.add(date(2001, 1, 1, DateTime.TIMEZONE_HOUR_NULL, DateTime.TIMEZONE_MINUTE_NULL));
+        values.add(date(2001, 1, 1, -14, 0));
+        values.add(dayTimeDuration(-1));
+        values.add(dayTimeDuration(Long.MAX_VALUE));
+        values.add(hexBinary());
+        values.add(hexBinary(0x00));
+        values.add(hexBinary(0xff, 0xff));
+        return values;
+    }
+
+    private static int compare(TaggedValueOrder order, byte[] v1, byte[] v2) {
+        return order.compare(v1, 0, v1.length, v2, 0, v2.length);
+    }
+
+    private static int normalize(TaggedValueOrder order, byte[] v) {
+        return order.normalize(v, 0, v.length);
+    }
+
+    private DataOutput begin(int tag) throws IOException {
+        abvs.reset();
+        DataOutput dOut = abvs.getDataOutput();
+        dOut.write(tag);
+        return dOut;
+    }
+
+    private byte[] end() {
+        return Arrays.copyOfRange(abvs.getByteArray(), abvs.getStartOffset(),
+                abvs.getStartOffset() + abvs.getLength());
+    }
+
+    private byte[] emptySequence() throws IOException {
+        begin(ValueTag.SEQUENCE_TAG).writeInt(0);
+        return end();
+    }
+
+    private byte[] integer(long value) throws IOException {
+        begin(ValueTag.XS_INTEGER_TAG).writeLong(value);
+        return end();
+    }
+
+    private byte[] decimal(long value, int decimalPlace) throws IOException {
+        DataOutput dOut = begin(ValueTag.XS_DECIMAL_TAG);
+        dOut.write(decimalPlace);
+        dOut.writeLong(value);
+        return end();
+    }
+
+    private byte[] flt(float value) throws IOException {
+        begin(ValueTag.XS_FLOAT_TAG).writeFloat(value);
+        return end();
+    }
+
+    private byte[] dbl(double value) throws IOException {
+        begin(ValueTag.XS_DOUBLE_TAG).writeDouble(value);
+        return end();
+    }
+
+    private byte[] string(int tag, String value) throws IOException {
+        svb.write(value, begin(tag));
+        return end();
+    }
+
+    private byte[] bool(boolean value) throws IOException {
+        begin(ValueTag.XS_BOOLEAN_TAG).write(value ? 1 : 0);
+        return end();
+    }
+
+    private byte[] date(int year, int month, int day, int timezoneHour, int timezoneMinute) throws IOException {
+        DataOutput dOut = begin(ValueTag.XS_DATE_TAG);
+        dOut.writeShort(year);
+        dOut.write(month);
+        dOut.write(day);
+        dOut.write(timezoneHour);
+        dOut.write(timezoneMinute);
+        return end();
+    }
+
+    private byte[] dayTimeDuration(long milliseconds) throws IOException {
+        begin(ValueTag.XS_DAY_TIME_DURATION_TAG).writeLong(milliseconds);
+        return end();
+    }
+
+    private byte[] hexBinary(int... bytes) throws IOException {
+        DataOutput dOut = begin(ValueTag.XS_HEX_BINARY_TAG);
+        dOut.writeShort(bytes.length);
+        for (int b : bytes) {
+            dOut.write(b);
+        }
+        return end();
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.datamodel;
+
+import java.io.IOException;
+
+import org.apache.hyracks.data.std.primitive.LongPointable;
+import org.apache.hyracks.data.std.primitive.UTF8StringPointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.datamodel.accessors.nodes.NodeTreePointable;
+import org.apache.vxquery.datamodel.builders.nodes.SharedDictionaryBuilder;
+import org.apache.vxquery.datamodel.builders.nodes.SharedDictionaryRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Trees referring to a shared dictionary are read through the registry of this JVM. A tree written against another
+ * registry stands for a tree moved to another node: it resolves only if this node has a dictionary starting with the
+ * same strings, and fails otherwise instead of returning other names. The dictionaries of a job are dropped with the
+ * job, and trees carry their own dictionary once the registry is full.
+ */
+public class SharedDictionaryTest {
+    private static final long JOB_ID = 17;
+
+    private final UTF8StringPointable utf8sp = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+
+    @Test
+    public void testLocalTree() throws IOException {
+        SharedDictionaryBuilder db = getLocalBuilder("shared-dictionary-test-local");
+        NodeTreePointable ntp = writeTree(db, "book", "title");
+        Assert.assertEquals("book", getString(ntp, 0));
+        Assert.assertEquals("title", getString(ntp, 1));
+
+        // The tree keeps resolving after the dictionary grew.
+        writeTree(db, "author");
+        Assert.assertEquals("title", getString(ntp, 1));
+    }
+
+    @Test
+    public void testRemoteTreeWithOtherDictionary() throws IOException {
+        String collection = "shared-dictionary-test-other";
+        SharedDictionaryRegistry remote = new SharedDictionaryRegistry(Long.MAX_VALUE);
+        NodeTreePointable ntp = writeTree(remote.getBuilder(JOB_ID, collection), "book", "title");
+        // Same job and collection and so the same id on this node, but the strings were added in another order.
+        writeTree(getLocalBuilder(collection), "title", "book");
+        try {
+            getString(ntp, 0);
+            Assert.fail("Tree resolved against another dictionary with the same id.");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testRemoteTreeWithoutDictionary() throws IOException {
+        SharedDictionaryRegistry remote = new SharedDictionaryRegistry(Long.MAX_VALUE);
+        NodeTreePointable ntp = writeTree(remote.getBuilder(JOB_ID, "shared-dictionary-test-missing"), "book");
+        try {
+            ntp.lookupString(toPointable("book"));
+            Assert.fail("Tree resolved without a dictionary on this node.");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testRemoteTreeWithSameStrings() throws IOException {
+        String collection = "shared-dictionary-test-same";
+        SharedDictionaryRegistry remote = new SharedDictionaryRegistry(Long.MAX_VALUE);
+        NodeTreePointable ntp = writeTree(remote.getBuilder(JOB_ID, collection), "book", "title");
+        writeTree(getLocalBuilder(collection), "book", "title", "author");
+        Assert.assertEquals("book", getString(ntp, 0));
+        Assert.assertEquals("title", getString(ntp, 1));
+        Assert.assertEquals(1, ntp.lookupString(toPointable("title")));
+    }
+
+    @Test
+    public void testRelease() throws IOException {
+        SharedDictionaryRegistry registry = new SharedDictionaryRegistry(Long.MAX_VALUE);
+        SharedDictionaryBuilder db = registry.getBuilder(JOB_ID, "shared-dictionary-test-release");
+        writeTree(db, "book", "title");
+        long hash = getHash(db, "book", "title");
+        Assert.assertNotNull(registry.getDictionary(db.getId(), 2, hash));
+        Assert.assertTrue(registry.getSize() > 0);
+
+        registry.release(JOB_ID);
+        Assert.assertNull(registry.getDictionary(db.getId(), 2, hash));
+        Assert.assertEquals(0, registry.getSize());
+        // Another job gets a new dictionary with another id.
+        Assert.assertNotEquals(db.getId(), registry.getBuilder(JOB_ID + 1, "shared-dictionary-test-release").getId());
+    }
+
+    @Test
+    public void testFullRegistry() throws IOException {
+        SharedDictionaryRegistry registry = new SharedDictionaryRegistry(40);
+        SharedDictionaryBuilder db = registry.getBuilder(JOB_ID, "shared-dictionary-test-full");
+        NodeTreePointable small = writeTree(db, "a");
+        Assert.assertTrue(small.sharedDictionaryExists());
+        long size = registry.getSize();
+
+        // The grown dictionary does not fit, so the tree carries it and the registry keeps the previous version.
+        NodeTreePointable large = writeTree(db, "book", "title", "author");
+        Assert.assertFalse(large.sharedDictionaryExists());
+        Assert.assertEquals(size, registry.getSize());
+        Assert.assertEquals("a", getString(large, 0));
+        Assert.assertEquals("author", getString(large, 3));
+        Assert.assertEquals(3, large.lookupString(toPointable("author")));
+    }
+
+    private static SharedDictionaryBuilder getLocalBuilder(String collection) {
+        return SharedDictionaryRegistry.getDefault().getBuilder(JOB_ID, collection);
+    }
+
+    /**
+     * @return the hash a tree using the first strings of the builder refers to
+     */
+    private static long getHash(SharedDictionaryBuilder db, String... strings) throws IOException {
+        ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+        for (String string : strings) {
+            db.lookup(string);
+        }
+        db.writeReference(abvs);
+        return LongPointable.getLong(abvs.getByteArray(), abvs.getStartOffset() + 16);
+    }
+
+    /**
+     * Writes the header and dictionary reference of a tree using the given strings, or the dictionary if it cannot be
+     * shared.
+     */
+    private static NodeTreePointable writeTree(SharedDictionaryBuilder db, String... strings) throws IOException {
+        for (String string : strings) {
+            db.lookup(string);
+        }
+        ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+        abvs.getDataOutput().write(NodeTreePointable.HEADER_DICTIONARY_EXISTS_MASK
+                | NodeTreePointable.HEADER_SHARED_DICTIONARY_EXISTS_MASK);
+        if (!db.writeReference(abvs)) {
+            abvs.getByteArray()[abvs.getStartOffset()] = NodeTreePointable.HEADER_DICTIONARY_EXISTS_MASK;
+        }
+        NodeTreePointable ntp = (NodeTreePointable) NodeTreePointable.FACTORY.createPointable();
+        ntp.set(abvs.getByteArray(), abvs.getStartOffset(), abvs.getLength());
+        return ntp;
+    }
+
+    private String getString(NodeTreePointable ntp, int code) {
+        ntp.getString(code, utf8sp);
+        return utf8sp.toString();
+    }
+
+    private static UTF8StringPointable toPointable(String string) throws IOException {
+        ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+        abvs.getDataOutput().writeUTF(string);
+        UTF8StringPointable p = (UTF8StringPointable) UTF8StringPointable.FACTORY.createPointable();
+        p.set(abvs.getByteArray(), abvs.getStartOffset(), abvs.getLength());
+        return p;
+    }
+}
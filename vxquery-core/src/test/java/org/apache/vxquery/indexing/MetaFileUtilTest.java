@@ -15,6 +15,7 @@
 package org.apache.vxquery.indexing;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Set;
@@ -23,6 +24,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import javax.xml.bind.JAXBException;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.vxquery.runtime.functions.index.update.Constants;
 import org.apache.vxquery.runtime.functions.index.update.MetaFileUtil;
 import org.apache.vxquery.runtime.functions.index.update.XmlMetadata;
 import org.junit.AfterClass;
@@ -38,7 +40,8 @@ import org.junit.runners.MethodSorters;
  * 2) Generating MD5 Hashes
  * 3) Detecting file changes
  * 4) Updating metadata
- * 5) Delete metadata file
+ * 5) Reading the metadata back, also after an interrupted write
+ * 6) Delete metadata file
  */
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class MetaFileUtilTest {
@@ -144,6 +147,40 @@ public class MetaFileUtilTest {
         }
     }
 
+    /**
+     * Write the updated metadata and read it back with a new instance.
+     */
+    @Test
+    public void step6a_testReadMetadataFile() {
+        metaFileUtil.writeMetadataToFile();
+
+        MetaFileUtil fromDisk = new MetaFileUtil(TestConstants.INDEX_DIR);
+        fromDisk.readMetadataFile();
+        Assert.assertEquals(modifiedMap.size(), fromDisk.getMetadata().size());
+        for (String key : modifiedMap.keySet()) {
+            Assert.assertEquals(TestConstants.getXMLMetadataString(modifiedMap.get(key)),
+                    TestConstants.getXMLMetadataString(fromDisk.getMetadata(key)));
+        }
+    }
+
+    /**
+     * A write that was cut short must not change the metadata read from the file.
+     */
+    @Test
+    public void step6b_testIgnoreInterruptedWrite() throws IOException {
+        try (FileOutputStream out = new FileOutputStream(
+                new File(TestConstants.INDEX_DIR, Constants.META_LOG_FILE_NAME), true)) {
+            out.write(new byte[] { 0, 0, 0, 64, 1, 0 });
+        }
+
+        MetaFileUtil fromDisk = new MetaFileUtil(TestConstants.INDEX_DIR);
+        fromDisk.readMetadataFile();
+        for (String key : modifiedMap.keySet()) {
+            Assert.assertEquals(TestConstants.getXMLMetadataString(modifiedMap.get(key)),
+                    TestConstants.getXMLMetadataString(fromDisk.getMetadata(key)));
+        }
+    }
+
     /**
      * Test deletion of metadata file
      */
@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.indexing;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.runtime.functions.index.RecordLog;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test cases for the record log of the index metadata: only committed batches are read back, also after a crash left
+ * a batch partly written or damaged, and the next append replaces what was not committed.
+ */
+public class RecordLogTest {
+    // A record of one int: length, value and checksum.
+    private static final int RECORD_SIZE = 12;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setup() {
+        file = new File(folder.getRoot(), "test.log");
+    }
+
+    @Test
+    public void testCommittedBatches() throws IOException {
+        RecordLog log = new RecordLog(file);
+        appendBatch(log, 1, 2);
+        appendBatch(log, 3);
+        log.close();
+
+        RecordLog reopened = new RecordLog(file);
+        Assert.assertEquals(Arrays.asList(1, 2, 3), readAll(reopened));
+        Assert.assertEquals(3, reopened.getRecordCount());
+    }
+
+    @Test
+    public void testUncommittedBatch() throws IOException {
+        RecordLog log = new RecordLog(file);
+        appendBatch(log, 1, 2);
+        log.append(record(3));
+        log.close();
+        Assert.assertEquals(Arrays.asList(1, 2), readAll(new RecordLog(file)));
+
+        // The next batch replaces the uncommitted record.
+        RecordLog reopened = new RecordLog(file);
+        appendBatch(reopened, 4);
+        reopened.close();
+        Assert.assertEquals(Arrays.asList(1, 2, 4), readAll(new RecordLog(file)));
+    }
+
+    @Test
+    public void testPartlyWrittenBatch() throws IOException {
+        RecordLog log = new RecordLog(file);
+        appendBatch(log, 1);
+        appendBatch(log, 2, 3);
+        log.close();
+        long length = file.length();
+
+        // Cut into the commit marker, the checksum and the length of the second batch's records.
+        for (long cut : new long[] { 4, RECORD_SIZE + 4, RECORD_SIZE + 11, RECORD_SIZE + 2 }) {
+            truncate(file, length - cut);
+            Assert.assertEquals("Cut " + cut, Arrays.asList(1), readAll(new RecordLog(file)));
+        }
+
+        RecordLog reopened = new RecordLog(file);
+        appendBatch(reopened, 4);
+        reopened.close();
+        Assert.assertEquals(Arrays.asList(1, 4), readAll(new RecordLog(file)));
+    }
+
+    @Test
+    public void testChecksumMismatch() throws IOException {
+        RecordLog log = new RecordLog(file);
+        appendBatch(log, 1);
+        long firstBatchEnd = file.length();
+        appendBatch(log, 2, 3);
+        log.close();
+
+        // Change a byte of the value of record 3, its checksum no longer matches.
+        long position = firstBatchEnd + RECORD_SIZE + 7;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(position);
+            int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 0xff);
+        }
+        Assert.assertEquals(Arrays.asList(1), readAll(new RecordLog(file)));
+
+        RecordLog reopened = new RecordLog(file);
+        appendBatch(reopened, 4);
+        reopened.close();
+        Assert.assertEquals(Arrays.asList(1, 4), readAll(new RecordLog(file)));
+        Assert.assertEquals(firstBatchEnd + 2 * RECORD_SIZE - 4, file.length());
+    }
+
+    @Test
+    public void testReopenAfterCrashMidAppend() throws IOException {
+        RecordLog log = new RecordLog(file);
+        appendBatch(log, 1, 2);
+        log.append(record(3));
+        // The process dies here: the log is not closed, and half of another record reached the file.
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[] { 0, 0, 0, 4, 0, 0 });
+        }
+
+        RecordLog reopened = new RecordLog(file);
+        Assert.assertEquals(Arrays.asList(1, 2), readAll(reopened));
+        appendBatch(reopened, 5, 6);
+        reopened.close();
+        Assert.assertEquals(Arrays.asList(1, 2, 5, 6), readAll(new RecordLog(file)));
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        RecordLog log = new RecordLog(file);
+        for (int i = 0; i < 10; ++i) {
+            appendBatch(log, i);
+        }
+        Assert.assertEquals(10, log.getRecordCount());
+        log.rewrite(Arrays.asList(record(100), record(101), record(102)));
+        Assert.assertEquals(3, log.getRecordCount());
+        Assert.assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        RecordLog reopened = new RecordLog(file);
+        Assert.assertEquals(Arrays.asList(100, 101, 102), readAll(reopened));
+
+        // The first record is committed on its own and can be read without the others.
+        final List<Integer> first = new ArrayList<>();
+        Assert.assertFalse(new RecordLog(file).read(new RecordLog.IRecordReader() {
+            @Override
+            public boolean read(DataInputStream in) throws IOException {
+                first.add(in.readInt());
+                return false;
+            }
+        }));
+        Assert.assertEquals(Arrays.asList(100), first);
+
+        // Appending continues after the snapshot.
+        appendBatch(log, 103);
+        log.close();
+        Assert.assertEquals(Arrays.asList(100, 101, 102, 103), readAll(new RecordLog(file)));
+    }
+
+    private static void appendBatch(RecordLog log, int... values) throws IOException {
+        for (int value : values) {
+            log.append(record(value));
+        }
+        log.commit();
+    }
+
+    private static ArrayBackedValueStorage record(int value) throws IOException {
+        ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+        abvs.getDataOutput().writeInt(value);
+        return abvs;
+    }
+
+    private static List<Integer> readAll(RecordLog log) throws IOException {
+        final List<Integer> values = new ArrayList<>();
+        Assert.assertTrue(log.read(new RecordLog.IRecordReader() {
+            @Override
+            public boolean read(DataInputStream in) throws IOException {
+                values.add(in.readInt());
+                return true;
+            }
+        }));
+        return values;
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+        }
+    }
+}
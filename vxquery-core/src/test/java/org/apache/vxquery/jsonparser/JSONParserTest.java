@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.jsonparser;
+
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A parser is reused for every file of a collection. Each parse appends exactly the parsed value to the result, and
+ * nothing else from the result's backing array.
+ */
+public class JSONParserTest {
+    private static final String JSON = "{\"station\": \"GHCND:US000000001\", \"values\": [1, 2.5, true, null]}";
+
+    @Test
+    public void testReusedParser() throws HyracksDataException {
+        JSONParser parser = new JSONParser();
+        ArrayBackedValueStorage first = new ArrayBackedValueStorage();
+        Assert.assertEquals(1, parser.parse(new StringReader(JSON), first));
+        Assert.assertEquals(ValueTag.OBJECT_TAG, first.getByteArray()[first.getStartOffset()]);
+        ArrayBackedValueStorage second = new ArrayBackedValueStorage();
+        parser.parse(new StringReader(JSON), second);
+        Assert.assertEquals(first.getLength(), second.getLength());
+        Assert.assertArrayEquals(toBytes(first), toBytes(second));
+
+        // A second parse into the same result appends the same value once more.
+        int length = second.getLength();
+        parser.parse(new StringReader(JSON), second);
+        Assert.assertEquals(2 * length, second.getLength());
+        Assert.assertArrayEquals(toBytes(first), Arrays.copyOfRange(second.getByteArray(),
+                second.getStartOffset() + length, second.getStartOffset() + 2 * length));
+    }
+
+    private static byte[] toBytes(ArrayBackedValueStorage abvs) {
+        return Arrays.copyOfRange(abvs.getByteArray(), abvs.getStartOffset(),
+                abvs.getStartOffset() + abvs.getLength());
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.util;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hyracks.data.std.primitive.LongPointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.collations.CodepointCollation;
+import org.apache.vxquery.datamodel.accessors.SequencePointable;
+import org.apache.vxquery.datamodel.accessors.TaggedValuePointable;
+import org.apache.vxquery.datamodel.builders.atomic.StringValueBuilder;
+import org.apache.vxquery.datamodel.builders.sequence.SequenceBuilder;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.exceptions.ErrorCode;
+import org.apache.vxquery.exceptions.SystemException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * fn:distinct-values keeps the first of the values equal under eq, in input order. Values of different types can be
+ * equal, NaN is equal to itself, and only the codepoint collation is supported.
+ */
+public class DistinctValuesHelperTest {
+    private final DistinctValuesHelper distinct = new DistinctValuesHelper();
+    private final StringValueBuilder svb = new StringValueBuilder();
+    private final SequenceBuilder input = new SequenceBuilder();
+    private final ArrayBackedValueStorage inputAbvs = new ArrayBackedValueStorage();
+    private final ArrayBackedValueStorage item = new ArrayBackedValueStorage();
+    private final ArrayBackedValueStorage resultAbvs = new ArrayBackedValueStorage();
+    private final TaggedValuePointable tvp = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+    private final SequencePointable seqp = (SequencePointable) SequencePointable.FACTORY.createPointable();
+    private final TaggedValuePointable entry = (TaggedValuePointable) TaggedValuePointable.FACTORY.createPointable();
+
+    @Test
+    public void testEqualValuesOfDifferentTypes() throws IOException {
+        input.reset(inputAbvs);
+        addInteger(1);
+        addDecimal(1, 0);
+        addDouble(1.0);
+        addInteger(2);
+        addDouble(-0.0);
+        addInteger(0);
+        addString(ValueTag.XS_STRING_TAG, "a");
+        addString(ValueTag.XS_UNTYPED_ATOMIC_TAG, "a");
+        addString(ValueTag.XS_ANY_URI_TAG, "a");
+        addString(ValueTag.XS_STRING_TAG, "b");
+        addBoolean(true);
+        addBoolean(true);
+        SequencePointable result = distinctValues();
+
+        Assert.assertEquals(6, result.getEntryCount());
+        assertEntry(result, 0, ValueTag.XS_INTEGER_TAG);
+        assertEntry(result, 1, ValueTag.XS_INTEGER_TAG);
+        assertEntry(result, 2, ValueTag.XS_DOUBLE_TAG);
+        assertEntry(result, 3, ValueTag.XS_STRING_TAG);
+        assertEntry(result, 4, ValueTag.XS_STRING_TAG);
+        assertEntry(result, 5, ValueTag.XS_BOOLEAN_TAG);
+    }
+
+    @Test
+    public void testFloats() throws IOException {
+        // 0.1f and 0.1 are not equal, even though they hash on the same float.
+        input.reset(inputAbvs);
+        addInteger(1);
+        addFloat(1.0f);
+        addFloat(0.1f);
+        addDouble(0.1);
+        addDecimal(25, 1);
+        SequencePointable result = distinctValues();
+
+        Assert.assertEquals(4, result.getEntryCount());
+        assertEntry(result, 0, ValueTag.XS_INTEGER_TAG);
+        assertEntry(result, 1, ValueTag.XS_FLOAT_TAG);
+        assertEntry(result, 2, ValueTag.XS_DOUBLE_TAG);
+        assertEntry(result, 3, ValueTag.XS_DECIMAL_TAG);
+    }
+
+    @Test
+    public void testNaN() throws IOException {
+        input.reset(inputAbvs);
+        addDouble(Double.NaN);
+        addInteger(1);
+        addFloat(Float.NaN);
+        addDouble(Double.NaN);
+        SequencePointable result = distinctValues();
+
+        Assert.assertEquals(2, result.getEntryCount());
+        assertEntry(result, 0, ValueTag.XS_DOUBLE_TAG);
+        assertEntry(result, 1, ValueTag.XS_INTEGER_TAG);
+    }
+
+    @Test
+    public void testHashTable() throws IOException {
+        // More distinct values than the initial table holds, and strings with the same hash.
+        int count = 40000;
+        input.reset(inputAbvs);
+        for (int i = 0; i < count; ++i) {
+            addInteger(i);
+        }
+        for (int i = count - 1; i >= 0; --i) {
+            addInteger(i);
+        }
+        addString(ValueTag.XS_STRING_TAG, "Aa");
+        addString(ValueTag.XS_STRING_TAG, "BB");
+        addString(ValueTag.XS_STRING_TAG, "Aa");
+        SequencePointable result = distinctValues();
+
+        Assert.assertEquals(count + 2, result.getEntryCount());
+        for (int i = 0; i < count; ++i) {
+            result.getEntry(i, entry);
+            Assert.assertEquals(ValueTag.XS_INTEGER_TAG, entry.getTag());
+            Assert.assertEquals(i, LongPointable.getLong(entry.getByteArray(), entry.getStartOffset() + 1));
+        }
+        assertEntry(result, count, ValueTag.XS_STRING_TAG);
+        assertEntry(result, count + 1, ValueTag.XS_STRING_TAG);
+    }
+
+    @Test
+    public void testCollation() throws IOException {
+        item.reset();
+        svb.write(CodepointCollation.URI, begin(ValueTag.XS_STRING_TAG));
+        tvp.set(item);
+        distinct.checkCollation(tvp);
+
+        item.reset();
+        svb.write("http://www.w3.org/2013/collation/UCA", begin(ValueTag.XS_STRING_TAG));
+        tvp.set(item);
+        assertError(ErrorCode.FOCH0002);
+
+        item.reset();
+        begin(ValueTag.XS_INTEGER_TAG).writeLong(1);
+        tvp.set(item);
+        assertError(ErrorCode.FORG0006);
+    }
+
+    private void assertError(ErrorCode code) {
+        try {
+            distinct.checkCollation(tvp);
+            Assert.fail("Expected " + code);
+        } catch (SystemException e) {
+            Assert.assertEquals(code, e.getCode());
+        }
+    }
+
+    private SequencePointable distinctValues() throws IOException {
+        input.finish();
+        tvp.set(inputAbvs);
+        tvp.getValue(seqp);
+        resultAbvs.reset();
+        SequenceBuilder sb = new SequenceBuilder();
+        sb.reset(resultAbvs);
+        distinct.distinctValues(seqp, sb, null);
+        sb.finish();
+
+        SequencePointable result = (SequencePointable) SequencePointable.FACTORY.createPointable();
+        tvp.set(resultAbvs);
+        Assert.assertEquals(ValueTag.SEQUENCE_TAG, tvp.getTag());
+        tvp.getValue(result);
+        return result;
+    }
+
+    private void assertEntry(SequencePointable result, int index, int tag) {
+        result.getEntry(index, entry);
+        Assert.assertEquals(tag, entry.getTag());
+    }
+
+    private DataOutput begin(int tag) throws IOException {
+        DataOutput dOut = item.getDataOutput();
+        dOut.write(tag);
+        return dOut;
+    }
+
+    private void add() throws IOException {
+        input.addItem(item);
+    }
+
+    private void addInteger(long value) throws IOException {
+        item.reset();
+        begin(ValueTag.XS_INTEGER_TAG).writeLong(value);
+        add();
+    }
+
+    private void addDecimal(long value, int decimalPlace) throws IOException {
+        item.reset();
+        DataOutput dOut = begin(ValueTag.XS_DECIMAL_TAG);
+        dOut.write(decimalPlace);
+        dOut.writeLong(value);
+        add();
+    }
+
+    private void addFloat(float value) throws IOException {
+        item.reset();
+        begin(ValueTag.XS_FLOAT_TAG).writeFloat(value);
+        add();
+    }
+
+    private void addDouble(double value) throws IOException {
+        item.reset();
+        begin(ValueTag.XS_DOUBLE_TAG).writeDouble(value);
+        add();
+    }
+
+    private void addString(int tag, String value) throws IOException {
+        item.reset();
+        svb.write(value, begin(tag));
+        add();
+    }
+
+    private void addBoolean(boolean value) throws IOException {
+        item.reset();
+        begin(ValueTag.XS_BOOLEAN_TAG).write(value ? 1 : 0);
+        add();
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.runtime.functions.util;
+
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hyracks.api.exceptions.HyracksDataException;
+import org.apache.hyracks.data.std.primitive.LongPointable;
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.apache.vxquery.datamodel.accessors.nodes.NodeTreePointable;
+import org.apache.vxquery.datamodel.values.ValueTag;
+import org.apache.vxquery.xmlparser.IParser;
+import org.apache.vxquery.xmlparser.ITreeNodeIdProvider;
+import org.apache.vxquery.xmlparser.TreeNodeIdProvider;
+import org.apache.vxquery.xmlparser.XMLParser;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Documents are parsed on a miss and returned from the cache until the file changes or the document is evicted. The
+ * parsers used here return the text of the file, so a document shows which version of the file was parsed. A node
+ * tree taken from the cache gets a new id from the provider of the caller.
+ */
+public class DocumentCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CountingParser parser = new CountingParser();
+    private final ArrayBackedValueStorage abvs = new ArrayBackedValueStorage();
+
+    @Test
+    public void testHitsAndMisses() throws IOException {
+        DocumentCache cache = new DocumentCache(1 << 20);
+        String a = write("a.xml", "<a/>");
+        String b = write("b.xml", "<b/>");
+        Assert.assertEquals("<a/>", get(cache, a, null));
+        Assert.assertEquals("<a/>", get(cache, a, null));
+        Assert.assertEquals("<b/>", get(cache, b, null));
+        Assert.assertEquals(2, cache.getMissCount());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(2, parser.parses.get());
+        Assert.assertEquals(8, cache.getSize());
+    }
+
+    @Test
+    public void testEvaluators() throws IOException {
+        // Two evaluators of different partitions, each with its own provider and parser, share the parsed tree.
+        DocumentCache cache = new DocumentCache(1 << 20);
+        String a = write("a.xml", "<a/>");
+        ITreeNodeIdProvider provider1 = new TreeNodeIdProvider((short) 1);
+        ITreeNodeIdProvider provider2 = new TreeNodeIdProvider((short) 2);
+        NodeTreeParser parser1 = new NodeTreeParser(provider1);
+        NodeTreeParser parser2 = new NodeTreeParser(provider2);
+
+        cache.getDocument(a, parser1, provider1, abvs);
+        Assert.assertEquals(1L << 48, getTreeId(abvs));
+        cache.getDocument(a, parser2, provider2, abvs);
+        Assert.assertEquals(2L << 48, getTreeId(abvs));
+        Assert.assertEquals("<a/>", new String(abvs.getByteArray(), abvs.getStartOffset() + 10, 4,
+                StandardCharsets.UTF_8));
+        cache.getDocument(a, parser1, provider1, abvs);
+        Assert.assertEquals((1L << 48) + 1, getTreeId(abvs));
+
+        Assert.assertEquals(1, parser1.parses + parser2.parses);
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    public void testByteParser() throws IOException {
+        // fn:doc parses local files with the byte parser when it is enabled, into the same tree as the SAX parser.
+        String a = write("a.xml", "<a x=\"é\"><b>中文</b></a>");
+        CountingXMLParser bytes = newXMLParser("true");
+        new DocumentCache(1 << 20).getDocument(a, bytes, null, abvs);
+        Assert.assertEquals(1, bytes.byteParses);
+        Assert.assertEquals(0, bytes.streamParses);
+        byte[] expected = Arrays.copyOfRange(abvs.getByteArray(), abvs.getStartOffset(),
+                abvs.getStartOffset() + abvs.getLength());
+
+        CountingXMLParser sax = newXMLParser("false");
+        new DocumentCache(1 << 20).getDocument(a, sax, null, abvs);
+        Assert.assertEquals(0, sax.byteParses);
+        Assert.assertEquals(1, sax.streamParses);
+        Assert.assertArrayEquals(expected, Arrays.copyOfRange(abvs.getByteArray(), abvs.getStartOffset(),
+                abvs.getStartOffset() + abvs.getLength()));
+    }
+
+    @Test
+    public void testFileChange() throws IOException {
+        DocumentCache cache = new DocumentCache(1 << 20);
+        String a = write("a.xml", "<a/>");
+        Assert.assertEquals("<a/>", get(cache, a, null));
+
+        File file = new File(a);
+        long modified = file.lastModified();
+        Files.write(file.toPath(), "<a>changed</a>".getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(file.setLastModified(modified + 2000));
+        Assert.assertEquals("<a>changed</a>", get(cache, a, null));
+        Assert.assertEquals("<a>changed</a>", get(cache, a, null));
+        Assert.assertEquals(2, cache.getMissCount());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(14, cache.getSize());
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        DocumentCache cache = new DocumentCache(10);
+        String a = write("a.xml", "<aa/>");
+        String b = write("b.xml", "<bb/>");
+        String c = write("c.xml", "<cc/>");
+        get(cache, a, null);
+        get(cache, b, null);
+        // a was used last, so b is evicted.
+        get(cache, a, null);
+        get(cache, c, null);
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertEquals(10, cache.getSize());
+
+        get(cache, a, null);
+        get(cache, c, null);
+        Assert.assertEquals(3, cache.getHitCount());
+        get(cache, b, null);
+        Assert.assertEquals(4, cache.getMissCount());
+        Assert.assertEquals(2, cache.getEvictionCount());
+
+        // A document larger than the cache is returned but not kept.
+        String large = write("large.xml", "<larger-than-cache/>");
+        Assert.assertEquals("<larger-than-cache/>", get(cache, large, null));
+        Assert.assertEquals(10, cache.getSize());
+        Assert.assertEquals(2, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testConcurrentMisses() throws Exception {
+        final DocumentCache cache = new DocumentCache(1 << 20);
+        final String a = write("a.xml", "<a/>");
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        parser.delay = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < threads; ++i) {
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        start.await();
+                        return get(cache, a, null, new ArrayBackedValueStorage());
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<String> result : results) {
+                Assert.assertEquals("<a/>", result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(1, parser.parses.get());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(threads - 1, cache.getHitCount());
+    }
+
+    private String write(String name, String content) throws IOException {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file.getAbsolutePath();
+    }
+
+    private String get(DocumentCache cache, String fName, ITreeNodeIdProvider nodeIdProvider) throws IOException {
+        return get(cache, fName, nodeIdProvider, abvs);
+    }
+
+    private String get(DocumentCache cache, String fName, ITreeNodeIdProvider nodeIdProvider,
+            ArrayBackedValueStorage abvs) throws IOException {
+        cache.getDocument(fName, parser, nodeIdProvider, abvs);
+        return new String(abvs.getByteArray(), abvs.getStartOffset(), abvs.getLength(), StandardCharsets.UTF_8);
+    }
+
+    private static CountingXMLParser newXMLParser(String byteParser) throws IOException {
+        String previous = System.setProperty("vxquery.byte_parser", byteParser);
+        try {
+            return new CountingXMLParser();
+        } finally {
+            if (previous == null) {
+                System.clearProperty("vxquery.byte_parser");
+            } else {
+                System.setProperty("vxquery.byte_parser", previous);
+            }
+        }
+    }
+
+    private static long getTreeId(ArrayBackedValueStorage abvs) {
+        Assert.assertEquals(ValueTag.NODE_TREE_TAG, abvs.getByteArray()[abvs.getStartOffset()]);
+        return LongPointable.getLong(abvs.getByteArray(), abvs.getStartOffset() + 2);
+    }
+
+    private static class CountingParser implements IParser {
+        final AtomicInteger parses = new AtomicInteger();
+        volatile long delay;
+
+        @Override
+        public int parse(Reader input, ArrayBackedValueStorage abvs) throws HyracksDataException {
+            parses.incrementAndGet();
+            try {
+                StringBuilder sb = new StringBuilder();
+                char[] buffer = new char[256];
+                for (int n = input.read(buffer); n >= 0; n = input.read(buffer)) {
+                    sb.append(buffer, 0, n);
+                }
+                input.close();
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+                abvs.getDataOutput().write(sb.toString().getBytes(StandardCharsets.UTF_8));
+            } catch (IOException | InterruptedException e) {
+                throw new HyracksDataException(e);
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Writes the text of the file as the content of a node tree with the next id of the provider.
+     */
+    private static class NodeTreeParser implements IParser {
+        private final ITreeNodeIdProvider nodeIdProvider;
+        int parses;
+
+        NodeTreeParser(ITreeNodeIdProvider nodeIdProvider) {
+            this.nodeIdProvider = nodeIdProvider;
+        }
+
+        @Override
+        public int parse(Reader input, ArrayBackedValueStorage abvs) throws HyracksDataException {
+            ++parses;
+            try {
+                DataOutput out = abvs.getDataOutput();
+                out.write(ValueTag.NODE_TREE_TAG);
+                out.write(NodeTreePointable.HEADER_NODEID_EXISTS_MASK);
+                out.writeLong(nodeIdProvider.getId());
+                for (int c = input.read(); c >= 0; c = input.read()) {
+                    out.write(c);
+                }
+                input.close();
+            } catch (IOException e) {
+                throw new HyracksDataException(e);
+            }
+            return 0;
+        }
+    }
+
+    private static class CountingXMLParser extends XMLParser {
+        int byteParses;
+        int streamParses;
+
+        CountingXMLParser() throws HyracksDataException {
+            super(false, null, "test");
+        }
+
+        @Override
+        public int parse(ByteBuffer input, ArrayBackedValueStorage abvs) throws HyracksDataException {
+            ++byteParses;
+            return super.parse(input, abvs);
+        }
+
+        @Override
+        public int parse(InputStream input, ArrayBackedValueStorage abvs) throws HyracksDataException {
+            ++streamParses;
+            return super.parse(input, abvs);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.xmlparser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hyracks.data.std.util.ArrayBackedValueStorage;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The byte parser (vxquery.byte_parser) must build the same node tree as the SAX parser. Documents are read into a
+ * buffer up to 1 MB and mapped above it, so the generated documents are parsed on both sides of that size.
+ */
+public class UTF8XMLTokenizerTest {
+    private static final File TEST_SOURCES = new File("../vxquery-xtest/src/test/resources/TestSources");
+    private static final int MAP_THRESHOLD = 1 << 20;
+
+    private static final String DOCUMENT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<r:root xmlns=\"http://example.org/default\" xmlns:r=\"http://example.org/r\""
+            + " xmlns:s=\"http://example.org/😀\">\n"
+            + "  <entities a=\"&lt;&gt;&amp;&apos;&quot;\">&lt;tag&gt; &amp; &apos;x&apos; &quot;y&quot;</entities>\n"
+            + "  <cdata><![CDATA[<not> & markup]]> after</cdata>\n"
+            + "  <refs a=\"&#65;&#x1F600;\">&#65;&#x42;&#233;&#x4E2D;&#x1F600;</refs>\n"
+            + "  <s:prefixed s:a=\"prefixed\" r:b=\"é中\">text</s:prefixed>\n"
+            + "  <multi a=\"café 中文\">café 中文</multi>\n"
+            + "  <supplementary a=\"😀𝄞\">😀 𝄞 😀</supplementary>\n"
+            + "  <empty/>\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testTestSources() throws IOException {
+        List<File> files = new ArrayList<File>();
+        listXmlFiles(TEST_SOURCES, files);
+        Assert.assertFalse("No test sources in " + TEST_SOURCES.getAbsolutePath(), files.isEmpty());
+        int supported = 0;
+        for (File file : files) {
+            if (isSupported(file)) {
+                assertSameTree(file);
+                ++supported;
+            }
+        }
+        Assert.assertTrue("The byte parser supports none of the test sources.", supported > 0);
+    }
+
+    @Test
+    public void testSmallDocument() throws IOException {
+        File file = writeDocument("small.xml", 1);
+        Assert.assertTrue(file.length() <= MAP_THRESHOLD);
+        assertSameTree(file);
+    }
+
+    @Test
+    public void testMappedDocument() throws IOException {
+        int copies = 1;
+        while (DOCUMENT.getBytes(StandardCharsets.UTF_8).length * copies <= MAP_THRESHOLD) {
+            copies *= 2;
+        }
+        File file = writeDocument("mapped.xml", copies);
+        Assert.assertTrue(file.length() > MAP_THRESHOLD);
+        assertSameTree(file);
+    }
+
+    private File writeDocument(String name, int copies) throws IOException {
+        StringBuilder sb = new StringBuilder(DOCUMENT);
+        String body = DOCUMENT.substring(DOCUMENT.indexOf("  <entities"));
+        for (int i = 1; i < copies; ++i) {
+            sb.append(body);
+        }
+        sb.append("</r:root>\n");
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(isSupported(file));
+        return file;
+    }
+
+    private static void assertSameTree(File file) throws IOException {
+        ArrayBackedValueStorage sax = new ArrayBackedValueStorage();
+        new XMLParser(false, null, "test").parse(new InputStreamReader(new FileInputStream(file),
+                StandardCharsets.UTF_8), sax);
+
+        ArrayBackedValueStorage bytes = new ArrayBackedValueStorage();
+        newByteParser().parse(file, bytes);
+
+        Assert.assertArrayEquals(file.getName(),
+                Arrays.copyOfRange(sax.getByteArray(), sax.getStartOffset(), sax.getStartOffset() + sax.getLength()),
+                Arrays.copyOfRange(bytes.getByteArray(), bytes.getStartOffset(),
+                        bytes.getStartOffset() + bytes.getLength()));
+    }
+
+    private static XMLParser newByteParser() throws IOException {
+        String previous = System.setProperty("vxquery.byte_parser", "true");
+        try {
+            return new XMLParser(false, null, "test");
+        } finally {
+            if (previous == null) {
+                System.clearProperty("vxquery.byte_parser");
+            } else {
+                System.setProperty("vxquery.byte_parser", previous);
+            }
+        }
+    }
+
+    private static boolean isSupported(File file) throws IOException {
+        return UTF8XMLTokenizer.isSupported(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+    }
+
+    private static void listXmlFiles(File directory, List<File> files) {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            if (child.isDirectory()) {
+                listXmlFiles(child, files);
+            } else if (child.getName().endsWith(".xml")) {
+                files.add(child);
+            }
+        }
+    }
+}
@@ -18,7 +18,9 @@
 package org.apache.vxquery.app;
 
 import static org.apache.vxquery.rest.Constants.Properties.AVAILABLE_PROCESSORS;
+import static org.apache.vxquery.rest.Constants.Properties.COMPILED_QUERY_CACHE_SIZE;
 import static org.apache.vxquery.rest.Constants.Properties.HDFS_CONFIG;
+import static org.apache.vxquery.rest.Constants.Properties.INDEX_DIRECTORY;
 import static org.apache.vxquery.rest.Constants.Properties.JOIN_HASH_SIZE;
 import static org.apache.vxquery.rest.Constants.Properties.MAXIMUM_DATA_SIZE;
 
@@ -135,9 +137,13 @@ public class VXQueryApplication implements ICCApplicationEntryPoint {
         vxqConfig.setJoinHashSize(Long.getLong(JOIN_HASH_SIZE, -1));
         vxqConfig.setHdfsConf(System.getProperty(HDFS_CONFIG));
         vxqConfig.setMaximumDataSize(Long.getLong(MAXIMUM_DATA_SIZE, -1));
+        vxqConfig.setCompiledQueryCacheSize(
+                Integer.getInteger(COMPILED_QUERY_CACHE_SIZE, vxqConfig.getCompiledQueryCacheSize()));
+        vxqConfig.setIndexDirectory(System.getProperty(INDEX_DIRECTORY));
 
         vxqConfig.setHyracksClientIp(clusterControllerInfo.getClientNetAddress());
         vxqConfig.setHyracksClientPort(clusterControllerInfo.getClientNetPort());
+        vxqConfig.setHyracksWebPort(clusterControllerInfo.getWebPort());
 
         return vxqConfig;
     }
@@ -20,6 +20,7 @@ package org.apache.vxquery.app.util;
 
 import static org.apache.vxquery.rest.Constants.Properties.AVAILABLE_PROCESSORS;
 import static org.apache.vxquery.rest.Constants.Properties.HDFS_CONFIG;
+import static org.apache.vxquery.rest.Constants.Properties.INDEX_DIRECTORY;
 import static org.apache.vxquery.rest.Constants.Properties.JOIN_HASH_SIZE;
 import static org.apache.vxquery.rest.Constants.Properties.MAXIMUM_DATA_SIZE;
 
@@ -71,6 +72,10 @@ public class LocalClusterUtil {
         if (config.getHdfsConf() != null) {
             System.setProperty(HDFS_CONFIG, config.getHdfsConf());
         }
+        // The REST service of the application reads the index directory of the node controller.
+        NCConfig ncConfig = createNCConfig();
+        System.setProperty(INDEX_DIRECTORY, ncConfig.ioDevices);
+        config.setIndexDirectory(ncConfig.ioDevices);
 
         // Cluster controller
         CCConfig ccConfig = createCCConfig();
@@ -81,7 +86,6 @@ public class LocalClusterUtil {
         hds = new HyracksDataset(hcc, config.getFrameSize(), config.getAvailableProcessors());
 
         // Node controller
-        NCConfig ncConfig = createNCConfig();
         nodeControllerSerivce = new NodeControllerService(ncConfig);
         nodeControllerSerivce.start();
 
@@ -90,6 +94,7 @@ public class LocalClusterUtil {
         // REST controller
         config.setHyracksClientIp(ccConfig.clientNetIpAddress);
         config.setHyracksClientPort(ccConfig.clientNetPort);
+        config.setHyracksWebPort(ccConfig.httpPort);
         vxQueryService = new VXQueryService(config);
         vxQueryService.start();
     }
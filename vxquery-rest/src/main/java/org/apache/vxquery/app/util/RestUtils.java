@@ -34,6 +34,7 @@ import static org.apache.vxquery.rest.Constants.Parameters.SHOW_TET;
 import static org.apache.vxquery.rest.Constants.Parameters.STATEMENT;
 import static org.apache.vxquery.rest.Constants.URLs.QUERY_ENDPOINT;
 import static org.apache.vxquery.rest.Constants.URLs.QUERY_RESULT_ENDPOINT;
+import static org.apache.vxquery.rest.Constants.URLs.QUERY_RESULT_STREAM_ENDPOINT;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -143,6 +144,24 @@ public class RestUtils {
         return builder.build();
     }
 
+    /**
+     * Builds the {@link URI} that streams the raw results of an asynchronously submitted query.
+     *
+     * @param resultId
+     *            result id returned when the query was submitted
+     * @param restIpAddress
+     *            rest server's ip
+     * @param restPort
+     *            port of the rest server
+     * @return generated {@link URI}
+     * @throws URISyntaxException
+     */
+    public static URI buildQueryResultStreamURI(long resultId, String restIpAddress, int restPort)
+            throws URISyntaxException {
+        return new URIBuilder().setScheme("http").setHost(restIpAddress).setPort(restPort)
+                .setPath(QUERY_RESULT_STREAM_ENDPOINT.replace("*", String.valueOf(resultId))).build();
+    }
+
     /**
      * Reads the entity from an {@link HttpEntity}
      * 
@@ -42,6 +42,7 @@ public class Constants {
 
         public static final String QUERY_ENDPOINT = BASE_PATH + "/query";
         public static final String QUERY_RESULT_ENDPOINT = BASE_PATH + "/query/result/*";
+        public static final String QUERY_RESULT_STREAM_ENDPOINT = BASE_PATH + "/query/stream/*";
     }
 
     public class Properties {
@@ -50,11 +51,15 @@ public class Constants {
         public static final String JOIN_HASH_SIZE = "org.apache.vxquery.join_hash";
         public static final String MAXIMUM_DATA_SIZE = "org.apache.vxquery.data_size";
         public static final String HDFS_CONFIG = "org.apache.vxquery.hdfs_config";
+        public static final String COMPILED_QUERY_CACHE_SIZE = "org.apache.vxquery.query_cache_size";
+        public static final String INDEX_DIRECTORY = "org.apache.vxquery.index_directory";
     }
 
     public class HttpHeaderValues {
         public static final String CONTENT_TYPE_JSON = "application/json";
         public static final String CONTENT_TYPE_XML = "application/xml";
+        public static final String CONTENT_TYPE_TEXT = "text/plain";
+        public static final String ENCODING_GZIP = "gzip";
     }
 
     public class ErrorCodes {
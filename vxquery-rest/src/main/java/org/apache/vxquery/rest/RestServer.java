@@ -19,6 +19,7 @@ package org.apache.vxquery.rest;
 
 import static org.apache.vxquery.rest.Constants.URLs.QUERY_ENDPOINT;
 import static org.apache.vxquery.rest.Constants.URLs.QUERY_RESULT_ENDPOINT;
+import static org.apache.vxquery.rest.Constants.URLs.QUERY_RESULT_STREAM_ENDPOINT;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -29,6 +30,7 @@ import org.apache.vxquery.exceptions.VXQueryRuntimeException;
 import org.apache.vxquery.rest.service.VXQueryService;
 import org.apache.vxquery.rest.servlet.QueryAPIServlet;
 import org.apache.vxquery.rest.servlet.QueryResultAPIServlet;
+import org.apache.vxquery.rest.servlet.QueryResultStreamServlet;
 
 /**
  * REST Server class responsible for starting a new server on a given port.
@@ -53,6 +55,8 @@ public class RestServer {
         HttpServer restServer = new HttpServer(webManager.getBosses(), webManager.getWorkers(), this.port);
         restServer.addServlet(new QueryAPIServlet(vxQueryService, restServer.ctx(), QUERY_ENDPOINT));
         restServer.addServlet(new QueryResultAPIServlet(vxQueryService, restServer.ctx(), QUERY_RESULT_ENDPOINT));
+        restServer.addServlet(
+                new QueryResultStreamServlet(vxQueryService, restServer.ctx(), QUERY_RESULT_STREAM_ENDPOINT));
         webManager.add(restServer);
     }
 
@@ -17,12 +17,16 @@
 
 package org.apache.vxquery.rest.response;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.xml.bind.annotation.XmlRootElement;
 
 @XmlRootElement
 public class Metrics {
     private long compileTime;
     private long elapsedTime;
+    private List<OperatorMetrics> operators = new ArrayList<>();
 
     public long getCompileTime() {
         return compileTime;
@@ -39,4 +43,15 @@ public class Metrics {
     public void setElapsedTime(long elapsedTime) {
         this.elapsedTime = elapsedTime;
     }
+
+    /**
+     * @return the runtime statistics of the operators that report them, in the order of their ids
+     */
+    public List<OperatorMetrics> getOperators() {
+        return operators;
+    }
+
+    public void setOperators(List<OperatorMetrics> operators) {
+        this.operators = operators;
+    }
 }
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.rest.response;
+
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Runtime statistics of one operator of the hyracks job, summed over its partitions.
+ */
+@XmlRootElement
+public class OperatorMetrics {
+    private String operatorId;
+    private String name;
+    private int partitions;
+    private long tuplesIn;
+    private long tuplesOut;
+    private long frames;
+    private long bytes;
+    private long cpuTime;
+    private long spillBytes;
+
+    public String getOperatorId() {
+        return operatorId;
+    }
+
+    public void setOperatorId(String operatorId) {
+        this.operatorId = operatorId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public void setPartitions(int partitions) {
+        this.partitions = partitions;
+    }
+
+    public long getTuplesIn() {
+        return tuplesIn;
+    }
+
+    public void setTuplesIn(long tuplesIn) {
+        this.tuplesIn = tuplesIn;
+    }
+
+    public long getTuplesOut() {
+        return tuplesOut;
+    }
+
+    public void setTuplesOut(long tuplesOut) {
+        this.tuplesOut = tuplesOut;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public void setFrames(long frames) {
+        this.frames = frames;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * @return the CPU time in milliseconds
+     */
+    public long getCpuTime() {
+        return cpuTime;
+    }
+
+    public void setCpuTime(long cpuTime) {
+        this.cpuTime = cpuTime;
+    }
+
+    public long getSpillBytes() {
+        return spillBytes;
+    }
+
+    public void setSpillBytes(long spillBytes) {
+        this.spillBytes = spillBytes;
+    }
+}
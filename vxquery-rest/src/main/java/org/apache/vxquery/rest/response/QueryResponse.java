@@ -32,6 +32,7 @@ public class QueryResponse extends APIResponse {
     private String translatedExpressionTree;
     private String optimizedExpressionTree;
     private String runtimePlan;
+    private String annotatedRuntimePlan;
     private Metrics metrics = new Metrics();
 
     public QueryResponse() {
@@ -78,6 +79,14 @@ public class QueryResponse extends APIResponse {
         this.runtimePlan = runtimePlan;
     }
 
+    public String getAnnotatedRuntimePlan() {
+        return annotatedRuntimePlan;
+    }
+
+    public void setAnnotatedRuntimePlan(String annotatedRuntimePlan) {
+        this.annotatedRuntimePlan = annotatedRuntimePlan;
+    }
+
     public Metrics getMetrics() {
         return metrics;
     }
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.rest.service;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.hyracks.api.dataset.ResultSetId;
+import org.apache.vxquery.xmlquery.query.Module;
+
+/**
+ * LRU cache of compiled queries. A compiled {@link Module} only depends on the query text, the compiler settings of
+ * the request, the indexed collections and the node controllers, so all of them are part of the key: a change of the
+ * cluster membership simply produces new keys, and {@link #clear()} is called when indexes change.
+ */
+public class CompiledQueryCache {
+
+    private final Map<Key, CompiledQuery> cache;
+
+    public CompiledQueryCache(final int capacity) {
+        cache = new LinkedHashMap<Key, CompiledQuery>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CompiledQuery> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public synchronized CompiledQuery get(Key key) {
+        return cache.get(key);
+    }
+
+    public synchronized void put(Key key, CompiledQuery compiledQuery) {
+        cache.put(key, compiledQuery);
+    }
+
+    public synchronized void clear() {
+        cache.clear();
+    }
+
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    /**
+     * A compiled query together with the {@link ResultSetId} its job writes to.
+     */
+    public static class CompiledQuery {
+        private final Module module;
+        private final ResultSetId resultSetId;
+
+        public CompiledQuery(Module module, ResultSetId resultSetId) {
+            this.module = module;
+            this.resultSetId = resultSetId;
+        }
+
+        public Module getModule() {
+            return module;
+        }
+
+        public ResultSetId getResultSetId() {
+            return resultSetId;
+        }
+    }
+
+    public static class Key {
+        private final String statement;
+        private final int optimization;
+        private final int frameSize;
+        private final Map<String, String> sourceFileMap;
+        private final List<String> collections;
+        private final Set<String> nodeIds;
+
+        public Key(String statement, int optimization, int frameSize, Map<String, File> sourceFileMap,
+                List<String> collections, Collection<String> nodeIds) {
+            // Line endings and surrounding whitespace do not change the query; anything else might (e.g. inside
+            // string literals).
+            this.statement = statement.replace("\r\n", "\n").trim();
+            this.optimization = optimization;
+            this.frameSize = frameSize;
+            this.sourceFileMap = new TreeMap<>();
+            if (sourceFileMap != null) {
+                for (Map.Entry<String, File> entry : sourceFileMap.entrySet()) {
+                    this.sourceFileMap.put(entry.getKey(), entry.getValue().getAbsolutePath());
+                }
+            }
+            this.collections = new ArrayList<>(collections);
+            Collections.sort(this.collections);
+            this.nodeIds = new TreeSet<>(nodeIds);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(statement, optimization, frameSize, sourceFileMap, collections, nodeIds);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return statement.equals(other.statement) && optimization == other.optimization
+                    && frameSize == other.frameSize && sourceFileMap.equals(other.sourceFileMap)
+                    && collections.equals(other.collections) && nodeIds.equals(other.nodeIds);
+        }
+    }
+}
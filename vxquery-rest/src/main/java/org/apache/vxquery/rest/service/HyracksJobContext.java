@@ -19,6 +19,7 @@ package org.apache.vxquery.rest.service;
 
 import org.apache.hyracks.api.dataset.ResultSetId;
 import org.apache.hyracks.api.job.JobId;
+import org.apache.hyracks.api.job.JobSpecification;
 
 /**
  * A class to map {@link ResultSetId} with {@link JobId} when a job is submitted
@@ -32,11 +33,16 @@ public class HyracksJobContext {
     private JobId jobId;
     private int frameSize;
     private ResultSetId resultSetId;
+    private ResultSetId datasetResultSetId;
+    private JobSpecification jobSpecification;
 
-    public HyracksJobContext(JobId jobId, int frameSize, ResultSetId resultSetId) {
+    public HyracksJobContext(JobId jobId, int frameSize, ResultSetId resultSetId, ResultSetId datasetResultSetId,
+            JobSpecification jobSpecification) {
         this.jobId = jobId;
         this.frameSize = frameSize;
         this.resultSetId = resultSetId;
+        this.datasetResultSetId = datasetResultSetId;
+        this.jobSpecification = jobSpecification;
     }
 
     public JobId getJobId() {
@@ -47,7 +53,22 @@ public class HyracksJobContext {
         return frameSize;
     }
 
+    /**
+     * @return the result set id given to the client for this job
+     */
     public ResultSetId getResultSetId() {
         return resultSetId;
     }
+
+    /**
+     * @return the result set id the job writes its results to, which is the id of the first request of a compiled
+     *         query that is reused
+     */
+    public ResultSetId getDatasetResultSetId() {
+        return datasetResultSetId;
+    }
+
+    public JobSpecification getJobSpecification() {
+        return jobSpecification;
+    }
 }
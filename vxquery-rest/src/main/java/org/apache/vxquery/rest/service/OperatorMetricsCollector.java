@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.rest.service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.hyracks.api.dataflow.IConnectorDescriptor;
+import org.apache.hyracks.api.dataflow.IOperatorDescriptor;
+import org.apache.hyracks.api.dataflow.OperatorDescriptorId;
+import org.apache.hyracks.api.job.JobId;
+import org.apache.hyracks.api.job.JobSpecification;
+import org.apache.vxquery.metadata.OperatorStatistics;
+import org.apache.vxquery.rest.response.OperatorMetrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reads the profile of a finished job from the web server of the cluster controller and sums the counters of
+ * {@link OperatorStatistics} over the partitions of each operator. Only the operators of VXQuery publish these
+ * counters, the hyracks operators of this version (joins, group-by, sort) do not, so the annotated plan shows them
+ * without statistics.
+ */
+class OperatorMetricsCollector {
+    private static final String JOB_RUN_PATH = "/rest/jobs/%s/job-run";
+
+    private final String host;
+    private final int port;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    OperatorMetricsCollector(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * @return the statistics of the operators that reported any, in the order of their ids
+     */
+    List<OperatorMetrics> collect(JobId jobId, JobSpecification jobSpec) throws IOException {
+        JsonNode jobRun = readJobRun(jobId);
+        Map<OperatorDescriptorId, IOperatorDescriptor> operatorMap = jobSpec.getOperatorMap();
+        Map<String, OperatorDescriptorId> operatorIds = new TreeMap<>();
+        for (OperatorDescriptorId odid : operatorMap.keySet()) {
+            operatorIds.put(odid.toString(), odid);
+        }
+
+        Map<Integer, OperatorMetrics> operators = new TreeMap<>();
+        for (JsonNode joblet : jobRun.path("profile").path("joblets")) {
+            for (JsonNode task : joblet.path("tasks")) {
+                Set<OperatorMetrics> reported = new HashSet<>();
+                for (JsonNode counter : task.path("counters")) {
+                    String name = counter.path("name").asText();
+                    int dot = name.lastIndexOf('.');
+                    OperatorDescriptorId odid = dot < 0 ? null : operatorIds.get(name.substring(0, dot));
+                    if (odid == null) {
+                        continue;
+                    }
+                    OperatorMetrics metrics = operators.get(odid.getId());
+                    if (metrics == null) {
+                        metrics = new OperatorMetrics();
+                        metrics.setOperatorId(odid.toString());
+                        metrics.setName(operatorMap.get(odid).getClass().getSimpleName());
+                        operators.put(odid.getId(), metrics);
+                    }
+                    if (reported.add(metrics)) {
+                        metrics.setPartitions(metrics.getPartitions() + 1);
+                    }
+                    add(metrics, name.substring(dot + 1), counter.path("value").asLong());
+                }
+            }
+        }
+        for (OperatorMetrics metrics : operators.values()) {
+            metrics.setCpuTime(TimeUnit.NANOSECONDS.toMillis(metrics.getCpuTime()));
+        }
+        return new ArrayList<>(operators.values());
+    }
+
+    /**
+     * Prints the operators of the job from the roots down to the sources, one per line with the connector to its
+     * consumer and its statistics. An operator feeding several consumers is printed once.
+     */
+    static String annotatePlan(JobSpecification jobSpec, List<OperatorMetrics> operators) {
+        Map<String, OperatorMetrics> metrics = new HashMap<>();
+        for (OperatorMetrics operator : operators) {
+            metrics.put(operator.getOperatorId(), operator);
+        }
+        StringBuilder sb = new StringBuilder();
+        Set<OperatorDescriptorId> printed = new HashSet<>();
+        for (OperatorDescriptorId root : jobSpec.getRoots()) {
+            appendOperator(sb, jobSpec, jobSpec.getOperatorMap().get(root), null, 0, metrics, printed);
+        }
+        return sb.toString();
+    }
+
+    private static void appendOperator(StringBuilder sb, JobSpecification jobSpec, IOperatorDescriptor op,
+            IConnectorDescriptor output, int depth, Map<String, OperatorMetrics> metrics,
+            Set<OperatorDescriptorId> printed) {
+        for (int i = 0; i < depth; ++i) {
+            sb.append("  ");
+        }
+        sb.append(op.getOperatorId()).append(' ').append(op.getClass().getSimpleName());
+        if (output != null) {
+            sb.append(" -> ").append(output.getClass().getSimpleName());
+        }
+        if (!printed.add(op.getOperatorId())) {
+            sb.append(" (see above)\n");
+            return;
+        }
+        OperatorMetrics m = metrics.get(op.getOperatorId().toString());
+        if (m != null) {
+            sb.append(String.format(Locale.ROOT,
+                    " [partitions %d, tuples in %d, tuples out %d, frames %d, bytes %d, cpu %d ms, spill %d bytes]",
+                    m.getPartitions(), m.getTuplesIn(), m.getTuplesOut(), m.getFrames(), m.getBytes(),
+                    m.getCpuTime(), m.getSpillBytes()));
+        }
+        sb.append('\n');
+        for (int i = 0; i < op.getInputArity(); ++i) {
+            IConnectorDescriptor input = jobSpec.getInputConnectorDescriptor(op, i);
+            appendOperator(sb, jobSpec, jobSpec.getProducer(input), input, depth + 1, metrics, printed);
+        }
+    }
+
+    private JsonNode readJobRun(JobId jobId) throws IOException {
+        URI uri;
+        try {
+            uri = new URIBuilder().setScheme("http").setHost(host).setPort(port)
+                    .setPath(String.format(JOB_RUN_PATH, jobId)).build();
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+        try (CloseableHttpClient client = HttpClients.createDefault();
+                CloseableHttpResponse response = client.execute(new HttpGet(uri))) {
+            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+                throw new IOException("Unable to read the profile of job " + jobId + ": " + response.getStatusLine());
+            }
+            return mapper.readTree(response.getEntity().getContent());
+        }
+    }
+
+    private static void add(OperatorMetrics metrics, String statistic, long value) {
+        switch (statistic) {
+            case OperatorStatistics.TUPLES_IN:
+                metrics.setTuplesIn(metrics.getTuplesIn() + value);
+                break;
+            case OperatorStatistics.TUPLES_OUT:
+                metrics.setTuplesOut(metrics.getTuplesOut() + value);
+                break;
+            case OperatorStatistics.FRAMES:
+                metrics.setFrames(metrics.getFrames() + value);
+                break;
+            case OperatorStatistics.BYTES:
+                metrics.setBytes(metrics.getBytes() + value);
+                break;
+            case OperatorStatistics.CPU_TIME:
+                // Nanoseconds, converted once the partitions are summed.
+                metrics.setCpuTime(metrics.getCpuTime() + value);
+                break;
+            case OperatorStatistics.SPILL_BYTES:
+                metrics.setSpillBytes(metrics.getSpillBytes() + value);
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -36,9 +36,15 @@ public class VXQueryConfig {
     private long maximumDataSize = -1;
     /** Directory path to Hadoop configuration files */
     private String hdfsConf = null;
+    /** Number of compiled queries kept for reuse, 0 disables the cache. (default: 128) */
+    private int compiledQueryCacheSize = 128;
+    /** Index directory of the node controllers, to notice index changes. (default: null, list indexes per query) */
+    private String indexDirectory = null;
 
     private String hyracksClientIp;
     private int hyracksClientPort;
+    /** HTTP port of the cluster controller, which serves the job profiles. (default: 0, no operator metrics) */
+    private int hyracksWebPort;
 
     public int getAvailableProcessors() {
         return availableProcessors;
@@ -90,6 +96,14 @@ public class VXQueryConfig {
         this.hyracksClientIp = hyracksClientIp;
     }
 
+    public int getHyracksWebPort() {
+        return hyracksWebPort;
+    }
+
+    public void setHyracksWebPort(int hyracksWebPort) {
+        this.hyracksWebPort = hyracksWebPort;
+    }
+
     public int getFrameSize() {
         return frameSize;
     }
@@ -97,4 +111,20 @@ public class VXQueryConfig {
     public void setFrameSize(int frameSize) {
         this.frameSize = frameSize;
     }
+
+    public int getCompiledQueryCacheSize() {
+        return compiledQueryCacheSize;
+    }
+
+    public void setCompiledQueryCacheSize(int compiledQueryCacheSize) {
+        this.compiledQueryCacheSize = compiledQueryCacheSize;
+    }
+
+    public String getIndexDirectory() {
+        return indexDirectory;
+    }
+
+    public void setIndexDirectory(String indexDirectory) {
+        this.indexDirectory = indexDirectory;
+    }
 }
@@ -21,10 +21,11 @@ import static org.apache.vxquery.rest.Constants.ErrorCodes.NOT_FOUND;
 import static org.apache.vxquery.rest.Constants.ErrorCodes.PROBLEM_WITH_QUERY;
 import static org.apache.vxquery.rest.Constants.ErrorCodes.UNFORSEEN_PROBLEM;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintWriter;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
@@ -50,7 +51,6 @@ import org.apache.hyracks.api.client.NodeControllerInfo;
 import org.apache.hyracks.api.comm.IFrame;
 import org.apache.hyracks.api.comm.IFrameTupleAccessor;
 import org.apache.hyracks.api.comm.VSizeFrame;
-import org.apache.hyracks.api.dataset.DatasetJobRecord;
 import org.apache.hyracks.api.dataset.IHyracksDatasetReader;
 import org.apache.hyracks.api.dataset.ResultSetId;
 import org.apache.hyracks.api.exceptions.HyracksException;
@@ -74,10 +74,12 @@ import org.apache.vxquery.rest.request.QueryRequest;
 import org.apache.vxquery.rest.request.QueryResultRequest;
 import org.apache.vxquery.rest.response.APIResponse;
 import org.apache.vxquery.rest.response.Error;
+import org.apache.vxquery.rest.response.Metrics;
 import org.apache.vxquery.rest.response.QueryResponse;
 import org.apache.vxquery.rest.response.QueryResultResponse;
 import org.apache.vxquery.rest.response.SyncQueryResponse;
 import org.apache.vxquery.result.ResultUtils;
+import org.apache.vxquery.runtime.functions.index.centralizer.IndexCentralizerUtil;
 import org.apache.vxquery.xmlquery.ast.ModuleNode;
 import org.apache.vxquery.xmlquery.query.Module;
 import org.apache.vxquery.xmlquery.query.XMLQueryCompiler;
@@ -105,9 +107,15 @@ public class VXQueryService {
     private Map<Long, HyracksJobContext> jobContexts = new ConcurrentHashMap<>();
     private IHyracksClientConnection hyracksClientConnection;
     private HyracksDataset hyracksDataset;
+    private OperatorMetricsCollector operatorMetricsCollector;
+    private CompiledQueryCache compiledQueryCache;
+    private volatile IndexedCollections indexedCollections;
 
     public VXQueryService(VXQueryConfig config) {
         vxQueryConfig = config;
+        if (config.getCompiledQueryCacheSize() > 0) {
+            compiledQueryCache = new CompiledQueryCache(config.getCompiledQueryCacheSize());
+        }
     }
 
     /**
@@ -137,6 +145,10 @@ public class VXQueryService {
 
         LOGGER.log(Level.FINE, String.format("Using hyracks connection to %s:%d", vxQueryConfig.getHyracksClientIp(),
                 vxQueryConfig.getHyracksClientPort()));
+        if (vxQueryConfig.getHyracksWebPort() > 0) {
+            operatorMetricsCollector = new OperatorMetricsCollector(vxQueryConfig.getHyracksClientIp(),
+                    vxQueryConfig.getHyracksWebPort());
+        }
 
         setState(State.STARTED);
         LOGGER.log(Level.INFO, "VXQueryService started successfully");
@@ -157,13 +169,41 @@ public class VXQueryService {
      * @return AsyncQueryResponse if no error occurs | ErrorResponse else
      */
     public APIResponse execute(final QueryRequest request) {
+        return execute(request, getIndexedCollections());
+    }
+
+    /**
+     * Returns the collections that have an index. Without an index directory in the configuration the indexes are
+     * listed with a show-indexes() job for every query. Otherwise the list is kept until the index directory file
+     * changes, which happens whenever an index is built, updated or deleted, whichever client did it. Compiled queries
+     * are cached by the list they were compiled with, so they are not reused once it changes.
+     */
+    private List<String> getIndexedCollections() {
+        if (vxQueryConfig.getIndexDirectory() == null) {
+            return listIndexedCollections();
+        }
+        // The stamp is read first, so a change while show-indexes() is running is noticed by the next query.
+        String stamp = IndexCentralizerUtil.getDirectoryStamp(new File(vxQueryConfig.getIndexDirectory()));
+        IndexedCollections cached = indexedCollections;
+        if (cached != null && cached.stamp.equals(stamp)) {
+            return cached.collections;
+        }
+        List<String> collections = listIndexedCollections();
+        indexedCollections = new IndexedCollections(stamp, collections);
+        return collections;
+    }
+
+    private List<String> listIndexedCollections() {
         QueryRequest indexingRequest = new QueryRequest("show-indexes()");
         indexingRequest.setAsync(false);
-        SyncQueryResponse indexingResponse = (SyncQueryResponse) execute(indexingRequest, new ArrayList<>());
-        LOGGER.log(Level.FINE, String.format("Found indexes: %s", indexingResponse.getResults()));
-
-        List<String> collections = Arrays.asList(indexingResponse.getResults().split("\n"));
-        return execute(request, collections);
+        APIResponse indexingResponse = execute(indexingRequest, new ArrayList<>());
+        if (!(indexingResponse instanceof SyncQueryResponse)) {
+            LOGGER.log(Level.WARNING, "Unable to read the list of indexes");
+            return new ArrayList<>();
+        }
+        String results = ((SyncQueryResponse) indexingResponse).getResults();
+        LOGGER.log(Level.FINE, String.format("Found indexes: %s", results));
+        return Arrays.asList(results.split("\n"));
     }
 
     private APIResponse execute(final QueryRequest request, List<String> collections) {
@@ -187,31 +227,50 @@ public class VXQueryService {
                     .withMessage("Hyracks connection problem: " + e.getMessage()).build());
         }
 
-        // Adding a query compilation listener
-        VXQueryCompilationListener listener = new VXQueryCompilationListener(response,
-                request.isShowAbstractSyntaxTree(), request.isShowTranslatedExpressionTree(),
-                request.isShowOptimizedExpressionTree(), request.isShowRuntimePlan());
+        // Compiled queries are reused unless the request asks for compiler output.
+        CompiledQueryCache.Key cacheKey = null;
+        if (compiledQueryCache != null && !request.isShowAbstractSyntaxTree()
+                && !request.isShowTranslatedExpressionTree() && !request.isShowOptimizedExpressionTree()
+                && !request.isShowRuntimePlan()) {
+            cacheKey = new CompiledQueryCache.Key(query, request.getOptimization(), request.getFrameSize(),
+                    request.getSourceFileMap(), collections, nodeControllerInfos.keySet());
+        }
 
         Date start = new Date();
-        // Compiling the XQuery given
-        final XMLQueryCompiler compiler = new XMLQueryCompiler(listener, nodeControllerInfos, request.getFrameSize(),
-                vxQueryConfig.getAvailableProcessors(), vxQueryConfig.getJoinHashSize(),
-                vxQueryConfig.getMaximumDataSize(), vxQueryConfig.getHdfsConf());
-        CompilerControlBlock compilerControlBlock = new CompilerControlBlock(
-                new StaticContextImpl(RootStaticContextImpl.INSTANCE), resultSetId, request.getSourceFileMap());
-        try {
-            compiler.compile(null, new StringReader(query), compilerControlBlock, request.getOptimization(),
-                    collections);
-        } catch (AlgebricksException e) {
-            LOGGER.log(Level.SEVERE, String.format("Error occurred when compiling query: '%s' with message: '%s'",
-                    query, e.getMessage()));
-            return APIResponse.newErrorResponse(request.getRequestId(), Error.builder().withCode(PROBLEM_WITH_QUERY)
-                    .withMessage("Query compilation failure: " + e.getMessage()).build());
-        } catch (SystemException e) {
-            LOGGER.log(Level.SEVERE, String.format("Error occurred when compiling query: '%s' with message: '%s'",
-                    query, e.getMessage()));
-            return APIResponse.newErrorResponse(request.getRequestId(),
-                    new Error(PROBLEM_WITH_QUERY, "Query compilation failure: " + e.getCode()));
+        CompiledQueryCache.CompiledQuery compiledQuery = cacheKey == null ? null : compiledQueryCache.get(cacheKey);
+        if (compiledQuery == null) {
+            // Adding a query compilation listener
+            VXQueryCompilationListener listener = new VXQueryCompilationListener(response,
+                    request.isShowAbstractSyntaxTree(), request.isShowTranslatedExpressionTree(),
+                    request.isShowOptimizedExpressionTree(), request.isShowRuntimePlan());
+
+            // Compiling the XQuery given
+            final XMLQueryCompiler compiler = new XMLQueryCompiler(listener, nodeControllerInfos,
+                    request.getFrameSize(), vxQueryConfig.getAvailableProcessors(), vxQueryConfig.getJoinHashSize(),
+                    vxQueryConfig.getMaximumDataSize(), vxQueryConfig.getHdfsConf());
+            CompilerControlBlock compilerControlBlock = new CompilerControlBlock(
+                    new StaticContextImpl(RootStaticContextImpl.INSTANCE), resultSetId, request.getSourceFileMap());
+            try {
+                compiler.compile(null, new StringReader(query), compilerControlBlock, request.getOptimization(),
+                        collections);
+            } catch (AlgebricksException e) {
+                LOGGER.log(Level.SEVERE, String.format("Error occurred when compiling query: '%s' with message: '%s'",
+                        query, e.getMessage()));
+                return APIResponse.newErrorResponse(request.getRequestId(), Error.builder()
+                        .withCode(PROBLEM_WITH_QUERY).withMessage("Query compilation failure: " + e.getMessage())
+                        .build());
+            } catch (SystemException e) {
+                LOGGER.log(Level.SEVERE, String.format("Error occurred when compiling query: '%s' with message: '%s'",
+                        query, e.getMessage()));
+                return APIResponse.newErrorResponse(request.getRequestId(),
+                        new Error(PROBLEM_WITH_QUERY, "Query compilation failure: " + e.getCode()));
+            }
+            compiledQuery = new CompiledQueryCache.CompiledQuery(compiler.getModule(), resultSetId);
+            if (cacheKey != null) {
+                compiledQueryCache.put(cacheKey, compiledQuery);
+            }
+        } else {
+            LOGGER.log(Level.FINE, "Reusing compiled query for: " + query);
         }
 
         if (request.isShowMetrics()) {
@@ -222,18 +281,15 @@ public class VXQueryService {
             return response;
         }
 
-        Module module = compiler.getModule();
-        JobSpecification js = module.getHyracksJobSpecification();
+        Module module = compiledQuery.getModule();
         DynamicContext dCtx = new DynamicContextImpl(module.getModuleContext());
-        js.setGlobalJobDataFactory(new VXQueryGlobalDataFactory(dCtx.createFactory()));
 
-        HyracksJobContext hyracksJobContext;
+        HyracksJobContext hyracksJobContext = null;
         start = new Date();
         if (!request.isAsync()) {
             for (int i = 0; i < request.getRepeatExecutions(); i++) {
                 try {
-                    hyracksJobContext = executeJob(js, resultSetId, request);
-
+                    hyracksJobContext = executeJob(compiledQuery, dCtx, resultSetId);
                 } catch (Exception e) {
                     LOGGER.log(SEVERE, "Error occurred when submitting job to hyracks for query: " + query, e);
                     return APIResponse.newErrorResponse(request.getRequestId(),
@@ -256,7 +312,7 @@ public class VXQueryService {
             }
         } else {
             try {
-                hyracksJobContext = executeJob(js, resultSetId, request);
+                hyracksJobContext = executeJob(compiledQuery, dCtx, resultSetId);
             } catch (Exception e) {
                 LOGGER.log(SEVERE, "Error occurred when submitting job to hyracks for query: " + query, e);
                 return APIResponse.newErrorResponse(request.getRequestId(), Error.builder().withCode(UNFORSEEN_PROBLEM)
@@ -267,16 +323,31 @@ public class VXQueryService {
 
         if (request.isShowMetrics()) {
             response.getMetrics().setElapsedTime(new Date().getTime() - start.getTime());
+            // The jobs of asynchronous queries are still running, their results report the operator statistics.
+            if (!request.isAsync() && hyracksJobContext != null) {
+                collectOperatorMetrics(hyracksJobContext, response.getMetrics());
+                if (request.isShowRuntimePlan()) {
+                    response.setAnnotatedRuntimePlan(OperatorMetricsCollector.annotatePlan(
+                            hyracksJobContext.getJobSpecification(), response.getMetrics().getOperators()));
+                }
+            }
         }
 
         return response;
     }
 
-    private HyracksJobContext executeJob(JobSpecification js, ResultSetId resultSetId, QueryRequest request)
-            throws Exception {
+    private HyracksJobContext executeJob(CompiledQueryCache.CompiledQuery compiledQuery, DynamicContext dCtx,
+            ResultSetId resultSetId) throws Exception {
         HyracksJobContext hyracksJobContext;
-        JobId jobId = hyracksClientConnection.startJob(js, EnumSet.of(JobFlag.PROFILE_RUNTIME));
-        hyracksJobContext = new HyracksJobContext(jobId, js.getFrameSize(), resultSetId);
+        JobSpecification js = compiledQuery.getModule().getHyracksJobSpecification();
+        JobId jobId;
+        // A cached job specification is shared by concurrent requests, each with its own dynamic context.
+        synchronized (js) {
+            js.setGlobalJobDataFactory(new VXQueryGlobalDataFactory(dCtx.createFactory()));
+            jobId = hyracksClientConnection.startJob(js, EnumSet.of(JobFlag.PROFILE_RUNTIME));
+        }
+        hyracksJobContext =
+                new HyracksJobContext(jobId, js.getFrameSize(), resultSetId, compiledQuery.getResultSetId(), js);
 
         return hyracksJobContext;
     }
@@ -314,9 +385,10 @@ public class VXQueryService {
     public APIResponse getResult(QueryResultRequest request) {
         if (jobContexts.containsKey(request.getResultId())) {
             QueryResultResponse resultResponse = APIResponse.newQueryResultResponse(request.getRequestId());
+            HyracksJobContext jobContext = jobContexts.get(request.getResultId());
             Date start = new Date();
             try {
-                String results = readResults(jobContexts.get(request.getResultId()));
+                String results = readResults(jobContext);
                 resultResponse.setResults(results);
             } catch (Exception e) {
                 LOGGER.log(Level.SEVERE, "Error occurred when reading results for id : " + request.getResultId());
@@ -326,6 +398,7 @@ public class VXQueryService {
 
             if (request.isShowMetrics()) {
                 resultResponse.getMetrics().setElapsedTime(new Date().getTime() - start.getTime());
+                collectOperatorMetrics(jobContext, resultResponse.getMetrics());
             }
 
             return resultResponse;
@@ -335,6 +408,27 @@ public class VXQueryService {
         }
     }
 
+    /**
+     * Streams the results of an asynchronously submitted query to {@code out} as hyracks produces them. Only one
+     * result frame is held in memory at a time.
+     *
+     * @param request
+     *            {@link QueryResultRequest} with result ID required
+     * @param out
+     *            stream receiving the serialized results
+     * @return false if there is no query for the given result ID
+     * @throws Exception
+     *             if the query failed or the results could not be written
+     */
+    public boolean writeResults(QueryResultRequest request, OutputStream out) throws Exception {
+        HyracksJobContext jobContext = jobContexts.get(request.getResultId());
+        if (jobContext == null) {
+            return false;
+        }
+        writeResults(jobContext, out);
+        return true;
+    }
+
     /**
      * Reads results from hyracks given the {@link HyracksJobContext} containing
      * {@link ResultSetId} and {@link JobId} mapping.
@@ -347,35 +441,63 @@ public class VXQueryService {
      *             IOErrors and etc
      */
     private String readResults(HyracksJobContext jobContext) throws Exception {
-        int nReaders = 1;
-
-        if (hyracksDataset == null) {
-            hyracksDataset = new HyracksDataset(hyracksClientConnection, jobContext.getFrameSize(), nReaders);
-        }
+        ByteArrayOutputStream resultStream = new ByteArrayOutputStream();
+        writeResults(jobContext, resultStream);
+        return resultStream.toString(StandardCharsets.UTF_8.name());
+    }
 
+    /**
+     * Copies result frames to {@code out} as soon as the dataset reader returns them. The reader blocks until the
+     * next partition is available, so there is no need to poll the job status.
+     */
+    private void writeResults(HyracksJobContext jobContext, OutputStream out) throws Exception {
         FrameManager resultDisplayFrameMgr = new FrameManager(jobContext.getFrameSize());
         IFrame frame = new VSizeFrame(resultDisplayFrameMgr);
-        IHyracksDatasetReader reader = hyracksDataset.createReader(jobContext.getJobId(), jobContext.getResultSetId());
-        OutputStream resultStream = new ByteArrayOutputStream();
-
-        // This loop is required for XTests to reliably identify the error code of
-        // SystemException.
-        while (reader.getResultStatus() == DatasetJobRecord.Status.RUNNING) {
-            Thread.sleep(100);
-        }
-
+        IHyracksDatasetReader reader =
+                getHyracksDataset(jobContext.getFrameSize()).createReader(jobContext.getJobId(),
+                        jobContext.getDatasetResultSetId());
         IFrameTupleAccessor frameTupleAccessor = new ResultFrameTupleAccessor();
-        try (PrintWriter writer = new PrintWriter(resultStream, true)) {
+        try {
             while (reader.read(frame) > 0) {
-                writer.print(ResultUtils.getStringFromBuffer(frame.getBuffer(), frameTupleAccessor));
-                writer.flush();
+                ResultUtils.writeBuffer(frame.getBuffer(), frameTupleAccessor, out);
                 frame.getBuffer().clear();
             }
+        } catch (HyracksException e) {
+            // The reader only learns that the job failed. Waiting for the job rethrows the actual error, which
+            // XTests need to identify the error code of the SystemException.
+            hyracksClientConnection.waitForCompletion(jobContext.getJobId());
+            throw e;
         }
+        out.flush();
 
         hyracksClientConnection.waitForCompletion(jobContext.getJobId());
-        LOGGER.log(Level.FINE, String.format("Result for resultId %d completed", jobContext.getResultSetId().getId()));
-        return resultStream.toString();
+        LOGGER.log(Level.FINE, String.format("Result for resultId %d of job %s completed",
+                jobContext.getResultSetId().getId(), jobContext.getJobId()));
+    }
+
+    /**
+     * Adds the statistics of the operators of a finished job to the metrics. The query does not fail if they cannot be
+     * read.
+     */
+    private void collectOperatorMetrics(HyracksJobContext jobContext, Metrics metrics) {
+        if (operatorMetricsCollector == null) {
+            return;
+        }
+        try {
+            metrics.setOperators(
+                    operatorMetricsCollector.collect(jobContext.getJobId(), jobContext.getJobSpecification()));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to read the operator statistics of job " + jobContext.getJobId(), e);
+        }
+    }
+
+    private synchronized HyracksDataset getHyracksDataset(int frameSize) throws Exception {
+        int nReaders = 1;
+
+        if (hyracksDataset == null) {
+            hyracksDataset = new HyracksDataset(hyracksClientConnection, frameSize, nReaders);
+        }
+        return hyracksDataset;
     }
 
     /**
@@ -404,6 +526,19 @@ public class VXQueryService {
         return state;
     }
 
+    /**
+     * The collections that have an index, with the stamp of the index directory file they were listed for.
+     */
+    private static class IndexedCollections {
+        private final String stamp;
+        private final List<String> collections;
+
+        private IndexedCollections(String stamp, List<String> collections) {
+            this.stamp = stamp;
+            this.collections = collections;
+        }
+    }
+
     /**
      * A {@link XQueryCompilationListener} implementation to be used to add
      * AbstractSyntaxTree, RuntimePlan and etc to the {@link QueryResponse} if
@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.vxquery.rest.servlet;
+
+import static org.apache.vxquery.rest.Constants.HttpHeaderValues.CONTENT_TYPE_JSON;
+import static org.apache.vxquery.rest.Constants.HttpHeaderValues.CONTENT_TYPE_TEXT;
+import static org.apache.vxquery.rest.Constants.HttpHeaderValues.ENCODING_GZIP;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.htrace.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.hyracks.http.api.IServletRequest;
+import org.apache.hyracks.http.api.IServletResponse;
+import org.apache.hyracks.http.server.AbstractServlet;
+import org.apache.hyracks.http.server.utils.HttpUtil;
+import org.apache.vxquery.rest.Constants;
+import org.apache.vxquery.rest.request.QueryResultRequest;
+import org.apache.vxquery.rest.response.APIResponse;
+import org.apache.vxquery.rest.response.Error;
+import org.apache.vxquery.rest.service.VXQueryService;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+/**
+ * Streams the raw results of an asynchronously submitted query. Unlike {@link QueryResultAPIServlet}, the results
+ * are not wrapped into a JSON/XML entity: frames are written to the (chunked) HTTP response as hyracks produces them,
+ * gzip-compressed if the client accepts it, so memory use does not depend on the result size. Errors that occur
+ * before the first result byte are reported with an error status and a JSON {@link Error}; later errors can only
+ * truncate the response.
+ */
+public class QueryResultStreamServlet extends AbstractServlet {
+
+    private static final Logger LOGGER = Logger.getLogger(QueryResultStreamServlet.class.getName());
+
+    private VXQueryService vxQueryService;
+
+    public QueryResultStreamServlet(VXQueryService vxQueryService, ConcurrentMap<String, Object> ctx,
+            String... paths) {
+        super(ctx, paths);
+        this.vxQueryService = vxQueryService;
+    }
+
+    @Override
+    protected void get(IServletRequest request, IServletResponse response) {
+        try {
+            // enable cross-origin resource sharing
+            response.setHeader("Access-Control-Allow-Origin", "*");
+            response.setHeader("Access-Control-Allow-Headers", "Origin, X-Requested-With, Content-Type, Accept");
+        } catch (IOException e) {
+            response.setStatus(HttpResponseStatus.INTERNAL_SERVER_ERROR);
+            LOGGER.log(Level.SEVERE, "Error occurred when setting headers", e);
+            return;
+        }
+
+        String uri = request.getHttpRequest().uri();
+        long resultId;
+        try {
+            String pathParam = uri.substring(uri.lastIndexOf("/") + 1);
+            pathParam = pathParam.contains("?") ? pathParam.split("\\?")[0] : pathParam;
+            resultId = Long.parseLong(pathParam);
+        } catch (NumberFormatException e) {
+            LOGGER.log(Level.SEVERE, "Result ID could not be retrieved from URL");
+            sendError(response, HttpResponseStatus.BAD_REQUEST.code(), "Result ID couldn't be retrieved from URL");
+            return;
+        }
+
+        QueryResultRequest resultRequest = new QueryResultRequest(resultId, UUID.randomUUID().toString());
+        LOGGER.log(Level.INFO, String.format("Received a result stream request with resultId : %d", resultId));
+        String acceptEncoding = request.getHeader(HttpHeaderNames.ACCEPT_ENCODING, "");
+        ResultOutputStream out = new ResultOutputStream(response, acceptEncoding.contains(ENCODING_GZIP));
+        try {
+            if (!vxQueryService.writeResults(resultRequest, out)) {
+                sendError(response, Constants.ErrorCodes.NOT_FOUND, "No query found for result ID : " + resultId);
+                return;
+            }
+            out.finish();
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error occurred when streaming results for id : " + resultId, e);
+            if (!out.isCommitted()) {
+                sendError(response, Constants.ErrorCodes.UNFORSEEN_PROBLEM,
+                        "Error occurred when reading results for: " + resultId);
+            }
+        }
+    }
+
+    private static void sendError(IServletResponse response, int code, String message) {
+        try {
+            response.setStatus(HttpResponseStatus.valueOf(code));
+            HttpUtil.setContentType(response, CONTENT_TYPE_JSON);
+            response.writer().print(new ObjectMapper().writeValueAsString(
+                    APIResponse.newErrorResponse(null, Error.builder().withCode(code).withMessage(message).build())));
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error occurred when writing error response", e);
+        }
+    }
+
+    /**
+     * Sets the status and headers only when the first result byte is written, so that a query that fails before
+     * producing results can still be answered with an error status.
+     */
+    private static class ResultOutputStream extends OutputStream {
+        private final IServletResponse response;
+        private final boolean gzip;
+        private OutputStream out;
+
+        ResultOutputStream(IServletResponse response, boolean gzip) {
+            this.response = response;
+            this.gzip = gzip;
+        }
+
+        boolean isCommitted() {
+            return out != null;
+        }
+
+        private OutputStream out() throws IOException {
+            if (out == null) {
+                response.setStatus(HttpResponseStatus.OK);
+                HttpUtil.setContentType(response, CONTENT_TYPE_TEXT);
+                if (gzip) {
+                    response.setHeader(HttpHeaderNames.CONTENT_ENCODING, ENCODING_GZIP);
+                    out = new GZIPOutputStream(response.outputStream(), true);
+                } else {
+                    out = response.outputStream();
+                }
+            }
+            return out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                out().write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (out != null) {
+                out.flush();
+            }
+        }
+
+        /**
+         * Completes the response. The underlying response stream is closed by the HTTP server.
+         */
+        void finish() throws IOException {
+            out();
+            if (out instanceof GZIPOutputStream) {
+                ((GZIPOutputStream) out).finish();
+            }
+            out.flush();
+        }
+    }
+}